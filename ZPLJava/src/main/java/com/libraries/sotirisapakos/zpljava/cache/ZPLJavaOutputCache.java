@@ -0,0 +1,368 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cache;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaContentHash;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of generated label code, placed in front of
+ * {@link ZPLJavaLabel#generateLabelCode()}. Labels are found by their
+ * {@link ZPLJavaContentHash content hash}, so a reprint or a repeated product label is not
+ * generated again, even after the application restarts.
+ * <h3>Structure:</h3>
+ * <ul>
+ *     <li>Cache entries are appended to memory-mapped segment files of {@code segmentSize} bytes.</li>
+ *     <li>An index in memory points every hash to its entry. Index is created again from the
+ *     segment files when cache is opened.</li>
+ *     <li>When the last segment is full, a new one is created. When there are more than
+ *     {@code maxSegments} segments, the oldest one is deleted with all of its entries.</li>
+ * </ul>
+ * Found entries are returned as read-only buffers of the mapped file, without copying them.
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaOutputCache cache = new ZPLJavaOutputCache(new File("zpl-cache"));
+ * ByteBuffer code = cache.getOrGenerate(label);
+ * printerChannel.write(code);
+ * }</pre>
+ * Only one cache instance should use a directory at the same time. All methods are thread safe.
+ */
+public class ZPLJavaOutputCache implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    /**
+     * "ZPLC" at the start of every entry
+     */
+    private static final int ENTRY_MAGIC = 0x5A504C43;
+    /**
+     * Entry header: magic, length, crc and hash
+     */
+    private static final int ENTRY_HEADER_SIZE = 4 + 4 + 4 + ZPLJavaContentHash.LENGTH;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".zplcache";
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final HashMap<ZPLJavaContentHash, Entry> index = new HashMap<>();
+    /**
+     * Evicted segment files that could not be deleted yet
+     */
+    private final ArrayList<File> undeletedFiles = new ArrayList<>();
+    private int nextSegmentId = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Open a cache with {@link #DEFAULT_SEGMENT_SIZE} and {@link #DEFAULT_MAX_SEGMENTS}.
+     * @param directory directory of the cache files, created if not exists
+     * @throws IOException if cache files can not be opened
+     */
+    public ZPLJavaOutputCache(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Open a cache. Cache uses at most {@code segmentSize * maxSegments} bytes of disk, plus evicted
+     * segments that the system does not let delete while they are mapped, until they can be deleted.
+     * @param directory directory of the cache files, created if not exists
+     * @param segmentSize size of every segment file in bytes. Bigger labels are never cached.
+     * @param maxSegments segment files to keep before deleting the oldest one
+     * @throws IOException if cache files can not be opened
+     */
+    public ZPLJavaOutputCache(File directory, int segmentSize, int maxSegments) throws IOException {
+        if(segmentSize <= ENTRY_HEADER_SIZE || maxSegments <= 0)
+            throw new IllegalArgumentException("Invalid cache size");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Can not create cache directory " + directory);
+        openSegments();
+    }
+
+    /**
+     * Get the label code from cache or generate it and add it to cache.
+     * @param label label to get the code of
+     * @return the label code bytes (read-only buffer), see {@link ZPLJavaLabel#getLabelCodeBytes()}
+     * @throws IOException if cache is closed
+     */
+    public ByteBuffer getOrGenerate(ZPLJavaLabel label) throws IOException {
+        ZPLJavaContentHash hash = ZPLJavaContentHash.of(label);
+        ByteBuffer cached = get(hash);
+        if(cached != null) return cached;
+        label.generateLabelCode();
+        byte[] code = label.getLabelCodeBytes();
+        ByteBuffer stored = put(hash, code);
+        return stored != null ? stored : ByteBuffer.wrap(code).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param hash content hash of the label
+     * @return a read-only buffer of the cached bytes or null if not found
+     * @throws IOException if cache is closed
+     */
+    public synchronized ByteBuffer get(ZPLJavaContentHash hash) throws IOException {
+        ensureOpen();
+        Entry entry = index.get(hash);
+        if(entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.segment.slice(entry.offset, entry.length);
+    }
+
+    /**
+     * Add bytes to cache.
+     * @param hash content hash of the label
+     * @param bytes bytes to keep
+     * @return a read-only buffer of the cached bytes or null if they are bigger than a segment
+     * @throws IOException if cache files can not be written
+     */
+    public synchronized ByteBuffer put(ZPLJavaContentHash hash, byte[] bytes) throws IOException {
+        ensureOpen();
+        if(bytes.length > segmentSize - ENTRY_HEADER_SIZE) return null;
+        Segment segment = segments.peekLast();
+        if(segment == null || segment.remaining() < ENTRY_HEADER_SIZE + bytes.length) {
+            segment = addSegment();
+        }
+        int offset = segment.append(hash, bytes);
+        Entry entry = new Entry(segment, offset, bytes.length);
+        index.put(hash, entry);
+        segment.hashes.add(hash);
+        return segment.slice(offset, bytes.length);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+    /**
+     * @return the entries removed because their segment was deleted
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Write all entries to disk and close the segment files.
+     * @throws IOException if segment files can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed) return;
+        closed = true;
+        for (Segment segment : segments) segment.close();
+        segments.clear();
+        index.clear();
+        for (File file : undeletedFiles) file.delete();
+        undeletedFiles.clear();
+    }
+
+    // -------------------------------- segments --------------------------------
+
+    private void openSegments() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if(files == null) files = new File[0];
+        int[] ids = new int[files.length];
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                ids[count++] = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                count--;
+            }
+        }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        for (int id : ids) {
+            Segment segment = new Segment(id);
+            segments.addLast(segment);
+            segment.load();
+            nextSegmentId = id + 1;
+        }
+        while (segments.size() > maxSegments) evictOldestSegment();
+    }
+
+    private Segment addSegment() throws IOException {
+        Segment segment = new Segment(nextSegmentId++);
+        segments.addLast(segment);
+        while (segments.size() > maxSegments) evictOldestSegment();
+        return segment;
+    }
+
+    private void evictOldestSegment() throws IOException {
+        Segment oldest = segments.removeFirst();
+        for (ZPLJavaContentHash hash : oldest.hashes) {
+            Entry entry = index.get(hash);
+            if(entry != null && entry.segment == oldest) {
+                index.remove(hash);
+                evictionCount++;
+            }
+        }
+        oldest.close();
+        // a file that is still mapped can not be deleted on some systems (Windows) until its
+        // buffer is garbage collected. Its entries are already removed, so try again later.
+        undeletedFiles.add(oldest.file);
+        Iterator<File> files = undeletedFiles.iterator();
+        while (files.hasNext()) {
+            File file = files.next();
+            if(file.delete() || !file.exists()) files.remove();
+            else file.deleteOnExit();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed) throw new IOException("Cache is closed");
+    }
+
+    private static class Entry {
+        final Segment segment;
+        final int offset;
+        final int length;
+
+        Entry(Segment segment, int offset, int length){
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * One memory-mapped file of entries. Entry structure:
+     * <p>{@code [magic: int][length: int][crc32: int][hash: 32 bytes][bytes: length]}</p>
+     * The crc covers hash and bytes, so a damaged hash never points to another label.
+     */
+    private class Segment {
+        final File file;
+        final RandomAccessFile randomAccessFile;
+        final MappedByteBuffer buffer;
+        final ArrayList<ZPLJavaContentHash> hashes = new ArrayList<>();
+        int writePosition = 0;
+
+        Segment(int id) throws IOException {
+            file = new File(directory, String.format(Locale.ENGLISH, "%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            long length = Math.max(randomAccessFile.length(), segmentSize);
+            if(randomAccessFile.length() < length) randomAccessFile.setLength(length);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+
+        /**
+         * Read entries of an existing file to index. Stops at the first invalid or incomplete
+         * entry, so an entry half-written before a crash is overwritten.
+         */
+        void load() {
+            int position = 0;
+            int capacity = buffer.capacity();
+            CRC32 crc = new CRC32();
+            byte[] hash = new byte[ZPLJavaContentHash.LENGTH];
+            while (position + ENTRY_HEADER_SIZE <= capacity) {
+                if(buffer.getInt(position) != ENTRY_MAGIC) break;
+                int length = buffer.getInt(position + 4);
+                if(length < 0 || length > capacity - position - ENTRY_HEADER_SIZE) break;
+                byte[] bytes = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(position + 12);
+                view.get(hash);
+                view.get(bytes);
+                crc.reset();
+                crc.update(hash);
+                crc.update(bytes);
+                if((int) crc.getValue() != buffer.getInt(position + 8)) break;
+                ZPLJavaContentHash contentHash = ZPLJavaContentHash.fromByteArray(hash);
+                index.put(contentHash, new Entry(this, position + ENTRY_HEADER_SIZE, length));
+                hashes.add(contentHash);
+                position += ENTRY_HEADER_SIZE + length;
+            }
+            writePosition = position;
+        }
+
+        int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        /**
+         * @return the offset of the appended bytes
+         */
+        int append(ZPLJavaContentHash hash, byte[] bytes) {
+            int position = writePosition;
+            byte[] hashBytes = hash.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(hashBytes);
+            crc.update(bytes);
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + 4);
+            view.putInt(bytes.length);
+            view.putInt((int) crc.getValue());
+            view.put(hashBytes);
+            view.put(bytes);
+            // magic is written last, so the entry is valid only when it is complete
+            buffer.putInt(position, ENTRY_MAGIC);
+            writePosition = position + ENTRY_HEADER_SIZE + bytes.length;
+            return position + ENTRY_HEADER_SIZE;
+        }
+
+        ByteBuffer slice(int offset, int length) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.limit(offset + length);
+            return view.slice().asReadOnlyBuffer();
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            randomAccessFile.close();
+        }
+    }
+}
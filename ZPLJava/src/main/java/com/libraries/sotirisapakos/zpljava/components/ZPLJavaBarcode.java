@@ -15,6 +15,7 @@
  */
 package com.libraries.sotirisapakos.zpljava.components;
 
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
 import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
 import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
 
@@ -151,6 +152,10 @@ public class ZPLJavaBarcode extends ZPLJavaComponent{
      * If user enable background, then this rectangle will be created before the barcode
      */
     private ZPLJavaRectangle backgroundRectangle;
+    /**
+     * Printer side change of data on every copy, null for same data on every copy
+     */
+    private ZPLJavaSerialization serialization;
 
     /**
      * Constructor to create a barcode by giving only the printable data
@@ -202,10 +207,11 @@ public class ZPLJavaBarcode extends ZPLJavaComponent{
         if(barcodeTextPlacement == BarcodeTextPlacement.TEXT_BELOW) instruction.append("Y,N,");
         if(UCCCheckDigit) instruction.append("Y,"); else instruction.append("N,");
         instruction.append(barcodeMode);
-        // add next part "^FD{text}^FS"
-        instruction.append("^FD")
-                .append(barcodeData)
-                .append("^FS");
+        // add next part "^FD{text}^FS" or a serialized field "^SN{text},{increment},{Y|N}^FS",
+        // after "^FH_" only if data has characters to escape
+        if(serialization != null) serialization.appendFieldData(instruction, barcodeData, false);
+        else ZPLJavaCodePage.appendFieldData(instruction, "^FD", barcodeData, false);
+        instruction.append("^FS");
         super.setInstruction(instruction.toString());
     }
 
@@ -401,6 +407,59 @@ public class ZPLJavaBarcode extends ZPLJavaComponent{
         backgroundRectangle.fillBackground();
     }
 
+    /**
+     * @return the background rectangle created by {@link #applyBackground(String, int, int)} or
+     * null if barcode has no background
+     */
+    public ZPLJavaRectangle getBackgroundRectangle() {
+        return applyBackground ? backgroundRectangle : null;
+    }
+    /**
+     * Set a ready background rectangle, like the one {@link #applyBackground(String, int, int)}
+     * creates. Pass null to remove the background.
+     * @param backgroundRectangle rectangle to draw before the barcode
+     */
+    public void setBackgroundRectangle(ZPLJavaRectangle backgroundRectangle) {
+        this.backgroundRectangle = backgroundRectangle;
+        this.applyBackground = backgroundRectangle != null;
+    }
+
+    /**
+     * Let the printer change the barcode data on every copy of a label with
+     * {@link ZPLJavaLabel#setPrintQuantity(int) print quantity}.
+     * @param serialization the serialization or null to print the same data on every copy
+     */
+    public void setSerialization(ZPLJavaSerialization serialization) {
+        this.serialization = serialization;
+    }
+    public ZPLJavaSerialization getSerialization() {
+        return serialization;
+    }
+
+    /**
+     * Copy also the background rectangle, if any.
+     * @return a copy of this barcode
+     */
+    @Override
+    public ZPLJavaBarcode copy() {
+        ZPLJavaBarcode copy = (ZPLJavaBarcode) super.copy();
+        if(backgroundRectangle != null) copy.backgroundRectangle = (ZPLJavaRectangle) backgroundRectangle.copy();
+        return copy;
+    }
+
+    /**
+     * Scale barcode height, module width and background rectangle. Module width is the narrowest
+     * bar in dots, so it is rounded to the nearest permitted {@code ^BY} value (1 to 10).
+     * @see ZPLJavaComponent#scale(int, int)
+     */
+    @Override
+    public void scale(int fromDpmm, int toDpmm) {
+        super.scale(fromDpmm, toDpmm);
+        barcodeHeight = scaleDots(barcodeHeight, fromDpmm, toDpmm);
+        barcodeWidth = Math.max(1, Math.min(10, scaleDots(barcodeWidth, fromDpmm, toDpmm)));
+        if(backgroundRectangle != null) backgroundRectangle.scale(fromDpmm, toDpmm);
+    }
+
     public String getBarcodeData() {
         return barcodeData;
     }
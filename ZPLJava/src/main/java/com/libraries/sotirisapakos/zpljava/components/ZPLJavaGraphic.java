@@ -0,0 +1,233 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+/**
+ * ZPLJavaGraphic is a component to add a 1-bit image to {@link ZPLJavaLabel}.
+ * <p>Instruction template: { <code>^GFA,b,c,d,data</code> } where: </p>
+ * <ul>
+ *     <li>b: total bytes of the image</li>
+ *     <li>c: total bytes of the image (same as b)</li>
+ *     <li>d: bytes of every row</li>
+ *     <li>data: rows as hex, with the ASCII compression of the printer, see {@link #compress(byte[], int, int)}</li>
+ * </ul>
+ * Use {@link com.libraries.sotirisapakos.zpljava.graphics.ZPLJavaBitmap} to draw an image.
+ */
+public class ZPLJavaGraphic extends ZPLJavaComponent {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Image width in dots
+     */
+    private int width;
+    /**
+     * Image height in dots
+     */
+    private int height;
+    /**
+     * Image rows, (width + 7) / 8 bytes each. The high bit is the leftmost dot and a set bit is black.
+     */
+    private byte[] data;
+    /**
+     * Compressed data, created once and cleared on every change
+     */
+    private String compressedData;
+
+    public ZPLJavaGraphic(){}
+    /**
+     * @param x position
+     * @param y position
+     * @param width image width in dots
+     * @param height image height in dots
+     * @param data image rows, see {@link #setData(int, int, byte[])}
+     */
+    public ZPLJavaGraphic(int x, int y, int width, int height, byte[] data){
+        super.setX(x);
+        super.setY(y);
+        setData(width, height, data);
+    }
+
+    /**
+     * Set the image.
+     * @param width image width in dots
+     * @param height image height in dots
+     * @param data image rows of <code>(width + 7) / 8</code> bytes. The high bit of a byte is the
+     *             leftmost dot and a set bit prints black. The array is not copied.
+     * @throws IllegalArgumentException if size is not positive or data does not match it
+     */
+    public void setData(int width, int height, byte[] data) {
+        if(width <= 0 || height <= 0 || data == null || data.length != (width + 7) / 8 * height) {
+            throw new IllegalArgumentException("Image data does not match image size");
+        }
+        this.width = width;
+        this.height = height;
+        this.data = data;
+        this.compressedData = null;
+    }
+    public byte[] getData() {
+        return data;
+    }
+    public int getWidth() {
+        return width;
+    }
+    public int getHeight() {
+        return height;
+    }
+    public int getBytesPerRow() {
+        return (width + 7) / 8;
+    }
+
+    /**
+     * Method to create the instruction based on given parameters.
+     */
+    @Override
+    public void generateInstruction() {
+        //instruction example:
+        // ^FO50,50^GFA,8,8,1,,:FF:,::^FS
+        if(data == null) {
+            super.setInstruction("");
+            return;
+        }
+        int total = data.length;
+        StringBuilder instruction = new StringBuilder(getCompressedData().length() + 40);
+        // add first part "^FO{x},{y}"
+        instruction.append("^FO")
+                .append(super.getX())
+                .append(",")
+                .append(super.getY());
+        // add next part "^GFA,{total},{total},{bytesPerRow},{data}^FS"
+        instruction.append("^GFA,")
+                .append(total)
+                .append(",")
+                .append(total)
+                .append(",")
+                .append(getBytesPerRow())
+                .append(",")
+                .append(getCompressedData())
+                .append("^FS");
+        super.setInstruction(instruction.toString());
+    }
+
+    /**
+     * @return the compressed image data of the instruction
+     */
+    public String getCompressedData() {
+        if(compressedData == null && data != null) compressedData = compress(data, getBytesPerRow(), height);
+        return compressedData;
+    }
+
+    /**
+     * Copy the image data too.
+     * @see ZPLJavaComponent#copy()
+     */
+    @Override
+    public ZPLJavaComponent copy() {
+        ZPLJavaGraphic copy = (ZPLJavaGraphic) super.copy();
+        if(data != null) copy.data = data.clone();
+        return copy;
+    }
+
+    /**
+     * Scale the image too, dot by dot to the nearest dot.
+     * @see ZPLJavaComponent#scale(int, int)
+     */
+    @Override
+    public void scale(int fromDpmm, int toDpmm) {
+        super.scale(fromDpmm, toDpmm);
+        if(data == null || fromDpmm <= 0 || toDpmm <= 0 || fromDpmm == toDpmm) return;
+        int scaledWidth = scaleDots(width, fromDpmm, toDpmm);
+        int scaledHeight = scaleDots(height, fromDpmm, toDpmm);
+        int bytesPerRow = getBytesPerRow();
+        int scaledBytesPerRow = (scaledWidth + 7) / 8;
+        byte[] scaled = new byte[scaledBytesPerRow * scaledHeight];
+        for (int y=0; y<scaledHeight; y++) {
+            int sourceRow = (int) ((long) y * height / scaledHeight) * bytesPerRow;
+            for (int x=0; x<scaledWidth; x++) {
+                int sourceX = (int) ((long) x * width / scaledWidth);
+                if((data[sourceRow + (sourceX >> 3)] & (0x80 >>> (sourceX & 7))) != 0)
+                    scaled[y * scaledBytesPerRow + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+            }
+        }
+        setData(scaledWidth, scaledHeight, scaled);
+    }
+
+    /**
+     * Compress image rows with the ASCII compression of the printer:
+     * <ul>
+     *     <li>a row equal to the previous one is written as <code>:</code></li>
+     *     <li>zeros up to the end of a row as <code>,</code> and ones as <code>!</code></li>
+     *     <li>a repeated hex digit as a count and the digit: <code>G</code> to <code>Y</code> for
+     *     1 to 19 and <code>g</code> to <code>z</code> for 20 to 400 times</li>
+     * </ul>
+     * @param data image rows
+     * @param bytesPerRow bytes of every row
+     * @param height rows
+     * @return the compressed data
+     */
+    public static String compress(byte[] data, int bytesPerRow, int height){
+        StringBuilder out = new StringBuilder(Math.min(data.length, 64 * 1024));
+        char[] row = new char[bytesPerRow * 2];
+        for (int y=0; y<height; y++) {
+            int offset = y * bytesPerRow;
+            if(y > 0 && sameRow(data, offset - bytesPerRow, offset, bytesPerRow)) {
+                out.append(':');
+                continue;
+            }
+            for (int i=0; i<bytesPerRow; i++) {
+                int value = data[offset + i] & 0xFF;
+                row[i * 2] = HEX[value >> 4];
+                row[i * 2 + 1] = HEX[value & 0xF];
+            }
+            int end = row.length;
+            while (end > 0 && row[end - 1] == row[row.length - 1]) end--;
+            char fill = row[row.length - 1];
+            boolean filled = fill == '0' || fill == 'F';
+            if(!filled) end = row.length;
+            int i = 0;
+            while (i < end) {
+                char c = row[i];
+                int run = 1;
+                while (i + run < end && row[i + run] == c) run++;
+                if(run > 2) appendCount(out, run);
+                else if(run == 2) out.append(c);
+                out.append(c);
+                i += run;
+            }
+            if(filled && end < row.length) out.append(fill == '0' ? ',' : '!');
+        }
+        return out.toString();
+    }
+
+    private static boolean sameRow(byte[] data, int first, int second, int length){
+        for (int i=0; i<length; i++) if(data[first + i] != data[second + i]) return false;
+        return true;
+    }
+
+    private static void appendCount(StringBuilder out, int count){
+        while (count > 400) {
+            out.append('z');
+            count -= 400;
+        }
+        if(count >= 20) {
+            out.append((char) ('g' + count / 20 - 1));
+            count %= 20;
+        }
+        if(count > 0) out.append((char) ('G' + count - 1));
+    }
+}
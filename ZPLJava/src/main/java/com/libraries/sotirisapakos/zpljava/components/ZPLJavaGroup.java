@@ -0,0 +1,301 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * ZPLJavaGroup holds other components with positions relative to the group, for blocks that are
+ * used again and again, like an address block or a header bar.
+ * <ul>
+ *     <li>Children are generated once. Their instructions are kept with every <code>^FO</code>
+ *     position split out, so placing the group only writes the cached parts with
+ *     <code>^FO{groupX + x},{groupY + y}</code>.</li>
+ *     <li>{@link #placeAt(int, int)} creates a copy at another position that shares the cached
+ *     children, so one group can be placed many times in one label or in many labels.</li>
+ *     <li>A group can hold other groups; their children are added to the cached parts with their
+ *     group offset.</li>
+ * </ul>
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaGroup address = new ZPLJavaGroup();
+ * address.addAllComponents(nameText, streetText, cityText);
+ * label.addAllComponents(address.placeAt(20, 40), address.placeAt(20, 640));
+ * }</pre>
+ * If a child is changed after the group is generated, call {@link #invalidate()}. Children are
+ * shared by all placed copies, so the change shows in every copy after its own invalidate.
+ */
+public class ZPLJavaGroup extends ZPLJavaComponent {
+
+    private static final String FIELD_ORIGIN = "^FO";
+
+    /**
+     * Children with positions relative to the group origin
+     */
+    private ArrayList<ZPLJavaComponent> components = new ArrayList<>();
+    /**
+     * Cached children output, null until generated. Immutable, so placed copies share it.
+     */
+    private volatile Layout layout;
+
+    /**
+     * Generated children: one more part than positions, part, ^FO position, part, ..., part
+     */
+    private static final class Layout {
+        private final String[] parts;
+        private final int[] xs;
+        private final int[] ys;
+        private final int size;
+
+        private Layout(String[] parts, int[] xs, int[] ys, int size){
+            this.parts = parts;
+            this.xs = xs;
+            this.ys = ys;
+            this.size = size;
+        }
+    }
+
+    public ZPLJavaGroup(){}
+    /**
+     * @param x group origin
+     * @param y group origin
+     */
+    public ZPLJavaGroup(int x, int y){
+        super.setX(x);
+        super.setY(y);
+    }
+
+    // -------------------------------- children --------------------------------
+
+    public void addComponent(ZPLJavaComponent component){
+        if(component == null || component == this) return;
+        components.add(component);
+        invalidate();
+    }
+    /**
+     * @param components children to add, with positions relative to the group origin
+     */
+    public void addAllComponents(ZPLJavaComponent...components){
+        for (ZPLJavaComponent component : components) addComponent(component);
+    }
+    public ArrayList<ZPLJavaComponent> getComponents() {
+        return components;
+    }
+    public void setComponents(ArrayList<ZPLJavaComponent> components) {
+        this.components = components == null ? new ArrayList<ZPLJavaComponent>() : components;
+        invalidate();
+    }
+
+    /**
+     * Drop the cached children output, so it is generated again the next time. Call it after
+     * changing a child. Groups that hold this group keep their own cache and need their own call.
+     */
+    public void invalidate(){
+        layout = null;
+    }
+
+    /**
+     * Create a copy of this group at another position. The copy shares children and cached output
+     * with this group, so placing it costs only writing its instruction.
+     * @param x group origin
+     * @param y group origin
+     * @return the placed group
+     */
+    public ZPLJavaGroup placeAt(int x, int y){
+        // generate children before copying, so every placed copy shares the same output
+        getLayout();
+        ZPLJavaGroup placed = (ZPLJavaGroup) copy();
+        placed.setX(x);
+        placed.setY(y);
+        return placed;
+    }
+
+    // -------------------------------- instruction --------------------------------
+
+    /**
+     * Write the cached children output with every position moved to the group origin.
+     */
+    @Override
+    public void generateInstruction() {
+        Layout layout = getLayout();
+        StringBuilder instruction = new StringBuilder(layout.size + layout.xs.length * 8);
+        appendTo(instruction, layout, super.getX(), super.getY());
+        super.setInstruction(instruction.toString());
+    }
+
+    private static void appendTo(StringBuilder out, Layout layout, int x, int y){
+        out.append(layout.parts[0]);
+        for (int i=0; i<layout.xs.length; i++) {
+            out.append(FIELD_ORIGIN)
+                    .append(x + layout.xs[i])
+                    .append(',')
+                    .append(y + layout.ys[i])
+                    .append(layout.parts[i + 1]);
+        }
+    }
+
+    /**
+     * @return the cached children output, generated if needed
+     */
+    private Layout getLayout(){
+        Layout current = layout;
+        if(current != null) return current;
+        synchronized (this) {
+            if(layout == null) layout = createLayout();
+            return layout;
+        }
+    }
+
+    private Layout createLayout(){
+        ArrayList<String> parts = new ArrayList<>();
+        int[] xs = new int[8];
+        int[] ys = new int[8];
+        int positions = 0;
+        StringBuilder part = new StringBuilder();
+        boolean first = true;
+        for (ZPLJavaComponent component : components) {
+            String instruction;
+            int offsetX = 0;
+            int offsetY = 0;
+            if(component instanceof ZPLJavaGroup) {
+                // nested group: its children with the nested group offset
+                ZPLJavaGroup group = (ZPLJavaGroup) component;
+                StringBuilder nested = new StringBuilder();
+                appendTo(nested, group.getLayout(), 0, 0);
+                instruction = nested.toString();
+                offsetX = group.getX();
+                offsetY = group.getY();
+            }
+            else {
+                component.generateInstruction();
+                instruction = component.getInstruction();
+            }
+            if(instruction == null || instruction.isEmpty()) continue;
+            // one child per line, like the label code
+            if(!first) part.append("\n\t");
+            first = false;
+
+            int start = 0;
+            int origin;
+            while ((origin = instruction.indexOf(FIELD_ORIGIN, start)) >= 0) {
+                int[] position = parsePosition(instruction, origin + FIELD_ORIGIN.length());
+                if(position == null) {
+                    part.append(instruction, start, origin + FIELD_ORIGIN.length());
+                    start = origin + FIELD_ORIGIN.length();
+                    continue;
+                }
+                part.append(instruction, start, origin);
+                parts.add(part.toString());
+                part.setLength(0);
+                if(positions == xs.length) {
+                    xs = Arrays.copyOf(xs, positions * 2);
+                    ys = Arrays.copyOf(ys, positions * 2);
+                }
+                xs[positions] = position[0] + offsetX;
+                ys[positions] = position[1] + offsetY;
+                positions++;
+                start = position[2];
+            }
+            part.append(instruction, start, instruction.length());
+        }
+        parts.add(part.toString());
+        int size = 0;
+        for (String value : parts) size += value.length();
+        return new Layout(parts.toArray(new String[0]), Arrays.copyOf(xs, positions),
+                Arrays.copyOf(ys, positions), size);
+    }
+
+    /**
+     * Read <code>x,y</code> after a <code>^FO</code>.
+     * @return x, y and the index after y, or null if there is no position
+     */
+    private static int[] parsePosition(String instruction, int index){
+        int[] x = parseNumber(instruction, index);
+        if(x == null || x[1] >= instruction.length() || instruction.charAt(x[1]) != ',') return null;
+        int[] y = parseNumber(instruction, x[1] + 1);
+        if(y == null) return null;
+        return new int[]{x[0], y[0], y[1]};
+    }
+
+    /**
+     * @return the number and the index after it, or null if there is no number
+     */
+    private static int[] parseNumber(String instruction, int index){
+        int end = index;
+        if(end < instruction.length() && instruction.charAt(end) == '-') end++;
+        int digitsStart = end;
+        while (end < instruction.length() && end - digitsStart < 9
+                && Character.isDigit(instruction.charAt(end))) end++;
+        if(end == digitsStart) return null;
+        return new int[]{Integer.parseInt(instruction.substring(index, end)), end};
+    }
+
+    // -------------------------------- size --------------------------------
+
+    /**
+     * @return the bottom of the lowest child, relative to group origin
+     */
+    @Override
+    public int getComponentSize() {
+        int bottom = 0;
+        for (ZPLJavaComponent component : components) {
+            bottom = Math.max(bottom, ZPLJavaLabel.getComponentBottom(component));
+        }
+        return bottom;
+    }
+
+    /**
+     * Copy keeps its own list of the same children and shares the cached output.
+     * @see ZPLJavaComponent#copy()
+     */
+    @Override
+    public ZPLJavaComponent copy() {
+        ZPLJavaGroup copy = (ZPLJavaGroup) super.copy();
+        copy.components = new ArrayList<>(components);
+        return copy;
+    }
+
+    /**
+     * Scale also every child. Children are copied first, so other copies of this group keep
+     * their children.
+     * @see ZPLJavaComponent#scale(int, int)
+     */
+    @Override
+    public void scale(int fromDpmm, int toDpmm) {
+        if(fromDpmm <= 0 || toDpmm <= 0 || fromDpmm == toDpmm) return;
+        super.scale(fromDpmm, toDpmm);
+        ArrayList<ZPLJavaComponent> scaled = new ArrayList<>(components.size());
+        for (ZPLJavaComponent component : components) {
+            ZPLJavaComponent child = component.copy();
+            child.scale(fromDpmm, toDpmm);
+            scaled.add(child);
+        }
+        components = scaled;
+        invalidate();
+    }
+
+    /**
+     * Return instruction instead of parameters
+     * @return component {@link ZPLJavaComponent#getInstruction() instruction}
+     */
+    @Override
+    public String toString() {
+        return super.getInstruction();
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable label for many near-identical variants of one base label, like one label per
+ * language or per carrier.
+ * <ul>
+ *     <li>Components are kept in a balanced tree. {@link #with(int, ZPLJavaComponent)} creates a
+ *     variant that replaces one component by copying only the path to it, O(log n), and shares
+ *     every other component with the base label.</li>
+ *     <li>Every component is generated once, when it enters the tree. Variants share the
+ *     generated code of the shared components and only write it out for their label code.</li>
+ *     <li>Content height (for continuous media) and the code page class are kept at every tree
+ *     node, so a variant does not look at the other components to find them.</li>
+ * </ul>
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaImmutableLabel base = ZPLJavaImmutableLabel.of(label);
+ * ZPLJavaImmutableLabel greek = base.with("title", greekTitle);
+ * ZPLJavaImmutableLabel german = base.with("title", germanTitle);
+ * send(greek.getLabelCodeBytes());
+ * }</pre>
+ * Components are copied when they are added and when they are returned, so a label never
+ * changes. Immutable labels are thread safe.
+ */
+public final class ZPLJavaImmutableLabel {
+
+    /**
+     * Code page classes of component code: ASCII only, code page 1252 only, any other character
+     */
+    private static final int CLASS_ASCII = 0;
+    private static final int CLASS_CP1252 = 1;
+    private static final int CLASS_OTHER = 2;
+
+    /**
+     * Label size and settings, never changed and without components
+     */
+    private final ZPLJavaLabel settings;
+    private final Node root;
+    /**
+     * Index of the first component of every id, shared while ids do not change
+     */
+    private final Map<String, Integer> ids;
+
+    private volatile String labelCode;
+
+    /**
+     * Tree node. A leaf holds one generated component, other nodes hold two subtrees.
+     */
+    private static final class Node {
+        private final Node left;
+        private final Node right;
+        private final ZPLJavaComponent component;
+        /**
+         * Leaf code, as written in label code
+         */
+        private final String code;
+        private final int size;
+        /**
+         * Content height of the subtree
+         */
+        private final int bottom;
+        private final int codeClass;
+        /**
+         * Characters of the code of the subtree
+         */
+        private final int length;
+
+        private Node(ZPLJavaComponent component){
+            this.left = null;
+            this.right = null;
+            this.component = component;
+            component.generateInstruction();
+            StringBuilder code = new StringBuilder();
+            ZPLJavaLabel.appendComponentCode(code, component);
+            this.code = code.toString();
+            this.size = 1;
+            this.bottom = "borderBox".equalsIgnoreCase(component.getId())
+                    ? 0 : Math.max(0, ZPLJavaLabel.getComponentBottom(component));
+            this.codeClass = codeClass(this.code);
+            this.length = this.code.length();
+        }
+
+        private Node(Node left, Node right){
+            this.left = left;
+            this.right = right;
+            this.component = null;
+            this.code = null;
+            this.size = left.size + right.size;
+            this.bottom = Math.max(left.bottom, right.bottom);
+            this.codeClass = Math.max(left.codeClass, right.codeClass);
+            this.length = left.length + right.length;
+        }
+
+        private boolean isLeaf(){
+            return component != null;
+        }
+    }
+
+    private ZPLJavaImmutableLabel(ZPLJavaLabel settings, Node root, Map<String, Integer> ids){
+        this.settings = settings;
+        this.root = root;
+        this.ids = ids;
+    }
+
+    // -------------------------------- create --------------------------------
+
+    /**
+     * Create an immutable label with the size, settings and components of a label. Components are
+     * copied and generated once, so the label can be changed after this call.
+     * @param label the base label
+     * @return the immutable label
+     */
+    public static ZPLJavaImmutableLabel of(ZPLJavaLabel label){
+        ArrayList<Node> leaves = new ArrayList<>(label.getComponents().size());
+        for (ZPLJavaComponent component : label.getComponents()) leaves.add(new Node(component.copy()));
+        Node root = build(leaves, 0, leaves.size());
+        return new ZPLJavaImmutableLabel(label.copySettings(), root, indexIds(root));
+    }
+
+    private static Node build(ArrayList<Node> leaves, int from, int to){
+        if(from >= to) return null;
+        if(to - from == 1) return leaves.get(from);
+        int middle = (from + to) >>> 1;
+        return new Node(build(leaves, from, middle), build(leaves, middle, to));
+    }
+
+    /**
+     * Create a variant with another component at index. Only the path to the component is
+     * copied, everything else is shared with this label.
+     * @param index index of the component to replace
+     * @param component the new component, copied
+     * @return the variant
+     */
+    public ZPLJavaImmutableLabel with(int index, ZPLJavaComponent component){
+        if(index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        Node leaf = new Node(component.copy());
+        String previousId = get(root, index).component.getId();
+        Node replaced = replace(root, index, leaf);
+        boolean sameId = previousId == null ? component.getId() == null : previousId.equals(component.getId());
+        return new ZPLJavaImmutableLabel(settings, replaced, sameId ? ids : indexIds(replaced));
+    }
+
+    /**
+     * Create a variant with another component in place of the first component with this id.
+     * @param id id of the component to replace, see {@link ZPLJavaComponent#setId(String)}
+     * @param component the new component, copied
+     * @return the variant
+     * @throws IllegalArgumentException if no component has this id
+     */
+    public ZPLJavaImmutableLabel with(String id, ZPLJavaComponent component){
+        int index = indexOf(id);
+        if(index < 0) throw new IllegalArgumentException("No component with id " + id);
+        return with(index, component);
+    }
+
+    private static Node replace(Node node, int index, Node leaf){
+        if(node.isLeaf()) return leaf;
+        if(index < node.left.size) return new Node(replace(node.left, index, leaf), node.right);
+        return new Node(node.left, replace(node.right, index - node.left.size, leaf));
+    }
+
+    private static Node get(Node node, int index){
+        while (!node.isLeaf()) {
+            if(index < node.left.size) node = node.left;
+            else {
+                index -= node.left.size;
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return the tree node of exactly the components from index {@code from} (inclusive) to
+     * {@code to} (exclusive), or null if no node has these components. Used by tests to check
+     * which nodes variants share.
+     */
+    Object getSubtree(int from, int to){
+        Node node = root;
+        int offset = 0;
+        while (node != null) {
+            if(offset == from && offset + node.size == to) return node;
+            if(node.isLeaf()) return null;
+            if(from < offset + node.left.size) node = node.left;
+            else {
+                offset += node.left.size;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Integer> indexIds(Node root){
+        HashMap<String, Integer> ids = new HashMap<>();
+        if(root != null) indexIds(root, 0, ids);
+        return Collections.unmodifiableMap(ids);
+    }
+
+    private static void indexIds(Node node, int offset, HashMap<String, Integer> ids){
+        if(node.isLeaf()) {
+            String id = node.component.getId();
+            if(id != null && !id.isEmpty() && !ids.containsKey(id)) ids.put(id, offset);
+            return;
+        }
+        indexIds(node.left, offset, ids);
+        indexIds(node.right, offset + node.left.size, ids);
+    }
+
+    // -------------------------------- components --------------------------------
+
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+    /**
+     * @param index component index
+     * @return a copy of the component at index
+     */
+    public ZPLJavaComponent get(int index){
+        if(index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        return get(root, index).component.copy();
+    }
+    /**
+     * @param id component id
+     * @return the index of the first component with this id or -1
+     */
+    public int indexOf(String id){
+        Integer index = id == null ? null : ids.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Create a normal label with the settings and copies of the components of this label, for
+     * everything else a {@link ZPLJavaLabel} does, like {@link ZPLJavaLabel#retarget(int)}.
+     * @return the label, with generated code
+     */
+    public ZPLJavaLabel toLabel(){
+        ZPLJavaLabel label = settings.copySettings();
+        ArrayList<ZPLJavaComponent> components = new ArrayList<>(size());
+        if(root != null) addComponents(root, components);
+        label.setComponents(components);
+        return label;
+    }
+
+    private static void addComponents(Node node, ArrayList<ZPLJavaComponent> components){
+        if(node.isLeaf()) components.add(node.component.copy());
+        else {
+            addComponents(node.left, components);
+            addComponents(node.right, components);
+        }
+    }
+
+    // -------------------------------- label code --------------------------------
+
+    /**
+     * @return the label code, created once from the shared component code
+     */
+    public String getLabelCode() {
+        String code = labelCode;
+        if(code == null) {
+            StringBuilder body = new StringBuilder(root == null ? 0 : root.length);
+            if(root != null) appendCode(root, body);
+            code = settings.buildLabelCode(body, root == null ? 0 : root.bottom, getCodePage());
+            labelCode = code;
+        }
+        return code;
+    }
+
+    private static void appendCode(Node node, StringBuilder body){
+        if(node.isLeaf()) body.append(node.code);
+        else {
+            appendCode(node.left, body);
+            appendCode(node.right, body);
+        }
+    }
+
+    /**
+     * @return the label code encoded with its {@link #getCodePage() code page}
+     */
+    public byte[] getLabelCodeBytes() {
+        return ZPLJavaCodePage.encode(getLabelCode(), getCodePage());
+    }
+
+    /**
+     * @return the code page of the label code, see {@link ZPLJavaLabel#setCodePageSelection(boolean)}
+     */
+    public int getCodePage() {
+        boolean selection = settings.isUtf8FormatEnabled() && settings.isCodePageSelection();
+        return selection && root != null && root.codeClass == CLASS_CP1252
+                ? ZPLJavaCodePage.CP1252 : ZPLJavaCodePage.UTF8;
+    }
+
+    /**
+     * @return the content height in dots, see {@link ZPLJavaLabel#getContentHeight()}
+     */
+    public int getContentHeight() {
+        return root == null ? 0 : root.bottom;
+    }
+
+    private static int codeClass(String code){
+        if(ZPLJavaCodePage.isAscii(code)) return CLASS_ASCII;
+        // hex values above ASCII are UTF-8 bytes, so they are not code page 1252
+        return ZPLJavaCodePage.select(code) == ZPLJavaCodePage.CP1252 ? CLASS_CP1252 : CLASS_OTHER;
+    }
+
+    // -------------------------------- settings --------------------------------
+
+    public int getLabelWidth() {
+        return settings.getLabelWidth();
+    }
+    public int getLabelHeight() {
+        return settings.getLabelHeight();
+    }
+    public int getDpmmValue() {
+        return settings.getDpmmValue();
+    }
+    public String getTemplateId() {
+        return settings.getTemplateId();
+    }
+}
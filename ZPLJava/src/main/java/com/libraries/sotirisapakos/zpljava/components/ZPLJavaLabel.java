@@ -16,10 +16,16 @@
 package com.libraries.sotirisapakos.zpljava.components;
 
 import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+import com.libraries.sotirisapakos.zpljava.graphics.ZPLJavaShapeRasterizer;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaMetrics;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaTracer;
 import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ZPLJavaLabel is the basic structure component to hold any {@link ZPLJavaComponent} object.
@@ -28,6 +34,15 @@ public class ZPLJavaLabel {
 
     // -------------------------------- parameters --------------------------------
 
+    /**
+     * Blank dots fed after the content on continuous media
+     */
+    public static final int DEFAULT_CONTINUOUS_TAIL = 16;
+    /**
+     * Biggest label length that {@code ^LL} accepts
+     */
+    public static final int MAX_LABEL_LENGTH = 32000;
+
     /**
      * Hold {@link ZPLJavaComponent} objects to {@link ArrayList} object.
      */
@@ -43,8 +58,46 @@ public class ZPLJavaLabel {
 
     private int labelWidth = LabelSize.DEFAULT_WIDTH_INCHES * LabelSize._8DPMM;
     private int labelHeight = LabelSize.DEFAULT_HEIGHT_INCHES * LabelSize._8DPMM;
+    /**
+     * Printer resolution that label components are designed for.
+     */
+    private int dpmmValue = LabelSize._8DPMM;
+
+    /**
+     * Generated zpl code of this label for other printer resolutions, see {@link #getLabelCode(int)}.
+     * Cleared every time label code is generated again.
+     */
+    private final ConcurrentHashMap<Integer, String> retargetedLabelCodes = new ConcurrentHashMap<>();
 
     private boolean utf8FormatEnabled = true;
+    /**
+     * Choose the code page from label text, see {@link #setCodePageSelection(boolean)}
+     */
+    private boolean codePageSelection = false;
+    /**
+     * Code page of the generated label code
+     */
+    private int codePage = ZPLJavaCodePage.UTF8;
+
+    /**
+     * Print quantity controls of {@code ^PQ}, see {@link #setPrintQuantity(int, int, int, boolean, boolean)}
+     */
+    private int printQuantity = 1;
+    private int pauseCount = 0;
+    private int replicates = 0;
+    private boolean overridePause = false;
+    private boolean cutOnError = true;
+
+    /**
+     * Name of the template this label is created from, used by {@link ZPLJavaMetrics}
+     */
+    private String templateId;
+
+    /**
+     * Continuous media controls, see {@link #setContinuousMedia(boolean)}
+     */
+    private boolean continuousMedia = false;
+    private int continuousTail = DEFAULT_CONTINUOUS_TAIL;
 
     // -------------------------------- constructors --------------------------------
 
@@ -86,15 +139,81 @@ public class ZPLJavaLabel {
         if(inchesWidth<=0 || inchesHeight<=0 || dpmmValue<=0) return;
         this.labelWidth = inchesWidth * dpmmValue;
         this.labelHeight = inchesHeight * dpmmValue;
+        this.dpmmValue = dpmmValue;
+    }
+    /**
+     * Set label size directly in dots, for labels that are not sized in whole inches.
+     * @param labelWidth label width in dots. Accepted values above zero!
+     * @param labelHeight label height in dots. Accepted values above zero!
+     * @param dpmmValue resolution of the printer, prefer to use one of the {@link LabelSize} values
+     */
+    public void setLabelSizeInDots(int labelWidth, int labelHeight, int dpmmValue) {
+        if(labelWidth<=0 || labelHeight<=0 || dpmmValue<=0) return;
+        this.labelWidth = labelWidth;
+        this.labelHeight = labelHeight;
+        this.dpmmValue = dpmmValue;
     }
     /**
      * Call this function at the end of label creation process to generate zpl code.
      * To get generated code, use {@link #getLabelCode()} method after generating code
      */
     public void generateLabelCode(){
+        boolean measured = ZPLJavaMetrics.isEnabled();
+        long start = measured ? System.nanoTime() : 0;
+        ZPLJavaTracer tracer = ZPLJavaMetrics.getTracer();
+        Object span = tracer == null ? null : tracer.begin(ZPLJavaTracer.Event.GENERATION);
+        StringBuilder body = new StringBuilder();
+        for (ZPLJavaComponent component: components) {
+            if(measured) {
+                long componentStart = System.nanoTime();
+                component.generateInstruction();
+                ZPLJavaMetrics.recordComponent(component, System.nanoTime() - componentStart,
+                        component.getInstruction().length());
+            }
+            else component.generateInstruction();
+            appendComponentCode(body, component);
+        }
+        // components are generated, so the code page is chosen from their field data
+        codePage = selectCodePage(body);
+        this.labelCode = buildLabelCode(body, continuousMedia ? getContentHeight() : 0, codePage);
+        retargetedLabelCodes.clear();
+        if(measured) ZPLJavaMetrics.recordLabel(templateId, System.nanoTime() - start, labelCode.length(),
+                components.size());
+        if(tracer != null) tracer.endGeneration(span, templateId, components.size(), labelCode.length());
+    }
+
+    /**
+     * Append the code of one generated component, as it is written between label header and footer.
+     * @param code code to append to
+     * @param component a generated component
+     */
+    static void appendComponentCode(StringBuilder code, ZPLJavaComponent component){
+        code.append(String.format(Locale.ENGLISH,
+                "\t^FX  Generate {%s} component", component.getId()));
+        code.append("\n");
+        code.append("\t").append(component);
+        code.append("\n");
+    }
+
+    /**
+     * @param body the code of all components
+     * @return the code page of label code with this body
+     */
+    int selectCodePage(CharSequence body){
+        return utf8FormatEnabled && codePageSelection ? ZPLJavaCodePage.select(body) : ZPLJavaCodePage.UTF8;
+    }
+
+    /**
+     * Add label header and footer to the code of all components, with the settings of this label.
+     * @param body the code of all components, see {@link #appendComponentCode(StringBuilder, ZPLJavaComponent)}
+     * @param contentHeight the {@link #getContentHeight() content height}, used on continuous media
+     * @param codePage the code page of {@link #selectCodePage(CharSequence)}
+     * @return the label code
+     */
+    String buildLabelCode(CharSequence body, int contentHeight, int codePage){
         String message = "ZPL code generated by { " + ZPLJavaLabel.class.getSimpleName() + " } class";
         String modify = "Please do not modify any parameter or will change the label appearance";
-        StringBuilder code = new StringBuilder();
+        StringBuilder code = new StringBuilder(body.length() + 1024);
         code.append("^XA\n\n");
         code.append("\t^FX ").append(message).append("\n");
         code.append("\t^FX ").append(modify).append("\n\n");
@@ -108,20 +227,107 @@ public class ZPLJavaLabel {
         code.append("\t^FX Label structure \n");
         code.append("\t^FX ---------------------------------\n");
         if(utf8FormatEnabled) {
-            code.append("\t^FX Enable UTF-8 format\n");
-            code.append("\t^CI28\n");
+            if(codePage == ZPLJavaCodePage.CP1252) {
+                code.append("\t^FX Enable code page 1252 format\n");
+                code.append("\t^CI27\n");
+            }
+            else {
+                code.append("\t^FX Enable UTF-8 format\n");
+                code.append("\t^CI28\n");
+            }
         }
-        for (ZPLJavaComponent component: components) {
-            code.append(String.format(Locale.ENGLISH,
-                    "\t^FX  Generate {%s} component", component.getId()));
-            code.append("\n");
-            component.generateInstruction();
-            code.append("\t").append(component);
-            code.append("\n");
+        if(continuousMedia) {
+            code.append("\t^FX Continuous media, label length from content\n");
+            code.append(String.format(Locale.ENGLISH, "\t^MNN^PW%d^LL%d\n", labelWidth,
+                    getContinuousLabelLength(contentHeight)));
         }
+        code.append(body);
         code.append("\t^FX  -----------------------------------------------\n");
+        if(hasPrintQuantity()) {
+            code.append("\t^FX Print quantity\n");
+            code.append(String.format(Locale.ENGLISH, "\t^PQ%d,%d,%d,%s,%s\n", printQuantity, pauseCount,
+                    replicates, overridePause ? "Y" : "N", cutOnError ? "Y" : "N"));
+        }
         code.append("^XZ");
-        this.labelCode = code.toString();
+        return code.toString();
+    }
+
+    /**
+     * Generate only the component instructions of this label, without <code>^XA</code>,
+     * <code>^XZ</code> and comments, to place this label inside another format like a
+     * {@link com.libraries.sotirisapakos.zpljava.layout.ZPLJavaMultiUpPacker multi-up} sheet.
+     * @return the component instructions, one per line
+     */
+    public String generateLabelBody(){
+        StringBuilder body = new StringBuilder();
+        for (ZPLJavaComponent component : components) {
+            component.generateInstruction();
+            body.append(component).append("\n");
+        }
+        return body.toString();
+    }
+
+    /**
+     * Create a copy of this label for a printer with another resolution. Every component is
+     * {@link ZPLJavaComponent#copy() copied} and {@link ZPLJavaComponent#scale(int, int) scaled},
+     * so this label stays as it is.
+     * <p>Example: design once for a 203dpi printer and print to a 300dpi printer using
+     * <code>label.retarget(LabelSize._12DPMM)</code></p>
+     * @param dpmmValue target resolution, prefer to use one of the {@link LabelSize} values
+     * @return a new label with scaled components
+     */
+    public ZPLJavaLabel retarget(int dpmmValue){
+        ZPLJavaLabel target = copySettings();
+        if(dpmmValue <= 0 || dpmmValue == this.dpmmValue) dpmmValue = this.dpmmValue;
+        target.dpmmValue = dpmmValue;
+        target.labelWidth = ZPLJavaComponent.scaleDots(labelWidth, this.dpmmValue, dpmmValue);
+        target.labelHeight = ZPLJavaComponent.scaleDots(labelHeight, this.dpmmValue, dpmmValue);
+        target.continuousTail = ZPLJavaComponent.scaleDots(continuousTail, this.dpmmValue, dpmmValue);
+        ArrayList<ZPLJavaComponent> scaledComponents = new ArrayList<>(components.size());
+        for (ZPLJavaComponent component : components) {
+            ZPLJavaComponent scaled = component.copy();
+            scaled.scale(this.dpmmValue, dpmmValue);
+            scaledComponents.add(scaled);
+        }
+        target.setComponents(scaledComponents);
+        return target;
+    }
+
+    /**
+     * @return a label with the size and every setting of this label, without components
+     */
+    ZPLJavaLabel copySettings(){
+        ZPLJavaLabel copy = new ZPLJavaLabel();
+        copy.labelWidthInches = labelWidthInches;
+        copy.labelHeightInches = labelHeightInches;
+        copy.labelWidth = labelWidth;
+        copy.labelHeight = labelHeight;
+        copy.dpmmValue = dpmmValue;
+        copy.utf8FormatEnabled = utf8FormatEnabled;
+        copy.codePageSelection = codePageSelection;
+        copy.templateId = templateId;
+        copy.continuousMedia = continuousMedia;
+        copy.continuousTail = continuousTail;
+        copy.setPrintQuantity(printQuantity, pauseCount, replicates, overridePause, cutOnError);
+        return copy;
+    }
+
+    /**
+     * Get the label code for a printer with another resolution. The code is created once with
+     * {@link #retarget(int)} and kept until label code is generated again, so the same label can
+     * be printed to 203, 300 and 600dpi printers without rebuilding it for every print.
+     * @param dpmmValue printer resolution, prefer to use one of the {@link LabelSize} values
+     * @return the generated label code for this resolution
+     */
+    public String getLabelCode(int dpmmValue){
+        if(dpmmValue <= 0 || dpmmValue == this.dpmmValue) return labelCode;
+        String code = retargetedLabelCodes.get(dpmmValue);
+        if(code == null){
+            code = retarget(dpmmValue).getLabelCode();
+            String previous = retargetedLabelCodes.putIfAbsent(dpmmValue, code);
+            if(previous != null) code = previous;
+        }
+        return code;
     }
 
     /**
@@ -153,6 +359,8 @@ public class ZPLJavaLabel {
             System.out.println("Add at least one component to label");
             return;
         }
+        ZPLJavaTracer tracer = ZPLJavaMetrics.getTracer();
+        Object span = tracer == null ? null : tracer.begin(ZPLJavaTracer.Event.LAYOUT);
 
         for (int i=0; i<components.size()-1; i++) {
             ZPLJavaComponent component = components.get(i);
@@ -174,6 +382,7 @@ public class ZPLJavaLabel {
             }
             componentNext.generateInstruction();
         }
+        if(tracer != null) tracer.endLayout(span, "convertLayoutToStack", components.size());
 
         generateLabelCode();
     }
@@ -185,6 +394,21 @@ public class ZPLJavaLabel {
     public String getLabelCode() {
         return labelCode;
     }
+    /**
+     * Encode the generated label code with its {@link #getCodePage() code page}. Use this instead
+     * of {@code getLabelCode().getBytes(UTF_8)} to send the label to a printer.
+     * @return the label code bytes
+     */
+    public byte[] getLabelCodeBytes() {
+        return ZPLJavaCodePage.encode(labelCode, codePage);
+    }
+    /**
+     * @return the code page of the generated label code, {@link ZPLJavaCodePage#CP1252} or
+     * {@link ZPLJavaCodePage#UTF8}
+     */
+    public int getCodePage() {
+        return codePage;
+    }
     public void setLabelCode(String labelCode) {
         this.labelCode = labelCode;
     }
@@ -194,6 +418,9 @@ public class ZPLJavaLabel {
     public int getLabelHeight() {
         return labelHeight;
     }
+    public int getDpmmValue() {
+        return dpmmValue;
+    }
     public int getLabelHeightInches() {
         return labelHeightInches;
     }
@@ -218,10 +445,153 @@ public class ZPLJavaLabel {
         addComponent(border);
     }
 
+    // -------------------------------- continuous media --------------------------------
+
+    /**
+     * Print on continuous media (receipts, packing slips) without feeding blank stock after short
+     * content. Label code sets <code>^MNN</code> (no media tracking), <code>^PW</code> to label width
+     * and <code>^LL</code> to the {@link #getContentHeight() content height} plus the
+     * {@link #setContinuousTail(int) tail}, so label height is not used.
+     * @param continuousMedia true to size label length from content
+     */
+    public void setContinuousMedia(boolean continuousMedia) {
+        this.continuousMedia = continuousMedia;
+    }
+    public boolean isContinuousMedia() {
+        return continuousMedia;
+    }
+    /**
+     * @param continuousTail blank dots fed after the lowest component on continuous media, for the
+     *                       tear bar or cutter. Accepted values from zero!
+     */
+    public void setContinuousTail(int continuousTail) {
+        if(continuousTail >= 0) this.continuousTail = continuousTail;
+    }
+    public int getContinuousTail() {
+        return continuousTail;
+    }
+
+    /**
+     * Find the bottom of the lowest component, in dots from the top of the label.
+     * <ul>
+     *     <li>shapes use their drawn height, the biggest of height and thickness</li>
+     *     <li>graphics use their image height</li>
+     *     <li>barcodes use their background rectangle too, if they have one</li>
+     *     <li>every other component uses {@link ZPLJavaComponent#getComponentSize()}</li>
+     * </ul>
+     * The {@link #applyBorderBox(int) border box} is skipped, because it is as high as the label.
+     * @return the content height in dots
+     */
+    public int getContentHeight(){
+        int bottom = 0;
+        for (ZPLJavaComponent component : components) {
+            if("borderBox".equalsIgnoreCase(component.getId())) continue;
+            bottom = Math.max(bottom, getComponentBottom(component));
+        }
+        return bottom;
+    }
+
+    static int getComponentBottom(ZPLJavaComponent component){
+        if(component instanceof ZPLJavaShape)
+            return component.getY() + ZPLJavaShapeRasterizer.getDrawnHeight((ZPLJavaShape) component);
+        if(component instanceof ZPLJavaGraphic)
+            return component.getY() + ((ZPLJavaGraphic) component).getHeight();
+        int bottom = component.getY() + component.getComponentSize();
+        if(component instanceof ZPLJavaBarcode) {
+            ZPLJavaRectangle background = ((ZPLJavaBarcode) component).getBackgroundRectangle();
+            if(background != null) bottom = Math.max(bottom, getComponentBottom(background));
+        }
+        return bottom;
+    }
+
+    /**
+     * @param contentHeight the {@link #getContentHeight() content height}
+     * @return the {@code ^LL} value of continuous media, between 1 and {@link #MAX_LABEL_LENGTH}
+     */
+    private int getContinuousLabelLength(int contentHeight){
+        return Math.max(1, Math.min(MAX_LABEL_LENGTH, contentHeight + continuousTail));
+    }
+
+    // -------------------------------- print quantity --------------------------------
+
+    /**
+     * Print many copies of the label with one format. With a
+     * {@link ZPLJavaSerialization serialized} text or barcode, every copy gets the next value.
+     * @param printQuantity copies to print. Accepted values above zero!
+     */
+    public void setPrintQuantity(int printQuantity){
+        setPrintQuantity(printQuantity, pauseCount, replicates, overridePause, cutOnError);
+    }
+    /**
+     * Set all {@code ^PQ} controls.
+     * @param printQuantity copies to print. Accepted values above zero!
+     * @param pauseCount pause (and cut) after this many copies, zero for no pause
+     * @param replicates copies of every serial number, zero for one
+     * @param overridePause do not pause after every {@code pauseCount} copies
+     * @param cutOnError cut the label when an error happens
+     */
+    public void setPrintQuantity(int printQuantity, int pauseCount, int replicates, boolean overridePause,
+                                 boolean cutOnError){
+        if(printQuantity <= 0 || pauseCount < 0 || replicates < 0) return;
+        this.printQuantity = printQuantity;
+        this.pauseCount = pauseCount;
+        this.replicates = replicates;
+        this.overridePause = overridePause;
+        this.cutOnError = cutOnError;
+    }
+    /**
+     * @return true if label code includes {@code ^PQ}
+     */
+    private boolean hasPrintQuantity(){
+        return printQuantity > 1 || pauseCount > 0 || replicates > 0 || overridePause || !cutOnError;
+    }
+    public int getPrintQuantity() {
+        return printQuantity;
+    }
+    public int getPauseCount() {
+        return pauseCount;
+    }
+    public int getReplicates() {
+        return replicates;
+    }
+    public boolean isOverridePause() {
+        return overridePause;
+    }
+    public boolean isCutOnError() {
+        return cutOnError;
+    }
+
+    /**
+     * Name the template of this label, so {@link ZPLJavaMetrics} can tell labels of different
+     * templates apart.
+     * @param templateId the template name, null for {@link ZPLJavaMetrics#UNNAMED_TEMPLATE}
+     */
+    public void setTemplateId(String templateId) {
+        this.templateId = templateId;
+    }
+    public String getTemplateId() {
+        return templateId;
+    }
     public boolean isUtf8FormatEnabled() {
         return utf8FormatEnabled;
     }
     public void setUtf8FormatEnabled(boolean utf8FormatEnabled) {
         this.utf8FormatEnabled = utf8FormatEnabled;
     }
+    /**
+     * Choose the smallest code page for the text of this label, instead of always using UTF-8.
+     * Labels that have only Western European text are sent with <code>^CI27</code> (code page
+     * 1252, one byte per character), every other label with <code>^CI28</code> (UTF-8). Labels
+     * with <code>^FH</code> hex values above ASCII, like UTF-8 bytes of text with special character
+     * support, also use <code>^CI28</code>.
+     * <p>Works only with {@link #setUtf8FormatEnabled(boolean) UTF-8 format} enabled. Send the label
+     * with {@link #getLabelCodeBytes()}, so the code is encoded with the chosen code page.</p>
+     * @param codePageSelection true to choose the code page from label text
+     */
+    public void setCodePageSelection(boolean codePageSelection) {
+        this.codePageSelection = codePageSelection;
+    }
+    public boolean isCodePageSelection() {
+        return codePageSelection;
+    }
 }
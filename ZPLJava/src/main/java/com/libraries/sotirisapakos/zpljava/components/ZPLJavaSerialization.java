@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+
+/**
+ * Let the printer change the data of a {@link ZPLJavaText} or {@link ZPLJavaBarcode} on every
+ * printed copy, so one format with a {@link ZPLJavaLabel#setPrintQuantity(int) print quantity}
+ * prints many serial numbers.
+ * <ul>
+ *     <li>{@link #serialNumber(int, boolean)}: <code>^SN</code>, the numeric part of data is
+ *     increased by {@code increment} on every copy.</li>
+ *     <li>{@link #mask(String, String)}: <code>^SF</code>, every data character is changed as the
+ *     mask character at the same position says: <code>D</code> decimal, <code>H</code>/<code>h</code>
+ *     hexadecimal, <code>O</code> octal, <code>A</code>/<code>a</code> letters,
+ *     <code>N</code>/<code>n</code> letters and digits, <code>%</code> not changed.</li>
+ * </ul>
+ * <p>Example: print 500 labels numbered 0001 to 0500:</p>
+ * <pre>{@code
+ * text.setText("0001");
+ * text.setSerialization(ZPLJavaSerialization.serialNumber(1, true));
+ * label.setPrintQuantity(500);
+ * }</pre>
+ */
+public class ZPLJavaSerialization {
+
+    public static final int MODE_SERIAL_NUMBER = 1;
+    public static final int MODE_MASK = 2;
+
+    private final int mode;
+    private final int increment;
+    private final boolean leadingZeros;
+    private final String mask;
+    private final String maskIncrement;
+
+    private ZPLJavaSerialization(int mode, int increment, boolean leadingZeros, String mask, String maskIncrement){
+        this.mode = mode;
+        this.increment = increment;
+        this.leadingZeros = leadingZeros;
+        this.mask = mask;
+        this.maskIncrement = maskIncrement;
+    }
+
+    /**
+     * @param increment value added on every copy, negative to count down
+     * @param leadingZeros keep the leading zeros of data
+     * @return a <code>^SN</code> serialization
+     */
+    public static ZPLJavaSerialization serialNumber(int increment, boolean leadingZeros){
+        return new ZPLJavaSerialization(MODE_SERIAL_NUMBER, increment, leadingZeros, null, null);
+    }
+
+    /**
+     * @param mask one mask character for every data character, from the right
+     * @param increment value added on every copy, in the mask characters, like <code>1</code>
+     * @return a <code>^SF</code> serialization
+     */
+    public static ZPLJavaSerialization mask(String mask, String increment){
+        return new ZPLJavaSerialization(MODE_MASK, 0, false, mask, increment);
+    }
+
+    /**
+     * Append the field data with serialization, from <code>^FD</code> (or <code>^SN</code>) to
+     * before <code>^FS</code>.
+     * @param instruction instruction to append to
+     * @param data the start data
+     */
+    public void appendFieldData(StringBuilder instruction, String data){
+        appendFieldData(instruction, data, false);
+    }
+
+    /**
+     * Append the field data with serialization, from <code>^FH_</code> (only if data needs it) to
+     * before <code>^FS</code>. Data is escaped like {@link ZPLJavaCodePage#appendEscaped}.
+     * @param instruction instruction to append to
+     * @param data the start data
+     * @param hexInText true if data may have its own <code>_XX</code> hex values
+     */
+    public void appendFieldData(StringBuilder instruction, String data, boolean hexInText){
+        if(mode == MODE_SERIAL_NUMBER) {
+            ZPLJavaCodePage.appendFieldData(instruction, "^SN", data, hexInText);
+            instruction.append(",")
+                    .append(increment)
+                    .append(",")
+                    .append(leadingZeros ? "Y" : "N");
+        }
+        else {
+            ZPLJavaCodePage.appendFieldData(instruction, "^FD", data, hexInText);
+            instruction.append("^SF")
+                    .append(mask)
+                    .append(",")
+                    .append(maskIncrement);
+        }
+    }
+
+    public int getMode() {
+        return mode;
+    }
+    public int getIncrement() {
+        return increment;
+    }
+    public boolean isLeadingZeros() {
+        return leadingZeros;
+    }
+    public String getMask() {
+        return mask;
+    }
+    public String getMaskIncrement() {
+        return maskIncrement;
+    }
+}
@@ -15,6 +15,10 @@
  */
 package com.libraries.sotirisapakos.zpljava.components;
 
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+import com.libraries.sotirisapakos.zpljava.graphics.ZPLJavaBitmap;
+import com.libraries.sotirisapakos.zpljava.graphics.ZPLJavaGlyphCache;
+import com.libraries.sotirisapakos.zpljava.graphics.ZPLJavaTrueTypeFont;
 import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
 
 /**
@@ -49,6 +53,14 @@ public class ZPLJavaText extends ZPLJavaComponent {
      * Text block will support...text value!
      */
     private String text;
+    /**
+     * Printer side change of text on every copy, null for same text on every copy
+     */
+    private ZPLJavaSerialization serialization;
+    /**
+     * Font to render text on host side as an image, null for printer font 0
+     */
+    private ZPLJavaTrueTypeFont hostFont;
 
     public ZPLJavaText(){}
     /**
@@ -70,15 +82,29 @@ public class ZPLJavaText extends ZPLJavaComponent {
     public void setFontSize(int fontSize) {
         if(fontSize >= 0) this.fontSize = fontSize;
     }
+    public int getFontSize() {
+        return fontSize;
+    }
     public void setSpecialCharacterSupport(boolean specialCharacterSupport) {
         this.specialCharacterSupport = specialCharacterSupport;
     }
+    public boolean isSpecialCharacterSupport() {
+        return specialCharacterSupport;
+    }
 
     /**
      * Method to create the instruction based on given parameters.
+     * <p><code>^FH_</code> is added only if text needs it: characters that would break the format
+     * (<code>^</code>, <code>~</code>, control characters) are written as hex values and, with
+     * {@link #setSpecialCharacterSupport(boolean) special character support}, text has its own
+     * <code>_XX</code> hex values.</p>
      */
     @Override
     public void generateInstruction(){
+        if(hostFont != null && serialization == null && text != null) {
+            generateImageInstruction();
+            return;
+        }
         //instruction example:
         // ^FO0,50^A0,80^FB812,1,1,c,0^FH_^FDText with euro symbol at the end_15\&^FS
         StringBuilder instruction = new StringBuilder();
@@ -99,22 +125,78 @@ public class ZPLJavaText extends ZPLJavaComponent {
                 .append("0,")
                 .append(super.getAlignment())
                 .append(",0");
-        // if special character support is enabled, then add the below text inside instruction
-        if(specialCharacterSupport) instruction.append("^FH_");
-        // add text abject "^FD{text}\&^FS"
-        instruction.append("^FD")
-                .append(text)
-                .append("\\&")
-                .append("^FS");
+        // add text abject "^FD{text}\&^FS" or a serialized field "^SN{text},{increment},{Y|N}^FS",
+        // after "^FH_" only if text has hex values or characters to escape
+        if(serialization != null) serialization.appendFieldData(instruction, text, specialCharacterSupport);
+        else {
+            ZPLJavaCodePage.appendFieldData(instruction, "^FD", text, specialCharacterSupport);
+            instruction.append("\\&");
+        }
+        instruction.append("^FS");
         super.setInstruction(instruction.toString());
     }
 
+    /**
+     * Render text with the host font as a <code>^GF</code> image, one line of {@code fontSize}
+     * dots high, aligned inside label width.
+     */
+    private void generateImageInstruction(){
+        int lineHeight = hostFont.getAscender() - hostFont.getDescender();
+        int emSize = Math.max(1, Math.round((float) fontSize * hostFont.getUnitsPerEm() / Math.max(1, lineHeight)));
+        ZPLJavaBitmap line = ZPLJavaGlyphCache.getShared().renderLine(hostFont, emSize, text);
+        int x = super.getX();
+        int space = super.getLabelWidth() - line.getWidth();
+        if(space > 0) {
+            if(super.getAlignment().equalsIgnoreCase(POSITION_CENTER)) x += space / 2;
+            else if(super.getAlignment().equalsIgnoreCase(POSITION_RIGHT)) x += space;
+        }
+        ZPLJavaGraphic graphic = line.toGraphic(x, super.getY());
+        graphic.generateInstruction();
+        super.setInstruction(graphic.getInstruction());
+    }
+
     public void setText(String text) {
         if(!text.isEmpty()) this.text = text;
     }
     public String getText() {
         return text;
     }
+    /**
+     * Let the printer change the text on every copy of a label with
+     * {@link ZPLJavaLabel#setPrintQuantity(int) print quantity}.
+     * @param serialization the serialization or null to print the same text on every copy
+     */
+    public void setSerialization(ZPLJavaSerialization serialization) {
+        this.serialization = serialization;
+    }
+    public ZPLJavaSerialization getSerialization() {
+        return serialization;
+    }
+    /**
+     * Render text on host side with a TrueType font, for scripts that printer fonts do not have.
+     * Text is sent as a <code>^GF</code> image; glyphs are kept in the
+     * {@link ZPLJavaGlyphCache#getShared() shared glyph cache}.
+     * <p>Serialized text is always printed with the printer font. The font is not saved by
+     * {@link com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaLabelWriter}, but it is part
+     * of the {@link com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaContentHash content hash}.</p>
+     * @param hostFont the font or null to print with printer font 0
+     */
+    public void setHostFont(ZPLJavaTrueTypeFont hostFont) {
+        this.hostFont = hostFont;
+    }
+    public ZPLJavaTrueTypeFont getHostFont() {
+        return hostFont;
+    }
+
+    /**
+     * Scale also the font size.
+     * @see ZPLJavaComponent#scale(int, int)
+     */
+    @Override
+    public void scale(int fromDpmm, int toDpmm) {
+        super.scale(fromDpmm, toDpmm);
+        fontSize = scaleDots(fontSize, fromDpmm, toDpmm);
+    }
 
     /**
      * Must override this {@link ZPLJavaComponent#getComponentSize()} instruction
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.config;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Choose the printer character set (<code>^CI</code>) of a label and encode field data for it.
+ * <ul>
+ *     <li>{@link #CP1252}: one byte for every character of Western European text, for labels that
+ *     have only characters of Windows-1252.</li>
+ *     <li>{@link #UTF8}: every character, with two to four bytes for characters above ASCII.</li>
+ * </ul>
+ * <p>Field data with <code>^</code>, <code>~</code> or control characters would break the format,
+ * so these are written as <code>^FH</code> hex values; every other character is written as it is.</p>
+ * Both checks use lookup tables, so text is read once and no strings are created.
+ */
+public final class ZPLJavaCodePage {
+
+    /**
+     * Zebra code page 1252 (Latin 1 with Euro and typographic quotes), {@code ^CI27}
+     */
+    public static final int CP1252 = 27;
+    /**
+     * Unicode UTF-8, {@code ^CI28}
+     */
+    public static final int UTF8 = 28;
+
+    /**
+     * Hexadecimal indicator of {@code ^FH}
+     */
+    public static final char HEX_INDICATOR = '_';
+
+    /**
+     * Java charset of {@link #CP1252}
+     */
+    public static final Charset CHARSET_1252 = Charset.forName("windows-1252");
+
+    /**
+     * Characters 0x80 to 0x9F of Windows-1252, zero where the code page has no character
+     */
+    private static final char[] CP1252_HIGH = {
+            '\u20AC', 0, '\u201A', '\u0192', '\u201E', '\u2026', '\u2020', '\u2021',
+            '\u02C6', '\u2030', '\u0160', '\u2039', '\u0152', 0, '\u017D', 0,
+            0, '\u2018', '\u2019', '\u201C', '\u201D', '\u2022', '\u2013', '\u2014',
+            '\u02DC', '\u2122', '\u0161', '\u203A', '\u0153', 0, '\u017E', '\u0178'
+    };
+    /**
+     * Windows-1252 byte of every char up to {@code U+2122}, zero if code page has no such char
+     */
+    private static final byte[] CP1252_TABLE = new byte[0x2123];
+    /**
+     * ASCII characters that must be hex escaped inside field data
+     */
+    private static final boolean[] ESCAPE = new boolean[128];
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /**
+     * Text classes of {@link #scan(CharSequence)}: ASCII only, code page 1252 only, anything else
+     */
+    private static final int TEXT_ASCII = 0;
+    private static final int TEXT_CP1252 = 1;
+    private static final int TEXT_OTHER = 2;
+
+    static {
+        for (int c = 1; c < 0x80; c++) CP1252_TABLE[c] = (byte) c;
+        for (int c = 0xA0; c < 0x100; c++) CP1252_TABLE[c] = (byte) c;
+        for (int i = 0; i < CP1252_HIGH.length; i++) {
+            if(CP1252_HIGH[i] != 0) CP1252_TABLE[CP1252_HIGH[i]] = (byte) (0x80 + i);
+        }
+        for (int c = 0; c < 0x20; c++) ESCAPE[c] = true;
+        ESCAPE['^'] = true;
+        ESCAPE['~'] = true;
+        ESCAPE[0x7F] = true;
+    }
+
+    private ZPLJavaCodePage(){}
+
+    // -------------------------------- code page --------------------------------
+
+    /**
+     * @param c character to check
+     * @return true if character can be printed with {@link #CP1252}
+     */
+    public static boolean isCp1252(char c){
+        return c == 0 || (c < CP1252_TABLE.length && CP1252_TABLE[c] != 0);
+    }
+
+    /**
+     * Find the code page that encodes text with the fewest bytes.
+     * <p>Hex values of <code>^FH</code> fields are bytes, not characters: text written with
+     * {@code specialCharacterSupport} has them as UTF-8 bytes, so a hex value above
+     * <code>_7F</code> keeps the label in {@link #UTF8}.</p>
+     * @param text text to check, like the generated label code
+     * @return {@link #CP1252} if text has characters above ASCII, all of them are in code page
+     * 1252 and no <code>^FH</code> field has hex values above ASCII, else {@link #UTF8}. ASCII only
+     * text is the same in both, so it stays {@link #UTF8}.
+     */
+    public static int select(CharSequence text){
+        return scan(text) == TEXT_CP1252 ? CP1252 : UTF8;
+    }
+
+    /**
+     * @param text text to check, like the code of a component
+     * @return true if text has only ASCII characters and no <code>^FH</code> hex values above
+     * ASCII, so it is the same with every code page
+     */
+    public static boolean isAscii(CharSequence text){
+        return scan(text) == TEXT_ASCII;
+    }
+
+    /**
+     * @return {@link #TEXT_ASCII}, {@link #TEXT_CP1252} or {@link #TEXT_OTHER}
+     */
+    private static int scan(CharSequence text){
+        boolean latin = false;
+        // hex indicator of the current ^FH field, or 0 outside of one
+        char indicator = 0;
+        int length = text.length();
+        for (int i=0; i<length; i++) {
+            char c = text.charAt(i);
+            if(c == '^' && i + 2 < length) {
+                char first = Character.toUpperCase(text.charAt(i + 1));
+                char second = Character.toUpperCase(text.charAt(i + 2));
+                if(first == 'F' && second == 'H') {
+                    char parameter = i + 3 < length ? text.charAt(i + 3) : '^';
+                    // ^FH without parameter uses the default indicator
+                    if(parameter == '^' || parameter == '~' || parameter >= 0x80) indicator = HEX_INDICATOR;
+                    else {
+                        indicator = parameter;
+                        i++;
+                    }
+                    i += 2;
+                    continue;
+                }
+                if(first == 'F' && second == 'S') indicator = 0;
+            }
+            if(c == indicator && indicator != 0 && i + 2 < length) {
+                int value = hexValue(text.charAt(i + 1)) << 4 | hexValue(text.charAt(i + 2));
+                if(value >= 0x80) return TEXT_OTHER;
+                continue;
+            }
+            if(c < 0x80) continue;
+            if(c >= CP1252_TABLE.length || CP1252_TABLE[c] == 0) return TEXT_OTHER;
+            latin = true;
+        }
+        return latin ? TEXT_CP1252 : TEXT_ASCII;
+    }
+
+    /**
+     * @return value of a hex digit, or a negative number if c is not one
+     */
+    private static int hexValue(char c){
+        if(c >= '0' && c <= '9') return c - '0';
+        if(c >= 'A' && c <= 'F') return c - 'A' + 10;
+        if(c >= 'a' && c <= 'f') return c - 'a' + 10;
+        return -0x100;
+    }
+
+    /**
+     * Encode label code for the printer.
+     * @param code label code
+     * @param codePage {@link #CP1252} or {@link #UTF8}
+     * @return the code bytes. Characters that {@link #CP1252} has not are written as '?'.
+     */
+    public static byte[] encode(String code, int codePage){
+        if(codePage != CP1252) return code.getBytes(StandardCharsets.UTF_8);
+        int length = code.length();
+        byte[] bytes = new byte[length];
+        for (int i=0; i<length; i++) {
+            char c = code.charAt(i);
+            byte b = c < CP1252_TABLE.length ? CP1252_TABLE[c] : 0;
+            bytes[i] = b != 0 || c == 0 ? b : (byte) '?';
+        }
+        return bytes;
+    }
+
+    /**
+     * Write text with {@link #CP1252}, like {@link #encode(String, int)}, one byte per character.
+     * @param text text to write
+     * @param out buffer to write to, at its position
+     */
+    public static void putCp1252(CharSequence text, ByteBuffer out){
+        if(text == null) return;
+        int length = text.length();
+        for (int i=0; i<length; i++) {
+            char c = text.charAt(i);
+            byte b = c < CP1252_TABLE.length ? CP1252_TABLE[c] : 0;
+            out.put(b != 0 || c == 0 ? b : (byte) '?');
+        }
+    }
+
+    // -------------------------------- field data --------------------------------
+
+    /**
+     * @param text field data
+     * @param hexInText true if text may have its own <code>_XX</code> hex values, so
+     *                  {@link #HEX_INDICATOR} is kept as it is
+     * @return true if field data needs {@code ^FH}: text has characters to escape, or has its own
+     * hex values
+     */
+    public static boolean needsHexIndicator(CharSequence text, boolean hexInText){
+        if(text == null) return false;
+        int length = text.length();
+        for (int i=0; i<length; i++) {
+            char c = text.charAt(i);
+            if(c < 0x80 && (ESCAPE[c] || (hexInText && c == HEX_INDICATOR))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Append field data after <code>^FH_</code>, writing only the characters that would break the
+     * format (and {@link #HEX_INDICATOR} itself, if text has no hex values) as <code>_XX</code>.
+     * @param out instruction to append to
+     * @param text field data
+     * @param hexInText true if text may have its own <code>_XX</code> hex values
+     */
+    public static void appendEscaped(StringBuilder out, CharSequence text, boolean hexInText){
+        if(text == null) return;
+        int length = text.length();
+        for (int i=0; i<length; i++) {
+            char c = text.charAt(i);
+            if(c < 0x80 && (ESCAPE[c] || (!hexInText && c == HEX_INDICATOR))) {
+                out.append(HEX_INDICATOR).append(HEX[c >> 4]).append(HEX[c & 0x0F]);
+            }
+            else out.append(c);
+        }
+    }
+
+    /**
+     * Append a field data command, like <code>^FD</code> or <code>^SN</code>, with its data. If
+     * data needs it ({@link #needsHexIndicator(CharSequence, boolean)}), <code>^FH_</code> is
+     * written before the command and data is escaped.
+     * @param out instruction to append to
+     * @param command field data command, like <code>^FD</code>
+     * @param data field data
+     * @param hexInText true if data may have its own <code>_XX</code> hex values
+     */
+    public static void appendFieldData(StringBuilder out, String command, CharSequence data, boolean hexInText){
+        if(needsHexIndicator(data, hexInText)) {
+            out.append("^FH").append(HEX_INDICATOR).append(command);
+            appendEscaped(out, data, hexInText);
+        }
+        else out.append(command).append(data);
+    }
+
+    /**
+     * Prepare a value that is written into ready label code, like a template field value.
+     * <ul>
+     *     <li>In field data after <code>^FH</code>, characters that would break the format and the
+     *     hex indicator itself are written as hex values.</li>
+     *     <li>Anywhere else (indicator 0), characters that would break the format are removed.</li>
+     * </ul>
+     * @param value the value, may be null
+     * @param indicator hex indicator of the field <code>^FH</code>, or 0 if value is not field data
+     * @return value itself if it has nothing to escape, else a new escaped value
+     */
+    public static CharSequence escapeValue(CharSequence value, char indicator){
+        if(value == null) return null;
+        int length = value.length();
+        int i = 0;
+        while (i < length && !isEscaped(value.charAt(i), indicator)) i++;
+        if(i == length) return value;
+        StringBuilder out = new StringBuilder(length + 16).append(value, 0, i);
+        for (; i<length; i++) {
+            char c = value.charAt(i);
+            if(!isEscaped(c, indicator)) out.append(c);
+            else if(indicator != 0) out.append(indicator).append(HEX[c >> 4]).append(HEX[c & 0x0F]);
+        }
+        return out;
+    }
+
+    private static boolean isEscaped(char c, char indicator){
+        return (c < 0x80 && ESCAPE[c]) || (c == indicator && indicator != 0);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGraphic;
+
+import java.util.Arrays;
+
+/**
+ * A 1-bit image with the row layout of <code>^GF</code>: every row is {@link #getBytesPerRow()}
+ * bytes, the high bit of a byte is the leftmost dot and a set bit prints black.
+ * <p>Drawing outside of the bitmap is clipped. Not thread safe.</p>
+ */
+public class ZPLJavaBitmap {
+
+    private final int width;
+    private final int height;
+    private final int bytesPerRow;
+    private final byte[] data;
+
+    /**
+     * @param width width in dots
+     * @param height height in dots
+     */
+    public ZPLJavaBitmap(int width, int height){
+        if(width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid bitmap size");
+        this.width = width;
+        this.height = height;
+        this.bytesPerRow = (width + 7) / 8;
+        this.data = new byte[bytesPerRow * height];
+    }
+
+    /**
+     * Set dots from x0 (inclusive) to x1 (exclusive) of a row to black.
+     * @param y the row
+     * @param x0 first dot
+     * @param x1 dot after the last one
+     */
+    public void fillSpan(int y, int x0, int x1){
+        if(y < 0 || y >= height) return;
+        if(x0 < 0) x0 = 0;
+        if(x1 > width) x1 = width;
+        if(x0 >= x1) return;
+        int row = y * bytesPerRow;
+        int first = x0 >> 3;
+        int last = (x1 - 1) >> 3;
+        int firstMask = 0xFF >>> (x0 & 7);
+        int lastMask = 0xFF << (7 - ((x1 - 1) & 7));
+        if(first == last) {
+            data[row + first] |= (byte) (firstMask & lastMask);
+            return;
+        }
+        data[row + first] |= (byte) firstMask;
+        if(last - first > 1) Arrays.fill(data, row + first + 1, row + last, (byte) 0xFF);
+        data[row + last] |= (byte) lastMask;
+    }
+
+    /**
+     * Set a rectangle of dots to black.
+     */
+    public void fillRectangle(int x, int y, int width, int height){
+        for (int row = Math.max(0, y); row < Math.min(this.height, y + height); row++) fillSpan(row, x, x + width);
+    }
+
+    /**
+     * Fill closed polygons with the non-zero winding rule, sampling every dot at its center.
+     * @param polygons every polygon as x, y pairs in dots, y down
+     */
+    public void fillPolygons(float[][] polygons){
+        int edges = 0;
+        for (float[] polygon : polygons) edges += polygon.length / 2;
+        // x0, y0, x1, y1 of every edge, y0 < y1, and its winding direction
+        float[] lines = new float[edges * 4];
+        int[] windings = new int[edges];
+        float top = Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        int count = 0;
+        for (float[] polygon : polygons) {
+            int points = polygon.length / 2;
+            for (int i=0; i<points; i++) {
+                float x0 = polygon[i * 2], y0 = polygon[i * 2 + 1];
+                int next = (i + 1) % points;
+                float x1 = polygon[next * 2], y1 = polygon[next * 2 + 1];
+                if(y0 == y1) continue;
+                int winding = 1;
+                if(y0 > y1) {
+                    float swap = x0; x0 = x1; x1 = swap;
+                    swap = y0; y0 = y1; y1 = swap;
+                    winding = -1;
+                }
+                lines[count * 4] = x0;
+                lines[count * 4 + 1] = y0;
+                lines[count * 4 + 2] = x1;
+                lines[count * 4 + 3] = y1;
+                windings[count++] = winding;
+                top = Math.min(top, y0);
+                bottom = Math.max(bottom, y1);
+            }
+        }
+        if(count == 0) return;
+        float[] crossings = new float[count];
+        int[] directions = new int[count];
+        int firstRow = Math.max(0, (int) Math.floor(top));
+        int lastRow = Math.min(height - 1, (int) Math.ceil(bottom));
+        for (int row = firstRow; row <= lastRow; row++) {
+            float center = row + 0.5f;
+            int found = 0;
+            for (int i=0; i<count; i++) {
+                float y0 = lines[i * 4 + 1], y1 = lines[i * 4 + 3];
+                if(center < y0 || center >= y1) continue;
+                float x0 = lines[i * 4], x1 = lines[i * 4 + 2];
+                float x = x0 + (center - y0) * (x1 - x0) / (y1 - y0);
+                // insertion sort, a row has few crossings
+                int j = found++;
+                while (j > 0 && crossings[j - 1] > x) {
+                    crossings[j] = crossings[j - 1];
+                    directions[j] = directions[j - 1];
+                    j--;
+                }
+                crossings[j] = x;
+                directions[j] = windings[i];
+            }
+            int winding = 0;
+            for (int i=0; i<found - 1; i++) {
+                winding += directions[i];
+                if(winding != 0) fillSpan(row, (int) Math.ceil(crossings[i] - 0.5f),
+                        (int) Math.ceil(crossings[i + 1] - 0.5f));
+            }
+        }
+    }
+
+    public void set(int x, int y){
+        if(x < 0 || y < 0 || x >= width || y >= height) return;
+        data[y * bytesPerRow + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+    }
+
+    public boolean get(int x, int y){
+        if(x < 0 || y < 0 || x >= width || y >= height) return false;
+        return (data[y * bytesPerRow + (x >> 3)] & (0x80 >>> (x & 7))) != 0;
+    }
+
+    /**
+     * Draw the black dots of another bitmap on this one.
+     * @param source bitmap to draw
+     * @param x position of source in this bitmap
+     * @param y position of source in this bitmap
+     */
+    public void draw(ZPLJavaBitmap source, int x, int y){
+        int firstRow = Math.max(0, -y);
+        int lastRow = Math.min(source.height, height - y);
+        if(x >= 0 && x + source.width <= width) {
+            // inside the row, OR whole bytes shifted to the dot position
+            int column = x >> 3;
+            int shift = x & 7;
+            for (int row = firstRow; row < lastRow; row++) {
+                int from = row * source.bytesPerRow;
+                int to = (row + y) * bytesPerRow + column;
+                int rowEnd = (row + y + 1) * bytesPerRow;
+                for (int i=0; i<source.bytesPerRow; i++) {
+                    int value = source.data[from + i] & 0xFF;
+                    data[to + i] |= (byte) (value >>> shift);
+                    if(shift != 0 && to + i + 1 < rowEnd) data[to + i + 1] |= (byte) (value << (8 - shift));
+                }
+            }
+            return;
+        }
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int column = 0; column < source.width; column++) {
+                if(source.get(column, row)) set(x + column, y + row);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+    public int getHeight() {
+        return height;
+    }
+    public int getBytesPerRow() {
+        return bytesPerRow;
+    }
+    /**
+     * @return the rows of the bitmap, not a copy
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @param x position of the graphic
+     * @param y position of the graphic
+     * @return a graphic component with a copy of this bitmap
+     */
+    public ZPLJavaGraphic toGraphic(int x, int y){
+        return new ZPLJavaGraphic(x, y, width, height, data.clone());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendered glyphs of {@link ZPLJavaTrueTypeFont TrueType fonts} by font, size and character, so
+ * repeated text is only copied from the cache and never rasterized again.
+ * <p>Use the {@link #getShared() shared} cache, or one cache per font set. Thread safe; two
+ * threads may render the same new glyph at the same time, only one of them is kept.</p>
+ */
+public class ZPLJavaGlyphCache {
+
+    public static final int DEFAULT_MAX_GLYPHS = 16 * 1024;
+
+    /**
+     * Maximum distance in dots between a curve and its lines
+     */
+    private static final float CURVE_TOLERANCE = 0.2f;
+
+    private static final ZPLJavaGlyphCache SHARED = new ZPLJavaGlyphCache(DEFAULT_MAX_GLYPHS);
+
+    /**
+     * A rendered glyph
+     */
+    public static final class Glyph {
+        private final ZPLJavaBitmap bitmap;
+        private final int left;
+        private final int top;
+        private final float advance;
+
+        private Glyph(ZPLJavaBitmap bitmap, int left, int top, float advance){
+            this.bitmap = bitmap;
+            this.left = left;
+            this.top = top;
+            this.advance = advance;
+        }
+
+        /**
+         * @return the glyph dots or null for an empty glyph like space. Do not change it.
+         */
+        public ZPLJavaBitmap getBitmap() {
+            return bitmap;
+        }
+        /**
+         * @return dots from the pen position to the bitmap left side
+         */
+        public int getLeft() {
+            return left;
+        }
+        /**
+         * @return dots from the baseline up to the bitmap top side
+         */
+        public int getTop() {
+            return top;
+        }
+        /**
+         * @return dots to move the pen to the next glyph
+         */
+        public float getAdvance() {
+            return advance;
+        }
+    }
+
+    private static final class Key {
+        private final int font;
+        private final int size;
+        private final int codePoint;
+
+        Key(int font, int size, int codePoint){
+            this.font = font;
+            this.size = size;
+            this.codePoint = codePoint;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return font == key.font && size == key.size && codePoint == key.codePoint;
+        }
+
+        @Override
+        public int hashCode() {
+            return (font * 31 + size) * 1000003 + codePoint;
+        }
+    }
+
+    private final int maxGlyphs;
+    private final ConcurrentHashMap<Key, Glyph> glyphs = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxGlyphs maximum cached glyphs, more glyphs are rendered every time
+     */
+    public ZPLJavaGlyphCache(int maxGlyphs){
+        this.maxGlyphs = Math.max(0, maxGlyphs);
+    }
+
+    /**
+     * @return a cache shared by the whole application, used by
+     * {@link com.libraries.sotirisapakos.zpljava.components.ZPLJavaText#setHostFont(ZPLJavaTrueTypeFont) ZPLJavaText}
+     */
+    public static ZPLJavaGlyphCache getShared(){
+        return SHARED;
+    }
+
+    /**
+     * @param font the font
+     * @param size size of the em square in dots
+     * @param codePoint a unicode character
+     * @return the rendered glyph
+     */
+    public Glyph getGlyph(ZPLJavaTrueTypeFont font, int size, int codePoint){
+        Key key = new Key(font.getId(), size, codePoint);
+        Glyph glyph = glyphs.get(key);
+        if(glyph != null) {
+            hits.incrementAndGet();
+            return glyph;
+        }
+        misses.incrementAndGet();
+        glyph = render(font, size, codePoint);
+        if(glyphs.size() < maxGlyphs) {
+            Glyph previous = glyphs.putIfAbsent(key, glyph);
+            if(previous != null) glyph = previous;
+        }
+        return glyph;
+    }
+
+    private static Glyph render(ZPLJavaTrueTypeFont font, int size, int codePoint){
+        int index = font.getGlyphIndex(codePoint);
+        float scale = (float) size / font.getUnitsPerEm();
+        float advance = font.getAdvanceWidth(index) * scale;
+        int[] bounds = font.getBounds(index);
+        if(bounds == null) return new Glyph(null, 0, 0, advance);
+        int left = (int) Math.floor(bounds[0] * scale);
+        int right = (int) Math.ceil(bounds[2] * scale);
+        int bottom = (int) Math.floor(bounds[1] * scale);
+        int top = (int) Math.ceil(bounds[3] * scale);
+        if(right <= left || top <= bottom) return new Glyph(null, 0, 0, advance);
+
+        float[][] outline = font.getOutline(index, CURVE_TOLERANCE / scale);
+        // font units, y up -> bitmap dots, y down
+        for (float[] contour : outline) {
+            for (int i=0; i<contour.length; i+=2) {
+                contour[i] = contour[i] * scale - left;
+                contour[i + 1] = top - contour[i + 1] * scale;
+            }
+        }
+        ZPLJavaBitmap bitmap = new ZPLJavaBitmap(right - left, top - bottom);
+        bitmap.fillPolygons(outline);
+        return new Glyph(bitmap, left, top, advance);
+    }
+
+    /**
+     * Render one line of text.
+     * @param font the font
+     * @param size size of the em square in dots
+     * @param text text to render
+     * @return the text dots, as high as the font ascender and descender
+     */
+    public ZPLJavaBitmap renderLine(ZPLJavaTrueTypeFont font, int size, CharSequence text){
+        float scale = (float) size / font.getUnitsPerEm();
+        int ascent = (int) Math.ceil(font.getAscender() * scale);
+        int descent = (int) Math.ceil(-font.getDescender() * scale);
+        float width = measure(font, size, text);
+        ZPLJavaBitmap line = new ZPLJavaBitmap(Math.max(1, (int) Math.ceil(width)), Math.max(1, ascent + descent));
+        float pen = 0;
+        for (int i=0; i<text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            Glyph glyph = getGlyph(font, size, codePoint);
+            if(glyph.bitmap != null) line.draw(glyph.bitmap, Math.round(pen) + glyph.left, ascent - glyph.top);
+            pen += glyph.advance;
+        }
+        return line;
+    }
+
+    /**
+     * @param font the font
+     * @param size size of the em square in dots
+     * @param text text to measure
+     * @return the width of the text in dots
+     */
+    public float measure(ZPLJavaTrueTypeFont font, int size, CharSequence text){
+        float width = 0;
+        for (int i=0; i<text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            width += getGlyph(font, size, codePoint).advance;
+        }
+        return width;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+    public long getMisses() {
+        return misses.get();
+    }
+    public int getGlyphCount() {
+        return glyphs.size();
+    }
+
+    /**
+     * Remove all glyphs, like after unloading fonts.
+     */
+    public void clear(){
+        glyphs.clear();
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Convert grayscale images (product photos, scanned logos) to 1-bit {@link ZPLJavaBitmap bitmaps}
+ * for <code>^GF</code>:
+ * <ol>
+ *     <li>resample to the target size in dots: area average when shrinking, bilinear when growing</li>
+ *     <li>dither to black and white with one of the {@link Dither} methods</li>
+ *     <li>pack 8 dots per byte, the row layout of <code>^GF</code></li>
+ * </ol>
+ * With an {@link ExecutorService}, big images are converted in strips of rows on many threads.
+ * Floyd-Steinberg spreads the error of every dot to the next rows, so its resampling runs in
+ * strips and its dithering in one pass, without seams between strips.
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaImageConverter converter = new ZPLJavaImageConverter(executor);
+ * converter.setDither(ZPLJavaImageConverter.Dither.FLOYD_STEINBERG);
+ * ZPLJavaBitmap logo = converter.convertToWidth(gray, width, height, 1.5, LabelSize._8DPMM);
+ * label.addComponent(logo.toGraphic(50, 50));
+ * }</pre>
+ * Thread safe if settings are not changed while converting.
+ */
+public class ZPLJavaImageConverter {
+
+    /**
+     * Dithering methods
+     */
+    public interface Dither{
+        /**
+         * Every dot darker than threshold is black. Best for logos and text.
+         */
+        int THRESHOLD       = 0;
+        /**
+         * 8x8 Bayer matrix. Fast and regular, good for gradients.
+         */
+        int ORDERED         = 1;
+        /**
+         * Error diffusion. Best for photos.
+         */
+        int FLOYD_STEINBERG = 2;
+    }
+
+    public static final int DEFAULT_THRESHOLD = 128;
+    public static final int DEFAULT_STRIP_ROWS = 64;
+
+    private static final int[] BAYER = {
+             0, 32,  8, 40,  2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44,  4, 36, 14, 46,  6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+             3, 35, 11, 43,  1, 33,  9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47,  7, 39, 13, 45,  5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    /**
+     * Fixed point bits of resampling weights
+     */
+    private static final int WEIGHT_BITS = 14;
+
+    private final ExecutorService executor;
+    private int dither = Dither.FLOYD_STEINBERG;
+    private int threshold = DEFAULT_THRESHOLD;
+    private int stripRows = DEFAULT_STRIP_ROWS;
+
+    /**
+     * Convert on the calling thread only.
+     */
+    public ZPLJavaImageConverter(){
+        this(null);
+    }
+    /**
+     * @param executor threads for the strips of big images, null for the calling thread only
+     */
+    public ZPLJavaImageConverter(ExecutorService executor){
+        this.executor = executor;
+    }
+
+    /**
+     * @param dither one of the {@link Dither} values
+     */
+    public void setDither(int dither) {
+        if(dither >= Dither.THRESHOLD && dither <= Dither.FLOYD_STEINBERG) this.dither = dither;
+    }
+    public int getDither() {
+        return dither;
+    }
+    /**
+     * @param threshold gray level from 1 to 255, darker dots are black. Used by {@link Dither#THRESHOLD}
+     *                  and {@link Dither#FLOYD_STEINBERG}.
+     */
+    public void setThreshold(int threshold) {
+        if(threshold > 0 && threshold < 256) this.threshold = threshold;
+    }
+    public int getThreshold() {
+        return threshold;
+    }
+    /**
+     * @param stripRows rows of every strip converted by one thread
+     */
+    public void setStripRows(int stripRows) {
+        if(stripRows > 0) this.stripRows = stripRows;
+    }
+    public int getStripRows() {
+        return stripRows;
+    }
+
+    /**
+     * Convert an image to a width in inches at a printer resolution, keeping the aspect ratio.
+     * @param gray image dots, one byte (0 black to 255 white) per dot, row by row
+     * @param width image width
+     * @param height image height
+     * @param widthInches printed width
+     * @param dpmmValue printer resolution, one of the
+     *                  {@link com.libraries.sotirisapakos.zpljava.config.LabelSize LabelSize} values
+     * @return the bitmap
+     */
+    public ZPLJavaBitmap convertToWidth(byte[] gray, int width, int height, double widthInches, int dpmmValue){
+        int targetWidth = Math.max(1, (int) Math.round(widthInches * dpmmValue));
+        return convert(gray, width, height, targetWidth, 0);
+    }
+
+    /**
+     * @param gray image dots, one byte (0 black to 255 white) per dot, row by row
+     * @param width image width
+     * @param height image height
+     * @param targetWidth bitmap width in dots
+     * @param targetHeight bitmap height in dots, 0 to keep the aspect ratio
+     * @return the bitmap
+     */
+    public ZPLJavaBitmap convert(final byte[] gray, final int width, final int height, final int targetWidth,
+                                 int targetHeight){
+        if(width <= 0 || height <= 0 || gray.length < width * height) throw new IllegalArgumentException("Invalid image");
+        if(targetHeight <= 0) targetHeight = Math.max(1, (int) Math.round((double) height * targetWidth / width));
+        final ZPLJavaBitmap bitmap = new ZPLJavaBitmap(targetWidth, targetHeight);
+        final Axis horizontal = new Axis(width, targetWidth);
+        final Axis vertical = new Axis(height, targetHeight);
+        final int method = dither;
+        // Floyd-Steinberg needs all gray levels first
+        final byte[] resampled = method == Dither.FLOYD_STEINBERG ? new byte[targetWidth * targetHeight] : null;
+
+        List<Callable<Void>> strips = new ArrayList<>();
+        for (int first = 0; first < targetHeight; first += stripRows) {
+            final int start = first;
+            final int end = Math.min(targetHeight, first + stripRows);
+            strips.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    convertStrip(gray, width, horizontal, vertical, start, end, method, resampled, bitmap);
+                    return null;
+                }
+            });
+        }
+        run(strips);
+        if(resampled != null) floydSteinberg(resampled, bitmap);
+        return bitmap;
+    }
+
+    private void run(List<Callable<Void>> strips){
+        try {
+            if(executor == null || strips.size() == 1) {
+                for (Callable<Void> strip : strips) strip.call();
+                return;
+            }
+            List<Future<Void>> futures = new ArrayList<>(strips.size());
+            for (int i=1; i<strips.size(); i++) futures.add(executor.submit(strips.get(i)));
+            strips.get(0).call();
+            for (Future<Void> future : futures) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting image");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // strips throw only runtime exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Resample rows from start to end, then dither and pack them, or keep their gray levels for
+     * Floyd-Steinberg.
+     */
+    private void convertStrip(byte[] gray, int width, Axis horizontal, Axis vertical, int start, int end,
+                              int method, byte[] resampled, ZPLJavaBitmap bitmap){
+        int targetWidth = horizontal.target;
+        // horizontally resampled source rows of this strip, 8 bits fraction
+        int firstSource = vertical.first[start];
+        int lastSource = vertical.first[end - 1] + vertical.taps - 1;
+        lastSource = Math.min(lastSource, vertical.source - 1);
+        int[][] rows = new int[lastSource - firstSource + 1][];
+        int[] levels = new int[targetWidth];
+        byte[] data = bitmap.getData();
+        int bytesPerRow = bitmap.getBytesPerRow();
+
+        for (int y = start; y < end; y++) {
+            for (int x=0; x<targetWidth; x++) levels[x] = 0;
+            int base = y * vertical.taps;
+            for (int tap=0; tap<vertical.taps; tap++) {
+                int weight = vertical.weights[base + tap];
+                if(weight == 0) continue;
+                int sourceRow = vertical.first[y] + tap;
+                int[] row = rows[sourceRow - firstSource];
+                if(row == null) {
+                    row = resampleRow(gray, sourceRow * width, horizontal);
+                    rows[sourceRow - firstSource] = row;
+                }
+                for (int x=0; x<targetWidth; x++) levels[x] += row[x] * weight;
+            }
+            int shift = 8 + WEIGHT_BITS;
+            int round = 1 << (shift - 1);
+            if(resampled != null) {
+                int offset = y * targetWidth;
+                for (int x=0; x<targetWidth; x++) resampled[offset + x] = (byte) clamp((levels[x] + round) >> shift);
+                continue;
+            }
+            int offset = y * bytesPerRow;
+            int bits = 0;
+            for (int x=0; x<targetWidth; x++) {
+                int level = clamp((levels[x] + round) >> shift);
+                int limit = method == Dither.ORDERED ? (BAYER[((y & 7) << 3) | (x & 7)] * 4 + 2) : threshold;
+                bits = (bits << 1) | (level < limit ? 1 : 0);
+                if((x & 7) == 7) {
+                    data[offset + (x >> 3)] = (byte) bits;
+                    bits = 0;
+                }
+            }
+            if((targetWidth & 7) != 0) data[offset + (targetWidth >> 3)] = (byte) (bits << (8 - (targetWidth & 7)));
+        }
+    }
+
+    /**
+     * @return the row resampled to target width, with 8 bits fraction
+     */
+    private static int[] resampleRow(byte[] gray, int offset, Axis axis){
+        int[] row = new int[axis.target];
+        int shift = WEIGHT_BITS - 8;
+        for (int x=0; x<axis.target; x++) {
+            int base = x * axis.taps;
+            int first = offset + axis.first[x];
+            int sum = 0;
+            for (int tap=0; tap<axis.taps; tap++) {
+                int weight = axis.weights[base + tap];
+                if(weight != 0) sum += (gray[first + tap] & 0xFF) * weight;
+            }
+            row[x] = (sum + (1 << (shift - 1))) >> shift;
+        }
+        return row;
+    }
+
+    private void floydSteinberg(byte[] levels, ZPLJavaBitmap bitmap){
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] current = new int[width + 2];
+        int[] next = new int[width + 2];
+        for (int y=0; y<height; y++) {
+            boolean leftToRight = (y & 1) == 0;
+            int offset = y * width;
+            for (int i=0; i<width; i++) {
+                int x = leftToRight ? i : width - 1 - i;
+                int level = (levels[offset + x] & 0xFF) + current[x + 1] / 16;
+                int error;
+                if(level < threshold) {
+                    bitmap.set(x, y);
+                    error = level;
+                }
+                else error = level - 255;
+                int forward = leftToRight ? 1 : -1;
+                current[x + 1 + forward] += error * 7;
+                next[x + 1 - forward] += error * 3;
+                next[x + 1] += error * 5;
+                next[x + 1 + forward] += error;
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            for (int i=0; i<next.length; i++) next[i] = 0;
+        }
+    }
+
+    private static int clamp(int value){
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    /**
+     * Convert color pixels to gray levels, like the ones of Android <code>Bitmap.getPixels()</code>
+     * or <code>BufferedImage.getRGB()</code>. Transparent pixels become white.
+     * @param argb pixels as 0xAARRGGBB
+     * @return gray levels, one byte per pixel
+     */
+    public static byte[] toGray(int[] argb){
+        byte[] gray = new byte[argb.length];
+        for (int i=0; i<argb.length; i++) {
+            int pixel = argb[i];
+            int alpha = pixel >>> 24;
+            // ITU-R BT.601 luma, 8 bits fraction
+            int luma = (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+            gray[i] = (byte) ((luma * alpha + 255 * (255 - alpha)) / 255);
+        }
+        return gray;
+    }
+
+    /**
+     * Resampling weights of one axis: every target dot is the weighted sum of {@code taps} source
+     * dots from {@code first}.
+     */
+    private static final class Axis {
+        final int source;
+        final int target;
+        final int taps;
+        final int[] first;
+        final int[] weights;
+
+        Axis(int source, int target){
+            this.source = source;
+            this.target = target;
+            double scale = (double) source / target;
+            this.taps = scale > 1 ? (int) Math.ceil(scale) + 1 : 2;
+            this.first = new int[target];
+            this.weights = new int[target * taps];
+            double[] tapWeights = new double[taps];
+            for (int t=0; t<target; t++) {
+                int start;
+                Arrays.fill(tapWeights, 0);
+                if(scale > 1) {
+                    // area average of the source dots under the target dot
+                    double left = t * scale;
+                    double right = Math.min(source, (t + 1) * scale);
+                    start = (int) Math.floor(left);
+                    for (int tap=0; tap<taps && start + tap < source; tap++) {
+                        double from = Math.max(left, start + tap);
+                        double to = Math.min(right, start + tap + 1);
+                        if(to > from) tapWeights[tap] = (to - from) / (right - left);
+                    }
+                }
+                else {
+                    // bilinear between the two nearest source dots
+                    double center = (t + 0.5) * scale - 0.5;
+                    start = (int) Math.floor(center);
+                    double fraction = center - start;
+                    if(start < 0) {
+                        start = 0;
+                        fraction = 0;
+                    }
+                    if(start >= source - 1) {
+                        start = source - 1;
+                        fraction = 0;
+                    }
+                    tapWeights[0] = 1 - fraction;
+                    tapWeights[1] = fraction;
+                }
+                // taps past the source have zero weight and are never read
+                first[t] = start;
+                int total = 0;
+                int largest = 0;
+                for (int tap=0; tap<taps; tap++) {
+                    int weight = (int) Math.round(tapWeights[tap] * (1 << WEIGHT_BITS));
+                    weights[t * taps + tap] = weight;
+                    total += weight;
+                    if(weight > weights[t * taps + largest]) largest = tap;
+                }
+                // weights sum to exactly one, so white stays white
+                weights[t * taps + largest] += (1 << WEIGHT_BITS) - total;
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaDiagonalLine;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaEllipse;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGraphic;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaContentHash;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replace groups of shapes (drawn icons, hazard symbols) with one <code>^GF</code> image when the
+ * image is cheaper to send and print than the shape commands.
+ * <ul>
+ *     <li>Shapes that {@link ZPLJavaShapeRasterizer#canRasterize(ZPLJavaComponent) can be rasterized}
+ *     and are at most {@code gap} dots apart form a group. Only groups with an ellipse or a
+ *     diagonal line are replaced, printers draw rectangles fast.</li>
+ *     <li>The cost of a group is the sent bytes times {@code byteCost} plus the printer formatting
+ *     time: {@code fieldCost} per field and {@code dotCost} per drawn dot, times
+ *     {@code curveFactor} for ellipses and diagonal lines. The image costs one field and
+ *     {@code imageByteCost} per image byte.</li>
+ *     <li>Rasterized groups are cached by the {@link ZPLJavaContentHash content hash} of their
+ *     geometry, so the same icon at any position of any label is rasterized only once.</li>
+ * </ul>
+ * Costs are relative numbers; the defaults suit a printer that formats shapes slower than it
+ * receives data. White shapes are kept and a group under a white shape is never replaced.
+ * <p>Thread safe, one optimizer can be shared by all threads.</p>
+ */
+public class ZPLJavaShapeOptimizer {
+
+    public static final int DEFAULT_GAP = 8;
+    public static final int DEFAULT_MAX_CACHED_IMAGES = 1024;
+
+    public static final double DEFAULT_BYTE_COST = 1;
+    public static final double DEFAULT_FIELD_COST = 200;
+    public static final double DEFAULT_DOT_COST = 0.05;
+    public static final double DEFAULT_CURVE_FACTOR = 6;
+    public static final double DEFAULT_IMAGE_BYTE_COST = 0.1;
+
+    /**
+     * Costs of one group of shapes
+     */
+    public static class Estimate {
+        private final int vectorBytes;
+        private final int imageBytes;
+        private final double vectorCost;
+        private final double imageCost;
+        private final ZPLJavaGraphic graphic;
+
+        private Estimate(int vectorBytes, int imageBytes, double vectorCost, double imageCost, ZPLJavaGraphic graphic){
+            this.vectorBytes = vectorBytes;
+            this.imageBytes = imageBytes;
+            this.vectorCost = vectorCost;
+            this.imageCost = imageCost;
+            this.graphic = graphic;
+        }
+
+        public int getVectorBytes() {
+            return vectorBytes;
+        }
+        public int getImageBytes() {
+            return imageBytes;
+        }
+        public double getVectorCost() {
+            return vectorCost;
+        }
+        public double getImageCost() {
+            return imageCost;
+        }
+        public boolean isImageCheaper() {
+            return imageCost < vectorCost;
+        }
+        /**
+         * @return the image of the group, at the group position
+         */
+        public ZPLJavaGraphic getGraphic() {
+            return graphic;
+        }
+    }
+
+    private final int gap;
+    private final int maxCachedImages;
+    private double byteCost = DEFAULT_BYTE_COST;
+    private double fieldCost = DEFAULT_FIELD_COST;
+    private double dotCost = DEFAULT_DOT_COST;
+    private double curveFactor = DEFAULT_CURVE_FACTOR;
+    private double imageByteCost = DEFAULT_IMAGE_BYTE_COST;
+
+    /**
+     * Rasterized groups at position 0,0 by geometry hash
+     */
+    private final ConcurrentHashMap<ZPLJavaContentHash, ZPLJavaGraphic> cache = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    public ZPLJavaShapeOptimizer(){
+        this(DEFAULT_GAP, DEFAULT_MAX_CACHED_IMAGES);
+    }
+    /**
+     * @param gap maximum distance in dots between shapes of a group
+     * @param maxCachedImages maximum cached images, more images are rasterized every time
+     */
+    public ZPLJavaShapeOptimizer(int gap, int maxCachedImages){
+        this.gap = Math.max(0, gap);
+        this.maxCachedImages = Math.max(0, maxCachedImages);
+    }
+
+    /**
+     * Replace every group of shapes of the label that is cheaper as an image. The image takes the
+     * place of the first shape of its group. Label code is generated again.
+     * @param label label to optimize
+     * @return the groups replaced
+     */
+    public int optimize(ZPLJavaLabel label){
+        List<ZPLJavaComponent> components = label.getComponents();
+        List<List<ZPLJavaShape>> groups = findGroups(components);
+        if(groups.isEmpty()) return 0;
+        HashSet<ZPLJavaComponent> removed = new HashSet<>();
+        ArrayList<ZPLJavaComponent> replaced = new ArrayList<>(components);
+        int count = 0;
+        for (List<ZPLJavaShape> group : groups) {
+            if(!hasCurve(group) || underWhiteShape(group, components)) continue;
+            Estimate estimate = estimate(group);
+            if(!estimate.isImageCheaper()) continue;
+            replaced.set(replaced.indexOf(group.get(0)), estimate.getGraphic());
+            for (int i=1; i<group.size(); i++) removed.add(group.get(i));
+            count++;
+        }
+        if(count == 0) return 0;
+        ArrayList<ZPLJavaComponent> result = new ArrayList<>(replaced.size() - removed.size());
+        for (ZPLJavaComponent component : replaced) if(!removed.contains(component)) result.add(component);
+        label.setComponents(result);
+        return count;
+    }
+
+    /**
+     * Compare the costs of some shapes as commands and as one image.
+     * @param shapes shapes that {@link ZPLJavaShapeRasterizer#canRasterize(ZPLJavaComponent) can be rasterized}
+     * @return the estimate
+     */
+    public Estimate estimate(List<? extends ZPLJavaShape> shapes){
+        int[] bounds = bounds(shapes);
+        int vectorBytes = 0;
+        double vectorCost = 0;
+        for (ZPLJavaShape shape : shapes) {
+            shape.generateInstruction();
+            vectorBytes += shape.getInstruction().length();
+            vectorCost += fieldCost + drawnDots(shape) * dotCost
+                    * (shape instanceof ZPLJavaEllipse || shape instanceof ZPLJavaDiagonalLine ? curveFactor : 1);
+        }
+        vectorCost += vectorBytes * byteCost;
+
+        ZPLJavaGraphic graphic = rasterize(shapes, bounds);
+        graphic.generateInstruction();
+        int imageBytes = graphic.getInstruction().length();
+        double imageCost = imageBytes * byteCost + fieldCost + graphic.getData().length * imageByteCost;
+        return new Estimate(vectorBytes, imageBytes, vectorCost, imageCost, graphic);
+    }
+
+    private ZPLJavaGraphic rasterize(List<? extends ZPLJavaShape> shapes, int[] bounds){
+        ZPLJavaContentHash key = geometryHash(shapes, bounds);
+        ZPLJavaGraphic prototype = cache.get(key);
+        if(prototype == null) {
+            cacheMisses.incrementAndGet();
+            ZPLJavaBitmap bitmap = new ZPLJavaBitmap(bounds[2] - bounds[0], bounds[3] - bounds[1]);
+            for (ZPLJavaShape shape : shapes) ZPLJavaShapeRasterizer.draw(shape, bitmap, bounds[0], bounds[1]);
+            prototype = bitmap.toGraphic(0, 0);
+            // compress once, copies keep the compressed data
+            prototype.getCompressedData();
+            if(cache.size() < maxCachedImages) cache.putIfAbsent(key, prototype);
+        }
+        else cacheHits.incrementAndGet();
+        ZPLJavaGraphic graphic = (ZPLJavaGraphic) prototype.copy();
+        graphic.setX(bounds[0]);
+        graphic.setY(bounds[1]);
+        return graphic;
+    }
+
+    // -------------------------------- groups --------------------------------
+
+    /**
+     * Group rasterizable shapes that touch or are at most {@code gap} dots apart.
+     */
+    private List<List<ZPLJavaShape>> findGroups(List<ZPLJavaComponent> components){
+        ArrayList<ZPLJavaShape> shapes = new ArrayList<>();
+        for (ZPLJavaComponent component : components) {
+            if(ZPLJavaShapeRasterizer.canRasterize(component)) shapes.add((ZPLJavaShape) component);
+        }
+        int[] parent = new int[shapes.size()];
+        for (int i=0; i<parent.length; i++) parent[i] = i;
+        for (int i=0; i<shapes.size(); i++) {
+            int[] first = bounds(shapes.get(i));
+            for (int j=i+1; j<shapes.size(); j++) {
+                int[] second = bounds(shapes.get(j));
+                if(first[0] - gap <= second[2] && second[0] - gap <= first[2]
+                        && first[1] - gap <= second[3] && second[1] - gap <= first[3]) {
+                    parent[root(parent, j)] = root(parent, i);
+                }
+            }
+        }
+        ArrayList<List<ZPLJavaShape>> groups = new ArrayList<>();
+        // group of every root shape index
+        List<List<ZPLJavaShape>> byRoot = new ArrayList<>(
+                Collections.<List<ZPLJavaShape>>nCopies(shapes.size(), null));
+        for (int i=0; i<shapes.size(); i++) {
+            int root = root(parent, i);
+            List<ZPLJavaShape> group = byRoot.get(root);
+            if(group == null) {
+                group = new ArrayList<>();
+                byRoot.set(root, group);
+                groups.add(group);
+            }
+            group.add(shapes.get(i));
+        }
+        return groups;
+    }
+
+    private static int root(int[] parent, int index){
+        while (parent[index] != index) {
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    /**
+     * Printers draw rectangles fast, so groups of rectangles only are kept as they are.
+     */
+    private static boolean hasCurve(List<ZPLJavaShape> group){
+        for (ZPLJavaShape shape : group) {
+            if(shape instanceof ZPLJavaEllipse || shape instanceof ZPLJavaDiagonalLine) return true;
+        }
+        return false;
+    }
+
+    private static boolean underWhiteShape(List<ZPLJavaShape> group, List<ZPLJavaComponent> components){
+        int[] bounds = bounds(group);
+        for (ZPLJavaComponent component : components) {
+            if(!(component instanceof ZPLJavaShape)) continue;
+            ZPLJavaShape shape = (ZPLJavaShape) component;
+            if(!shape.getColor().equalsIgnoreCase(ZPLJavaShape.Color.COLOR_WHITE)) continue;
+            int[] white = bounds(shape);
+            if(white[0] < bounds[2] && bounds[0] < white[2] && white[1] < bounds[3] && bounds[1] < white[3]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return left, top, right and bottom of a shape
+     */
+    private static int[] bounds(ZPLJavaShape shape){
+        return new int[]{shape.getX(), shape.getY(), shape.getX() + ZPLJavaShapeRasterizer.getDrawnWidth(shape),
+                shape.getY() + ZPLJavaShapeRasterizer.getDrawnHeight(shape)};
+    }
+
+    private static int[] bounds(List<? extends ZPLJavaShape> shapes){
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (ZPLJavaShape shape : shapes) {
+            int[] shapeBounds = bounds(shape);
+            bounds[0] = Math.min(bounds[0], shapeBounds[0]);
+            bounds[1] = Math.min(bounds[1], shapeBounds[1]);
+            bounds[2] = Math.max(bounds[2], shapeBounds[2]);
+            bounds[3] = Math.max(bounds[3], shapeBounds[3]);
+        }
+        return bounds;
+    }
+
+    /**
+     * Dots the printer draws for a shape, an estimate of its formatting time.
+     */
+    private static long drawnDots(ZPLJavaShape shape){
+        long width = ZPLJavaShapeRasterizer.getDrawnWidth(shape);
+        long height = ZPLJavaShapeRasterizer.getDrawnHeight(shape);
+        long thickness = Math.min(shape.getThickness(), Math.min(width, height));
+        if(shape instanceof ZPLJavaDiagonalLine) return height * thickness;
+        return Math.min(width * height, (width + height) * 2 * thickness);
+    }
+
+    /**
+     * Hash of the shapes relative to the group position, so the same icon anywhere has the same hash.
+     */
+    private static ZPLJavaContentHash geometryHash(List<? extends ZPLJavaShape> shapes, int[] bounds){
+        ByteBuffer buffer = ByteBuffer.allocate(shapes.size() * 24);
+        for (ZPLJavaShape shape : shapes) {
+            byte orientation = shape instanceof ZPLJavaDiagonalLine
+                    ? ((ZPLJavaDiagonalLine) shape).getOrientation().toUpperCase().getBytes(StandardCharsets.US_ASCII)[0] : 0;
+            buffer.put(shape instanceof ZPLJavaEllipse ? (byte) 1 : shape instanceof ZPLJavaDiagonalLine ? (byte) 2 : 0);
+            buffer.put(orientation);
+            buffer.putShort((short) 0);
+            buffer.putInt(shape.getX() - bounds[0]);
+            buffer.putInt(shape.getY() - bounds[1]);
+            buffer.putInt(shape.getWidth());
+            buffer.putInt(shape.getHeight());
+            buffer.putInt(shape.getThickness());
+        }
+        return ZPLJavaContentHash.of(buffer.array());
+    }
+
+    // -------------------------------- costs --------------------------------
+
+    /**
+     * @param byteCost cost of every sent byte
+     */
+    public void setByteCost(double byteCost) {
+        if(byteCost >= 0) this.byteCost = byteCost;
+    }
+    public double getByteCost() {
+        return byteCost;
+    }
+    /**
+     * @param fieldCost printer cost of every field
+     */
+    public void setFieldCost(double fieldCost) {
+        if(fieldCost >= 0) this.fieldCost = fieldCost;
+    }
+    public double getFieldCost() {
+        return fieldCost;
+    }
+    /**
+     * @param dotCost printer cost of every dot of a rectangle
+     */
+    public void setDotCost(double dotCost) {
+        if(dotCost >= 0) this.dotCost = dotCost;
+    }
+    public double getDotCost() {
+        return dotCost;
+    }
+    /**
+     * @param curveFactor how many times a dot of an ellipse or diagonal line costs more than a
+     *                    dot of a rectangle
+     */
+    public void setCurveFactor(double curveFactor) {
+        if(curveFactor >= 0) this.curveFactor = curveFactor;
+    }
+    public double getCurveFactor() {
+        return curveFactor;
+    }
+    /**
+     * @param imageByteCost printer cost of every uncompressed image byte
+     */
+    public void setImageByteCost(double imageByteCost) {
+        if(imageByteCost >= 0) this.imageByteCost = imageByteCost;
+    }
+    public double getImageByteCost() {
+        return imageByteCost;
+    }
+
+    // -------------------------------- statistics --------------------------------
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+    public int getCachedImages() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaDiagonalLine;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaEllipse;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaRectangle;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
+
+/**
+ * Draw {@link ZPLJavaShape shapes} to a {@link ZPLJavaBitmap} the way the printer draws
+ * <code>^GB</code>, <code>^GE</code> and <code>^GD</code>:
+ * <ul>
+ *     <li>width and height are at least the thickness</li>
+ *     <li>a thickness of half the width or height fills the shape</li>
+ *     <li>a diagonal line is {@code thickness} dots wide on every row</li>
+ * </ul>
+ */
+public final class ZPLJavaShapeRasterizer {
+
+    private ZPLJavaShapeRasterizer(){}
+
+    /**
+     * @param component component to check
+     * @return true for black rectangles without rounded corners, ellipses and diagonal lines
+     */
+    public static boolean canRasterize(ZPLJavaComponent component){
+        Class<?> type = component.getClass();
+        if(type != ZPLJavaRectangle.class && type != ZPLJavaEllipse.class && type != ZPLJavaDiagonalLine.class)
+            return false;
+        if(type == ZPLJavaRectangle.class && ((ZPLJavaRectangle) component).getCornerRadius() != 0) return false;
+        return ((ZPLJavaShape) component).getColor().equalsIgnoreCase(ZPLJavaShape.Color.COLOR_BLACK);
+    }
+
+    /**
+     * @param shape the shape
+     * @return the drawn width, at least the thickness
+     */
+    public static int getDrawnWidth(ZPLJavaShape shape){
+        return Math.max(shape.getWidth(), shape.getThickness());
+    }
+    /**
+     * @param shape the shape
+     * @return the drawn height, at least the thickness
+     */
+    public static int getDrawnHeight(ZPLJavaShape shape){
+        return Math.max(shape.getHeight(), shape.getThickness());
+    }
+
+    /**
+     * Draw a shape.
+     * @param shape shape to draw, one that {@link #canRasterize(ZPLJavaComponent)}
+     * @param bitmap bitmap to draw to
+     * @param originX label position of the bitmap left side
+     * @param originY label position of the bitmap top side
+     */
+    public static void draw(ZPLJavaShape shape, ZPLJavaBitmap bitmap, int originX, int originY){
+        int x = shape.getX() - originX;
+        int y = shape.getY() - originY;
+        int width = getDrawnWidth(shape);
+        int height = getDrawnHeight(shape);
+        int thickness = shape.getThickness();
+        if(shape instanceof ZPLJavaEllipse) drawEllipse(bitmap, x, y, width, height, thickness);
+        else if(shape instanceof ZPLJavaDiagonalLine) drawDiagonal(bitmap, x, y, width, height, thickness,
+                ((ZPLJavaDiagonalLine) shape).getOrientation());
+        else drawBox(bitmap, x, y, width, height, thickness);
+    }
+
+    private static void drawBox(ZPLJavaBitmap bitmap, int x, int y, int width, int height, int thickness){
+        if(thickness * 2 >= width || thickness * 2 >= height) {
+            bitmap.fillRectangle(x, y, width, height);
+            return;
+        }
+        bitmap.fillRectangle(x, y, width, thickness);
+        bitmap.fillRectangle(x, y + height - thickness, width, thickness);
+        bitmap.fillRectangle(x, y + thickness, thickness, height - thickness * 2);
+        bitmap.fillRectangle(x + width - thickness, y + thickness, thickness, height - thickness * 2);
+    }
+
+    private static void drawEllipse(ZPLJavaBitmap bitmap, int x, int y, int width, int height, int thickness){
+        double a = width / 2.0;
+        double b = height / 2.0;
+        double innerA = a - thickness;
+        double innerB = b - thickness;
+        for (int row=0; row<height; row++) {
+            double dy = row + 0.5 - b;
+            double outer = a * Math.sqrt(Math.max(0, 1 - (dy * dy) / (b * b)));
+            int outerStart = (int) Math.round(a - outer);
+            int outerEnd = (int) Math.round(a + outer);
+            if(innerA > 0 && innerB > 0 && Math.abs(dy) < innerB) {
+                double inner = innerA * Math.sqrt(1 - (dy * dy) / (innerB * innerB));
+                int innerStart = (int) Math.round(a - inner);
+                int innerEnd = (int) Math.round(a + inner);
+                bitmap.fillSpan(y + row, x + outerStart, x + innerStart);
+                bitmap.fillSpan(y + row, x + innerEnd, x + outerEnd);
+            }
+            else bitmap.fillSpan(y + row, x + outerStart, x + outerEnd);
+        }
+    }
+
+    private static void drawDiagonal(ZPLJavaBitmap bitmap, int x, int y, int width, int height, int thickness,
+                                     String orientation){
+        boolean right = !ZPLJavaDiagonalLine.DiagonalLineOrientation.DIAGONAL_LEFT.equalsIgnoreCase(orientation);
+        int travel = width - thickness;
+        for (int row=0; row<height; row++) {
+            double progress = height > 1 ? (double) row / (height - 1) : 0;
+            // right leaning "/" starts at the top right, left leaning "\" at the top left
+            int start = (int) Math.round(travel * (right ? 1 - progress : progress));
+            bitmap.fillSpan(y + row, x + start, x + start + thickness);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A TrueType font file (<code>.ttf</code>) parsed for host side text rendering with
+ * {@link ZPLJavaGlyphCache}. Only the tables needed to draw glyphs are read:
+ * <code>head</code>, <code>maxp</code>, <code>hhea</code>, <code>hmtx</code>, <code>cmap</code>
+ * (formats 4 and 12), <code>loca</code> and <code>glyf</code> (simple and composite glyphs).
+ * Hinting, kerning and OpenType (<code>CFF</code>) outlines are not supported.
+ * <p>Immutable and thread safe, load a font once and share it.</p>
+ */
+public class ZPLJavaTrueTypeFont {
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private static final int ON_CURVE = 0x01;
+    private static final int X_SHORT = 0x02;
+    private static final int Y_SHORT = 0x04;
+    private static final int REPEAT = 0x08;
+    private static final int X_SAME_OR_POSITIVE = 0x10;
+    private static final int Y_SAME_OR_POSITIVE = 0x20;
+
+    private static final int ARGS_ARE_WORDS = 0x0001;
+    private static final int ARGS_ARE_XY_VALUES = 0x0002;
+    private static final int HAS_SCALE = 0x0008;
+    private static final int MORE_COMPONENTS = 0x0020;
+    private static final int HAS_XY_SCALE = 0x0040;
+    private static final int HAS_TWO_BY_TWO = 0x0080;
+
+    /**
+     * Maximum depth of composite glyphs, to stop broken fonts with circular references
+     */
+    private static final int MAX_COMPOSITE_DEPTH = 8;
+
+    private final int id = NEXT_ID.getAndIncrement();
+    private final byte[] data;
+    /**
+     * SHA-256 of {@link #data}, calculated the first time it is requested
+     */
+    private volatile byte[] digest;
+    private final int unitsPerEm;
+    private final int glyphCount;
+    private final int ascender;
+    private final int descender;
+    private final int lineGap;
+    private final int horizontalMetrics;
+    private final int hmtx;
+    private final int[] glyphOffsets;
+    private final int glyf;
+    private final int cmap;
+    private final int cmapFormat;
+
+    /**
+     * @param data the font file
+     * @throws IOException if data is not a TrueType font
+     */
+    public ZPLJavaTrueTypeFont(byte[] data) throws IOException {
+        this.data = data;
+        try {
+            int tables = u16(4);
+            int head = -1, maxp = -1, hhea = -1, hmtxTable = -1, loca = -1, glyfTable = -1, cmapTable = -1;
+            for (int i=0; i<tables; i++) {
+                int record = 12 + i * 16;
+                String tag = new String(data, record, 4, "US-ASCII");
+                int offset = (int) u32(record + 8);
+                switch (tag) {
+                    case "head": head = offset; break;
+                    case "maxp": maxp = offset; break;
+                    case "hhea": hhea = offset; break;
+                    case "hmtx": hmtxTable = offset; break;
+                    case "loca": loca = offset; break;
+                    case "glyf": glyfTable = offset; break;
+                    case "cmap": cmapTable = offset; break;
+                    default: break;
+                }
+            }
+            if(head < 0 || maxp < 0 || hhea < 0 || hmtxTable < 0 || loca < 0 || glyfTable < 0 || cmapTable < 0)
+                throw new IOException("Not a TrueType font, missing tables");
+            unitsPerEm = u16(head + 18);
+            boolean longOffsets = s16(head + 50) != 0;
+            glyphCount = u16(maxp + 4);
+            ascender = s16(hhea + 4);
+            descender = s16(hhea + 6);
+            lineGap = s16(hhea + 8);
+            horizontalMetrics = Math.max(1, u16(hhea + 34));
+            hmtx = hmtxTable;
+            glyf = glyfTable;
+            glyphOffsets = new int[glyphCount + 1];
+            for (int i=0; i<=glyphCount; i++) {
+                glyphOffsets[i] = longOffsets ? (int) u32(loca + i * 4) : u16(loca + i * 2) * 2;
+            }
+            int[] subtable = findCmap(cmapTable);
+            cmap = subtable[0];
+            cmapFormat = subtable[1];
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Broken TrueType font");
+        }
+    }
+
+    public static ZPLJavaTrueTypeFont load(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in font file stream, not closed
+     * @return the font
+     * @throws IOException if stream can not be read or is not a TrueType font
+     */
+    public static ZPLJavaTrueTypeFont load(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * 1024);
+        byte[] buffer = new byte[16 * 1024];
+        int count;
+        while ((count = in.read(buffer)) > 0) bytes.write(buffer, 0, count);
+        return new ZPLJavaTrueTypeFont(bytes.toByteArray());
+    }
+
+    /**
+     * Find the best unicode subtable: format 12 (full unicode) or else format 4 (basic plane).
+     * @return offset and format
+     */
+    private int[] findCmap(int table) throws IOException {
+        int count = u16(table + 2);
+        int best = -1;
+        int bestFormat = -1;
+        for (int i=0; i<count; i++) {
+            int record = table + 4 + i * 8;
+            int platform = u16(record);
+            int encoding = u16(record + 2);
+            int offset = table + (int) u32(record + 4);
+            int format = u16(offset);
+            boolean unicode = platform == 0 || (platform == 3 && (encoding == 1 || encoding == 10));
+            if(!unicode) continue;
+            if(format == 12 || (format == 4 && bestFormat != 12)) {
+                best = offset;
+                bestFormat = format;
+            }
+        }
+        if(best < 0) throw new IOException("No unicode character map in font");
+        return new int[]{best, bestFormat};
+    }
+
+    // -------------------------------- metrics --------------------------------
+
+    /**
+     * @return a number that is different for every loaded font, used by {@link ZPLJavaGlyphCache}
+     */
+    public int getId() {
+        return id;
+    }
+    /**
+     * @return SHA-256 of the font file, the same for the same font in every run of the application
+     */
+    public byte[] getDigest() {
+        byte[] current = digest;
+        if(current == null) {
+            try {
+                current = MessageDigest.getInstance("SHA-256").digest(data);
+            } catch (NoSuchAlgorithmException e) {
+                // every java platform supports SHA-256
+                throw new AssertionError(e);
+            }
+            digest = current;
+        }
+        return current.clone();
+    }
+    public int getUnitsPerEm() {
+        return unitsPerEm;
+    }
+    public int getGlyphCount() {
+        return glyphCount;
+    }
+    /**
+     * @return the height above the baseline in font units
+     */
+    public int getAscender() {
+        return ascender;
+    }
+    /**
+     * @return the depth below the baseline in font units, negative
+     */
+    public int getDescender() {
+        return descender;
+    }
+    public int getLineGap() {
+        return lineGap;
+    }
+
+    /**
+     * @param codePoint a unicode character
+     * @return the glyph index or 0 (the missing glyph) if font has no glyph for it
+     */
+    public int getGlyphIndex(int codePoint){
+        if(cmapFormat == 12) {
+            int groups = (int) u32(cmap + 12);
+            int low = 0, high = groups - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int group = cmap + 16 + middle * 12;
+                long start = u32(group);
+                long end = u32(group + 4);
+                if(codePoint < start) high = middle - 1;
+                else if(codePoint > end) low = middle + 1;
+                else return (int) (u32(group + 8) + codePoint - start);
+            }
+            return 0;
+        }
+        if(codePoint > 0xFFFF) return 0;
+        int segments = u16(cmap + 6) / 2;
+        int ends = cmap + 14;
+        int starts = ends + segments * 2 + 2;
+        int deltas = starts + segments * 2;
+        int rangeOffsets = deltas + segments * 2;
+        int low = 0, high = segments - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if(u16(ends + middle * 2) < codePoint) low = middle + 1;
+            else high = middle;
+        }
+        int start = u16(starts + low * 2);
+        if(codePoint < start || codePoint > u16(ends + low * 2)) return 0;
+        int delta = s16(deltas + low * 2);
+        int rangeOffset = u16(rangeOffsets + low * 2);
+        if(rangeOffset == 0) return (codePoint + delta) & 0xFFFF;
+        int glyph = u16(rangeOffsets + low * 2 + rangeOffset + (codePoint - start) * 2);
+        return glyph == 0 ? 0 : (glyph + delta) & 0xFFFF;
+    }
+
+    /**
+     * @param glyph glyph index
+     * @return the advance width in font units
+     */
+    public int getAdvanceWidth(int glyph){
+        if(glyph >= horizontalMetrics) glyph = horizontalMetrics - 1;
+        return u16(hmtx + glyph * 4);
+    }
+
+    // -------------------------------- outlines --------------------------------
+
+    /**
+     * Outline of a glyph as closed polygons, with curves flattened to lines.
+     * @param glyph glyph index
+     * @param tolerance maximum distance in font units between a curve and its lines
+     * @return every contour as x, y pairs in font units (y up), or an empty array for an empty glyph
+     */
+    public float[][] getOutline(int glyph, float tolerance){
+        if(glyph < 0 || glyph >= glyphCount) glyph = 0;
+        ArrayList<float[]> contours = new ArrayList<>();
+        addOutline(glyph, 1, 0, 0, 1, 0, 0, Math.max(0.1f, tolerance), contours, 0);
+        return contours.toArray(new float[contours.size()][]);
+    }
+
+    /**
+     * @param glyph glyph index
+     * @return xMin, yMin, xMax and yMax in font units, or null for an empty glyph
+     */
+    public int[] getBounds(int glyph){
+        if(glyph < 0 || glyph >= glyphCount) glyph = 0;
+        int offset = glyf + glyphOffsets[glyph];
+        if(glyphOffsets[glyph + 1] <= glyphOffsets[glyph]) return null;
+        return new int[]{s16(offset + 2), s16(offset + 4), s16(offset + 6), s16(offset + 8)};
+    }
+
+    private void addOutline(int glyph, float a, float b, float c, float d, float dx, float dy, float tolerance,
+                            List<float[]> contours, int depth){
+        if(glyph < 0 || glyph >= glyphCount || glyphOffsets[glyph + 1] <= glyphOffsets[glyph]) return;
+        int offset = glyf + glyphOffsets[glyph];
+        int contourCount = s16(offset);
+        if(contourCount >= 0) {
+            addSimpleOutline(offset, contourCount, a, b, c, d, dx, dy, tolerance, contours);
+            return;
+        }
+        if(depth >= MAX_COMPOSITE_DEPTH) return;
+        int position = offset + 10;
+        int flags;
+        do {
+            flags = u16(position);
+            int component = u16(position + 2);
+            position += 4;
+            float argument1, argument2;
+            if((flags & ARGS_ARE_WORDS) != 0) {
+                argument1 = s16(position);
+                argument2 = s16(position + 2);
+                position += 4;
+            }
+            else {
+                argument1 = data[position];
+                argument2 = data[position + 1];
+                position += 2;
+            }
+            // point matching placement is rare, place such components without offset
+            if((flags & ARGS_ARE_XY_VALUES) == 0) argument1 = argument2 = 0;
+            float ca = 1, cb = 0, cc = 0, cd = 1;
+            if((flags & HAS_SCALE) != 0) {
+                ca = cd = f2dot14(position);
+                position += 2;
+            }
+            else if((flags & HAS_XY_SCALE) != 0) {
+                ca = f2dot14(position);
+                cd = f2dot14(position + 2);
+                position += 4;
+            }
+            else if((flags & HAS_TWO_BY_TWO) != 0) {
+                ca = f2dot14(position);
+                cb = f2dot14(position + 2);
+                cc = f2dot14(position + 4);
+                cd = f2dot14(position + 6);
+                position += 8;
+            }
+            // component transform followed by parent transform
+            addOutline(component,
+                    a * ca + c * cb, b * ca + d * cb,
+                    a * cc + c * cd, b * cc + d * cd,
+                    a * argument1 + c * argument2 + dx, b * argument1 + d * argument2 + dy,
+                    tolerance, contours, depth + 1);
+        } while ((flags & MORE_COMPONENTS) != 0);
+    }
+
+    private void addSimpleOutline(int offset, int contourCount, float a, float b, float c, float d,
+                                  float dx, float dy, float tolerance, List<float[]> contours){
+        if(contourCount == 0) return;
+        int[] ends = new int[contourCount];
+        for (int i=0; i<contourCount; i++) ends[i] = u16(offset + 10 + i * 2);
+        int points = ends[contourCount - 1] + 1;
+        int position = offset + 10 + contourCount * 2;
+        position += 2 + u16(position);
+
+        byte[] flags = new byte[points];
+        for (int i=0; i<points; i++) {
+            int flag = data[position++] & 0xFF;
+            flags[i] = (byte) flag;
+            if((flag & REPEAT) != 0) {
+                int repeat = data[position++] & 0xFF;
+                for (int r=0; r<repeat && i + 1 < points; r++) flags[++i] = (byte) flag;
+            }
+        }
+        int[] xs = new int[points];
+        int value = 0;
+        for (int i=0; i<points; i++) {
+            int flag = flags[i];
+            if((flag & X_SHORT) != 0) {
+                int delta = data[position++] & 0xFF;
+                value += (flag & X_SAME_OR_POSITIVE) != 0 ? delta : -delta;
+            }
+            else if((flag & X_SAME_OR_POSITIVE) == 0) {
+                value += s16(position);
+                position += 2;
+            }
+            xs[i] = value;
+        }
+        int[] ys = new int[points];
+        value = 0;
+        for (int i=0; i<points; i++) {
+            int flag = flags[i];
+            if((flag & Y_SHORT) != 0) {
+                int delta = data[position++] & 0xFF;
+                value += (flag & Y_SAME_OR_POSITIVE) != 0 ? delta : -delta;
+            }
+            else if((flag & Y_SAME_OR_POSITIVE) == 0) {
+                value += s16(position);
+                position += 2;
+            }
+            ys[i] = value;
+        }
+
+        int start = 0;
+        for (int contour=0; contour<contourCount; contour++) {
+            int end = ends[contour];
+            int length = end - start + 1;
+            if(length >= 2) {
+                FloatList polygon = new FloatList(length * 4);
+                flattenContour(xs, ys, flags, start, length, tolerance, polygon);
+                float[] transformed = new float[polygon.size];
+                for (int i=0; i<polygon.size; i+=2) {
+                    float x = polygon.values[i];
+                    float y = polygon.values[i + 1];
+                    transformed[i] = a * x + c * y + dx;
+                    transformed[i + 1] = b * x + d * y + dy;
+                }
+                contours.add(transformed);
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Convert a contour of on-curve and off-curve (quadratic control) points to a polygon.
+     */
+    private static void flattenContour(int[] xs, int[] ys, byte[] flags, int start, int length, float tolerance,
+                                       FloatList out){
+        // start at an on-curve point, or between the last and first points if all are off-curve
+        int first = -1;
+        for (int i=0; i<length; i++) {
+            if((flags[start + i] & ON_CURVE) != 0) {
+                first = i;
+                break;
+            }
+        }
+        float startX, startY;
+        int next, count;
+        if(first >= 0) {
+            startX = xs[start + first];
+            startY = ys[start + first];
+            next = first + 1;
+            count = length - 1;
+        }
+        else {
+            startX = (xs[start] + xs[start + length - 1]) / 2f;
+            startY = (ys[start] + ys[start + length - 1]) / 2f;
+            next = 0;
+            count = length;
+        }
+        out.add(startX, startY);
+        float currentX = startX, currentY = startY;
+        boolean hasControl = false;
+        float controlX = 0, controlY = 0;
+        for (int k=0; k<count; k++) {
+            int index = start + (next + k) % length;
+            float x = xs[index];
+            float y = ys[index];
+            if((flags[index] & ON_CURVE) != 0) {
+                if(hasControl) quadratic(out, currentX, currentY, controlX, controlY, x, y, tolerance);
+                else out.add(x, y);
+                currentX = x;
+                currentY = y;
+                hasControl = false;
+            }
+            else {
+                if(hasControl) {
+                    // two control points in a row have an implied on-curve point between them
+                    float middleX = (controlX + x) / 2f;
+                    float middleY = (controlY + y) / 2f;
+                    quadratic(out, currentX, currentY, controlX, controlY, middleX, middleY, tolerance);
+                    currentX = middleX;
+                    currentY = middleY;
+                }
+                controlX = x;
+                controlY = y;
+                hasControl = true;
+            }
+        }
+        if(hasControl) quadratic(out, currentX, currentY, controlX, controlY, startX, startY, tolerance);
+    }
+
+    private static void quadratic(FloatList out, float x0, float y0, float cx, float cy, float x1, float y1,
+                                  float tolerance){
+        // distance of control point from the chord limits the error of straight segments
+        float deviation = Math.abs((x0 - 2 * cx + x1)) + Math.abs((y0 - 2 * cy + y1));
+        int segments = Math.max(1, Math.min(64, (int) Math.ceil(Math.sqrt(deviation / (4 * tolerance)))));
+        for (int i=1; i<=segments; i++) {
+            float t = (float) i / segments;
+            float u = 1 - t;
+            out.add(u * u * x0 + 2 * u * t * cx + t * t * x1, u * u * y0 + 2 * u * t * cy + t * t * y1);
+        }
+    }
+
+    private static final class FloatList {
+        float[] values;
+        int size;
+
+        FloatList(int capacity){
+            values = new float[Math.max(8, capacity)];
+        }
+
+        void add(float x, float y){
+            if(size + 2 > values.length) values = Arrays.copyOf(values, values.length * 2);
+            values[size++] = x;
+            values[size++] = y;
+        }
+    }
+
+    // -------------------------------- primitives --------------------------------
+
+    private int u16(int offset){
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+    private int s16(int offset){
+        return (short) u16(offset);
+    }
+    private long u32(int offset){
+        return ((long) u16(offset) << 16) | u16(offset + 2);
+    }
+    private float f2dot14(int offset){
+        return s16(offset) / 16384f;
+    }
+}
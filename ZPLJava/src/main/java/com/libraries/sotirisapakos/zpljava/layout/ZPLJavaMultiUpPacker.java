@@ -0,0 +1,204 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.layout;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaMetrics;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaTracer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Place many small labels side by side (and under each other) on wide media, so that one format
+ * prints many labels with one media feed.
+ * <ul>
+ *     <li>Labels are placed with a shelf algorithm: sorted by height, tallest first, every label goes
+ *     to the first shelf (row) with enough free width. A new shelf is opened under the last one, and
+ *     a new sheet when the sheet height is full.</li>
+ *     <li>Every sheet is one <code>^XA..^XZ</code> format with <code>^PW</code> set to the media
+ *     width. Every label is moved to its place with <code>^LH</code>, so the label components stay
+ *     as they are.</li>
+ * </ul>
+ * <p>Example: 1x1 inch labels on 4 inch media, one row per feed:</p>
+ * <pre>{@code
+ * ZPLJavaMultiUpPacker packer = new ZPLJavaMultiUpPacker(4 * LabelSize._8DPMM, LabelSize._8DPMM, 0);
+ * for (ZPLJavaMultiUpPacker.Sheet sheet : packer.pack(labels)) printer.send(sheet.getCode());
+ * }</pre>
+ */
+public class ZPLJavaMultiUpPacker {
+
+    /**
+     * A label and its place on a sheet.
+     */
+    public static class Placement {
+        private final ZPLJavaLabel label;
+        private final int x;
+        private final int y;
+
+        Placement(ZPLJavaLabel label, int x, int y){
+            this.label = label;
+            this.x = x;
+            this.y = y;
+        }
+
+        public ZPLJavaLabel getLabel() {
+            return label;
+        }
+        public int getX() {
+            return x;
+        }
+        public int getY() {
+            return y;
+        }
+    }
+
+    /**
+     * One format with many labels.
+     */
+    public static class Sheet {
+        private final List<Placement> placements = new ArrayList<>();
+        private int height = 0;
+        private String code;
+
+        public List<Placement> getPlacements() {
+            return Collections.unmodifiableList(placements);
+        }
+        /**
+         * @return the used sheet height in dots
+         */
+        public int getHeight() {
+            return height;
+        }
+        /**
+         * @return the format code of the sheet
+         */
+        public String getCode() {
+            return code;
+        }
+    }
+
+    private final int mediaWidth;
+    private final int sheetHeight;
+    private final int gap;
+
+    /**
+     * @param mediaWidth media width in dots
+     * @param sheetHeight maximum height of a sheet in dots, like the height of a multi-up label
+     *                    stock. Use zero for one shelf per sheet.
+     * @param gap dots between labels, horizontally and vertically
+     */
+    public ZPLJavaMultiUpPacker(int mediaWidth, int sheetHeight, int gap){
+        if(mediaWidth <= 0) throw new IllegalArgumentException("Invalid media width");
+        this.mediaWidth = mediaWidth;
+        this.sheetHeight = Math.max(0, sheetHeight);
+        this.gap = Math.max(0, gap);
+    }
+
+    /**
+     * Place labels to sheets and generate the sheet code.
+     * @param labels labels to place, of the same resolution as the media
+     * @return the sheets
+     * @throws IllegalArgumentException if a label is wider than the media or taller than a sheet
+     */
+    public List<Sheet> pack(List<ZPLJavaLabel> labels){
+        ZPLJavaTracer tracer = ZPLJavaMetrics.getTracer();
+        Object span = tracer == null ? null : tracer.begin(ZPLJavaTracer.Event.LAYOUT);
+        ArrayList<ZPLJavaLabel> sorted = new ArrayList<>(labels);
+        Collections.sort(sorted, new Comparator<ZPLJavaLabel>() {
+            @Override
+            public int compare(ZPLJavaLabel first, ZPLJavaLabel second) {
+                return second.getLabelHeight() - first.getLabelHeight();
+            }
+        });
+
+        ArrayList<Sheet> sheets = new ArrayList<>();
+        Sheet sheet = null;
+        // shelves of current sheet: y, height and used width
+        ArrayList<int[]> shelves = new ArrayList<>();
+        for (ZPLJavaLabel label : sorted) {
+            int width = label.getLabelWidth();
+            int height = label.getLabelHeight();
+            if(width > mediaWidth) throw new IllegalArgumentException("Label is wider than media");
+            if(sheetHeight > 0 && height > sheetHeight) throw new IllegalArgumentException("Label is taller than sheet");
+
+            int[] shelf = null;
+            if(sheet != null) {
+                for (int[] candidate : shelves) {
+                    int x = candidate[2] == 0 ? 0 : candidate[2] + gap;
+                    if(height <= candidate[1] && x + width <= mediaWidth) {
+                        shelf = candidate;
+                        break;
+                    }
+                }
+            }
+            if(shelf == null) {
+                int y = 0;
+                if(sheet != null && !shelves.isEmpty()) {
+                    int[] last = shelves.get(shelves.size() - 1);
+                    y = last[0] + last[1] + gap;
+                }
+                if(sheet == null || sheetHeight == 0 || y + height > sheetHeight) {
+                    sheet = new Sheet();
+                    sheets.add(sheet);
+                    shelves.clear();
+                    y = 0;
+                }
+                // sorted by height, so the first label of a shelf is the tallest one
+                shelf = new int[]{y, height, 0};
+                shelves.add(shelf);
+            }
+            int x = shelf[2] == 0 ? 0 : shelf[2] + gap;
+            sheet.placements.add(new Placement(label, x, shelf[0]));
+            shelf[2] = x + width;
+            sheet.height = Math.max(sheet.height, shelf[0] + shelf[1]);
+        }
+        if(tracer != null) tracer.endLayout(span, "multiUpPack", sorted.size());
+
+        for (Sheet packed : sheets) packed.code = generateSheetCode(packed);
+        return sheets;
+    }
+
+    private String generateSheetCode(Sheet sheet){
+        StringBuilder code = new StringBuilder();
+        code.append("^XA\n");
+        code.append(String.format(Locale.ENGLISH, "^PW%d\n^LL%d\n", mediaWidth,
+                sheetHeight > 0 ? sheetHeight : sheet.height));
+        boolean utf8 = false;
+        for (Placement placement : sheet.placements) utf8 |= placement.label.isUtf8FormatEnabled();
+        if(utf8) code.append("^CI28\n");
+        for (Placement placement : sheet.placements) {
+            code.append(String.format(Locale.ENGLISH, "^LH%d,%d\n", placement.x, placement.y));
+            code.append(placement.label.generateLabelBody());
+        }
+        code.append("^LH0,0\n");
+        code.append("^XZ");
+        return code.toString();
+    }
+
+    public int getMediaWidth() {
+        return mediaWidth;
+    }
+    public int getSheetHeight() {
+        return sheetHeight;
+    }
+    public int getGap() {
+        return gap;
+    }
+}
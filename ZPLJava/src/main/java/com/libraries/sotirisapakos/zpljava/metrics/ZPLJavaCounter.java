@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for values added from many threads at the same time. Every thread adds to one of
+ * many cells, so threads rarely update the same cell; {@link #sum()} adds all cells.
+ * <p>Works like {@code java.util.concurrent.atomic.LongAdder}, which is not available in Java 7.</p>
+ */
+public class ZPLJavaCounter {
+
+    /**
+     * Cells are {@value} longs apart, so that two cells are never in the same cache line
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    private static int stripes(){
+        int stripes = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors * 2 && stripes < 64) stripes <<= 1;
+        return stripes;
+    }
+
+    public void increment(){
+        add(1);
+    }
+
+    /**
+     * @param value value to add
+     */
+    public void add(long value){
+        int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16) & (STRIPES - 1);
+        cells.addAndGet(stripe * PADDING, value);
+    }
+
+    /**
+     * @return the sum of added values. Values added at the same time may be missing.
+     */
+    public long sum(){
+        long sum = 0;
+        for (int i=0; i<STRIPES; i++) sum += cells.get(i * PADDING);
+        return sum;
+    }
+
+    public void reset(){
+        for (int i=0; i<STRIPES; i++) cells.set(i * PADDING, 0);
+    }
+}
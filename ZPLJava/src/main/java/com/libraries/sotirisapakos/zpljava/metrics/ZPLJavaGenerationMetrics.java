@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.metrics;
+
+/**
+ * Metrics of one template or component type.
+ */
+public class ZPLJavaGenerationMetrics {
+
+    private final String name;
+    private final ZPLJavaCounter count = new ZPLJavaCounter();
+    private final ZPLJavaCounter components = new ZPLJavaCounter();
+    private final ZPLJavaHistogram latency = ZPLJavaHistogram.latency();
+    private final ZPLJavaHistogram size = ZPLJavaHistogram.size();
+
+    ZPLJavaGenerationMetrics(String name){
+        this.name = name;
+    }
+
+    void record(long nanos, long size, int components){
+        count.increment();
+        if(components > 0) this.components.add(components);
+        latency.record(nanos);
+        this.size.record(size);
+    }
+
+    /**
+     * @return the template id or component type
+     */
+    public String getName() {
+        return name;
+    }
+    /**
+     * @return the generated labels or components
+     */
+    public ZPLJavaCounter getCount() {
+        return count;
+    }
+    /**
+     * @return the components of the generated labels, zero for component types
+     */
+    public ZPLJavaCounter getComponents() {
+        return components;
+    }
+    /**
+     * @return the generation times in nanoseconds
+     */
+    public ZPLJavaHistogram getLatency() {
+        return latency;
+    }
+    /**
+     * @return the generated code sizes, in characters for generated labels and components and in
+     * bytes for rendered templates
+     */
+    public ZPLJavaHistogram getSize() {
+        return size;
+    }
+
+    void reset(){
+        count.reset();
+        components.reset();
+        latency.reset();
+        size.reset();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count values in fixed buckets, like generation times or label sizes. Bucket {@code i} counts
+ * values up to {@code bounds[i]}; the last bucket counts the bigger values.
+ * <p>Recording is a binary search and one atomic increment, so it creates no objects.</p>
+ */
+public class ZPLJavaHistogram {
+
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final ZPLJavaCounter count = new ZPLJavaCounter();
+    private final ZPLJavaCounter sum = new ZPLJavaCounter();
+
+    /**
+     * @param bounds upper bounds of the buckets, in increasing order
+     */
+    public ZPLJavaHistogram(long[] bounds){
+        this.bounds = bounds.clone();
+        for (int i=1; i<this.bounds.length; i++) {
+            if(this.bounds[i] <= this.bounds[i - 1]) throw new IllegalArgumentException("Bounds must increase");
+        }
+        this.counts = new AtomicLongArray(this.bounds.length + 1);
+    }
+
+    /**
+     * @return a histogram of nanoseconds, from 1 microsecond to 10 seconds in 1-2-5 steps
+     */
+    public static ZPLJavaHistogram latency(){
+        long[] bounds = new long[22];
+        long value = 1000;
+        for (int i=0; i<bounds.length; i+=3) {
+            bounds[i] = value;
+            if(i + 1 < bounds.length) bounds[i + 1] = value * 2;
+            if(i + 2 < bounds.length) bounds[i + 2] = value * 5;
+            value *= 10;
+        }
+        return new ZPLJavaHistogram(bounds);
+    }
+
+    /**
+     * @return a histogram of sizes, from 64 bytes to 16MB in powers of two
+     */
+    public static ZPLJavaHistogram size(){
+        long[] bounds = new long[19];
+        for (int i=0; i<bounds.length; i++) bounds[i] = 64L << i;
+        return new ZPLJavaHistogram(bounds);
+    }
+
+    /**
+     * @param value value to count
+     */
+    public void record(long value){
+        int bucket = Arrays.binarySearch(bounds, value);
+        if(bucket < 0) bucket = -bucket - 1;
+        counts.incrementAndGet(bucket);
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * @param percentile percentile, from 0 to 100
+     * @return the upper bound of the bucket of this percentile, or {@link Long#MAX_VALUE} if it is
+     * in the last bucket, or 0 if nothing is recorded
+     */
+    public long getValueAtPercentile(double percentile){
+        long[] snapshot = getBucketCounts();
+        long total = 0;
+        for (long value : snapshot) total += value;
+        if(total == 0) return 0;
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        for (int i=0; i<snapshot.length; i++) {
+            seen += snapshot[i];
+            if(seen >= rank && snapshot[i] > 0) return i < bounds.length ? bounds[i] : Long.MAX_VALUE;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the bucket upper bounds, one less than {@link #getBucketCounts()}
+     */
+    public long[] getBounds(){
+        return bounds.clone();
+    }
+    /**
+     * @return the count of every bucket
+     */
+    public long[] getBucketCounts(){
+        long[] snapshot = new long[counts.length()];
+        for (int i=0; i<snapshot.length; i++) snapshot[i] = counts.get(i);
+        return snapshot;
+    }
+    public long getCount(){
+        return count.sum();
+    }
+    public long getSum(){
+        return sum.sum();
+    }
+
+    public void reset(){
+        for (int i=0; i<counts.length(); i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.metrics;
+
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Generation metrics of all labels, to find the slow or big templates in production.
+ * <ul>
+ *     <li>Every template id (see {@link com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel#setTemplateId(String)}
+ *     and {@link com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate#getName()})
+ *     has a counter of generated labels and components and histograms of generation time and size.</li>
+ *     <li>Every component type has the same metrics for its instructions.</li>
+ *     <li>{@link ZPLJavaMetricsExporter Exporters} send the metrics elsewhere, see {@link #export()}.</li>
+ * </ul>
+ * <p>Metrics are disabled by default. When disabled, generation only reads one volatile flag;
+ * when enabled, recording is lock-free and creates no objects after the first label of a template.</p>
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaMetrics.enable();
+ * ZPLJavaMetrics.addExporter(new ZPLJavaTextExporter(writer));
+ * ...
+ * ZPLJavaMetrics.export();
+ * }</pre>
+ */
+public final class ZPLJavaMetrics {
+
+    /**
+     * Template id of labels without one
+     */
+    public static final String UNNAMED_TEMPLATE = "unnamed";
+
+    private static volatile boolean enabled = false;
+    private static volatile ZPLJavaTracer tracer;
+
+    private static final ConcurrentMap<String, ZPLJavaGenerationMetrics> templates = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ZPLJavaGenerationMetrics> components = new ConcurrentHashMap<>();
+    private static final List<ZPLJavaMetricsExporter> exporters = new CopyOnWriteArrayList<>();
+
+    private ZPLJavaMetrics(){}
+
+    public static void enable(){
+        enabled = true;
+    }
+    public static void disable(){
+        enabled = false;
+    }
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Send timed events of generation, layout and printer transport to a tracer, independent of
+     * {@link #enable()}.
+     * @param tracer the tracer or null to stop tracing
+     */
+    public static void setTracer(ZPLJavaTracer tracer){
+        ZPLJavaMetrics.tracer = tracer;
+    }
+    /**
+     * @return the current tracer or null if tracing is off
+     */
+    public static ZPLJavaTracer getTracer(){
+        return tracer;
+    }
+
+    // -------------------------------- recording --------------------------------
+
+    /**
+     * Record a generated label. Called by the library, check {@link #isEnabled()} before measuring.
+     * @param templateId template id of the label, null for {@link #UNNAMED_TEMPLATE}
+     * @param nanos generation time
+     * @param size label code size
+     * @param components components of the label
+     */
+    public static void recordLabel(String templateId, long nanos, long size, int components){
+        if(!enabled) return;
+        template(templateId == null ? UNNAMED_TEMPLATE : templateId).record(nanos, size, components);
+    }
+
+    /**
+     * Record a generated component instruction. Called by the library, check {@link #isEnabled()}
+     * before measuring.
+     * @param component the component
+     * @param nanos generation time
+     * @param size instruction size
+     */
+    public static void recordComponent(ZPLJavaComponent component, long nanos, long size){
+        if(!enabled) return;
+        Class<?> type = component.getClass();
+        ZPLJavaGenerationMetrics metrics = components.get(type);
+        if(metrics == null) {
+            metrics = new ZPLJavaGenerationMetrics(type.getSimpleName());
+            ZPLJavaGenerationMetrics previous = components.putIfAbsent(type, metrics);
+            if(previous != null) metrics = previous;
+        }
+        metrics.record(nanos, size, 0);
+    }
+
+    private static ZPLJavaGenerationMetrics template(String templateId){
+        ZPLJavaGenerationMetrics metrics = templates.get(templateId);
+        if(metrics == null) {
+            metrics = new ZPLJavaGenerationMetrics(templateId);
+            ZPLJavaGenerationMetrics previous = templates.putIfAbsent(templateId, metrics);
+            if(previous != null) metrics = previous;
+        }
+        return metrics;
+    }
+
+    // -------------------------------- reading --------------------------------
+
+    /**
+     * @param templateId the template id
+     * @return the metrics of the template or null if no label of it is recorded
+     */
+    public static ZPLJavaGenerationMetrics getTemplateMetrics(String templateId){
+        return templates.get(templateId);
+    }
+    /**
+     * @return the metrics of all recorded templates
+     */
+    public static Collection<ZPLJavaGenerationMetrics> getTemplateMetrics(){
+        return new ArrayList<>(templates.values());
+    }
+    /**
+     * @return the metrics of all recorded component types
+     */
+    public static Collection<ZPLJavaGenerationMetrics> getComponentMetrics(){
+        return new ArrayList<>(components.values());
+    }
+
+    /**
+     * Clear all recorded values. Templates and component types stay registered.
+     */
+    public static void reset(){
+        for (ZPLJavaGenerationMetrics metrics : templates.values()) metrics.reset();
+        for (ZPLJavaGenerationMetrics metrics : components.values()) metrics.reset();
+    }
+
+    // -------------------------------- exporting --------------------------------
+
+    public static void addExporter(ZPLJavaMetricsExporter exporter){
+        if(exporter != null) exporters.add(exporter);
+    }
+    public static void removeExporter(ZPLJavaMetricsExporter exporter){
+        exporters.remove(exporter);
+    }
+
+    /**
+     * Send current metrics to every exporter. Call it from a scheduled task, like every minute.
+     * All exporters are called even if one fails.
+     * @throws IOException the first failure of an exporter
+     */
+    public static void export() throws IOException {
+        Collection<ZPLJavaGenerationMetrics> templates = getTemplateMetrics();
+        Collection<ZPLJavaGenerationMetrics> components = getComponentMetrics();
+        IOException failure = null;
+        for (ZPLJavaMetricsExporter exporter : exporters) {
+            try {
+                exporter.export(templates, components);
+            } catch (IOException e) {
+                if(failure == null) failure = e;
+            }
+        }
+        if(failure != null) throw failure;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.metrics;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Send the {@link ZPLJavaMetrics} to a monitoring system, a log or a file.
+ * <p>Register exporters with {@link ZPLJavaMetrics#addExporter(ZPLJavaMetricsExporter)}; they are
+ * called by {@link ZPLJavaMetrics#export()}, from the calling thread.</p>
+ */
+public interface ZPLJavaMetricsExporter {
+
+    /**
+     * @param templates metrics of every template id
+     * @param components metrics of every component type
+     * @throws IOException if metrics can not be sent
+     */
+    void export(Collection<ZPLJavaGenerationMetrics> templates,
+                Collection<ZPLJavaGenerationMetrics> components) throws IOException;
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.metrics;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Write metrics in the Prometheus text format, to serve them from an http endpoint or write them
+ * to a file for the node exporter.
+ * <p>Example output:</p>
+ * <pre>
+ * zpljava_template_generated_total{template="shipping"} 1200
+ * zpljava_template_latency_nanos_bucket{template="shipping",le="20000"} 1180
+ * zpljava_component_size_bytes_sum{component="ZPLJavaBarcode"} 48000
+ * </pre>
+ */
+public class ZPLJavaTextExporter implements ZPLJavaMetricsExporter {
+
+    private final Appendable out;
+
+    /**
+     * @param out where to write the metrics, like a {@link java.io.Writer} or a {@link StringBuilder}
+     */
+    public ZPLJavaTextExporter(Appendable out){
+        this.out = out;
+    }
+
+    @Override
+    public void export(Collection<ZPLJavaGenerationMetrics> templates,
+                       Collection<ZPLJavaGenerationMetrics> components) throws IOException {
+        write("template", templates);
+        write("component", components);
+        if(out instanceof java.io.Flushable) ((java.io.Flushable) out).flush();
+    }
+
+    /**
+     * Write every metric of all templates or components together, as the text format needs.
+     */
+    private void write(String kind, Collection<ZPLJavaGenerationMetrics> metrics) throws IOException {
+        if(metrics.isEmpty()) return;
+        String prefix = "zpljava_" + kind;
+        type(prefix + "_generated_total", "counter");
+        for (ZPLJavaGenerationMetrics metric : metrics) line(prefix + "_generated_total", label(kind, metric),
+                metric.getCount().sum());
+        if(kind.equals("template")) {
+            type(prefix + "_components_total", "counter");
+            for (ZPLJavaGenerationMetrics metric : metrics) line(prefix + "_components_total", label(kind, metric),
+                    metric.getComponents().sum());
+        }
+        type(prefix + "_latency_nanos", "histogram");
+        for (ZPLJavaGenerationMetrics metric : metrics) histogram(prefix + "_latency_nanos", label(kind, metric),
+                metric.getLatency());
+        type(prefix + "_size_bytes", "histogram");
+        for (ZPLJavaGenerationMetrics metric : metrics) histogram(prefix + "_size_bytes", label(kind, metric),
+                metric.getSize());
+    }
+
+    private static String label(String kind, ZPLJavaGenerationMetrics metric){
+        return kind + "=\"" + escape(metric.getName()) + "\"";
+    }
+
+    private void type(String name, String type) throws IOException {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void histogram(String name, String label, ZPLJavaHistogram histogram) throws IOException {
+        long[] bounds = histogram.getBounds();
+        long[] counts = histogram.getBucketCounts();
+        long cumulative = 0;
+        for (int i=0; i<counts.length; i++) {
+            cumulative += counts[i];
+            String bound = i < bounds.length ? String.valueOf(bounds[i]) : "+Inf";
+            line(name + "_bucket", label + ",le=\"" + bound + "\"", cumulative);
+        }
+        line(name + "_sum", label, histogram.getSum());
+        line(name + "_count", label, cumulative);
+    }
+
+    private void line(String name, String labels, long value) throws IOException {
+        out.append(String.format(Locale.ENGLISH, "%s{%s} %d\n", name, labels, value));
+    }
+
+    private static String escape(String value){
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
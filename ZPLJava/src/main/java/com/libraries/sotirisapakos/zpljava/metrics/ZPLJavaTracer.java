@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.metrics;
+
+/**
+ * Receive timed events of label generation, layout and printer transport, to see where time goes
+ * in a profiler timeline, like a JDK Flight Recorder recording.
+ * <p>Every event starts with {@link #begin(int)} and ends with the matching {@code end} method,
+ * on the same thread. {@link #begin(int)} returns a span object, which may be null when the tracer
+ * does not want the event; the span is given back to the {@code end} method.</p>
+ * <p>Set a tracer with {@link ZPLJavaMetrics#setTracer(ZPLJavaTracer)}. Without a tracer, the
+ * library only reads one volatile field per event.</p>
+ */
+public interface ZPLJavaTracer {
+
+    /**
+     * Event types of {@link #begin(int)}
+     */
+    interface Event{
+        int GENERATION  = 1;
+        int LAYOUT      = 2;
+        int SEND        = 3;
+        int ACK         = 4;
+    }
+
+    /**
+     * @param event one of the {@link Event} values
+     * @return the span given to the end method, null to skip the event
+     */
+    Object begin(int event);
+
+    /**
+     * A label was generated or a compiled template rendered.
+     * @param span the span of {@link #begin(int)}
+     * @param templateId template id, null for labels without one
+     * @param components components of the label, zero for compiled templates
+     * @param size generated code size
+     */
+    void endGeneration(Object span, String templateId, int components, long size);
+
+    /**
+     * A layout pass finished, like {@code convertLayoutToStack}.
+     * @param span the span of {@link #begin(int)}
+     * @param pass name of the layout pass
+     * @param components components arranged
+     */
+    void endLayout(Object span, String pass, int components);
+
+    /**
+     * Bytes were written to a printer.
+     * @param span the span of {@link #begin(int)}
+     * @param printer printer name
+     * @param bytes bytes sent
+     * @param failed true if sending failed
+     */
+    void endSend(Object span, String printer, long bytes, boolean failed);
+
+    /**
+     * A printer answered a host status query, acknowledging the formats it received.
+     * @param span the span of {@link #begin(int)}
+     * @param printer printer name
+     * @param formatsInBuffer formats waiting in printer, -1 if the query failed
+     * @param labelsRemaining labels remaining of the current format, -1 if the query failed
+     */
+    void endAck(Object span, String printer, int formatsInBuffer, int labelsRemaining);
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.output;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Write a big batch of labels to spool files through memory-mapped regions, without creating one
+ * big string or going through a {@link java.io.Writer}.
+ * <ul>
+ *     <li>Labels are written to segment files <code>{name}-00000.zpl</code>,
+ *     <code>{name}-00001.zpl</code>... A new segment starts when the next label does not fit in
+ *     {@code maxSegmentSize}. A label is never split between segments.</li>
+ *     <li>Every segment is written through mapped regions of {@code regionSize} bytes. A new
+ *     region is mapped when the current one is full.</li>
+ *     <li>The index file <code>{name}.idx</code> keeps the segment, offset and length of every
+ *     label, so any label can be found with {@link #readLabel(File, String, long)} for a reprint.</li>
+ * </ul>
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaBatchFileWriter writer = new ZPLJavaBatchFileWriter(spoolDirectory, "wave-42");
+ * for (ZPLJavaLabel label : labels) writer.write(label);
+ * writer.close();
+ * }</pre>
+ * Not thread safe, use one writer from one thread.
+ */
+public class ZPLJavaBatchFileWriter implements Closeable {
+
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 1024L * 1024 * 1024;
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Index entry: segment (int), offset (long) and length (int)
+     */
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    private final File directory;
+    private final String name;
+    private final long maxSegmentSize;
+    private final int regionSize;
+    private final DataOutputStream index;
+
+    private int segment = -1;
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer region;
+    /**
+     * Bytes written to current segment
+     */
+    private long segmentPosition = 0;
+    private long labelCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a writer with {@link #DEFAULT_MAX_SEGMENT_SIZE} and {@link #DEFAULT_REGION_SIZE}.
+     * @param directory directory of the spool files, created if not exists
+     * @param name name of the batch, used for file names
+     * @throws IOException if files can not be created
+     */
+    public ZPLJavaBatchFileWriter(File directory, String name) throws IOException {
+        this(directory, name, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param directory directory of the spool files, created if not exists
+     * @param name name of the batch, used for file names
+     * @param maxSegmentSize maximum size of a segment file in bytes
+     * @param regionSize size of every mapped region in bytes
+     * @throws IOException if files can not be created
+     */
+    public ZPLJavaBatchFileWriter(File directory, String name, long maxSegmentSize, int regionSize)
+            throws IOException {
+        if(maxSegmentSize <= 0 || regionSize <= 0) throw new IllegalArgumentException("Invalid size");
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Can not create directory " + directory);
+        this.directory = directory;
+        this.name = name;
+        this.maxSegmentSize = maxSegmentSize;
+        this.regionSize = regionSize;
+        this.index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFile(directory, name)), 64 * 1024));
+    }
+
+    /**
+     * Write the code of a label. Label code must be generated.
+     * @param label label to write
+     * @return the label number, to find it with {@link #readLabel(File, String, long)}
+     * @throws IOException if files can not be written
+     */
+    public long write(ZPLJavaLabel label) throws IOException {
+        return write(label.getLabelCodeBytes());
+    }
+
+    /**
+     * @param bytes label code bytes
+     * @return the label number
+     * @throws IOException if files can not be written
+     */
+    public long write(byte[] bytes) throws IOException {
+        return write(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Write a rendered label. The label is not consumed, so it can still be written to a printer.
+     * @param label label to write
+     * @return the label number
+     * @throws IOException if files can not be written
+     */
+    public long write(ZPLJavaSegmentedLabel label) throws IOException {
+        // the whole label, even if it is already written to a printer
+        ByteBuffer[] segments = label.getSegments();
+        for (ByteBuffer segment : segments) segment.rewind();
+        return write(segments);
+    }
+
+    /**
+     * Write the remaining bytes of buffers as one label. Buffer positions move to their limits.
+     * @param buffers label code buffers
+     * @return the label number
+     * @throws IOException if files can not be written
+     */
+    public long write(ByteBuffer... buffers) throws IOException {
+        if(closed) throw new IOException("Writer is closed");
+        long length = 0;
+        for (ByteBuffer buffer : buffers) length += buffer.remaining();
+        if(length > Integer.MAX_VALUE) throw new IOException("Label is too big");
+        prepare((int) length);
+        long offset = segmentPosition;
+        for (ByteBuffer buffer : buffers) region.put(buffer);
+        segmentPosition += length;
+
+        index.writeInt(segment);
+        index.writeLong(offset);
+        index.writeInt((int) length);
+        return labelCount++;
+    }
+
+    /**
+     * Make sure that current region has space for the next label, mapping a new region or
+     * starting a new segment if needed.
+     */
+    private void prepare(int length) throws IOException {
+        if(segmentFile == null || (segmentPosition > 0 && segmentPosition + length > maxSegmentSize)) {
+            nextSegment();
+        }
+        if(region == null || region.remaining() < length) {
+            region = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, segmentPosition,
+                    Math.max(regionSize, length));
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        closeSegment();
+        segment++;
+        segmentFile = new RandomAccessFile(segmentFile(directory, name, segment), "rw");
+        segmentFile.setLength(0);
+        segmentPosition = 0;
+        region = null;
+    }
+
+    /**
+     * Write mapped bytes to disk and cut the unused part of the last region.
+     */
+    private void closeSegment() throws IOException {
+        if(segmentFile == null) return;
+        if(region != null) region.force();
+        region = null;
+        segmentFile.getChannel().truncate(segmentPosition);
+        segmentFile.close();
+        segmentFile = null;
+    }
+
+    /**
+     * @return the labels written so far
+     */
+    public long getLabelCount() {
+        return labelCount;
+    }
+    /**
+     * @return the segment files written so far
+     */
+    public int getSegmentCount() {
+        return segment + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) return;
+        closed = true;
+        try {
+            closeSegment();
+        } finally {
+            index.close();
+        }
+    }
+
+    // -------------------------------- reading --------------------------------
+
+    /**
+     * Read one label of a batch, using the index file.
+     * @param directory directory of the spool files
+     * @param name name of the batch
+     * @param labelNumber the number {@link #write(byte[])} returned
+     * @return the label code bytes
+     * @throws IOException if label does not exist or files can not be read
+     */
+    public static byte[] readLabel(File directory, String name, long labelNumber) throws IOException {
+        int segment;
+        long offset;
+        int length;
+        RandomAccessFile indexFile = new RandomAccessFile(indexFile(directory, name), "r");
+        try {
+            if(labelNumber < 0 || (labelNumber + 1) * INDEX_ENTRY_SIZE > indexFile.length())
+                throw new IOException("No label " + labelNumber + " in batch " + name);
+            indexFile.seek(labelNumber * INDEX_ENTRY_SIZE);
+            segment = indexFile.readInt();
+            offset = indexFile.readLong();
+            length = indexFile.readInt();
+        } finally {
+            indexFile.close();
+        }
+        byte[] bytes = new byte[length];
+        RandomAccessFile segmentFile = new RandomAccessFile(segmentFile(directory, name, segment), "r");
+        try {
+            segmentFile.seek(offset);
+            segmentFile.readFully(bytes);
+        } finally {
+            segmentFile.close();
+        }
+        return bytes;
+    }
+
+    private static File segmentFile(File directory, String name, int segment) {
+        return new File(directory, String.format(Locale.ENGLISH, "%s-%05d.zpl", name, segment));
+    }
+
+    private static File indexFile(File directory, String name) {
+        return new File(directory, name + ".idx");
+    }
+}
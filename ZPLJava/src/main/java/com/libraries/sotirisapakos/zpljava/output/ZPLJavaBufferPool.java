@@ -0,0 +1,83 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.output;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of small direct buffers for label field data. Direct buffers are expensive to create, so
+ * they are returned to the pool with {@link #release(ByteBuffer)} and used again for the next
+ * labels.
+ * <p>Thread safe, one pool can be shared by all rendering threads.</p>
+ */
+public class ZPLJavaBufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 256;
+
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    public ZPLJavaBufferPool(){
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+    }
+    /**
+     * @param bufferSize size of every buffer in bytes
+     * @param maxPooledBuffers maximum buffers kept in pool, more released buffers are dropped
+     */
+    public ZPLJavaBufferPool(int bufferSize, int maxPooledBuffers){
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxPooledBuffers = Math.max(0, maxPooledBuffers);
+    }
+
+    /**
+     * @return an empty buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = buffers.poll();
+        if(buffer == null) return ByteBuffer.allocateDirect(bufferSize);
+        pooledBuffers.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer of {@link #acquire()} to pool. Do not use the buffer after releasing it.
+     * @param buffer buffer to return
+     */
+    public void release(ByteBuffer buffer){
+        if(buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) return;
+        if(pooledBuffers.incrementAndGet() > maxPooledBuffers) {
+            pooledBuffers.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+    /**
+     * @return buffers currently waiting in pool
+     */
+    public int getPooledBuffers() {
+        return pooledBuffers.get();
+    }
+}
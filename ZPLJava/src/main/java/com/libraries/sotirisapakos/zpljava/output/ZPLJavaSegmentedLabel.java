@@ -0,0 +1,209 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.output;
+
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaRenderSupport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rendered label as a list of buffers, written to a {@link java.nio.channels.SocketChannel} or
+ * {@link java.nio.channels.FileChannel} with one gathering write.
+ * <ul>
+ *     <li>Static parts are the shared read-only buffers of the
+ *     {@link ZPLJavaCompiledTemplate#getStaticBuffer(int) compiled template}, never copied.</li>
+ *     <li>Field values are written to small direct buffers of a {@link ZPLJavaBufferPool}.</li>
+ * </ul>
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaSegmentedLabel label = ZPLJavaSegmentedLabel.render(template, pool, name, barcode);
+ * try {
+ *     label.writeTo(socketChannel);
+ * } finally {
+ *     label.release();
+ * }
+ * }</pre>
+ */
+public class ZPLJavaSegmentedLabel {
+
+    private final ByteBuffer[] segments;
+    private final ZPLJavaBufferPool pool;
+    private final List<ByteBuffer> pooledBuffers;
+    /**
+     * First segment with remaining bytes
+     */
+    private int firstSegment = 0;
+
+    private ZPLJavaSegmentedLabel(ByteBuffer[] segments, ZPLJavaBufferPool pool, List<ByteBuffer> pooledBuffers){
+        this.segments = segments;
+        this.pool = pool;
+        this.pooledBuffers = pooledBuffers;
+    }
+
+    /**
+     * Create a label from ready buffers, like the ones of
+     * {@link com.libraries.sotirisapakos.zpljava.cache.ZPLJavaOutputCache}.
+     * @param segments buffers to write, in order, from their positions to their limits
+     * @return the segmented label
+     */
+    public static ZPLJavaSegmentedLabel of(ByteBuffer... segments){
+        // every segment starts at zero, so a written label can be rewound
+        ByteBuffer[] slices = new ByteBuffer[segments.length];
+        for (int i=0; i<segments.length; i++) slices[i] = segments[i].slice();
+        return new ZPLJavaSegmentedLabel(slices, null, new ArrayList<ByteBuffer>(0));
+    }
+
+    /**
+     * Render a label of a compiled template.
+     * @param template the compiled template
+     * @param pool pool of buffers for the field values
+     * @param values field values in the order of {@link ZPLJavaCompiledTemplate#getFieldNames()}
+     * @return the segmented label. Call {@link #release()} after writing it.
+     */
+    public static ZPLJavaSegmentedLabel render(ZPLJavaCompiledTemplate template, ZPLJavaBufferPool pool,
+                                               String... values){
+        int slots = template.getSlotCount();
+        ArrayList<ByteBuffer> pooledBuffers = new ArrayList<>(2);
+        ByteBuffer[] encoded = new ByteBuffer[slots];
+        ByteBuffer current = null;
+        boolean cp1252 = ZPLJavaCodePage.CHARSET_1252.equals(template.getCharset());
+        for (int i=0; i<slots; i++) {
+            int field = template.getSlotField(i);
+            char indicator = template.getSlotIndicator(i);
+            // every field value is written once, even if the field is used many times
+            for (int j=0; j<i && encoded[i] == null; j++) {
+                if(template.getSlotField(j) == field && template.getSlotIndicator(j) == indicator) {
+                    encoded[i] = encoded[j];
+                }
+            }
+            if(encoded[i] != null) continue;
+            CharSequence value = ZPLJavaCodePage.escapeValue(
+                    values != null && field < values.length ? values[field] : null, indicator);
+            int length = cp1252
+                    ? (value == null ? 0 : value.length())
+                    : ZPLJavaRenderSupport.utf8Length(value);
+            ByteBuffer target;
+            if(length > pool.getBufferSize()) {
+                target = ByteBuffer.allocateDirect(length);
+            }
+            else {
+                if(current == null || current.remaining() < length) {
+                    current = pool.acquire();
+                    pooledBuffers.add(current);
+                }
+                target = current;
+            }
+            int start = target.position();
+            if(cp1252) ZPLJavaCodePage.putCp1252(value, target);
+            else ZPLJavaRenderSupport.put(value, target);
+            ByteBuffer segment = target.duplicate();
+            segment.position(start);
+            segment.limit(target.position());
+            encoded[i] = segment.slice();
+        }
+
+        ByteBuffer[] segments = new ByteBuffer[slots * 2 + 1];
+        for (int i=0; i<slots; i++) {
+            segments[i * 2] = template.getStaticBuffer(i);
+            segments[i * 2 + 1] = encoded[i].duplicate();
+        }
+        segments[slots * 2] = template.getStaticBuffer(slots);
+        return new ZPLJavaSegmentedLabel(segments, pool, pooledBuffers);
+    }
+
+    /**
+     * Write the remaining bytes to channel. A blocking channel writes everything; a non-blocking
+     * channel may stop early, so call again until {@link #hasRemaining()} is false.
+     * @param channel channel to write to
+     * @return the bytes written
+     * @throws IOException if channel can not be written
+     */
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        long written = 0;
+        while (firstSegment < segments.length) {
+            long count = channel.write(segments, firstSegment, segments.length - firstSegment);
+            written += count;
+            while (firstSegment < segments.length && !segments[firstSegment].hasRemaining()) firstSegment++;
+            if(count == 0 && firstSegment < segments.length) break;
+        }
+        return written;
+    }
+
+    /**
+     * Write many labels with one gathering write, for a batch of labels to the same printer or file.
+     * Labels are written completely, so use only blocking channels.
+     * @param channel channel to write to
+     * @param labels labels to write, in order
+     * @return the bytes written
+     * @throws IOException if channel can not be written
+     */
+    public static long writeTo(GatheringByteChannel channel, List<ZPLJavaSegmentedLabel> labels)
+            throws IOException {
+        int count = 0;
+        for (ZPLJavaSegmentedLabel label : labels) count += label.segments.length - label.firstSegment;
+        ByteBuffer[] all = new ByteBuffer[count];
+        int index = 0;
+        for (ZPLJavaSegmentedLabel label : labels) {
+            for (int i = label.firstSegment; i < label.segments.length; i++) all[index++] = label.segments[i];
+        }
+        long written = 0;
+        int first = 0;
+        while (first < all.length) {
+            written += channel.write(all, first, all.length - first);
+            while (first < all.length && !all[first].hasRemaining()) first++;
+        }
+        for (ZPLJavaSegmentedLabel label : labels) label.firstSegment = label.segments.length;
+        return written;
+    }
+
+    public boolean hasRemaining() {
+        for (int i = firstSegment; i < segments.length; i++) if(segments[i].hasRemaining()) return true;
+        return false;
+    }
+
+    /**
+     * @return the bytes not written yet
+     */
+    public long remaining() {
+        long remaining = 0;
+        for (int i = firstSegment; i < segments.length; i++) remaining += segments[i].remaining();
+        return remaining;
+    }
+
+    /**
+     * @return views of the label buffers at their current positions, for other outputs. Every
+     * buffer starts at zero, so {@link ByteBuffer#rewind() rewind} them for the whole label.
+     */
+    public ByteBuffer[] getSegments() {
+        ByteBuffer[] views = new ByteBuffer[segments.length];
+        for (int i=0; i<segments.length; i++) views[i] = segments[i].duplicate();
+        return views;
+    }
+
+    /**
+     * Return the field buffers to pool. Do not use the label after releasing it.
+     */
+    public void release() {
+        if(pool != null) for (ByteBuffer buffer : pooledBuffers) pool.release(buffer);
+        pooledBuffers.clear();
+    }
+}
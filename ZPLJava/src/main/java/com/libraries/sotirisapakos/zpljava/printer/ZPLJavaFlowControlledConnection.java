@@ -0,0 +1,229 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import java.io.IOException;
+
+/**
+ * A printer connection that sends labels only when the printer can take them.
+ * <ul>
+ *     <li>A background thread polls the printer with <code>~HS</code> every {@code pollMillis}.</li>
+ *     <li>Labels are sent while the formats waiting in the printer (the last reported ones plus
+ *     the ones sent after that report) are less than the send window.</li>
+ *     <li>The window grows by one when the printer ran out of formats while labels were waiting,
+ *     and is halved when the printer reports a full buffer.</li>
+ *     <li>Nothing is sent while the printer reports paper out, ribbon out, head up or pause. If
+ *     this lasts more than {@code sendTimeoutMillis}, {@link #send(byte[], int, int)} fails, so
+ *     that a {@link ZPLJavaPrinterScheduler} can send the label to another printer.</li>
+ * </ul>
+ */
+public class ZPLJavaFlowControlledConnection implements ZPLJavaPrinterConnection {
+
+    public static final long DEFAULT_POLL_MILLIS = 250;
+    public static final int DEFAULT_INITIAL_WINDOW = 4;
+    public static final int DEFAULT_MAX_WINDOW = 64;
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 30000;
+
+    private static final byte[] FORMAT_START = {'^', 'X', 'A'};
+
+    private final ZPLJavaStatusPrinterConnection connection;
+    private final long pollMillis;
+    private final int maxWindow;
+    private final long sendTimeoutMillis;
+    private final Object lock = new Object();
+    private final Thread poller;
+
+    private ZPLJavaHostStatus status;
+    private IOException statusFailure;
+    private int window;
+    /**
+     * Formats sent since connection was created, counted after they are written
+     */
+    private long sentFormats = 0;
+    /**
+     * Formats being written now. A status may not have them yet, so they always count as waiting.
+     */
+    private long sendingFormats = 0;
+    /**
+     * {@link #sentFormats} when the last status was requested
+     */
+    private long sentFormatsAtStatus = 0;
+    /**
+     * A label waited for the window after the last status
+     */
+    private boolean waited = false;
+    private volatile boolean closed = false;
+
+    public ZPLJavaFlowControlledConnection(ZPLJavaStatusPrinterConnection connection){
+        this(connection, DEFAULT_POLL_MILLIS, DEFAULT_INITIAL_WINDOW, DEFAULT_MAX_WINDOW, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param connection the printer
+     * @param pollMillis time between <code>~HS</code> requests
+     * @param initialWindow formats that may wait in printer at start
+     * @param maxWindow maximum formats that may wait in printer
+     * @param sendTimeoutMillis maximum time to wait for the printer, for every label
+     */
+    public ZPLJavaFlowControlledConnection(ZPLJavaStatusPrinterConnection connection, long pollMillis,
+                                           int initialWindow, int maxWindow, long sendTimeoutMillis){
+        this.connection = connection;
+        this.pollMillis = Math.max(1, pollMillis);
+        this.maxWindow = Math.max(1, maxWindow);
+        this.window = Math.min(this.maxWindow, Math.max(1, initialWindow));
+        this.sendTimeoutMillis = Math.max(0, sendTimeoutMillis);
+        poller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, "zpljava-status-" + connection.getName());
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @Override
+    public void send(byte[] bytes, int offset, int length) throws IOException {
+        int formats = countFormats(bytes, offset, length);
+        synchronized (lock) {
+            long end = System.nanoTime() + sendTimeoutMillis * 1000000L;
+            while (!canSend(formats)) {
+                if(closed) throw new IOException("Connection is closed");
+                waited = true;
+                long remaining = (end - System.nanoTime()) / 1000000L;
+                if(remaining <= 0) throw new IOException("Printer " + connection.getName() + " is not ready: "
+                        + (statusFailure != null ? statusFailure.getMessage() : status));
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for printer");
+                }
+            }
+            sendingFormats += formats;
+        }
+        try {
+            connection.send(bytes, offset, length);
+        } finally {
+            synchronized (lock) {
+                // a status requested from now on may have these formats, so they are counted
+                // like the ones sent before it
+                sendingFormats -= formats;
+                sentFormats += formats;
+            }
+        }
+    }
+
+    /**
+     * Called with lock.
+     */
+    private boolean canSend(int formats){
+        if(status == null || statusFailure != null || !status.isReady() || status.isBufferFull()) return false;
+        long waiting = getWaitingFormats();
+        // a big batch is sent alone
+        return waiting == 0 || waiting + formats <= window;
+    }
+
+    /**
+     * Called with lock.
+     */
+    private long getWaitingFormats(){
+        return status.getFormatsInBuffer() + sentFormats - sentFormatsAtStatus + sendingFormats;
+    }
+
+    private void poll(){
+        while (!closed) {
+            long sentBefore;
+            synchronized (lock) {
+                sentBefore = sentFormats;
+            }
+            try {
+                ZPLJavaHostStatus newStatus = connection.queryHostStatus();
+                synchronized (lock) {
+                    update(newStatus, sentBefore);
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    statusFailure = e;
+                    lock.notifyAll();
+                }
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called with lock.
+     */
+    private void update(ZPLJavaHostStatus newStatus, long sentBefore){
+        status = newStatus;
+        statusFailure = null;
+        sentFormatsAtStatus = sentBefore;
+        if(newStatus.isBufferFull()) window = Math.max(1, window / 2);
+        else if(waited && newStatus.isReady() && newStatus.getFormatsInBuffer() == 0
+                && newStatus.getLabelsRemaining() == 0) {
+            // printer had nothing to print while labels were held back
+            window = Math.min(maxWindow, window + 1);
+        }
+        waited = false;
+        lock.notifyAll();
+    }
+
+    private static int countFormats(byte[] bytes, int offset, int length){
+        int count = 0;
+        int end = offset + length - FORMAT_START.length;
+        for (int i = offset; i <= end; i++) {
+            if(bytes[i] == FORMAT_START[0] && bytes[i + 1] == FORMAT_START[1] && bytes[i + 2] == FORMAT_START[2]) count++;
+        }
+        return Math.max(1, count);
+    }
+
+    /**
+     * @return the current send window in formats
+     */
+    public int getWindow() {
+        synchronized (lock) {
+            return window;
+        }
+    }
+    /**
+     * @return the last printer state or null if printer did not answer yet
+     */
+    public ZPLJavaHostStatus getLastStatus() {
+        synchronized (lock) {
+            return status;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return connection.getName();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        poller.interrupt();
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        connection.close();
+    }
+}
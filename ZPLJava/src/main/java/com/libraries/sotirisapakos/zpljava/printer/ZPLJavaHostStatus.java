@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import java.util.ArrayList;
+
+/**
+ * The printer state of a <code>~HS</code> (host status) response.
+ * <p>The response has three strings, each one between STX and ETX:</p>
+ * <ul>
+ *     <li><code>aaa,b,c,dddd,eee,f,g,h,iii,j,k,l</code>: communication settings, paper out, pause,
+ *     label length, formats in receive buffer, buffer full, diagnostic mode, partial format,
+ *     unused, corrupt RAM, under temperature, over temperature</li>
+ *     <li><code>mmm,n,o,p,q,r,s,t,uuuuuuuu,v,www</code>: function settings, unused, head up,
+ *     ribbon out, thermal transfer, print mode, print width mode, label waiting, labels remaining
+ *     in batch, format while printing, graphic images stored</li>
+ *     <li><code>xxxx,y</code>: password, static RAM installed</li>
+ * </ul>
+ */
+public class ZPLJavaHostStatus {
+
+    public static final String COMMAND = "~HS";
+    public static final char STX = 0x02;
+    public static final char ETX = 0x03;
+
+    private final boolean paperOut;
+    private final boolean paused;
+    private final int labelLength;
+    private final int formatsInBuffer;
+    private final boolean bufferFull;
+    private final boolean partialFormat;
+    private final boolean headUp;
+    private final boolean ribbonOut;
+    private final boolean labelWaiting;
+    private final int labelsRemaining;
+
+    private ZPLJavaHostStatus(String[] first, String[] second){
+        paperOut = flag(first[1]);
+        paused = flag(first[2]);
+        labelLength = number(first[3]);
+        formatsInBuffer = number(first[4]);
+        bufferFull = flag(first[5]);
+        partialFormat = flag(first[7]);
+        headUp = flag(second[2]);
+        ribbonOut = flag(second[3]);
+        labelWaiting = flag(second[7]);
+        labelsRemaining = number(second[8]);
+    }
+
+    /**
+     * @param response the <code>~HS</code> response, with STX, ETX, CR and LF
+     * @return the printer state
+     * @throws IllegalArgumentException if response is not valid
+     */
+    public static ZPLJavaHostStatus parse(String response){
+        ArrayList<String> strings = new ArrayList<>(3);
+        int position = 0;
+        while ((position = response.indexOf(STX, position)) >= 0) {
+            int end = response.indexOf(ETX, position);
+            if(end < 0) break;
+            strings.add(response.substring(position + 1, end));
+            position = end + 1;
+        }
+        if(strings.size() < 2) throw new IllegalArgumentException("Invalid host status: " + response);
+        String[] first = strings.get(0).split(",");
+        String[] second = strings.get(1).split(",");
+        if(first.length < 12 || second.length < 11)
+            throw new IllegalArgumentException("Invalid host status: " + response);
+        return new ZPLJavaHostStatus(first, second);
+    }
+
+    private static boolean flag(String value){
+        return value.trim().equals("1");
+    }
+
+    private static int number(String value){
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid host status number: " + value);
+        }
+    }
+
+    /**
+     * @return true if printer can print: no paper out, pause, head up or ribbon out
+     */
+    public boolean isReady() {
+        return !paperOut && !paused && !headUp && !ribbonOut;
+    }
+
+    public boolean isPaperOut() {
+        return paperOut;
+    }
+    public boolean isPaused() {
+        return paused;
+    }
+    /**
+     * @return label length in dots
+     */
+    public int getLabelLength() {
+        return labelLength;
+    }
+    /**
+     * @return the formats received but not printed yet
+     */
+    public int getFormatsInBuffer() {
+        return formatsInBuffer;
+    }
+    public boolean isBufferFull() {
+        return bufferFull;
+    }
+    /**
+     * @return true if printer has received only part of a format
+     */
+    public boolean isPartialFormat() {
+        return partialFormat;
+    }
+    public boolean isHeadUp() {
+        return headUp;
+    }
+    public boolean isRibbonOut() {
+        return ribbonOut;
+    }
+    /**
+     * @return true if a printed label waits to be taken (peel off mode)
+     */
+    public boolean isLabelWaiting() {
+        return labelWaiting;
+    }
+    /**
+     * @return labels of the current format not printed yet
+     */
+    public int getLabelsRemaining() {
+        return labelsRemaining;
+    }
+
+    /**
+     * @return the first problem of printer, or "ready"
+     */
+    @Override
+    public String toString() {
+        if(paperOut) return "paper out";
+        if(ribbonOut) return "ribbon out";
+        if(headUp) return "head up";
+        if(paused) return "paused";
+        if(bufferFull) return "buffer full";
+        return "ready";
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reorder the pending jobs of one printer, so that jobs of the same
+ * {@link ZPLJavaPrintJob#setFormat(String, byte[]) stored format} and
+ * {@link ZPLJavaPrintJob#addResource(String, byte[]) resources} are printed together and their
+ * definitions are sent once.
+ * <ul>
+ *     <li>The batcher keeps a model of the formats and resources stored in the printer, limited
+ *     to {@code printerMemory} bytes with the least recently used ones removed first.</li>
+ *     <li>From the first {@code window} pending jobs, the next job is the one with the fewest
+ *     bytes to download; on equal bytes, the one with the current format; then the oldest.</li>
+ *     <li>Jobs with the same {@link ZPLJavaPrintJob#setStickyKey(String) sticky key} keep their
+ *     order, and a job is never passed over more than {@code maxDelay} times.</li>
+ *     <li>Every returned job starts with the definitions the printer does not have.</li>
+ * </ul>
+ * Statistics compare the reordered jobs with the same jobs in their original order.
+ * All methods are thread safe.
+ */
+public class ZPLJavaJobBatcher {
+
+    public static final int DEFAULT_WINDOW = 64;
+    public static final int DEFAULT_MAX_DELAY = 32;
+    public static final long DEFAULT_PRINTER_MEMORY = 1024 * 1024;
+
+    private final int window;
+    private final int maxDelay;
+    private final long printerMemory;
+    private final ArrayList<Pending> pending = new ArrayList<>();
+    private PrinterMemory memory;
+
+    private long jobCount = 0;
+    private long switchCount = 0;
+    private long originalSwitchCount = 0;
+    private long downloadedBytes = 0;
+    private long originalDownloadedBytes = 0;
+
+    public ZPLJavaJobBatcher(){
+        this(DEFAULT_WINDOW, DEFAULT_MAX_DELAY, DEFAULT_PRINTER_MEMORY);
+    }
+
+    /**
+     * @param window pending jobs to choose from
+     * @param maxDelay maximum times a job can be passed over by newer jobs
+     * @param printerMemory printer memory for stored formats and resources in bytes
+     */
+    public ZPLJavaJobBatcher(int window, int maxDelay, long printerMemory){
+        this.window = Math.max(1, window);
+        this.maxDelay = Math.max(0, maxDelay);
+        this.printerMemory = Math.max(0, printerMemory);
+        this.memory = new PrinterMemory(this.printerMemory);
+    }
+
+    /**
+     * @param job job to reorder with the other pending jobs
+     */
+    public synchronized void add(ZPLJavaPrintJob job){
+        pending.add(new Pending(job));
+    }
+
+    /**
+     * @return the jobs added after the last {@link #drain()}
+     */
+    public synchronized int getPendingCount(){
+        return pending.size();
+    }
+
+    /**
+     * Reorder all pending jobs.
+     * @return the jobs to send, in order, with the missing definitions at start
+     */
+    public synchronized List<ZPLJavaPrintJob> drain(){
+        PrinterMemory original = memory.copy();
+        for (Pending job : pending) originalDownloadedBytes += original.download(job.job).length;
+        originalSwitchCount += original.switches;
+
+        ArrayList<ZPLJavaPrintJob> jobs = new ArrayList<>(pending.size());
+        long switchesBefore = memory.switches;
+        while (!pending.isEmpty()) {
+            int next = next();
+            for (int i=0; i<next; i++) pending.get(i).skipped++;
+            ZPLJavaPrintJob job = pending.remove(next).job;
+            byte[] download = memory.download(job);
+            downloadedBytes += download.length;
+            jobs.add(download.length == 0 ? job : withDownload(job, download));
+        }
+        switchCount += memory.switches - switchesBefore;
+        jobCount += jobs.size();
+        return jobs;
+    }
+
+    /**
+     * @return index of the next pending job
+     */
+    private int next(){
+        Pending first = pending.get(0);
+        if(first.skipped >= maxDelay) return 0;
+        HashSet<String> olderKeys = new HashSet<>();
+        int best = -1;
+        long bestCost = Long.MAX_VALUE;
+        boolean bestKeepsFormat = false;
+        int end = Math.min(window, pending.size());
+        for (int i=0; i<end; i++) {
+            Pending candidate = pending.get(i);
+            // a job passed over too many times goes first, older ones were already checked
+            if(candidate.skipped >= maxDelay) return i;
+            String key = candidate.job.getStickyKey();
+            if(key != null && !olderKeys.add(key)) continue;
+            long cost = memory.cost(candidate.job);
+            boolean keepsFormat = candidate.job.getFormatName() != null
+                    && candidate.job.getFormatName().equals(memory.currentFormat);
+            if(cost < bestCost || (cost == bestCost && keepsFormat && !bestKeepsFormat)) {
+                best = i;
+                bestCost = cost;
+                bestKeepsFormat = keepsFormat;
+            }
+        }
+        return best;
+    }
+
+    private static ZPLJavaPrintJob withDownload(ZPLJavaPrintJob job, byte[] download){
+        byte[] code = new byte[download.length + job.getCode().length];
+        System.arraycopy(download, 0, code, 0, download.length);
+        System.arraycopy(job.getCode(), 0, code, download.length, job.getCode().length);
+        ZPLJavaPrintJob result = new ZPLJavaPrintJob(code, job.getLabelHeight(), job.getDpmmValue());
+        result.setCopies(job.getCopies());
+        result.setStickyKey(job.getStickyKey());
+        result.setFormat(job.getFormatName(), job.getFormatDefinition());
+        for (Map.Entry<String, byte[]> resource : job.getResources().entrySet()) {
+            result.addResource(resource.getKey(), resource.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Call this when the printer was restarted and lost its stored formats and resources.
+     */
+    public synchronized void forgetPrinterMemory(){
+        memory = new PrinterMemory(printerMemory);
+    }
+
+    // -------------------------------- statistics --------------------------------
+
+    /**
+     * @return the jobs returned by {@link #drain()}
+     */
+    public synchronized long getJobCount() {
+        return jobCount;
+    }
+    /**
+     * @return how many times a job had another stored format than the previous one
+     */
+    public synchronized long getSwitchCount() {
+        return switchCount;
+    }
+    /**
+     * @return the format switches of the same jobs in their original order
+     */
+    public synchronized long getOriginalSwitchCount() {
+        return originalSwitchCount;
+    }
+    /**
+     * @return the bytes of definitions sent
+     */
+    public synchronized long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+    /**
+     * @return the definition bytes not sent thanks to reordering
+     */
+    public synchronized long getBytesSaved() {
+        return originalDownloadedBytes - downloadedBytes;
+    }
+
+    private static class Pending {
+        final ZPLJavaPrintJob job;
+        int skipped = 0;
+
+        Pending(ZPLJavaPrintJob job){
+            this.job = job;
+        }
+    }
+
+    /**
+     * Formats and resources stored in printer, least recently used first.
+     */
+    private static class PrinterMemory {
+        final long capacity;
+        final LinkedHashMap<String, Integer> stored = new LinkedHashMap<>(16, 0.75f, true);
+        long storedBytes = 0;
+        String currentFormat;
+        long switches = 0;
+
+        PrinterMemory(long capacity){
+            this.capacity = capacity;
+        }
+
+        PrinterMemory copy(){
+            PrinterMemory copy = new PrinterMemory(capacity);
+            copy.stored.putAll(stored);
+            copy.storedBytes = storedBytes;
+            copy.currentFormat = currentFormat;
+            return copy;
+        }
+
+        /**
+         * @return bytes to download for this job
+         */
+        long cost(ZPLJavaPrintJob job){
+            long cost = 0;
+            if(job.getFormatName() != null && job.getFormatDefinition() != null
+                    && !stored.containsKey(job.getFormatName())) cost += job.getFormatDefinition().length;
+            for (Map.Entry<String, byte[]> resource : job.getResources().entrySet()) {
+                if(!stored.containsKey(resource.getKey())) cost += resource.getValue().length;
+            }
+            return cost;
+        }
+
+        /**
+         * Store the definitions of job.
+         * @return the definitions the printer did not have
+         */
+        byte[] download(ZPLJavaPrintJob job){
+            ArrayList<byte[]> downloads = new ArrayList<>(2);
+            int length = 0;
+            // resources first, the format may use them
+            for (Map.Entry<String, byte[]> resource : job.getResources().entrySet()) {
+                if(store(resource.getKey(), resource.getValue().length)) {
+                    downloads.add(resource.getValue());
+                    length += resource.getValue().length;
+                }
+            }
+            String format = job.getFormatName();
+            if(format != null) {
+                if(job.getFormatDefinition() != null && store(format, job.getFormatDefinition().length)) {
+                    downloads.add(job.getFormatDefinition());
+                    length += job.getFormatDefinition().length;
+                }
+                if(!format.equals(currentFormat)) {
+                    if(currentFormat != null) switches++;
+                    currentFormat = format;
+                }
+            }
+            byte[] download = new byte[length];
+            int position = 0;
+            for (byte[] bytes : downloads) {
+                System.arraycopy(bytes, 0, download, position, bytes.length);
+                position += bytes.length;
+            }
+            return download;
+        }
+
+        /**
+         * @return true if definition was not stored
+         */
+        private boolean store(String name, int size){
+            if(stored.get(name) != null) return false;
+            stored.put(name, size);
+            storedBytes += size;
+            Iterator<Map.Entry<String, Integer>> oldest = stored.entrySet().iterator();
+            while (storedBytes > capacity && stored.size() > 1) {
+                Map.Entry<String, Integer> entry = oldest.next();
+                storedBytes -= entry.getValue();
+                oldest.remove();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generated label code to print, with the label length the printer needs to print it.
+ */
+public class ZPLJavaPrintJob {
+
+    private final byte[] code;
+    private final int labelHeight;
+    private final int dpmmValue;
+    private int copies = 1;
+    private String stickyKey;
+    private String formatName;
+    private byte[] formatDefinition;
+    private final LinkedHashMap<String, byte[]> resources = new LinkedHashMap<>();
+
+    /**
+     * @param code label code
+     * @param labelHeight label height in dots
+     * @param dpmmValue resolution of the label, one of the
+     *                  {@link com.libraries.sotirisapakos.zpljava.config.LabelSize} values
+     */
+    public ZPLJavaPrintJob(byte[] code, int labelHeight, int dpmmValue){
+        this.code = code;
+        this.labelHeight = Math.max(0, labelHeight);
+        this.dpmmValue = Math.max(1, dpmmValue);
+    }
+
+    /**
+     * Create a job of a label. Label code must be generated.
+     * @param label the label
+     * @return the print job
+     */
+    public static ZPLJavaPrintJob of(ZPLJavaLabel label){
+        ZPLJavaPrintJob job = new ZPLJavaPrintJob(label.getLabelCodeBytes(),
+                label.getLabelHeight(), label.getDpmmValue());
+        job.setCopies(label.getPrintQuantity());
+        return job;
+    }
+
+    /**
+     * @param printSpeed print speed in inches per second
+     * @return the time the printer needs to print all copies of this label, in nanoseconds
+     */
+    public long getPrintNanos(double printSpeed){
+        return (long) (copies * (labelHeight * 1e9 / dpmmValue / printSpeed));
+    }
+
+    public byte[] getCode() {
+        return code;
+    }
+    public int getLabelHeight() {
+        return labelHeight;
+    }
+    public int getDpmmValue() {
+        return dpmmValue;
+    }
+    public int getCopies() {
+        return copies;
+    }
+    /**
+     * @param copies copies the printer prints of this job, like the
+     *               {@link ZPLJavaLabel#setPrintQuantity(int) label print quantity}
+     */
+    public void setCopies(int copies) {
+        if(copies > 0) this.copies = copies;
+    }
+    public String getStickyKey() {
+        return stickyKey;
+    }
+
+    /**
+     * The stored format this job recalls with <code>^XF</code>. The definition is sent only if the
+     * printer does not have it, see {@link ZPLJavaJobBatcher}.
+     * @param formatName format name, like <code>R:SHIPPING.ZPL</code>
+     * @param formatDefinition the <code>^XA^DF...^XZ</code> code that stores the format
+     */
+    public void setFormat(String formatName, byte[] formatDefinition) {
+        this.formatName = formatName;
+        this.formatDefinition = formatDefinition;
+    }
+    /**
+     * Add a resource this job uses, like a graphic stored with <code>~DG</code>. The download is sent
+     * only if the printer does not have it, see {@link ZPLJavaJobBatcher}.
+     * @param name resource name, like <code>R:LOGO.GRF</code>
+     * @param download the code that stores the resource
+     */
+    public void addResource(String name, byte[] download) {
+        resources.put(name, download);
+    }
+    public String getFormatName() {
+        return formatName;
+    }
+    public byte[] getFormatDefinition() {
+        return formatDefinition;
+    }
+    /**
+     * @return the resources of this job by name
+     */
+    public Map<String, byte[]> getResources() {
+        return Collections.unmodifiableMap(resources);
+    }
+
+    /**
+     * Jobs with the same sticky key are printed by the same printer, like the labels of one order.
+     * @param stickyKey the key or null
+     */
+    public void setStickyKey(String stickyKey) {
+        this.stickyKey = stickyKey;
+    }
+}
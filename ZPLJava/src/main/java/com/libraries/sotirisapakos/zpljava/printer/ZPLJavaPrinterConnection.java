@@ -0,0 +1,42 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A connection to a ZPL printer.
+ * <p>Implementations must be thread safe: the bytes of one {@link #send(byte[], int, int)} call are
+ * never mixed with the bytes of another call.</p>
+ */
+public interface ZPLJavaPrinterConnection extends Closeable {
+
+    /**
+     * Send label code to printer.
+     * @param bytes label code
+     * @param offset first byte to send
+     * @param length bytes to send
+     * @throws IOException if printer can not be reached
+     */
+    void send(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * @return printer name, for logs and error messages
+     */
+    String getName();
+
+}
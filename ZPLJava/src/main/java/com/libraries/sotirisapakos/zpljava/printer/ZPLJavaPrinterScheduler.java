@@ -0,0 +1,341 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Send print jobs to a pool of identical printers.
+ * <ul>
+ *     <li>Every job goes to the printer that will be free first. The time a printer needs for its
+ *     jobs is estimated from the label heights and the print speed.</li>
+ *     <li>Jobs with the same {@link ZPLJavaPrintJob#setStickyKey(String) sticky key} go to the same
+ *     printer, until the key is {@link #release(String) released}.</li>
+ *     <li>If a printer fails, its jobs are sent to the other printers, in the same order and with
+ *     the jobs of a sticky key still together. The failed printer is tried again after
+ *     {@code retryMillis}.</li>
+ * </ul>
+ * Every printer has its own sending thread. All methods are thread safe.
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaPrinterScheduler scheduler = new ZPLJavaPrinterScheduler(Arrays.asList(
+ *         ZPLJavaTcpPrinterConnection.of("10.0.0.21"), ZPLJavaTcpPrinterConnection.of("10.0.0.22")));
+ * ZPLJavaPrintJob job = ZPLJavaPrintJob.of(label);
+ * job.setStickyKey(orderNumber);
+ * scheduler.submit(job);
+ * }</pre>
+ */
+public class ZPLJavaPrinterScheduler implements Closeable {
+
+    /**
+     * Print speed in inches per second
+     */
+    public static final double DEFAULT_PRINT_SPEED = 6;
+    public static final long DEFAULT_RETRY_MILLIS = 5000;
+
+    /**
+     * Receives the result of every job. Called from the sending threads.
+     */
+    public interface Listener {
+        void onSent(ZPLJavaPrintJob job, ZPLJavaPrinterConnection printer);
+        void onFailed(ZPLJavaPrinterConnection printer, IOException e);
+    }
+
+    private final Object lock = new Object();
+    private final Printer[] printers;
+    private final double printSpeed;
+    private final long retryNanos;
+    private final HashMap<String, Printer> stickyPrinters = new HashMap<>();
+    private volatile Listener listener;
+    private long reroutedCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a scheduler with {@link #DEFAULT_PRINT_SPEED} and {@link #DEFAULT_RETRY_MILLIS}.
+     * @param connections the printers
+     */
+    public ZPLJavaPrinterScheduler(List<? extends ZPLJavaPrinterConnection> connections){
+        this(connections, DEFAULT_PRINT_SPEED, DEFAULT_RETRY_MILLIS);
+    }
+
+    /**
+     * @param connections the printers
+     * @param printSpeed print speed of the printers in inches per second
+     * @param retryMillis time to wait before trying a failed printer again
+     */
+    public ZPLJavaPrinterScheduler(List<? extends ZPLJavaPrinterConnection> connections, double printSpeed,
+                                   long retryMillis){
+        if(connections.isEmpty()) throw new IllegalArgumentException("No printers");
+        this.printSpeed = printSpeed > 0 ? printSpeed : DEFAULT_PRINT_SPEED;
+        this.retryNanos = Math.max(0, retryMillis) * 1000000L;
+        printers = new Printer[connections.size()];
+        for (int i=0; i<printers.length; i++) {
+            printers[i] = new Printer(connections.get(i));
+            Thread thread = new Thread(printers[i], "zpljava-printer-" + connections.get(i).getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queue a job to the best printer.
+     * @param job the job
+     * @return the printer of the job
+     * @throws IllegalStateException if scheduler is closed
+     */
+    public ZPLJavaPrinterConnection submit(ZPLJavaPrintJob job){
+        synchronized (lock) {
+            if(closed) throw new IllegalStateException("Scheduler is closed");
+            Printer printer = route(job, null, System.nanoTime());
+            printer.queue.addLast(job);
+            lock.notifyAll();
+            return printer.connection;
+        }
+    }
+
+    /**
+     * Jobs with this sticky key can go to any printer again.
+     * @param stickyKey the key
+     */
+    public void release(String stickyKey){
+        synchronized (lock) {
+            stickyPrinters.remove(stickyKey);
+        }
+    }
+
+    /**
+     * Find the printer of a job and add the job time to it. Called with lock.
+     * @param excluded printer to avoid or null
+     */
+    private Printer route(ZPLJavaPrintJob job, Printer excluded, long now){
+        String key = job.getStickyKey();
+        Printer best = key == null ? null : stickyPrinters.get(key);
+        if(best == null || best == excluded || !best.isAvailable(now)) {
+            best = null;
+            for (Printer printer : printers) {
+                if(printer == excluded || !printer.isAvailable(now)) continue;
+                if(best == null || printer.getDelay(now) < best.getDelay(now)) best = printer;
+            }
+            // no printer is available, wait for the one that is tried first
+            if(best == null) {
+                for (Printer printer : printers) {
+                    if(printer == excluded && printers.length > 1) continue;
+                    if(best == null || printer.retryAt - best.retryAt < 0) best = printer;
+                }
+            }
+            if(key != null) stickyPrinters.put(key, best);
+        }
+        best.busyUntil = Math.max(0, best.getDelay(now)) + now + job.getPrintNanos(printSpeed);
+        return best;
+    }
+
+    /**
+     * Wait until all queued jobs are sent.
+     * @param timeoutMillis maximum time to wait
+     * @return true if all jobs are sent
+     * @throws InterruptedException if thread is interrupted
+     */
+    public boolean awaitSent(long timeoutMillis) throws InterruptedException {
+        long end = System.nanoTime() + timeoutMillis * 1000000L;
+        synchronized (lock) {
+            while (true) {
+                boolean empty = true;
+                for (Printer printer : printers) {
+                    if(!printer.queue.isEmpty() || printer.sending) empty = false;
+                }
+                if(empty) return true;
+                long remaining = (end - System.nanoTime()) / 1000000L;
+                if(remaining <= 0) return false;
+                lock.wait(remaining);
+            }
+        }
+    }
+
+    /**
+     * Stop the sending threads. Jobs in the middle of sending are completed.
+     * @return the jobs that were not sent
+     */
+    public List<ZPLJavaPrintJob> shutdown(){
+        synchronized (lock) {
+            closed = true;
+            ArrayList<ZPLJavaPrintJob> unsent = new ArrayList<>();
+            for (Printer printer : printers) {
+                // the job in the middle of sending stays in queue until it is sent
+                if(printer.sending && !printer.queue.isEmpty()) printer.queue.pollFirst();
+                unsent.addAll(printer.queue);
+                printer.queue.clear();
+            }
+            lock.notifyAll();
+            return unsent;
+        }
+    }
+
+    /**
+     * {@link #shutdown()} and close the printer connections.
+     */
+    @Override
+    public void close() throws IOException {
+        shutdown();
+        for (Printer printer : printers) printer.connection.close();
+    }
+
+    // -------------------------------- statistics --------------------------------
+
+    public int getPrinterCount() {
+        return printers.length;
+    }
+    /**
+     * @param printer printer index
+     * @return the estimated time until printer prints all its jobs
+     */
+    public long getEstimatedDelayMillis(int printer){
+        synchronized (lock) {
+            return Math.max(0, printers[printer].getDelay(System.nanoTime())) / 1000000L;
+        }
+    }
+    /**
+     * @param printer printer index
+     * @return the jobs waiting for this printer
+     */
+    public int getQueuedCount(int printer){
+        synchronized (lock) {
+            return printers[printer].queue.size();
+        }
+    }
+    public long getSentCount(int printer){
+        synchronized (lock) {
+            return printers[printer].sentCount;
+        }
+    }
+    public long getFailureCount(int printer){
+        synchronized (lock) {
+            return printers[printer].failureCount;
+        }
+    }
+    public boolean isAvailable(int printer){
+        synchronized (lock) {
+            return printers[printer].isAvailable(System.nanoTime());
+        }
+    }
+    /**
+     * @return the jobs sent to another printer because their printer failed
+     */
+    public long getReroutedCount(){
+        synchronized (lock) {
+            return reroutedCount;
+        }
+    }
+
+    private class Printer implements Runnable {
+        final ZPLJavaPrinterConnection connection;
+        /**
+         * Jobs to send, first one is being sent if {@link #sending}
+         */
+        final ArrayDeque<ZPLJavaPrintJob> queue = new ArrayDeque<>();
+        boolean sending = false;
+        long busyUntil = System.nanoTime();
+        boolean failed = false;
+        long retryAt;
+        long sentCount = 0;
+        long failureCount = 0;
+
+        Printer(ZPLJavaPrinterConnection connection){
+            this.connection = connection;
+        }
+
+        boolean isAvailable(long now){
+            return !failed || now - retryAt >= 0;
+        }
+
+        long getDelay(long now){
+            return busyUntil - now;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    ZPLJavaPrintJob job;
+                    synchronized (lock) {
+                        while (!closed && (queue.isEmpty() || !isAvailable(System.nanoTime()))) {
+                            if(queue.isEmpty()) lock.wait();
+                            else lock.wait(Math.max(1, (retryAt - System.nanoTime()) / 1000000L));
+                        }
+                        if(closed) return;
+                        job = queue.peekFirst();
+                        sending = true;
+                    }
+                    try {
+                        connection.send(job.getCode(), 0, job.getCode().length);
+                    } catch (IOException e) {
+                        fail(e);
+                        continue;
+                    }
+                    synchronized (lock) {
+                        sending = false;
+                        failed = false;
+                        sentCount++;
+                        if(!queue.isEmpty() && queue.peekFirst() == job) queue.pollFirst();
+                        lock.notifyAll();
+                    }
+                    Listener current = listener;
+                    if(current != null) current.onSent(job, connection);
+                }
+            } catch (InterruptedException e) {
+                // scheduler is stopped
+            }
+        }
+
+        /**
+         * Mark printer as failed and move its jobs to the other printers.
+         */
+        private void fail(IOException e){
+            synchronized (lock) {
+                sending = false;
+                failed = true;
+                failureCount++;
+                long now = System.nanoTime();
+                retryAt = now + retryNanos;
+                busyUntil = now;
+                if(printers.length > 1 && !closed) {
+                    Iterator<Map.Entry<String, Printer>> sticky = stickyPrinters.entrySet().iterator();
+                    while (sticky.hasNext()) if(sticky.next().getValue() == this) sticky.remove();
+                    ArrayList<ZPLJavaPrintJob> jobs = new ArrayList<>(queue);
+                    queue.clear();
+                    for (ZPLJavaPrintJob job : jobs) {
+                        Printer printer = route(job, this, now);
+                        printer.queue.addLast(job);
+                        if(printer != this) reroutedCount++;
+                    }
+                }
+                lock.notifyAll();
+            }
+            Listener current = listener;
+            if(current != null) current.onFailed(connection, e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import java.io.IOException;
+
+/**
+ * A printer connection that can also read the printer state.
+ */
+public interface ZPLJavaStatusPrinterConnection extends ZPLJavaPrinterConnection {
+
+    /**
+     * Send <code>~HS</code> and wait for the response. Never called in the middle of a
+     * {@link #send(byte[], int, int)}.
+     * @return the printer state
+     * @throws IOException if printer can not be reached or the response is not valid
+     */
+    ZPLJavaHostStatus queryHostStatus() throws IOException;
+
+}
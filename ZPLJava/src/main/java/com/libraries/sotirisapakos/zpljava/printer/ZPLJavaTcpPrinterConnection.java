@@ -0,0 +1,254 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaMetrics;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaTracer;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A connection to a network printer on its raw TCP port (usually 9100).
+ * <p>The socket is opened with the first label and kept open for the next ones. If the printer
+ * closed the connection before any byte of the label was written, the socket is opened again and
+ * the label is sent once more. A label written in part is never sent again, so it can not be
+ * printed twice.</p>
+ * <p>Socket timeout does not stop a blocked write, so the socket is closed if a part of a label
+ * is not written in the timeout.</p>
+ */
+public class ZPLJavaTcpPrinterConnection implements ZPLJavaStatusPrinterConnection {
+
+    public static final int DEFAULT_PORT = 9100;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private static final byte[] STATUS_COMMAND = ZPLJavaHostStatus.COMMAND.getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Bytes written with one write timeout
+     */
+    private static final int WRITE_CHUNK_SIZE = 8 * 1024;
+    /**
+     * Closes the sockets of blocked writes, shared by all connections
+     */
+    private static final ScheduledThreadPoolExecutor WRITE_TIMEOUTS = createWriteTimeouts();
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private Socket socket;
+    private OutputStream output;
+    private InputStream input;
+    /**
+     * Bytes of the last label written to socket
+     */
+    private int writtenBytes;
+
+    public ZPLJavaTcpPrinterConnection(String host){
+        this(host, DEFAULT_PORT, DEFAULT_TIMEOUT_MILLIS);
+    }
+    /**
+     * @param host printer host name or address
+     * @param port printer raw port
+     * @param timeoutMillis connect, read and write timeout
+     */
+    public ZPLJavaTcpPrinterConnection(String host, int port, int timeoutMillis){
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Create a connection of a <code>host</code> or <code>host:port</code> address.
+     * @param address printer address
+     * @return the connection, not opened yet
+     */
+    public static ZPLJavaTcpPrinterConnection of(String address){
+        int colon = address.lastIndexOf(':');
+        if(colon < 0) return new ZPLJavaTcpPrinterConnection(address);
+        try {
+            return new ZPLJavaTcpPrinterConnection(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1)), DEFAULT_TIMEOUT_MILLIS);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid printer address " + address);
+        }
+    }
+
+    @Override
+    public synchronized void send(byte[] bytes, int offset, int length) throws IOException {
+        ZPLJavaTracer tracer = ZPLJavaMetrics.getTracer();
+        Object span = tracer == null ? null : tracer.begin(ZPLJavaTracer.Event.SEND);
+        boolean failed = true;
+        boolean reused = socket != null;
+        try {
+            try {
+                write(bytes, offset, length);
+            } catch (IOException e) {
+                closeSocket();
+                // an old socket may be closed by printer, try once with a new one. If a part of
+                // the label was written, printer may have it, so the error is reported instead.
+                if(!reused || writtenBytes > 0) throw e;
+                write(bytes, offset, length);
+            }
+            failed = false;
+        } finally {
+            if(tracer != null) tracer.endSend(span, getName(), length, failed);
+        }
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        writtenBytes = 0;
+        if(socket == null) open();
+        while (writtenBytes < length) {
+            int chunk = Math.min(WRITE_CHUNK_SIZE, length - writtenBytes);
+            WriteTimeout timeout = timeoutMillis > 0 ? new WriteTimeout(socket) : null;
+            ScheduledFuture<?> future = timeout == null ? null
+                    : WRITE_TIMEOUTS.schedule(timeout, timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                output.write(bytes, offset + writtenBytes, chunk);
+            } catch (IOException e) {
+                if(timeout != null && timeout.expired) {
+                    throw new SocketTimeoutException("Printer " + getName() + " did not read for "
+                            + timeoutMillis + " ms");
+                }
+                throw e;
+            } finally {
+                if(future != null) future.cancel(false);
+            }
+            writtenBytes += chunk;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createWriteTimeouts() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "zpljava-write-timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Close a socket whose write took too long, the blocked write fails at once.
+     */
+    private static class WriteTimeout implements Runnable {
+        private final Socket socket;
+        volatile boolean expired = false;
+
+        WriteTimeout(Socket socket){
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            expired = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // the write fails anyway
+            }
+        }
+    }
+
+    /**
+     * Open the socket, if not open yet.
+     * @throws IOException if printer can not be reached
+     */
+    public synchronized void open() throws IOException {
+        if(socket != null) return;
+        Socket newSocket = new Socket();
+        try {
+            newSocket.setTcpNoDelay(true);
+            newSocket.setSoTimeout(timeoutMillis);
+            newSocket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            output = newSocket.getOutputStream();
+            input = new BufferedInputStream(newSocket.getInputStream(), 1024);
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+        socket = newSocket;
+    }
+
+    @Override
+    public synchronized ZPLJavaHostStatus queryHostStatus() throws IOException {
+        ZPLJavaTracer tracer = ZPLJavaMetrics.getTracer();
+        Object span = tracer == null ? null : tracer.begin(ZPLJavaTracer.Event.ACK);
+        ZPLJavaHostStatus status = null;
+        try {
+            if(socket == null) open();
+            // skip old responses
+            while (input.available() > 0) input.skip(input.available());
+            output.write(STATUS_COMMAND);
+            output.flush();
+            StringBuilder response = new StringBuilder(128);
+            int strings = 0;
+            while (strings < 3) {
+                int c = input.read();
+                if(c < 0) throw new EOFException("Printer closed connection");
+                response.append((char) c);
+                if(c == ZPLJavaHostStatus.ETX) strings++;
+            }
+            status = ZPLJavaHostStatus.parse(response.toString());
+            return status;
+        } catch (IOException e) {
+            closeSocket();
+            throw e;
+        } catch (IllegalArgumentException e) {
+            closeSocket();
+            throw new IOException(e.getMessage());
+        } finally {
+            if(tracer != null) tracer.endAck(span, getName(), status == null ? -1 : status.getFormatsInBuffer(),
+                    status == null ? -1 : status.getLabelsRemaining());
+        }
+    }
+
+    private void closeSocket() {
+        if(socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // socket is not used anymore
+        }
+        socket = null;
+        output = null;
+        input = null;
+    }
+
+    @Override
+    public String getName() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeSocket();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.serialization;
+
+/**
+ * Constants of the binary format written by {@link ZPLJavaLabelWriter} and read by
+ * {@link ZPLJavaLabelReader}.
+ * <h3>Stream structure:</h3>
+ * <ul>
+ *     <li>header: {@link #MAGIC} (4 bytes) and {@link #VERSION} (varint)</li>
+ *     <li>any number of labels, each one starting with {@link #RECORD_LABEL}</li>
+ *     <li>{@link #RECORD_END} at the end of the stream</li>
+ * </ul>
+ * Every number is a varint (7 bits per byte, the high bit marks that more bytes follow).
+ * Coordinates are zigzag encoded, so small negative values (from margins) stay small.
+ * <p>Every string is written once per stream. The first time is written as a {@link #STRING_NEW}
+ * reference followed by its UTF-8 bytes and next times only as a reference to the string table.</p>
+ */
+public interface ZPLJavaBinaryFormat {
+
+    /**
+     * "ZPLJ" at the start of every stream
+     */
+    int MAGIC = 0x5A504C4A;
+    /**
+     * Current format version. Readers accept this and every older version.
+     * <ul>
+     *     <li>1: first version</li>
+     *     <li>2: label print quantity, text and barcode serialization</li>
+     *     <li>3: graphic components</li>
+     *     <li>4: label continuous media and tail</li>
+     *     <li>5: label code page selection</li>
+     *     <li>6: group components with their children</li>
+     * </ul>
+     */
+    int VERSION = 6;
+
+    /**
+     * Serialization modes of text and barcode, 0 for none and else
+     * {@link com.libraries.sotirisapakos.zpljava.components.ZPLJavaSerialization#getMode()}
+     */
+    int SERIALIZATION_NONE = 0;
+
+    int RECORD_END = 0;
+    int RECORD_LABEL = 1;
+
+    /**
+     * Component types
+     */
+    int TYPE_INSTRUCTION    = 0;
+    int TYPE_TEXT           = 1;
+    int TYPE_BARCODE        = 2;
+    int TYPE_RECTANGLE      = 3;
+    int TYPE_ELLIPSE        = 4;
+    int TYPE_DIAGONAL_LINE  = 5;
+    int TYPE_GRAPHIC        = 6;
+    int TYPE_GROUP          = 7;
+
+    /**
+     * Deepest nesting of groups in groups
+     */
+    int MAX_GROUP_DEPTH = 64;
+
+    /**
+     * String references. Values from {@link #STRING_TABLE} and above point to
+     * the string table: {@code index = reference - STRING_TABLE}
+     */
+    int STRING_NULL     = 0;
+    int STRING_LITERAL  = 1;
+    int STRING_NEW      = 2;
+    int STRING_TABLE    = 3;
+
+    /**
+     * Strings longer than this value are written as literals and never added to the string table.
+     */
+    int MAX_INTERNED_STRING_LENGTH = 256;
+    /**
+     * Maximum strings in string table, to keep memory bounded for endless streams.
+     */
+    int MAX_INTERNED_STRINGS = 4096;
+
+}
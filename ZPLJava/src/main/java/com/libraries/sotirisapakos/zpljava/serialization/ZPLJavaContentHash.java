@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.serialization;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.graphics.ZPLJavaTrueTypeFont;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A stable SHA-256 hash of a label design. Two labels with the same components and data have the
+ * same hash, between different runs of the application too, because the hash is calculated from
+ * the {@link ZPLJavaLabelWriter binary format} of the label and not from object identity.
+ * <p>{@link ZPLJavaText#setHostFont(ZPLJavaTrueTypeFont) Host fonts} are not in the binary format,
+ * so the {@link ZPLJavaTrueTypeFont#getDigest() font digest} of every text is hashed too.</p>
+ */
+public final class ZPLJavaContentHash {
+
+    /**
+     * Hash length in bytes
+     */
+    public static final int LENGTH = 32;
+
+    private final byte[] bytes;
+    private final int hashCode;
+
+    private ZPLJavaContentHash(byte[] bytes){
+        this.bytes = bytes;
+        this.hashCode = Arrays.hashCode(bytes);
+    }
+
+    /**
+     * Calculate the content hash of a label
+     * @param label label to hash
+     * @return the content hash
+     */
+    public static ZPLJavaContentHash of(ZPLJavaLabel label){
+        MessageDigest digest = newDigest();
+        digest.update(ZPLJavaLabelWriter.toByteArray(label));
+        List<ZPLJavaComponent> components = label.getComponents();
+        for (int i=0; i<components.size(); i++) {
+            ZPLJavaComponent component = components.get(i);
+            if(component.getClass() != ZPLJavaText.class) continue;
+            ZPLJavaTrueTypeFont font = ((ZPLJavaText) component).getHostFont();
+            if(font == null) continue;
+            // component index, so the same font on another text is a different label
+            digest.update(new byte[]{(byte) (i >> 24), (byte) (i >> 16), (byte) (i >> 8), (byte) i});
+            digest.update(font.getDigest());
+        }
+        return new ZPLJavaContentHash(digest.digest());
+    }
+
+    /**
+     * Calculate the content hash of any data, like a label design in binary format
+     * @param data data to hash
+     * @return the content hash
+     */
+    public static ZPLJavaContentHash of(byte[] data){
+        return new ZPLJavaContentHash(newDigest().digest(data));
+    }
+
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform supports SHA-256
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Create a hash from its bytes, like the ones returned by {@link #toByteArray()}
+     * @param bytes {@link #LENGTH} bytes
+     * @return the content hash
+     */
+    public static ZPLJavaContentHash fromByteArray(byte[] bytes){
+        if(bytes.length != LENGTH) throw new IllegalArgumentException("Hash must be " + LENGTH + " bytes");
+        return new ZPLJavaContentHash(bytes.clone());
+    }
+
+    public byte[] toByteArray() {
+        return bytes.clone();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other) return true;
+        if(!(other instanceof ZPLJavaContentHash)) return false;
+        return Arrays.equals(bytes, ((ZPLJavaContentHash) other).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * @return the hash as hex string
+     */
+    @Override
+    public String toString() {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i=0; i<bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
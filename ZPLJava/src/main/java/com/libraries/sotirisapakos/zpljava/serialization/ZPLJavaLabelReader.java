@@ -0,0 +1,396 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.serialization;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaBarcode;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaDiagonalLine;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaEllipse;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaDiagonalLine.DiagonalLineOrientation;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGraphic;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGroup;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaRectangle;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaSerialization;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Read {@link ZPLJavaLabel} designs written by {@link ZPLJavaLabelWriter}. Every label is read
+ * back with its components, so it can be edited and generated again.
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaLabelReader reader = new ZPLJavaLabelReader(new FileInputStream(file));
+ * ZPLJavaLabel label;
+ * while ((label = reader.readLabel()) != null) print(label.getLabelCode());
+ * reader.close();
+ * }</pre>
+ * Reader buffers the stream, so do not read anything else from the same stream.
+ * <p>Lengths and counts of the stream are not trusted: memory is allocated as data is read, and
+ * lengths above {@link #MAX_STRING_LENGTH} or {@link #MAX_GRAPHIC_SIZE} fail with an
+ * {@link IOException}. So do unknown colors, orientations and alignments, and groups nested
+ * deeper than {@link ZPLJavaBinaryFormat#MAX_GROUP_DEPTH}.</p>
+ * <p>Not thread safe, use one reader per stream.</p>
+ * @see ZPLJavaBinaryFormat
+ */
+public class ZPLJavaLabelReader implements Closeable {
+
+    /**
+     * Longest string accepted, in bytes
+     */
+    public static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+    /**
+     * Biggest graphic accepted, in bytes
+     */
+    public static final int MAX_GRAPHIC_SIZE = 64 * 1024 * 1024;
+
+    private static final String[] ALIGNMENTS = {
+            ZPLJavaComponent.POSITION_LEFT, ZPLJavaComponent.POSITION_RIGHT,
+            ZPLJavaComponent.POSITION_CENTER, ZPLJavaComponent.POSITION_JUSTIFIED,
+            ZPLJavaComponent.POSITION_BOTTOM
+    };
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position = 0;
+    private int limit = 0;
+
+    private final ArrayList<String> stringTable = new ArrayList<>();
+    private int version = -1;
+    private boolean endOfStream = false;
+
+    public ZPLJavaLabelReader(InputStream in){
+        this.in = in;
+    }
+
+    /**
+     * Read one label from binary format
+     * @param bytes bytes created by {@link ZPLJavaLabelWriter#toByteArray(ZPLJavaLabel)}
+     * @return the label or null if there is no label in bytes
+     * @throws IOException if bytes are not a valid label design
+     */
+    public static ZPLJavaLabel fromByteArray(byte[] bytes) throws IOException {
+        ZPLJavaLabelReader reader = new ZPLJavaLabelReader(new ByteArrayInputStream(bytes));
+        ZPLJavaLabel label = reader.readLabel();
+        reader.close();
+        return label;
+    }
+
+    /**
+     * Read the next label of the stream. Label code is generated before returning the label.
+     * @return the next label or null at the end of stream
+     * @throws IOException if stream can not be read or is not a valid label design stream
+     */
+    public ZPLJavaLabel readLabel() throws IOException {
+        if(endOfStream) return null;
+        readHeader();
+        int record = readVarint();
+        if(record == ZPLJavaBinaryFormat.RECORD_END) {
+            endOfStream = true;
+            return null;
+        }
+        if(record != ZPLJavaBinaryFormat.RECORD_LABEL) throw new IOException("Unknown record: " + record);
+
+        int widthInches = readVarint();
+        int heightInches = readVarint();
+        int dpmmValue = readVarint();
+        int labelWidth = readVarint();
+        int labelHeight = readVarint();
+        boolean utf8FormatEnabled = readBoolean();
+
+        ZPLJavaLabel label = widthInches > 0 && heightInches > 0
+                ? new ZPLJavaLabel(widthInches, heightInches, dpmmValue)
+                : new ZPLJavaLabel();
+        label.setLabelSizeInDots(labelWidth, labelHeight, dpmmValue);
+        label.setUtf8FormatEnabled(utf8FormatEnabled);
+        if(version >= 2) {
+            int printQuantity = readVarint();
+            int pauseCount = readVarint();
+            int replicates = readVarint();
+            boolean overridePause = readBoolean();
+            label.setPrintQuantity(printQuantity, pauseCount, replicates, overridePause, readBoolean());
+        }
+        if(version >= 4) {
+            label.setContinuousMedia(readBoolean());
+            label.setContinuousTail(readVarint());
+        }
+        if(version >= 5) label.setCodePageSelection(readBoolean());
+
+        label.setComponents(readComponents(0));
+        return label;
+    }
+
+    /**
+     * @return the format version of the stream or -1 if nothing is read yet
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @param depth groups around the components
+     */
+    private ArrayList<ZPLJavaComponent> readComponents(int depth) throws IOException {
+        int size = readVarint();
+        if(size < 0) throw new IOException("Invalid component count: " + size);
+        // the count is not trusted to allocate memory, components are added as they are read
+        ArrayList<ZPLJavaComponent> components = new ArrayList<>(Math.min(size, 256));
+        for (int i=0; i<size; i++) components.add(readComponent(depth));
+        return components;
+    }
+
+    private ZPLJavaComponent readComponent(int depth) throws IOException {
+        int type = readVarint();
+        switch (type) {
+            case ZPLJavaBinaryFormat.TYPE_TEXT: {
+                ZPLJavaText text = new ZPLJavaText();
+                readCommon(text);
+                text.setAlignment(readChoice("alignment", ALIGNMENTS));
+                text.setFontSize(readVarint());
+                text.setSpecialCharacterSupport(readBoolean());
+                String value = readString();
+                if(value != null && !value.isEmpty()) text.setText(value);
+                if(version >= 2) text.setSerialization(readSerialization());
+                return text;
+            }
+            case ZPLJavaBinaryFormat.TYPE_BARCODE: {
+                ZPLJavaBarcode barcode = new ZPLJavaBarcode("");
+                readCommon(barcode);
+                barcode.barcodePlacement = readChoice("alignment", ALIGNMENTS);
+                barcode.setOrientation(readChoice("orientation",
+                        ZPLJavaComponent.Orientation.ORIENTATION_NORMAL,
+                        ZPLJavaComponent.Orientation.ORIENTATION_ROTATED,
+                        ZPLJavaComponent.Orientation.ORIENTATION_INVERTED,
+                        ZPLJavaComponent.Orientation.ORIENTATION_BOTTOM_UP));
+                barcode.setBarcodeHeight(readVarint());
+                barcode.setBarcodeWidth(readVarint());
+                barcode.setBarcodeTextPlacement(readVarint());
+                barcode.setUCCCheckDigit(readBoolean());
+                barcode.setBarcodeMode(readString());
+                barcode.setBarcodeData(readString());
+                if(version >= 2) barcode.setSerialization(readSerialization());
+                if(readBoolean()) {
+                    ZPLJavaRectangle background = new ZPLJavaRectangle();
+                    readCommon(background);
+                    readShape(background);
+                    background.setCornerRadius(readVarint());
+                    barcode.setBackgroundRectangle(background);
+                }
+                return barcode;
+            }
+            case ZPLJavaBinaryFormat.TYPE_RECTANGLE: {
+                ZPLJavaRectangle rectangle = new ZPLJavaRectangle();
+                readCommon(rectangle);
+                readShape(rectangle);
+                rectangle.setCornerRadius(readVarint());
+                return rectangle;
+            }
+            case ZPLJavaBinaryFormat.TYPE_ELLIPSE: {
+                ZPLJavaEllipse ellipse = new ZPLJavaEllipse();
+                readCommon(ellipse);
+                readShape(ellipse);
+                return ellipse;
+            }
+            case ZPLJavaBinaryFormat.TYPE_DIAGONAL_LINE: {
+                ZPLJavaDiagonalLine line = new ZPLJavaDiagonalLine();
+                readCommon(line);
+                readShape(line);
+                line.setOrientation(readChoice("orientation",
+                        DiagonalLineOrientation.DIAGONAL_LEFT, DiagonalLineOrientation.DIAGONAL_RIGHT));
+                return line;
+            }
+            case ZPLJavaBinaryFormat.TYPE_GRAPHIC: {
+                ZPLJavaGraphic graphic = new ZPLJavaGraphic();
+                readCommon(graphic);
+                int width = readVarint();
+                int height = readVarint();
+                if(width > 0 && height > 0) {
+                    long size = (width + 7L) / 8 * height;
+                    if(size > MAX_GRAPHIC_SIZE) throw new IOException("Invalid graphic size: " + width + "x" + height);
+                    graphic.setData(width, height, readBytes((int) size));
+                }
+                return graphic;
+            }
+            case ZPLJavaBinaryFormat.TYPE_GROUP: {
+                if(depth >= ZPLJavaBinaryFormat.MAX_GROUP_DEPTH) throw new IOException("Groups nested too deep");
+                ZPLJavaGroup group = new ZPLJavaGroup();
+                readCommon(group);
+                group.setComponents(readComponents(depth + 1));
+                return group;
+            }
+            case ZPLJavaBinaryFormat.TYPE_INSTRUCTION: {
+                InstructionComponent component = new InstructionComponent();
+                readCommon(component);
+                component.setInstruction(readString());
+                return component;
+            }
+            default:
+                throw new IOException("Unknown component type: " + type);
+        }
+    }
+
+    private void readCommon(ZPLJavaComponent component) throws IOException {
+        String id = readString();
+        component.setId(id == null ? "" : id);
+        component.setX(readSignedVarint());
+        component.setY(readSignedVarint());
+        component.setLabelWidth(readSignedVarint());
+        component.setLabelHeight(readSignedVarint());
+    }
+
+    private ZPLJavaSerialization readSerialization() throws IOException {
+        int mode = readVarint();
+        switch (mode) {
+            case ZPLJavaBinaryFormat.SERIALIZATION_NONE:
+                return null;
+            case ZPLJavaSerialization.MODE_SERIAL_NUMBER: {
+                int increment = readSignedVarint();
+                return ZPLJavaSerialization.serialNumber(increment, readBoolean());
+            }
+            case ZPLJavaSerialization.MODE_MASK: {
+                String mask = readString();
+                return ZPLJavaSerialization.mask(mask, readString());
+            }
+            default:
+                throw new IOException("Unknown serialization mode: " + mode);
+        }
+    }
+
+    private void readShape(ZPLJavaShape shape) throws IOException {
+        // margins can make the size negative, which the setters do not accept
+        int width = readSignedVarint();
+        if(width >= 0) shape.setWidth(width);
+        else shape.setMarginRight(-width);
+        int height = readSignedVarint();
+        if(height >= 0) shape.setHeight(height);
+        else shape.setMarginBottom(-height);
+        shape.setThickness(readVarint());
+        shape.setColor(readChoice("color", ZPLJavaShape.Color.COLOR_BLACK, ZPLJavaShape.Color.COLOR_WHITE));
+    }
+
+    private void readHeader() throws IOException {
+        if(version >= 0) return;
+        int magic = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        if(magic != ZPLJavaBinaryFormat.MAGIC) throw new IOException("Not a ZPLJava label stream");
+        int streamVersion = readVarint();
+        if(streamVersion > ZPLJavaBinaryFormat.VERSION)
+            throw new IOException("Unsupported format version: " + streamVersion);
+        version = streamVersion;
+    }
+
+    // -------------------------------- primitives --------------------------------
+
+    /**
+     * Read a string that must be one of some values, ignoring case.
+     * @param name value name, for the error message
+     * @param values accepted values
+     * @return the string as it is written
+     * @throws IOException if string is null or not one of the values
+     */
+    private String readChoice(String name, String...values) throws IOException {
+        String value = readString();
+        if(value != null) for (String accepted : values) if(accepted.equalsIgnoreCase(value)) return value;
+        throw new IOException("Invalid " + name + ": " + value);
+    }
+
+    private String readString() throws IOException {
+        int reference = readVarint();
+        if(reference == ZPLJavaBinaryFormat.STRING_NULL) return null;
+        if(reference >= ZPLJavaBinaryFormat.STRING_TABLE) {
+            int index = reference - ZPLJavaBinaryFormat.STRING_TABLE;
+            if(index >= stringTable.size()) throw new IOException("Invalid string reference: " + index);
+            return stringTable.get(index);
+        }
+        int length = readVarint();
+        if(length < 0 || length > MAX_STRING_LENGTH) throw new IOException("Invalid string length: " + length);
+        byte[] bytes = readBytes(length);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if(reference == ZPLJavaBinaryFormat.STRING_NEW) stringTable.add(value);
+        return value;
+    }
+
+    private boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    private int readSignedVarint() throws IOException {
+        int value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private int readByte() throws IOException {
+        if(position == limit && !fill()) throw new EOFException();
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Read bytes of a length from the stream. The array grows as bytes are read, so a length
+     * longer than the stream fails at the end of stream, without allocating the whole length.
+     */
+    private byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[Math.min(length, buffer.length)];
+        int offset = 0;
+        while (offset < length) {
+            if(position == limit && !fill()) throw new EOFException();
+            if(offset == bytes.length) bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+            int count = Math.min(limit - position, bytes.length - offset);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+            offset += count;
+        }
+        return bytes;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if(read <= 0) return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * A custom component read back with its instruction only.
+     */
+    private static class InstructionComponent extends ZPLJavaComponent {
+        @Override
+        public void generateInstruction() {}
+    }
+}
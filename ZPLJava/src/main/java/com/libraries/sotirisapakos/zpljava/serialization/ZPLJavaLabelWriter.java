@@ -0,0 +1,318 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.serialization;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaBarcode;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaDiagonalLine;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaEllipse;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGraphic;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGroup;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaRectangle;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaSerialization;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Write {@link ZPLJavaLabel} designs to a compact binary stream. Use {@link ZPLJavaLabelReader}
+ * to read them back as editable labels.
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaLabelWriter writer = new ZPLJavaLabelWriter(new FileOutputStream(file));
+ * writer.writeLabel(label1);
+ * writer.writeLabel(label2);
+ * writer.close();
+ * }</pre>
+ * Custom components (not one of the library components) are written with their generated
+ * instruction only.
+ * <p>Not thread safe, use one writer per stream.</p>
+ * @see ZPLJavaBinaryFormat
+ */
+public class ZPLJavaLabelWriter implements Flushable, Closeable {
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int count = 0;
+
+    /**
+     * Strings already written to this stream and their string table index
+     */
+    private final HashMap<String, Integer> stringTable = new HashMap<>();
+    private boolean headerWritten = false;
+
+    public ZPLJavaLabelWriter(OutputStream out){
+        this.out = out;
+    }
+
+    /**
+     * Write label to binary format
+     * @param label label to write
+     * @return the label design as bytes
+     */
+    public static byte[] toByteArray(ZPLJavaLabel label){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ZPLJavaLabelWriter writer = new ZPLJavaLabelWriter(bytes);
+            writer.writeLabel(label);
+            writer.close();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write label and all of its components to stream
+     * @param label label to write
+     * @throws IOException if stream can not be written
+     */
+    public void writeLabel(ZPLJavaLabel label) throws IOException {
+        writeHeader();
+        writeVarint(ZPLJavaBinaryFormat.RECORD_LABEL);
+        writeVarint(label.getLabelWidthInches());
+        writeVarint(label.getLabelHeightInches());
+        writeVarint(label.getDpmmValue());
+        writeVarint(label.getLabelWidth());
+        writeVarint(label.getLabelHeight());
+        writeBoolean(label.isUtf8FormatEnabled());
+        writeVarint(label.getPrintQuantity());
+        writeVarint(label.getPauseCount());
+        writeVarint(label.getReplicates());
+        writeBoolean(label.isOverridePause());
+        writeBoolean(label.isCutOnError());
+        writeBoolean(label.isContinuousMedia());
+        writeVarint(label.getContinuousTail());
+        writeBoolean(label.isCodePageSelection());
+        writeVarint(label.getComponents().size());
+        for (ZPLJavaComponent component : label.getComponents()) writeComponent(component);
+    }
+
+    private void writeComponent(ZPLJavaComponent component) throws IOException {
+        Class<?> type = component.getClass();
+        if(type == ZPLJavaText.class) {
+            ZPLJavaText text = (ZPLJavaText) component;
+            writeVarint(ZPLJavaBinaryFormat.TYPE_TEXT);
+            writeCommon(text);
+            writeString(text.getAlignment());
+            writeVarint(text.getFontSize());
+            writeBoolean(text.isSpecialCharacterSupport());
+            writeString(text.getText());
+            writeSerialization(text.getSerialization());
+        }
+        else if(type == ZPLJavaBarcode.class) {
+            ZPLJavaBarcode barcode = (ZPLJavaBarcode) component;
+            writeVarint(ZPLJavaBinaryFormat.TYPE_BARCODE);
+            writeCommon(barcode);
+            writeString(barcode.barcodePlacement);
+            writeString(barcode.getOrientation());
+            writeVarint(barcode.getBarcodeHeight());
+            writeVarint(barcode.getBarcodeWidth());
+            writeVarint(barcode.getBarcodeTextPlacement());
+            writeBoolean(barcode.isUCCCheckDigit());
+            writeString(barcode.getBarcodeMode());
+            writeString(barcode.getBarcodeData());
+            writeSerialization(barcode.getSerialization());
+            ZPLJavaRectangle background = barcode.getBackgroundRectangle();
+            writeBoolean(background != null);
+            if(background != null) {
+                writeCommon(background);
+                writeShape(background);
+                writeVarint(background.getCornerRadius());
+            }
+        }
+        else if(type == ZPLJavaRectangle.class) {
+            ZPLJavaRectangle rectangle = (ZPLJavaRectangle) component;
+            writeVarint(ZPLJavaBinaryFormat.TYPE_RECTANGLE);
+            writeCommon(rectangle);
+            writeShape(rectangle);
+            writeVarint(rectangle.getCornerRadius());
+        }
+        else if(type == ZPLJavaEllipse.class) {
+            writeVarint(ZPLJavaBinaryFormat.TYPE_ELLIPSE);
+            writeCommon(component);
+            writeShape((ZPLJavaShape) component);
+        }
+        else if(type == ZPLJavaDiagonalLine.class) {
+            ZPLJavaDiagonalLine line = (ZPLJavaDiagonalLine) component;
+            writeVarint(ZPLJavaBinaryFormat.TYPE_DIAGONAL_LINE);
+            writeCommon(line);
+            writeShape(line);
+            writeString(line.getOrientation());
+        }
+        else if(type == ZPLJavaGraphic.class) {
+            ZPLJavaGraphic graphic = (ZPLJavaGraphic) component;
+            writeVarint(ZPLJavaBinaryFormat.TYPE_GRAPHIC);
+            writeCommon(graphic);
+            byte[] data = graphic.getData();
+            writeVarint(data == null ? 0 : graphic.getWidth());
+            writeVarint(data == null ? 0 : graphic.getHeight());
+            if(data != null) writeBytes(data);
+        }
+        else if(type == ZPLJavaGroup.class) {
+            ZPLJavaGroup group = (ZPLJavaGroup) component;
+            writeVarint(ZPLJavaBinaryFormat.TYPE_GROUP);
+            writeCommon(group);
+            writeVarint(group.getComponents().size());
+            for (ZPLJavaComponent child : group.getComponents()) writeComponent(child);
+        }
+        else {
+            // custom component, keep only its instruction
+            component.generateInstruction();
+            writeVarint(ZPLJavaBinaryFormat.TYPE_INSTRUCTION);
+            writeCommon(component);
+            writeString(component.getInstruction());
+        }
+    }
+
+    private void writeCommon(ZPLJavaComponent component) throws IOException {
+        writeString(component.getId());
+        writeSignedVarint(component.getX());
+        writeSignedVarint(component.getY());
+        writeSignedVarint(component.getLabelWidth());
+        writeSignedVarint(component.getLabelHeight());
+    }
+
+    private void writeSerialization(ZPLJavaSerialization serialization) throws IOException {
+        if(serialization == null) {
+            writeVarint(ZPLJavaBinaryFormat.SERIALIZATION_NONE);
+            return;
+        }
+        writeVarint(serialization.getMode());
+        if(serialization.getMode() == ZPLJavaSerialization.MODE_SERIAL_NUMBER) {
+            writeSignedVarint(serialization.getIncrement());
+            writeBoolean(serialization.isLeadingZeros());
+        }
+        else {
+            writeString(serialization.getMask());
+            writeString(serialization.getMaskIncrement());
+        }
+    }
+
+    private void writeShape(ZPLJavaShape shape) throws IOException {
+        writeSignedVarint(shape.getWidth());
+        writeSignedVarint(shape.getHeight());
+        writeVarint(shape.getThickness());
+        writeString(shape.getColor());
+    }
+
+    private void writeHeader() throws IOException {
+        if(headerWritten) return;
+        headerWritten = true;
+        int magic = ZPLJavaBinaryFormat.MAGIC;
+        writeByte(magic >>> 24);
+        writeByte(magic >>> 16);
+        writeByte(magic >>> 8);
+        writeByte(magic);
+        writeVarint(ZPLJavaBinaryFormat.VERSION);
+    }
+
+    // -------------------------------- primitives --------------------------------
+
+    private void writeString(String value) throws IOException {
+        if(value == null) {
+            writeVarint(ZPLJavaBinaryFormat.STRING_NULL);
+            return;
+        }
+        Integer index = stringTable.get(value);
+        if(index != null) {
+            writeVarint(ZPLJavaBinaryFormat.STRING_TABLE + index);
+            return;
+        }
+        if(value.length() <= ZPLJavaBinaryFormat.MAX_INTERNED_STRING_LENGTH
+                && stringTable.size() < ZPLJavaBinaryFormat.MAX_INTERNED_STRINGS) {
+            stringTable.put(value, stringTable.size());
+            writeVarint(ZPLJavaBinaryFormat.STRING_NEW);
+        }
+        else writeVarint(ZPLJavaBinaryFormat.STRING_LITERAL);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Zigzag encoding: 0 -> 0, -1 -> 1, 1 -> 2, -2 -> 3...
+     */
+    private void writeSignedVarint(int value) throws IOException {
+        writeVarint((value << 1) ^ (value >> 31));
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeByte(int value) throws IOException {
+        if(count == buffer.length) flushBuffer();
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if(bytes.length > buffer.length - count) {
+            flushBuffer();
+            if(bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if(count == 0) return;
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    /**
+     * Write buffered bytes to stream. Call {@link #close()} instead at the end of the stream.
+     * @throws IOException if stream can not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Write the end of stream record and close the stream.
+     * @throws IOException if stream can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        writeHeader();
+        writeVarint(ZPLJavaBinaryFormat.RECORD_END);
+        flushBuffer();
+        out.close();
+    }
+}
@@ -23,7 +23,7 @@ import com.libraries.sotirisapakos.zpljava.components.ZPLJavaBarcode;
  * Can use this object to create ZPL code by using {@link ZPLJavaComponent#setInstruction(String)} method
  * but it is not recommended.
  */
-public abstract class ZPLJavaComponent {
+public abstract class ZPLJavaComponent implements Cloneable {
 
     /**
      * Any component can have an orientation. To apply orientation to component, just call
@@ -254,6 +254,56 @@ public abstract class ZPLJavaComponent {
         return componentSize;
     }
 
+    /**
+     * Create a copy of this component. Every parameter is copied, so the copy can be changed
+     * (moved, {@link #scale(int, int) scaled}) without touching the original component.
+     * <p>Override this method if component holds other mutable objects (like another component).</p>
+     * @return a copy of this component
+     */
+    public ZPLJavaComponent copy(){
+        try {
+            return (ZPLJavaComponent) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // cannot happen, ZPLJavaComponent implements Cloneable
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Scale component geometry from one printer resolution to another. Every value in dots
+     * (position, label canvas, size) is converted with {@link #scaleDots(int, int, int)}.
+     * <p>Override this method at child classes that hold more values in dots and call
+     * <code>super.scale(fromDpmm, toDpmm)</code>. A custom instruction set with
+     * {@link #setInstruction(String)} can not be scaled.</p>
+     * @param fromDpmm resolution the component is designed for (one of the
+     *                 {@link com.libraries.sotirisapakos.zpljava.config.LabelSize LabelSize} values)
+     * @param toDpmm resolution to convert component to
+     */
+    public void scale(int fromDpmm, int toDpmm){
+        if(fromDpmm <= 0 || toDpmm <= 0 || fromDpmm == toDpmm) return;
+        x = scaleDots(x, fromDpmm, toDpmm);
+        y = scaleDots(y, fromDpmm, toDpmm);
+        labelWidth = scaleDots(labelWidth, fromDpmm, toDpmm);
+        labelHeight = scaleDots(labelHeight, fromDpmm, toDpmm);
+        componentSize = scaleDots(componentSize, fromDpmm, toDpmm);
+    }
+
+    /**
+     * Convert a value in dots from one resolution to another, rounding to the nearest dot.
+     * <p>Formula implemented: { {@code round(dots * toDpmm / fromDpmm)} }</p>
+     * A positive value never becomes zero, so a 1 dot line is still visible at a lower resolution.
+     * @param dots value to convert
+     * @param fromDpmm current resolution
+     * @param toDpmm target resolution
+     * @return the converted value
+     */
+    public static int scaleDots(int dots, int fromDpmm, int toDpmm){
+        if(dots == 0 || fromDpmm <= 0 || toDpmm <= 0) return dots;
+        int scaled = (int) Math.round((double) dots * toDpmm / fromDpmm);
+        if(scaled == 0) return dots > 0 ? 1 : -1;
+        return scaled;
+    }
+
     /**
      * Override this method at child classes. No need to call this function if you create a
      * custom {@link ZPLJavaComponent} object with custom instruction.
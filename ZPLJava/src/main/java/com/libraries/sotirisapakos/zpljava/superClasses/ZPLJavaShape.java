@@ -201,6 +201,18 @@ public class ZPLJavaShape extends ZPLJavaComponent{
         setMarginBottom(height);
     }
 
+    /**
+     * Scale also shape width, height and thickness.
+     * @see ZPLJavaComponent#scale(int, int)
+     */
+    @Override
+    public void scale(int fromDpmm, int toDpmm) {
+        super.scale(fromDpmm, toDpmm);
+        width = scaleDots(width, fromDpmm, toDpmm);
+        height = scaleDots(height, fromDpmm, toDpmm);
+        thickness = scaleDots(thickness, fromDpmm, toDpmm);
+    }
+
     /**
      * Must override this {@link ZPLJavaComponent#getComponentSize()} instruction
      */
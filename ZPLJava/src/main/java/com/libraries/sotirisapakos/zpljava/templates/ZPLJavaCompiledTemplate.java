@@ -0,0 +1,411 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaMetrics;
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaTracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Label code split to static parts and fields. Static parts are encoded to bytes once, so
+ * rendering a label is only copying bytes and writing the field values.
+ * <p>Fields are written in label code as <code>${name}</code>, see {@link #field(String)}.
+ * The same field can be used more than once.</p>
+ * <p>Field values can not change the label format: a field in field data (<code>^FD</code>,
+ * <code>^FV</code> or <code>^SN</code>) gets <code>^FH_</code> when compiled and its values are
+ * written with hex values for <code>^</code>, <code>~</code> and control characters; anywhere else
+ * these characters are removed from values.</p>
+ * <h3>Note: </h3>
+ * Field values are not known when template is compiled, so layout calculated from data (like
+ * barcode {@link com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent#POSITION_CENTER
+ * center} position) uses the placeholder length.
+ * <p>Compiled templates are immutable and can be rendered from many threads.</p>
+ */
+public class ZPLJavaCompiledTemplate {
+
+    private static final String FIELD_START = "${";
+    private static final String FIELD_END = "}";
+
+    private final String name;
+    private final Charset charset;
+    /**
+     * Static parts, always one more than slots: part, slot, part, slot, ..., part
+     */
+    private final byte[][] parts;
+    /**
+     * Field index of every slot
+     */
+    private final int[] slotFields;
+    /**
+     * Hex indicator of every slot in field data, 0 for slots out of field data
+     */
+    private final char[] slotIndicators;
+    private final String[] fieldNames;
+    private final int staticSize;
+    /**
+     * Static parts as direct buffers, created the first time they are requested
+     */
+    private volatile ByteBuffer[] staticBuffers;
+
+    private ZPLJavaCompiledTemplate(String name, Charset charset, byte[][] parts, int[] slotFields,
+                                    char[] slotIndicators, String[] fieldNames){
+        this.name = name;
+        this.charset = charset;
+        this.parts = parts;
+        this.slotFields = slotFields;
+        this.slotIndicators = slotIndicators;
+        this.fieldNames = fieldNames;
+        int size = 0;
+        for (byte[] part : parts) size += part.length;
+        this.staticSize = size;
+    }
+
+    /**
+     * Use this value as text or barcode data to mark where a field value goes.
+     * @param name field name (letters, digits, '_', '-' and '.')
+     * @return the field placeholder: <code>${name}</code>
+     */
+    public static String field(String name){
+        return FIELD_START + name + FIELD_END;
+    }
+
+    /**
+     * Compile a label. Label code is generated before compiling.
+     * @param name template name, for information only
+     * @param label the template label
+     * @return the compiled template
+     */
+    public static ZPLJavaCompiledTemplate compile(String name, ZPLJavaLabel label){
+        label.generateLabelCode();
+        return compile(name, label.getLabelCode());
+    }
+
+    /**
+     * Compile any ZPL code with <code>${name}</code> fields. Code with <code>^CI27</code>, like a
+     * label with {@link ZPLJavaLabel#setCodePageSelection(boolean) code page selection}, is encoded
+     * with code page 1252 and field values that code page has not are written as '?'.
+     * @param name template name, for information only
+     * @param code the template code
+     * @return the compiled template
+     */
+    public static ZPLJavaCompiledTemplate compile(String name, String code){
+        code = addHexIndicators(code);
+        Charset charset = code.contains("^CI" + ZPLJavaCodePage.CP1252)
+                ? ZPLJavaCodePage.CHARSET_1252 : StandardCharsets.UTF_8;
+        ArrayList<byte[]> parts = new ArrayList<>();
+        ArrayList<Integer> slots = new ArrayList<>();
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder indicators = new StringBuilder();
+        int position = 0;
+        int partStart = 0;
+        while ((position = code.indexOf(FIELD_START, position)) >= 0) {
+            int end = code.indexOf(FIELD_END, position + FIELD_START.length());
+            if(end < 0) break;
+            String field = code.substring(position + FIELD_START.length(), end);
+            if(!isFieldName(field)) {
+                position += FIELD_START.length();
+                continue;
+            }
+            parts.add(code.substring(partStart, position).getBytes(charset));
+            int fieldIndex = fields.indexOf(field);
+            if(fieldIndex < 0) {
+                fieldIndex = fields.size();
+                fields.add(field);
+            }
+            slots.add(fieldIndex);
+            indicators.append(slotIndicator(code, position));
+            position = end + FIELD_END.length();
+            partStart = position;
+        }
+        parts.add(code.substring(partStart).getBytes(charset));
+
+        int[] slotFields = new int[slots.size()];
+        for (int i=0; i<slotFields.length; i++) slotFields[i] = slots.get(i);
+        return new ZPLJavaCompiledTemplate(name, charset, parts.toArray(new byte[0][]), slotFields,
+                indicators.toString().toCharArray(), fields.toArray(new String[0]));
+    }
+
+    /**
+     * Add <code>^FH_</code> before every field data command that has fields and no <code>^FH</code>.
+     * The hex indicator already in that field data is written as hex too, so it prints the same.
+     * @param code the template code
+     * @return code with hex indicators, or code itself if nothing is added
+     */
+    private static String addHexIndicators(String code){
+        StringBuilder out = null;
+        int copied = 0;
+        int command = nextCommand(code, 0);
+        while (command >= 0) {
+            int next = nextCommand(code, command + 1);
+            int end = next < 0 ? code.length() : next;
+            if(isFieldData(code, command) && hexIndicator(code, command) == 0
+                    && hasField(code, command, end)) {
+                if(out == null) out = new StringBuilder(code.length() + 16);
+                out.append(code, copied, command)
+                        .append("^FH")
+                        .append(ZPLJavaCodePage.HEX_INDICATOR)
+                        .append(code, command, command + 3);
+                for (int i = command + 3; i < end; i++) {
+                    char c = code.charAt(i);
+                    int fieldEnd = code.indexOf(FIELD_END, i);
+                    if(code.startsWith(FIELD_START, i) && fieldEnd >= 0 && fieldEnd < end
+                            && isFieldName(code.substring(i + FIELD_START.length(), fieldEnd))) {
+                        // keep the field as it is
+                        out.append(code, i, fieldEnd + 1);
+                        i = fieldEnd;
+                    }
+                    else if(c == ZPLJavaCodePage.HEX_INDICATOR) out.append("_5F");
+                    else out.append(c);
+                }
+                copied = end;
+            }
+            command = next;
+        }
+        if(out == null) return code;
+        return out.append(code, copied, code.length()).toString();
+    }
+
+    /**
+     * @return true if code between from and end has a field with a valid name
+     */
+    private static boolean hasField(String code, int from, int end){
+        int position = from;
+        while ((position = code.indexOf(FIELD_START, position)) >= 0 && position < end) {
+            int fieldEnd = code.indexOf(FIELD_END, position + FIELD_START.length());
+            if(fieldEnd < 0 || fieldEnd >= end) return false;
+            if(isFieldName(code.substring(position + FIELD_START.length(), fieldEnd))) return true;
+            position += FIELD_START.length();
+        }
+        return false;
+    }
+
+    /**
+     * @return index of the next '^' or '~' command from index, or -1
+     */
+    private static int nextCommand(String code, int from){
+        for (int i = from; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if(c == '^' || c == '~') return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if command at index is <code>^FD</code>, <code>^FV</code> or <code>^SN</code>
+     */
+    private static boolean isFieldData(String code, int command){
+        return code.charAt(command) == '^'
+                && (code.regionMatches(true, command + 1, "FD", 0, 2)
+                || code.regionMatches(true, command + 1, "FV", 0, 2)
+                || code.regionMatches(true, command + 1, "SN", 0, 2));
+    }
+
+    /**
+     * @return the hex indicator of a <code>^FH</code> in the field of command, or 0 if field has no
+     * <code>^FH</code>
+     */
+    private static char hexIndicator(String code, int command){
+        int hex = code.lastIndexOf("^FH", command);
+        if(hex < 0 || hex < code.lastIndexOf("^FS", command)) return 0;
+        char c = hex + 3 < code.length() ? code.charAt(hex + 3) : '^';
+        // ^FH without parameter uses the default indicator
+        return c == '^' || c == '~' || c >= 0x80 ? ZPLJavaCodePage.HEX_INDICATOR : c;
+    }
+
+    /**
+     * @return the hex indicator of a field at index, or 0 if field is not in field data
+     */
+    private static char slotIndicator(String code, int position){
+        int command = Math.max(code.lastIndexOf('^', position), code.lastIndexOf('~', position));
+        if(command < 0 || !isFieldData(code, command)) return 0;
+        return hexIndicator(code, command);
+    }
+
+    private static boolean isFieldName(String field){
+        if(field.isEmpty()) return false;
+        for (int i=0; i<field.length(); i++) {
+            char c = field.charAt(i);
+            if(!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Render a label.
+     * @param values field values in the order of {@link #getFieldNames()}. Missing or null values
+     *               are rendered empty.
+     * @return the label code bytes
+     */
+    public byte[] render(String... values){
+        ByteArrayOutputStream out = new ByteArrayOutputStream(staticSize + 64 * slotFields.length);
+        try {
+            writeTo(out, values);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new AssertionError(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Render a label.
+     * @param values field values by field name. Missing values are rendered empty.
+     * @return the label code bytes
+     */
+    public byte[] render(Map<String, String> values){
+        return render(toValueArray(values));
+    }
+
+    /**
+     * Render a label directly to a stream.
+     * @param out stream to write to
+     * @param values field values in the order of {@link #getFieldNames()}
+     * @throws IOException if stream can not be written
+     */
+    public void writeTo(OutputStream out, String... values) throws IOException {
+        boolean measured = ZPLJavaMetrics.isEnabled();
+        long start = measured ? System.nanoTime() : 0;
+        ZPLJavaTracer tracer = ZPLJavaMetrics.getTracer();
+        Object span = tracer == null ? null : tracer.begin(ZPLJavaTracer.Event.GENERATION);
+        byte[][] encoded = encodeValues(values);
+        long size = staticSize;
+        for (int i=0; i<slotFields.length; i++) {
+            out.write(parts[i]);
+            out.write(encoded[i]);
+            size += encoded[i].length;
+        }
+        out.write(parts[parts.length - 1]);
+        if(measured) ZPLJavaMetrics.recordLabel(name, System.nanoTime() - start, size, 0);
+        if(tracer != null) tracer.endGeneration(span, name, 0, size);
+    }
+
+    /**
+     * Convert field values from names to the order of {@link #getFieldNames()}
+     * @param values field values by field name
+     * @return field values by field index
+     */
+    public String[] toValueArray(Map<String, String> values){
+        String[] array = new String[fieldNames.length];
+        for (int i=0; i<fieldNames.length; i++) array[i] = values.get(fieldNames[i]);
+        return array;
+    }
+
+    /**
+     * @param values field values by field index
+     * @return the escaped value of every slot. Every field value is encoded to bytes once, even if
+     * the field is used many times.
+     */
+    private byte[][] encodeValues(String[] values){
+        byte[][] encoded = new byte[slotFields.length][];
+        for (int i=0; i<encoded.length; i++) {
+            int field = slotFields[i];
+            for (int j=0; j<i && encoded[i] == null; j++) {
+                if(slotFields[j] == field && slotIndicators[j] == slotIndicators[i]) encoded[i] = encoded[j];
+            }
+            if(encoded[i] != null) continue;
+            String value = values != null && field < values.length ? values[field] : null;
+            encoded[i] = value == null ? new byte[0]
+                    : ZPLJavaCodePage.escapeValue(value, slotIndicators[i]).toString().getBytes(charset);
+        }
+        return encoded;
+    }
+
+    /**
+     * @param fieldName field name
+     * @return the field index or -1 if template has no such field
+     */
+    public int getFieldIndex(String fieldName){
+        for (int i=0; i<fieldNames.length; i++) if(fieldNames[i].equals(fieldName)) return i;
+        return -1;
+    }
+    public List<String> getFieldNames() {
+        return Collections.unmodifiableList(Arrays.asList(fieldNames));
+    }
+    public String getName() {
+        return name;
+    }
+    public Charset getCharset() {
+        return charset;
+    }
+    /**
+     * @param index part index, between zero and {@link #getSlotCount()} (included)
+     * @return a copy of the static part that is written before slot {@code index}, or after the
+     * last slot for the last part
+     */
+    public byte[] getStaticPart(int index) {
+        return parts[index].clone();
+    }
+    /**
+     * Get a static part as a read-only direct buffer. Every template keeps one direct buffer per
+     * part, shared by all labels, so writing the part to a channel never copies it.
+     * @param index part index, between zero and {@link #getSlotCount()} (included)
+     * @return a new read-only view of the static part, ready to be written
+     */
+    public ByteBuffer getStaticBuffer(int index) {
+        ByteBuffer[] buffers = staticBuffers;
+        if(buffers == null) {
+            buffers = new ByteBuffer[parts.length];
+            for (int i=0; i<parts.length; i++) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(parts[i].length);
+                buffer.put(parts[i]);
+                buffer.flip();
+                buffers[i] = buffer.asReadOnlyBuffer();
+            }
+            staticBuffers = buffers;
+        }
+        return buffers[index].duplicate();
+    }
+    /**
+     * @return how many times fields are used in template
+     */
+    public int getSlotCount() {
+        return slotFields.length;
+    }
+    /**
+     * @param slot slot index, between zero and {@link #getSlotCount()}
+     * @return the field index of the slot
+     */
+    public int getSlotField(int slot) {
+        return slotFields[slot];
+    }
+    /**
+     * @param slot slot index, between zero and {@link #getSlotCount()}
+     * @return the hex indicator of the slot, or 0 if slot is not in field data. Write values with
+     * {@link ZPLJavaCodePage#escapeValue(CharSequence, char)}.
+     */
+    public char getSlotIndicator(int slot) {
+        return slotIndicators[slot];
+    }
+    /**
+     * @return the size of static parts in bytes
+     */
+    public int getStaticSize() {
+        return staticSize;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates;
+
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Small static methods used by the renderers that {@code ZPLJavaTemplateProcessor} generates for
+ * {@link com.libraries.sotirisapakos.zpljava.templates.annotations.ZPLJavaLabelTemplate} classes
+ * and by {@link com.libraries.sotirisapakos.zpljava.output.ZPLJavaSegmentedLabel}.
+ * Every method writes to a given byte array or buffer, so rendering creates no objects (only
+ * field values with characters to escape are copied).
+ */
+public final class ZPLJavaRenderSupport {
+
+    private ZPLJavaRenderSupport(){}
+
+    /**
+     * Decode a constant of the generated renderer. Every char of the constant is one byte.
+     * @param latin1 the constant
+     * @return the constant bytes
+     */
+    public static byte[] bytes(String latin1){
+        return latin1.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param bytes bytes to write
+     * @param out array to write to
+     * @param offset position in array
+     * @return the position after the written bytes
+     */
+    public static int put(byte[] bytes, byte[] out, int offset){
+        System.arraycopy(bytes, 0, out, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    /**
+     * Write text as UTF-8. Null is written as empty text.
+     * @param text text to write
+     * @param out array to write to
+     * @param offset position in array
+     * @return the position after the written bytes
+     */
+    public static int put(CharSequence text, byte[] out, int offset){
+        if(text == null) return offset;
+        int length = text.length();
+        for (int i=0; i<length; i++) {
+            char c = text.charAt(i);
+            if(c < 0x80) {
+                out[offset++] = (byte) c;
+            }
+            else if(c < 0x800) {
+                out[offset++] = (byte) (0xC0 | (c >> 6));
+                out[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[offset++] = (byte) (0xF0 | (codePoint >> 18));
+                out[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else if(Character.isSurrogate(c)) {
+                // unpaired surrogate
+                out[offset++] = '?';
+            }
+            else {
+                out[offset++] = (byte) (0xE0 | (c >> 12));
+                out[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Write a field value as UTF-8, escaped like
+     * {@link com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage#escapeValue(CharSequence, char)}.
+     * Only values with characters to escape are copied. {@link #maxSize(CharSequence)} is enough
+     * for the escaped value too.
+     * @param text text to write
+     * @param indicator hex indicator of the slot, see {@link ZPLJavaCompiledTemplate#getSlotIndicator(int)}
+     * @param out array to write to
+     * @param offset position in array
+     * @return the position after the written bytes
+     */
+    public static int put(CharSequence text, char indicator, byte[] out, int offset){
+        return put(ZPLJavaCodePage.escapeValue(text, indicator), out, offset);
+    }
+
+    /**
+     * Write text as UTF-8 to a buffer, like {@link #put(CharSequence, byte[], int)}.
+     * Use {@link #utf8Length(CharSequence)} to check that buffer has enough space.
+     * @param text text to write
+     * @param out buffer to write to, at its position
+     */
+    public static void put(CharSequence text, ByteBuffer out){
+        if(text == null) return;
+        int length = text.length();
+        for (int i=0; i<length; i++) {
+            char c = text.charAt(i);
+            if(c < 0x80) {
+                out.put((byte) c);
+            }
+            else if(c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else if(Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            }
+            else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * @param text text to measure
+     * @return the exact UTF-8 bytes of text, as written by {@link #put(CharSequence, byte[], int)}
+     */
+    public static int utf8Length(CharSequence text){
+        if(text == null) return 0;
+        int length = text.length();
+        int bytes = 0;
+        for (int i=0; i<length; i++) {
+            char c = text.charAt(i);
+            if(c < 0x80) bytes += 1;
+            else if(c < 0x800) bytes += 2;
+            else if(Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            }
+            else if(Character.isSurrogate(c)) bytes += 1;
+            else bytes += 3;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write a number as decimal digits.
+     * @param value number to write
+     * @param out array to write to
+     * @param offset position in array
+     * @return the position after the written bytes
+     */
+    public static int put(long value, byte[] out, int offset){
+        if(value == Long.MIN_VALUE) return put("-9223372036854775808", out, offset);
+        if(value < 0) {
+            out[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long limit = 10; digits < 19 && value >= limit; limit *= 10) digits++;
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            out[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Write a number as decimal digits. Numbers have nothing to escape.
+     * @param value number to write
+     * @param indicator hex indicator of the slot
+     * @param out array to write to
+     * @param offset position in array
+     * @return the position after the written bytes
+     */
+    public static int put(long value, char indicator, byte[] out, int offset){
+        return put(value, out, offset);
+    }
+
+    /**
+     * @param text text to write
+     * @return the maximum UTF-8 bytes of text, escaped or not
+     */
+    public static int maxSize(CharSequence text){
+        return text == null ? 0 : text.length() * 3;
+    }
+
+    /**
+     * @param value number to write
+     * @return the maximum bytes of a number
+     */
+    public static int maxSize(long value){
+        return 20;
+    }
+}
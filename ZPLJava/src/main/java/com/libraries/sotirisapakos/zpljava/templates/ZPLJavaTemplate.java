@@ -0,0 +1,46 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+
+/**
+ * A reusable label layout. Create the label once, with
+ * {@link ZPLJavaCompiledTemplate#field(String) field placeholders} instead of real text or
+ * barcode data, and register it to {@link ZPLJavaTemplateRegistry}.
+ * <p>Example:</p>
+ * <pre>{@code
+ * registry.register("shipping", 1, new ZPLJavaTemplate() {
+ *     public ZPLJavaLabel createLabel() {
+ *         ZPLJavaLabel label = new ZPLJavaLabel(3, 2, LabelSize._8DPMM);
+ *         ZPLJavaText name = new ZPLJavaText();
+ *         name.setText(ZPLJavaCompiledTemplate.field("name"));
+ *         ...
+ *         label.addAllComponents(name, ...);
+ *         return label;
+ *     }
+ * });
+ * }</pre>
+ */
+public interface ZPLJavaTemplate {
+
+    /**
+     * Create the label of this template. Called once, when the template is compiled.
+     * @return the template label
+     */
+    ZPLJavaLabel createLabel();
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keep named {@link ZPLJavaTemplate templates} and their {@link ZPLJavaCompiledTemplate compiled}
+ * version in memory.
+ * <ul>
+ *     <li>Templates are found by name and version.</li>
+ *     <li>A template is compiled the first time it is requested. If many threads request the same
+ *     template at the same time, it is compiled only once and the other threads wait for it.</li>
+ *     <li>Compiled templates are kept until there are more than {@code maxTemplates} of them or
+ *     their static parts take more than {@code maxBytes}. Then the least recently used ones are
+ *     removed and compiled again the next time they are requested.</li>
+ * </ul>
+ * <p>Example:</p>
+ * <pre>{@code
+ * ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry(500, 64 * 1024 * 1024);
+ * registry.register("shipping", 2, shippingTemplate);
+ * byte[] code = registry.get("shipping", 2).render(name, address, trackingNumber);
+ * }</pre>
+ * All methods are thread safe.
+ */
+public class ZPLJavaTemplateRegistry {
+
+    public static final int DEFAULT_MAX_TEMPLATES = 256;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final int maxTemplates;
+    private final long maxBytes;
+
+    private final Object lock = new Object();
+    private final HashMap<Key, ZPLJavaTemplate> templates = new HashMap<>();
+    /**
+     * Compiled templates in access order, the least recently used first
+     */
+    private final LinkedHashMap<Key, Entry> compiledTemplates = new LinkedHashMap<>(16, 0.75f, true);
+    private long compiledBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public ZPLJavaTemplateRegistry(){
+        this(DEFAULT_MAX_TEMPLATES, DEFAULT_MAX_BYTES);
+    }
+    /**
+     * @param maxTemplates maximum compiled templates to keep
+     * @param maxBytes maximum size of compiled templates to keep, in bytes
+     */
+    public ZPLJavaTemplateRegistry(int maxTemplates, long maxBytes){
+        this.maxTemplates = Math.max(1, maxTemplates);
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    /**
+     * Add a template or replace the existing template with the same name and version.
+     * @param name template name
+     * @param version template version
+     * @param template the template
+     */
+    public void register(String name, int version, ZPLJavaTemplate template){
+        Key key = new Key(name, version);
+        synchronized (lock) {
+            templates.put(key, template);
+            Entry entry = compiledTemplates.remove(key);
+            if(entry != null) compiledBytes -= entry.size;
+        }
+    }
+
+    /**
+     * Remove a template and its compiled version.
+     * @param name template name
+     * @param version template version
+     */
+    public void unregister(String name, int version){
+        Key key = new Key(name, version);
+        synchronized (lock) {
+            templates.remove(key);
+            Entry entry = compiledTemplates.remove(key);
+            if(entry != null) compiledBytes -= entry.size;
+        }
+    }
+
+    /**
+     * Get a compiled template, compiling it if needed.
+     * @param name template name
+     * @param version template version
+     * @return the compiled template or null if there is no such template
+     */
+    public ZPLJavaCompiledTemplate get(final String name, int version){
+        Key key = new Key(name, version);
+        Entry entry;
+        boolean compile = false;
+        synchronized (lock) {
+            entry = compiledTemplates.get(key);
+            if(entry == null) {
+                final ZPLJavaTemplate template = templates.get(key);
+                if(template == null) return null;
+                entry = new Entry(new FutureTask<>(new Callable<ZPLJavaCompiledTemplate>() {
+                    @Override
+                    public ZPLJavaCompiledTemplate call() {
+                        return ZPLJavaCompiledTemplate.compile(name, template.createLabel());
+                    }
+                }));
+                compiledTemplates.put(key, entry);
+                compile = true;
+                missCount++;
+            }
+            else hitCount++;
+        }
+
+        // compile outside of lock, other templates can be requested at the same time
+        if(compile) entry.task.run();
+        ZPLJavaCompiledTemplate compiled;
+        try {
+            compiled = getUninterruptibly(entry.task);
+        } catch (ExecutionException e) {
+            synchronized (lock) {
+                if(compiledTemplates.get(key) == entry) compiledTemplates.remove(key);
+            }
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Can not compile template " + name, cause);
+        }
+        if(compile) {
+            synchronized (lock) {
+                // template may be replaced while compiling
+                if(compiledTemplates.get(key) == entry) {
+                    entry.size = compiled.getStaticSize();
+                    compiledBytes += entry.size;
+                    evict(key);
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Remove least recently used compiled templates until registry is in its limits.
+     * Templates still compiling and the template just compiled are never removed.
+     */
+    private void evict(Key keep){
+        Iterator<Map.Entry<Key, Entry>> iterator = compiledTemplates.entrySet().iterator();
+        while ((compiledTemplates.size() > maxTemplates || compiledBytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<Key, Entry> next = iterator.next();
+            if(next.getKey().equals(keep) || !next.getValue().task.isDone()) continue;
+            iterator.remove();
+            compiledBytes -= next.getValue().size;
+            evictionCount++;
+        }
+    }
+
+    private static <T> T getUninterruptibly(FutureTask<T> task) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if(interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Remove all compiled templates. Registered templates are kept.
+     */
+    public void clearCompiled(){
+        synchronized (lock) {
+            compiledTemplates.clear();
+            compiledBytes = 0;
+        }
+    }
+
+    // -------------------------------- statistics --------------------------------
+
+    public long getHitCount() {
+        synchronized (lock) { return hitCount; }
+    }
+    public long getMissCount() {
+        synchronized (lock) { return missCount; }
+    }
+    public long getEvictionCount() {
+        synchronized (lock) { return evictionCount; }
+    }
+    public int getCompiledCount() {
+        synchronized (lock) { return compiledTemplates.size(); }
+    }
+    public long getCompiledBytes() {
+        synchronized (lock) { return compiledBytes; }
+    }
+
+    private static class Entry {
+        final FutureTask<ZPLJavaCompiledTemplate> task;
+        /**
+         * Size of compiled template, known after compiling
+         */
+        long size = 0;
+
+        Entry(FutureTask<ZPLJavaCompiledTemplate> task){
+            this.task = task;
+        }
+    }
+
+    private static class Key {
+        final String name;
+        final int version;
+
+        Key(String name, int version){
+            this.name = name;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return version == key.version && name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + version;
+        }
+    }
+}
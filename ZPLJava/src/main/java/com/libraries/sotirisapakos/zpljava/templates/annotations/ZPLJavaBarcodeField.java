@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates.annotations;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaBarcode;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Map a field of a {@link ZPLJavaLabelTemplate} class to a {@link ZPLJavaBarcode} component.
+ * Field type can be {@code String} (or any {@code CharSequence}), {@code int} or {@code long}.
+ * <p><b>Note: </b> barcode data is not known at compile time, so use x instead of center or
+ * right alignment.</p>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface ZPLJavaBarcodeField {
+
+    /**
+     * Component id, by default the field name
+     */
+    String id() default "";
+    int x() default 0;
+    int y() default 0;
+    int height() default ZPLJavaBarcode.DEFAULT_BARCODE_HEIGHT;
+    int width() default ZPLJavaBarcode.DEFAULT_BARCODE_WIDTH;
+    /**
+     * One of the {@link ZPLJavaComponent.Orientation} values
+     */
+    String orientation() default ZPLJavaComponent.Orientation.ORIENTATION_NORMAL;
+    /**
+     * One of the {@link ZPLJavaBarcode.BarcodeTextPlacement} values
+     */
+    int textPlacement() default ZPLJavaBarcode.BarcodeTextPlacement.NO_TEXT;
+    /**
+     * One of the {@link ZPLJavaBarcode.BarcodeMode} values
+     */
+    String mode() default ZPLJavaBarcode.BarcodeMode.NO_MODE;
+    boolean uccCheckDigit() default false;
+
+}
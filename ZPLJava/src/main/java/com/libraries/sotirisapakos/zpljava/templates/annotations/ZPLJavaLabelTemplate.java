@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates.annotations;
+
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declare a label template on a data class. Fields of the class annotated with
+ * {@link ZPLJavaTextField} or {@link ZPLJavaBarcodeField} are the label components, in the
+ * order they are declared.
+ * <p>At compile time, {@code ZPLJavaTemplateProcessor} (module ZPLJavaProcessor) generates a
+ * renderer class next to the data class, with the label code as constants and one write per
+ * field. Fields must not be private.</p>
+ * <p>Example:</p>
+ * <pre>{@code
+ * @ZPLJavaLabelTemplate(widthInches = 3, heightInches = 2)
+ * public class ProductLabel {
+ *     @ZPLJavaTextField(y = 40, fontSize = ZPLJavaText.FontStyle.FONT_LARGE,
+ *             alignment = ZPLJavaComponent.POSITION_CENTER)
+ *     String name;
+ *     @ZPLJavaBarcodeField(x = 40, y = 200)
+ *     String barcode;
+ * }
+ *
+ * byte[] buffer = new byte[ProductLabelRenderer.maxSize(product)];
+ * int length = ProductLabelRenderer.render(product, buffer, 0);
+ * }</pre>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface ZPLJavaLabelTemplate {
+
+    int widthInches() default LabelSize.DEFAULT_WIDTH_INCHES;
+    int heightInches() default LabelSize.DEFAULT_HEIGHT_INCHES;
+    /**
+     * One of the {@link LabelSize} values
+     */
+    int dpmm() default LabelSize._8DPMM;
+    boolean utf8FormatEnabled() default true;
+    /**
+     * Name of the generated class. By default, the data class name with "Renderer" at the end.
+     */
+    String rendererName() default "";
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates.annotations;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Map a field of a {@link ZPLJavaLabelTemplate} class to a {@link ZPLJavaText} component.
+ * Field type can be {@code String} (or any {@code CharSequence}), {@code int} or {@code long}.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface ZPLJavaTextField {
+
+    /**
+     * Component id, by default the field name
+     */
+    String id() default "";
+    int x() default 0;
+    int y() default 0;
+    int fontSize() default ZPLJavaText.DEFAULT_FONT_SIZE;
+    /**
+     * One of the {@link ZPLJavaComponent} position values
+     */
+    String alignment() default ZPLJavaComponent.POSITION_LEFT;
+    /**
+     * True if field values have their own <code>_XX</code> hex values, like
+     * {@link ZPLJavaText#setSpecialCharacterSupport(boolean)}. Else every character of the value
+     * prints as it is.
+     */
+    boolean specialCharacterSupport() default ZPLJavaText.DEFAULT_SPECIAL_CHAR_SUPPORT;
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cache;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaContentHash;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZPLJavaOutputCache} in a temporary directory.
+ */
+public class ZPLJavaOutputCacheTest {
+
+    /**
+     * Room for two entries of {@link #ENTRY} bytes in every segment
+     */
+    private static final int SEGMENT_SIZE = 256;
+    private static final int ENTRY = 64;
+    /**
+     * Entry with its header of magic, length, crc and hash
+     */
+    private static final int ENTRY_SIZE = 12 + ZPLJavaContentHash.LENGTH + ENTRY;
+
+    private File directory;
+    private ZPLJavaOutputCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("zpljava-cache").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if(cache != null) cache.close();
+        File[] files = directory.listFiles();
+        if(files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void entriesAreFoundByHash() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 4);
+        byte[] bytes = entry(1);
+        ByteBuffer stored = cache.put(hash(1), bytes);
+
+        assertEquals(ByteBuffer.wrap(bytes), stored);
+        assertTrue(stored.isReadOnly());
+        assertEquals(ByteBuffer.wrap(bytes), cache.get(hash(1)));
+        assertNull(cache.get(hash(2)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 4);
+        for (int i=0; i<5; i++) cache.put(hash(i), entry(i));
+        cache.close();
+
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 4);
+        assertEquals(5, cache.size());
+        for (int i=0; i<5; i++) assertEquals(ByteBuffer.wrap(entry(i)), cache.get(hash(i)));
+        // new entries go after the loaded ones
+        cache.put(hash(5), entry(5));
+        assertEquals(ByteBuffer.wrap(entry(4)), cache.get(hash(4)));
+        assertEquals(ByteBuffer.wrap(entry(5)), cache.get(hash(5)));
+    }
+
+    @Test
+    public void oldestSegmentIsEvicted() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        // two entries per segment: entries 0 and 1 in the first segment
+        for (int i=0; i<4; i++) cache.put(hash(i), entry(i));
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(2, segmentFiles());
+
+        cache.put(hash(4), entry(4));
+
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(3, cache.size());
+        assertNull(cache.get(hash(0)));
+        assertNull(cache.get(hash(1)));
+        for (int i=2; i<5; i++) assertEquals(ByteBuffer.wrap(entry(i)), cache.get(hash(i)));
+        assertEquals(2, segmentFiles());
+    }
+
+    @Test
+    public void replacedEntryIsNotEvictedWithItsOldSegment() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        cache.put(hash(0), entry(0));
+        cache.put(hash(1), entry(1));
+        cache.put(hash(2), entry(2));
+        // hash 0 again, in the second segment
+        cache.put(hash(0), entry(9));
+        cache.put(hash(3), entry(3));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(ByteBuffer.wrap(entry(9)), cache.get(hash(0)));
+        assertNull(cache.get(hash(1)));
+    }
+
+    @Test
+    public void entryBiggerThanSegmentIsNotCached() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        assertNull(cache.put(hash(0), new byte[SEGMENT_SIZE]));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void incompleteEntryIsOverwritten() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        cache.put(hash(0), entry(0));
+        cache.put(hash(1), entry(1));
+        cache.close();
+        // damage the data of the second entry, like a crash while writing it
+        damage(directory.listFiles()[0], ENTRY_SIZE * 2 - 1);
+
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        assertEquals(1, cache.size());
+        assertEquals(ByteBuffer.wrap(entry(0)), cache.get(hash(0)));
+        cache.put(hash(2), entry(2));
+        assertEquals(ByteBuffer.wrap(entry(2)), cache.get(hash(2)));
+        assertEquals(1, segmentFiles());
+    }
+
+    @Test
+    public void entryWithDamagedHashIsDropped() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        cache.put(hash(0), entry(0));
+        cache.put(hash(1), entry(1));
+        cache.close();
+        // damage the hash of the second entry
+        damage(directory.listFiles()[0], ENTRY_SIZE + 12);
+
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        assertEquals(1, cache.size());
+        assertNull(cache.get(hash(1)));
+    }
+
+    @Test
+    public void labelIsGeneratedOnce() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, 64 * 1024, 2);
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addComponent(new ZPLJavaText(10, 10, "Cached", 812));
+
+        ByteBuffer first = cache.getOrGenerate(label);
+        ByteBuffer second = cache.getOrGenerate(label);
+
+        assertEquals(ByteBuffer.wrap(label.getLabelCodeBytes()), first);
+        assertEquals(first, second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void closedCacheFails() throws IOException {
+        cache = new ZPLJavaOutputCache(directory, SEGMENT_SIZE, 2);
+        cache.close();
+        cache.get(hash(0));
+    }
+
+    private static void damage(File segment, int position) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(position);
+        file.write(0xFF);
+        file.close();
+    }
+
+    private int segmentFiles() {
+        return directory.listFiles().length;
+    }
+
+    private static ZPLJavaContentHash hash(int i) {
+        return ZPLJavaContentHash.of(new byte[]{(byte) i});
+    }
+
+    /**
+     * @return entry of {@link #ENTRY} bytes, all of them i
+     */
+    private static byte[] entry(int i) {
+        byte[] bytes = new byte[ENTRY];
+        Arrays.fill(bytes, (byte) i);
+        return bytes;
+    }
+}
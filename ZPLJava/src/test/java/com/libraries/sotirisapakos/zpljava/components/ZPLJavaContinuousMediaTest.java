@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Label length of {@link ZPLJavaLabel#setContinuousMedia(boolean) continuous media} from the
+ * content of the label.
+ */
+public class ZPLJavaContinuousMediaTest {
+
+    @Test
+    public void labelLengthFollowsLowestComponent() {
+        ZPLJavaLabel label = label();
+        label.addComponent(new ZPLJavaText(0, 100, "Receipt", 812));
+        label.addComponent(new ZPLJavaText(0, 40, "Header", 812));
+        label.generateLabelCode();
+
+        // text is as high as its font
+        assertEquals(130, label.getContentHeight());
+        assertTrue(label.getLabelCode().contains("^MNN^PW812^LL"
+                + (130 + ZPLJavaLabel.DEFAULT_CONTINUOUS_TAIL) + "\n"));
+    }
+
+    @Test
+    public void fixedMediaHasNoLabelLength() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addComponent(new ZPLJavaText(0, 100, "Label", 812));
+
+        assertFalse(label.getLabelCode().contains("^LL"));
+        assertFalse(label.getLabelCode().contains("^MNN"));
+    }
+
+    @Test
+    public void shapesUseTheirDrawnSize() {
+        ZPLJavaLabel label = label();
+        label.addComponent(rectangle(100, 50, 1));
+        assertEquals(150, label.getContentHeight());
+
+        // a line thicker than its height
+        label.addComponent(rectangle(200, 10, 30));
+        assertEquals(230, label.getContentHeight());
+
+        ZPLJavaEllipse ellipse = new ZPLJavaEllipse();
+        ellipse.setY(220);
+        ellipse.setWidth(50);
+        ellipse.setHeight(60);
+        label.addComponent(ellipse);
+        assertEquals(280, label.getContentHeight());
+    }
+
+    @Test
+    public void graphicsAndBarcodeBackgroundsAreMeasured() {
+        ZPLJavaLabel label = label();
+        label.addComponent(new ZPLJavaGraphic(0, 100, 1, 40, new byte[40]));
+        assertEquals(140, label.getContentHeight());
+
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(10, 300, "12345", 812);
+        label.addComponent(barcode);
+        assertEquals(300 + barcode.getComponentSize(), label.getContentHeight());
+
+        // the background is bigger than the barcode
+        barcode.applyBackground(ZPLJavaShape.Color.COLOR_WHITE, 10, 10);
+        ZPLJavaRectangle background = barcode.getBackgroundRectangle();
+        assertEquals(background.getY() + background.getHeight(), label.getContentHeight());
+        assertTrue(label.getContentHeight() > 300 + barcode.getComponentSize());
+    }
+
+    @Test
+    public void groupsUseTheirChildren() {
+        ZPLJavaGroup group = new ZPLJavaGroup(20, 200);
+        group.addAllComponents(new ZPLJavaText(0, 0, "Name", 400), rectangle(40, 60, 1));
+        ZPLJavaLabel label = label();
+        label.addComponent(group);
+
+        assertEquals(300, label.getContentHeight());
+    }
+
+    @Test
+    public void borderBoxIsSkipped() {
+        ZPLJavaLabel label = label();
+        label.addComponent(new ZPLJavaText(0, 100, "Receipt", 812));
+        label.applyBorderBox(10);
+
+        assertEquals(130, label.getContentHeight());
+    }
+
+    @Test
+    public void tailIsAddedAndScaled() {
+        ZPLJavaLabel label = label();
+        label.addComponent(new ZPLJavaText(0, 100, "Receipt", 812));
+        label.setContinuousTail(40);
+        label.setContinuousTail(-1);
+        label.generateLabelCode();
+        assertEquals(40, label.getContinuousTail());
+        assertTrue(label.getLabelCode().contains("^LL170\n"));
+
+        ZPLJavaLabel retargeted = label.retarget(LabelSize._12DPMM);
+        assertTrue(retargeted.isContinuousMedia());
+        assertEquals(ZPLJavaComponent.scaleDots(40, LabelSize._8DPMM, LabelSize._12DPMM), retargeted.getContinuousTail());
+    }
+
+    @Test
+    public void labelLengthStaysInPrinterLimits() {
+        ZPLJavaLabel empty = label();
+        empty.setContinuousTail(0);
+        empty.generateLabelCode();
+        assertTrue(empty.getLabelCode().contains("^LL1\n"));
+
+        ZPLJavaLabel tall = label();
+        tall.addComponent(rectangle(ZPLJavaLabel.MAX_LABEL_LENGTH, 100, 1));
+        tall.generateLabelCode();
+        assertTrue(tall.getLabelCode().contains("^LL" + ZPLJavaLabel.MAX_LABEL_LENGTH + "\n"));
+    }
+
+    private static ZPLJavaLabel label() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.setContinuousMedia(true);
+        return label;
+    }
+
+    private static ZPLJavaRectangle rectangle(int y, int height, int thickness) {
+        ZPLJavaRectangle rectangle = new ZPLJavaRectangle();
+        rectangle.setY(y);
+        rectangle.setWidth(400);
+        rectangle.setHeight(height);
+        rectangle.setThickness(thickness);
+        return rectangle;
+    }
+}
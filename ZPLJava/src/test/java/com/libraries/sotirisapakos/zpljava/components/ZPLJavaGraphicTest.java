@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Image data of {@link ZPLJavaGraphic} and its <code>^GFA</code> instruction.
+ */
+public class ZPLJavaGraphicTest {
+
+    @Test
+    public void instructionHasByteCounts() {
+        // 10 dots wide: 2 bytes per row
+        ZPLJavaGraphic graphic = new ZPLJavaGraphic(5, 6, 10, 2, new byte[]{(byte) 0xFF, (byte) 0xC0, 0, 0});
+        graphic.generateInstruction();
+        assertTrue(graphic.getInstruction().startsWith("^FO5,6^GFA,4,4,2,"));
+        assertTrue(graphic.getInstruction().endsWith("^FS"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dataOfOtherSizeIsRejected() {
+        new ZPLJavaGraphic(0, 0, 10, 2, new byte[3]);
+    }
+
+    @Test
+    public void rejectedDataKeepsImage() {
+        byte[] data = {(byte) 0x80};
+        ZPLJavaGraphic graphic = new ZPLJavaGraphic(0, 0, 1, 1, data);
+        try {
+            graphic.setData(0, 1, new byte[0]);
+            fail("Accepted an empty image");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertSame(data, graphic.getData());
+        assertEquals(1, graphic.getWidth());
+        assertEquals(1, graphic.getHeight());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Children, cached output and placing of {@link ZPLJavaGroup}.
+ */
+public class ZPLJavaGroupTest {
+
+    @Test
+    public void placedGroupMatchesAbsoluteComponents() {
+        ZPLJavaGroup address = address();
+
+        assertEquals(code(text(20, 640, "Name", 400), text(25, 680, "Street", 400), text(30, 720, "City", 300)),
+                instruction(address.placeAt(20, 640)));
+        assertEquals(code(text(0, 0, "Name", 400), text(5, 40, "Street", 400), text(10, 80, "City", 300)),
+                instruction(address));
+    }
+
+    @Test
+    public void childrenAreGeneratedOnce() {
+        CountingComponent child = new CountingComponent(5, 5);
+        ZPLJavaGroup group = new ZPLJavaGroup();
+        group.addComponent(child);
+
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        for (int i=0; i<10; i++) label.addComponent(group.placeAt(0, i * 100));
+        label.generateLabelCode();
+
+        assertEquals(1, child.generated);
+        assertTrue(label.getLabelCode().contains("^FO5,905^GB10,10,1^FS"));
+    }
+
+    @Test
+    public void invalidateShowsChangedChild() {
+        ZPLJavaText name = text(0, 0, "Name", 400);
+        ZPLJavaGroup group = new ZPLJavaGroup(10, 10);
+        group.addComponent(name);
+        String before = instruction(group);
+
+        name.setText("Other");
+        assertEquals(before, instruction(group));
+
+        ZPLJavaGroup placed = group.placeAt(100, 100);
+        group.invalidate();
+        assertTrue(instruction(group).contains("^FDOther"));
+        // the placed copy keeps its own cache until its own invalidate
+        assertTrue(instruction(placed).contains("^FDName"));
+        placed.invalidate();
+        assertTrue(instruction(placed).contains("^FDOther"));
+    }
+
+    @Test
+    public void copyHasOwnChildren() {
+        ZPLJavaGroup group = address();
+        String before = instruction(group);
+        ZPLJavaGroup placed = group.placeAt(0, 0);
+        placed.addComponent(text(0, 120, "Country", 400));
+        // a group can not hold itself
+        group.addComponent(group);
+
+        assertEquals(3, group.getComponents().size());
+        assertEquals(4, placed.getComponents().size());
+        assertEquals(before, instruction(group));
+        assertTrue(instruction(placed).contains("^FO0,120"));
+    }
+
+    @Test
+    public void scaleKeepsOtherCopies() {
+        ZPLJavaGroup group = address();
+        String before = instruction(group);
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addComponent(group.placeAt(20, 640));
+
+        ZPLJavaLabel retargeted = label.retarget(LabelSize._12DPMM);
+
+        assertEquals(before, instruction(group));
+        int x = ZPLJavaComponent.scaleDots(25, LabelSize._8DPMM, LabelSize._12DPMM);
+        int y = ZPLJavaComponent.scaleDots(680, LabelSize._8DPMM, LabelSize._12DPMM);
+        assertTrue(retargeted.getLabelCode().contains("^FO" + x + "," + y));
+    }
+
+    @Test
+    public void originsWithoutPositionAreKept() {
+        ZPLJavaGroup group = new ZPLJavaGroup(100, 100);
+        group.addAllComponents(new Fixed("^FOX^FS"), new Fixed("^FO-5,10^GB1,1,1^FS"), new Fixed("^XZ"));
+
+        assertEquals("^FOX^FS\n\t^FO95,110^GB1,1,1^FS\n\t^XZ", instruction(group));
+    }
+
+    private static ZPLJavaGroup address() {
+        ZPLJavaGroup group = new ZPLJavaGroup();
+        group.addAllComponents(text(0, 0, "Name", 400), text(5, 40, "Street", 400));
+        ZPLJavaGroup city = new ZPLJavaGroup(10, 80);
+        city.addComponent(text(0, 0, "City", 300));
+        group.addComponent(city);
+        return group;
+    }
+
+    private static ZPLJavaText text(int x, int y, String text, int width) {
+        return new ZPLJavaText(x, y, text, width);
+    }
+
+    private static String instruction(ZPLJavaComponent component) {
+        component.generateInstruction();
+        return component.getInstruction();
+    }
+
+    /**
+     * @return instructions of components, one per line like the group writes them
+     */
+    private static String code(ZPLJavaComponent... components) {
+        StringBuilder code = new StringBuilder();
+        for (ZPLJavaComponent component : components) {
+            if(code.length() > 0) code.append("\n\t");
+            code.append(instruction(component));
+        }
+        return code.toString();
+    }
+
+    /**
+     * A box that counts how many times it is generated
+     */
+    private static class CountingComponent extends ZPLJavaComponent {
+        int generated = 0;
+
+        CountingComponent(int x, int y) {
+            setX(x);
+            setY(y);
+        }
+
+        @Override
+        public void generateInstruction() {
+            generated++;
+            setInstruction("^FO" + getX() + "," + getY() + "^GB10,10,1^FS");
+        }
+    }
+
+    /**
+     * A component with a fixed instruction
+     */
+    private static class Fixed extends ZPLJavaComponent {
+        private final String instruction;
+
+        Fixed(String instruction) {
+            this.instruction = instruction;
+        }
+
+        @Override
+        public void generateInstruction() {
+            setInstruction(instruction);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.config.ZPLJavaCodePage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Variants of {@link ZPLJavaImmutableLabel} and what they share with their base label.
+ */
+public class ZPLJavaImmutableLabelTest {
+
+    private static final int COMPONENTS = 8;
+
+    @Test
+    public void variantLeavesBaseUnchanged() {
+        ZPLJavaImmutableLabel base = ZPLJavaImmutableLabel.of(label());
+        String baseCode = base.getLabelCode();
+
+        ZPLJavaImmutableLabel variant = base.with("title-1", text(1, "Titel"));
+
+        assertEquals(baseCode, base.getLabelCode());
+        assertEquals("Title 1", ((ZPLJavaText) base.get(1)).getText());
+        assertEquals("Titel", ((ZPLJavaText) variant.get(1)).getText());
+        assertTrue(variant.getLabelCode().contains("^FDTitel"));
+        assertFalse(variant.getLabelCode().contains("^FDTitle 1"));
+        assertEquals(COMPONENTS, variant.size());
+        // the new component has the same id, so it can be replaced again
+        assertEquals(1, variant.indexOf("title-1"));
+    }
+
+    @Test
+    public void variantSharesUnchangedSubtrees() {
+        ZPLJavaImmutableLabel base = ZPLJavaImmutableLabel.of(label());
+        ZPLJavaImmutableLabel variant = base.with(1, text(1, "Titel"));
+
+        // the path to the replaced component is new
+        assertNotSame(base.getSubtree(0, COMPONENTS), variant.getSubtree(0, COMPONENTS));
+        assertNotSame(base.getSubtree(0, 4), variant.getSubtree(0, 4));
+        assertNotSame(base.getSubtree(0, 2), variant.getSubtree(0, 2));
+        assertNotSame(base.getSubtree(1, 2), variant.getSubtree(1, 2));
+        // everything else is shared
+        assertNotNull(base.getSubtree(4, COMPONENTS));
+        assertSame(base.getSubtree(4, COMPONENTS), variant.getSubtree(4, COMPONENTS));
+        assertSame(base.getSubtree(2, 4), variant.getSubtree(2, 4));
+        assertSame(base.getSubtree(0, 1), variant.getSubtree(0, 1));
+    }
+
+    @Test
+    public void componentsAreCopied() {
+        ZPLJavaLabel label = label();
+        ZPLJavaImmutableLabel base = ZPLJavaImmutableLabel.of(label);
+        ZPLJavaText replacement = text(1, "Titel");
+        ZPLJavaImmutableLabel variant = base.with(1, replacement);
+
+        ((ZPLJavaText) label.getComponents().get(0)).setText("Changed");
+        replacement.setText("Changed");
+        ((ZPLJavaText) variant.get(1)).setText("Changed");
+
+        assertFalse(base.getLabelCode().contains("Changed"));
+        assertFalse(variant.getLabelCode().contains("Changed"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownIdIsRejected() {
+        ZPLJavaImmutableLabel.of(label()).with("missing", text(0, "Title"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void unknownIndexIsRejected() {
+        ZPLJavaImmutableLabel.of(label()).with(COMPONENTS, text(0, "Title"));
+    }
+
+    @Test
+    public void codePageFollowsVariant() {
+        ZPLJavaLabel label = label();
+        label.setCodePageSelection(true);
+        ZPLJavaImmutableLabel base = ZPLJavaImmutableLabel.of(label);
+        assertEquals(ZPLJavaCodePage.UTF8, base.getCodePage());
+
+        ZPLJavaImmutableLabel latin = base.with(1, text(1, "Café"));
+        assertEquals(ZPLJavaCodePage.CP1252, latin.getCodePage());
+        // UTF-8 bytes as hex values need UTF-8, even with only ASCII characters in their code
+        assertEquals(ZPLJavaCodePage.UTF8, latin.with(2, text(2, "Caf_C3_A9")).getCodePage());
+        assertEquals(ZPLJavaCodePage.UTF8, latin.with(2, text(2, "Καλημέρα")).getCodePage());
+    }
+
+    private static ZPLJavaLabel label() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        for (int i=0; i<COMPONENTS; i++) label.addComponent(text(i, "Title " + i));
+        return label;
+    }
+
+    private static ZPLJavaText text(int index, String text) {
+        ZPLJavaText component = new ZPLJavaText(0, index * 50, text, 812);
+        component.setId("title-" + index);
+        return component;
+    }
+}
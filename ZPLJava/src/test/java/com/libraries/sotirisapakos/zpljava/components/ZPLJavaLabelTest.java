@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZPLJavaLabel} copies of components and labels for other printer resolutions.
+ */
+public class ZPLJavaLabelTest {
+
+    @Test
+    public void dotsAreRoundedToNearestDot() {
+        assertEquals(150, ZPLJavaComponent.scaleDots(100, LabelSize._8DPMM, LabelSize._12DPMM));
+        assertEquals(67, ZPLJavaComponent.scaleDots(100, LabelSize._12DPMM, LabelSize._8DPMM));
+        assertEquals(-15, ZPLJavaComponent.scaleDots(-10, LabelSize._8DPMM, LabelSize._12DPMM));
+        // a 1 dot line stays visible
+        assertEquals(1, ZPLJavaComponent.scaleDots(1, LabelSize._24DPMM, LabelSize._6DPMM));
+        assertEquals(-1, ZPLJavaComponent.scaleDots(-1, LabelSize._24DPMM, LabelSize._6DPMM));
+        assertEquals(0, ZPLJavaComponent.scaleDots(0, LabelSize._8DPMM, LabelSize._12DPMM));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(10, 20, "12345", 812);
+        barcode.applyBackground(ZPLJavaRectangle.Color.COLOR_WHITE, 5, 5);
+        ZPLJavaBarcode copy = barcode.copy();
+        copy.setX(99);
+        copy.getBackgroundRectangle().setX(99);
+
+        assertEquals(10, barcode.getX());
+        assertNotSame(barcode.getBackgroundRectangle(), copy.getBackgroundRectangle());
+        assertEquals(5, barcode.getBackgroundRectangle().getX());
+    }
+
+    @Test
+    public void retargetScalesEveryComponent() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        ZPLJavaText text = new ZPLJavaText(20, 40, "Text", 812);
+        text.setFontSize(30);
+        ZPLJavaRectangle rectangle = new ZPLJavaRectangle(10, 100, 200, 50, 2);
+        rectangle.setWidth(200);
+        rectangle.setHeight(50);
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(10, 200, "12345", 812);
+        barcode.setBarcodeWidth(2);
+        barcode.setBarcodeHeight(100);
+        label.addAllComponents(text, rectangle, barcode);
+        label.generateLabelCode();
+        String code = label.getLabelCode();
+
+        ZPLJavaLabel target = label.retarget(LabelSize._12DPMM);
+
+        assertEquals(LabelSize._12DPMM, target.getDpmmValue());
+        assertEquals(ZPLJavaComponent.scaleDots(label.getLabelWidth(), 203, 305), target.getLabelWidth());
+        assertEquals(ZPLJavaComponent.scaleDots(label.getLabelHeight(), 203, 305), target.getLabelHeight());
+        ZPLJavaText scaledText = (ZPLJavaText) target.getComponents().get(0);
+        assertEquals(30, scaledText.getX());
+        assertEquals(60, scaledText.getY());
+        assertEquals(45, scaledText.getFontSize());
+        ZPLJavaRectangle scaledRectangle = (ZPLJavaRectangle) target.getComponents().get(1);
+        assertEquals(300, scaledRectangle.getWidth());
+        assertEquals(75, scaledRectangle.getHeight());
+        assertEquals(3, scaledRectangle.getThickness());
+        ZPLJavaBarcode scaledBarcode = (ZPLJavaBarcode) target.getComponents().get(2);
+        assertEquals(3, scaledBarcode.getBarcodeWidth());
+        assertEquals(150, scaledBarcode.getBarcodeHeight());
+
+        // this label is not changed
+        assertSame(text, label.getComponents().get(0));
+        assertEquals(20, text.getX());
+        assertEquals(30, text.getFontSize());
+        assertEquals(200, rectangle.getWidth());
+        label.generateLabelCode();
+        assertEquals(code, label.getLabelCode());
+    }
+
+    @Test
+    public void moduleWidthStaysInBarcodeRange() {
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(0, 0, "12345", 812);
+        barcode.setBarcodeWidth(10);
+        barcode.scale(LabelSize._8DPMM, LabelSize._24DPMM);
+        assertEquals(10, barcode.getBarcodeWidth());
+        barcode.setBarcodeWidth(1);
+        barcode.scale(LabelSize._24DPMM, LabelSize._6DPMM);
+        assertEquals(1, barcode.getBarcodeWidth());
+    }
+
+    @Test
+    public void retargetedCodeIsKeptUntilLabelIsGenerated() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        ZPLJavaText text = new ZPLJavaText(20, 40, "Text", 812);
+        label.addComponent(text);
+        label.generateLabelCode();
+
+        String code = label.getLabelCode(LabelSize._12DPMM);
+        assertSame(code, label.getLabelCode(LabelSize._12DPMM));
+        assertEquals(label.retarget(LabelSize._12DPMM).getLabelCode(), code);
+        assertSame(label.getLabelCode(), label.getLabelCode(LabelSize._8DPMM));
+
+        text.setX(100);
+        label.generateLabelCode();
+        assertNotSame(code, label.getLabelCode(LabelSize._12DPMM));
+        assertTrue(label.getLabelCode(LabelSize._12DPMM).contains("^FO150,60"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.components;
+
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.printer.ZPLJavaPrintJob;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Serialized field data (<code>^SN</code>, <code>^SF</code>) and print quantity (<code>^PQ</code>)
+ * in the generated code.
+ */
+public class ZPLJavaSerializationTest {
+
+    @Test
+    public void serialNumberReplacesFieldData() {
+        ZPLJavaText text = text("0001");
+        text.setSerialization(ZPLJavaSerialization.serialNumber(1, true));
+        text.generateInstruction();
+
+        assertTrue(text.getInstruction().contains("^SN0001,1,Y^FS"));
+        assertFalse(text.getInstruction().contains("^FD"));
+
+        text.setSerialization(ZPLJavaSerialization.serialNumber(-2, false));
+        text.generateInstruction();
+        assertTrue(text.getInstruction().contains("^SN0001,-2,N^FS"));
+
+        // without serialization the same text is printed on every copy
+        text.setSerialization(null);
+        text.generateInstruction();
+        assertFalse(text.getInstruction().contains("^SN"));
+        assertTrue(text.getInstruction().contains("^FD0001"));
+    }
+
+    @Test
+    public void maskFollowsFieldData() {
+        ZPLJavaText text = text("AB001");
+        text.setSerialization(ZPLJavaSerialization.mask("%%ddd", "001"));
+        text.generateInstruction();
+
+        assertTrue(text.getInstruction().contains("^FDAB001^SF%%ddd,001^FS"));
+        assertEquals(ZPLJavaSerialization.MODE_MASK, text.getSerialization().getMode());
+    }
+
+    @Test
+    public void serializedDataIsEscaped() {
+        ZPLJavaText text = text("A^1");
+        text.setSpecialCharacterSupport(false);
+        text.setSerialization(ZPLJavaSerialization.serialNumber(1, true));
+        text.generateInstruction();
+
+        assertTrue(text.getInstruction().contains("^FH_^SNA_5E1,1,Y^FS"));
+    }
+
+    @Test
+    public void barcodeIsSerialized() {
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(0, 0, "X100", 812);
+        barcode.setSerialization(ZPLJavaSerialization.serialNumber(5, false));
+        barcode.generateInstruction();
+
+        assertTrue(barcode.getInstruction().contains("^SNX100,5,N^FS"));
+        assertFalse(barcode.getInstruction().contains("^FD"));
+    }
+
+    @Test
+    public void printQuantityOnlyWhenNotDefault() {
+        ZPLJavaLabel label = label();
+        assertFalse(label.getLabelCode().contains("^PQ"));
+
+        label.setPrintQuantity(500);
+        label.generateLabelCode();
+        assertTrue(label.getLabelCode().contains("^PQ500,0,0,N,Y\n^XZ"));
+
+        label.setPrintQuantity(1, 0, 0, false, false);
+        label.generateLabelCode();
+        assertTrue(label.getLabelCode().contains("^PQ1,0,0,N,N"));
+
+        label.setPrintQuantity(1, 0, 0, false, true);
+        label.generateLabelCode();
+        assertFalse(label.getLabelCode().contains("^PQ"));
+    }
+
+    @Test
+    public void invalidPrintQuantityIsIgnored() {
+        ZPLJavaLabel label = label();
+        label.setPrintQuantity(20, 5, 2, true, false);
+        label.setPrintQuantity(0);
+        label.setPrintQuantity(10, -1, 0, false, true);
+        label.setPrintQuantity(10, 0, -1, false, true);
+
+        assertEquals(20, label.getPrintQuantity());
+        assertEquals(5, label.getPauseCount());
+        label.generateLabelCode();
+        assertTrue(label.getLabelCode().contains("^PQ20,5,2,Y,N"));
+    }
+
+    @Test
+    public void retargetKeepsSerialization() {
+        ZPLJavaLabel label = label();
+        label.setPrintQuantity(500, 10, 2, true, false);
+        label.generateLabelCode();
+
+        String code = label.retarget(LabelSize._12DPMM).getLabelCode();
+        assertTrue(code.contains("^SN0001,1,Y^FS"));
+        assertTrue(code.contains("^PQ500,10,2,Y,N"));
+    }
+
+    @Test
+    public void printJobCountsCopies() {
+        ZPLJavaLabel label = label();
+        ZPLJavaPrintJob single = ZPLJavaPrintJob.of(label);
+        label.setPrintQuantity(500);
+        label.generateLabelCode();
+        ZPLJavaPrintJob job = ZPLJavaPrintJob.of(label);
+
+        assertEquals(1, single.getCopies());
+        assertEquals(500, job.getCopies());
+        assertEquals(500 * single.getPrintNanos(4), job.getPrintNanos(4), 500);
+    }
+
+    private static ZPLJavaLabel label() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        ZPLJavaText text = text("0001");
+        text.setSerialization(ZPLJavaSerialization.serialNumber(1, true));
+        label.addComponent(text);
+        return label;
+    }
+
+    private static ZPLJavaText text(String text) {
+        return new ZPLJavaText(0, 0, text, 812);
+    }
+}
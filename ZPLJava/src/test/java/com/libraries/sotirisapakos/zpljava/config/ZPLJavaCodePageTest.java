@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.config;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Code page selection of {@link ZPLJavaCodePage} for plain, Western European and hex escaped text.
+ */
+public class ZPLJavaCodePageTest {
+
+    @Test
+    public void asciiTextStaysUtf8() {
+        assertEquals(ZPLJavaCodePage.UTF8, ZPLJavaCodePage.select("^FO0,0^FDPlain text^FS"));
+        // hex values of ASCII characters are the same in both code pages
+        assertEquals(ZPLJavaCodePage.UTF8, ZPLJavaCodePage.select("^FO0,0^FH_^FDA_5EB_7E^FS"));
+    }
+
+    @Test
+    public void westernEuropeanTextUsesCp1252() {
+        assertEquals(ZPLJavaCodePage.CP1252, ZPLJavaCodePage.select("^FO0,0^FDCafé €5^FS"));
+        // escaped ASCII does not change the choice
+        assertEquals(ZPLJavaCodePage.CP1252,
+                ZPLJavaCodePage.select("^FO0,0^FH_^FDCafé _5E^FS^FO0,50^FDüber^FS"));
+    }
+
+    @Test
+    public void textOutsideCp1252UsesUtf8() {
+        assertEquals(ZPLJavaCodePage.UTF8, ZPLJavaCodePage.select("^FO0,0^FDCafé Ω^FS"));
+    }
+
+    @Test
+    public void escapedBytesAboveAsciiUseUtf8() {
+        // "_C3_A9" is the UTF-8 of e acute, it would print as two characters with code page 1252
+        assertEquals(ZPLJavaCodePage.UTF8,
+                ZPLJavaCodePage.select("^FO0,0^FDCafé^FS^FO0,50^FH_^FDCaf_C3_A9^FS"));
+        assertEquals(ZPLJavaCodePage.UTF8,
+                ZPLJavaCodePage.select("^FO0,0^FDCafé^FS^FO0,50^FH^FDCaf_c3_a9^FS"));
+        // other indicator
+        assertEquals(ZPLJavaCodePage.UTF8,
+                ZPLJavaCodePage.select("^FO0,0^FDCafé^FS^FO0,50^FH#^FDCaf#C3#A9^FS"));
+    }
+
+    @Test
+    public void indicatorOutsideOfHexFieldIsText() {
+        // no ^FH, so "_C3" is printed as it is
+        assertEquals(ZPLJavaCodePage.CP1252,
+                ZPLJavaCodePage.select("^FO0,0^FDCafé _C3^FS"));
+        // the ^FH field ends at ^FS
+        assertEquals(ZPLJavaCodePage.CP1252,
+                ZPLJavaCodePage.select("^FO0,0^FH_^FDA_5E^FS^FO0,50^FDCafé _C3^FS"));
+        // another indicator
+        assertEquals(ZPLJavaCodePage.CP1252,
+                ZPLJavaCodePage.select("^FO0,0^FH#^FDCafé _C3^FS"));
+    }
+
+    @Test
+    public void labelWithEscapedTextIsSentWithUtf8() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 2, LabelSize._8DPMM);
+        label.setCodePageSelection(true);
+        label.addComponent(new ZPLJavaText(0, 0, "Café", 812));
+        label.generateLabelCode();
+        assertEquals(ZPLJavaCodePage.CP1252, label.getCodePage());
+        assertTrue(label.getLabelCode().contains("^CI27"));
+
+        label.addComponent(new ZPLJavaText(0, 50, "Caf_C3_A9", 812));
+        label.generateLabelCode();
+        assertEquals(ZPLJavaCodePage.UTF8, label.getCodePage());
+        assertTrue(label.getLabelCode().contains("^CI28"));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rendering and caching of glyphs by {@link ZPLJavaGlyphCache}, with a small font of a square
+ * 'A' and an empty space.
+ */
+public class ZPLJavaGlyphCacheTest {
+
+    private ZPLJavaTrueTypeFont font;
+
+    @Before
+    public void setUp() throws IOException {
+        font = new ZPLJavaTrueTypeFont(fontData());
+    }
+
+    @Test
+    public void glyphIsRenderedOnce() {
+        ZPLJavaGlyphCache cache = new ZPLJavaGlyphCache(100);
+        ZPLJavaGlyphCache.Glyph glyph = cache.getGlyph(font, 100, 'A');
+
+        assertSame(glyph, cache.getGlyph(font, 100, 'A'));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getGlyphCount());
+    }
+
+    @Test
+    public void glyphsAreKeyedByFontSizeAndCharacter() throws IOException {
+        ZPLJavaGlyphCache cache = new ZPLJavaGlyphCache(100);
+        ZPLJavaTrueTypeFont sameFile = new ZPLJavaTrueTypeFont(fontData());
+        ZPLJavaGlyphCache.Glyph glyph = cache.getGlyph(font, 100, 'A');
+
+        assertNotSame(glyph, cache.getGlyph(font, 200, 'A'));
+        assertNotSame(glyph, cache.getGlyph(sameFile, 100, 'A'));
+        assertNotSame(glyph, cache.getGlyph(font, 100, ' '));
+        assertEquals(4, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(4, cache.getGlyphCount());
+    }
+
+    @Test
+    public void glyphIsScaledToSize() {
+        ZPLJavaGlyphCache cache = new ZPLJavaGlyphCache(100);
+        // 1000 font units per em, 100 dots: a 500 x 700 square becomes 50 x 70 dots
+        ZPLJavaGlyphCache.Glyph glyph = cache.getGlyph(font, 100, 'A');
+        ZPLJavaBitmap bitmap = glyph.getBitmap();
+
+        assertEquals(50, bitmap.getWidth());
+        assertEquals(70, bitmap.getHeight());
+        assertEquals(0, glyph.getLeft());
+        assertEquals(70, glyph.getTop());
+        assertEquals(60f, glyph.getAdvance(), 0.001);
+        assertTrue(bitmap.get(1, 1));
+        assertTrue(bitmap.get(25, 35));
+        assertTrue(bitmap.get(48, 68));
+
+        ZPLJavaGlyphCache.Glyph space = cache.getGlyph(font, 100, ' ');
+        assertNull(space.getBitmap());
+        assertEquals(30f, space.getAdvance(), 0.001);
+    }
+
+    @Test
+    public void lineIsDrawnFromCachedGlyphs() {
+        ZPLJavaGlyphCache cache = new ZPLJavaGlyphCache(100);
+        ZPLJavaBitmap line = cache.renderLine(font, 100, "A A");
+
+        // ascender 800 and descender -200 font units
+        assertEquals(150, line.getWidth());
+        assertEquals(100, line.getHeight());
+        assertEquals(150f, cache.measure(font, 100, "A A"), 0.001);
+        // squares stand on the baseline, 80 dots from the top
+        assertTrue(line.get(25, 45));
+        assertTrue(line.get(115, 45));
+        assertFalse(line.get(75, 45));
+        assertFalse(line.get(25, 5));
+        assertFalse(line.get(25, 85));
+        // only the first 'A' and the space are rendered
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getGlyphCount());
+    }
+
+    @Test
+    public void glyphsOverLimitAreNotKept() {
+        ZPLJavaGlyphCache cache = new ZPLJavaGlyphCache(1);
+        ZPLJavaGlyphCache.Glyph glyph = cache.getGlyph(font, 100, 'A');
+        cache.getGlyph(font, 100, ' ');
+        cache.getGlyph(font, 100, ' ');
+
+        assertEquals(1, cache.getGlyphCount());
+        assertEquals(3, cache.getMisses());
+        assertSame(glyph, cache.getGlyph(font, 100, 'A'));
+
+        cache.clear();
+        assertEquals(0, cache.getGlyphCount());
+        assertNotSame(glyph, cache.getGlyph(font, 100, 'A'));
+    }
+
+    @Test
+    public void threadsShareOneGlyph() throws Exception {
+        final ZPLJavaGlyphCache cache = new ZPLJavaGlyphCache(100);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<ZPLJavaGlyphCache.Glyph> glyphs = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i=0; i<8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    ZPLJavaGlyphCache.Glyph glyph = cache.getGlyph(font, 300, 'A');
+                    synchronized (glyphs) {
+                        glyphs.add(glyph);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join(5000);
+
+        assertEquals(8, glyphs.size());
+        assertEquals(1, cache.getGlyphCount());
+        // threads that rendered the glyph at the same time get the kept one
+        for (ZPLJavaGlyphCache.Glyph glyph : glyphs) assertSame(glyphs.get(0), glyph);
+        assertSame(glyphs.get(0), cache.getGlyph(font, 300, 'A'));
+    }
+
+    /**
+     * @return a TrueType font of 1000 units per em: glyph 1 ('A') a 500 x 700 square with advance
+     * 600, glyph 2 (space) empty with advance 300
+     */
+    private static byte[] fontData() throws IOException {
+        byte[] head = table(new int[]{
+                0x0001, 0x0000, 0x0001, 0x0000, 0, 0, 0x5F0F, 0x3CF5, 0, 1000,
+                0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        byte[] maxp = table(new int[]{0x0000, 0x5000, 3});
+        byte[] hhea = table(new int[]{
+                0x0001, 0x0000, 800, -200, 0, 600, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3});
+        byte[] hmtx = table(new int[]{500, 0, 600, 0, 300, 0});
+        // glyph 1: one contour of four on-curve points, coordinates as 16 bit deltas
+        byte[] glyf = table(new int[]{
+                1, 0, 0, 500, 700, 3, 0, 0x0101, 0x0101,
+                0, 500, 0, -500, 0, 0, 700, 0});
+        byte[] loca = table(new int[]{0, 0, glyf.length / 2, glyf.length / 2});
+        // unicode format 4 map: ' ' -> 2, 'A' -> 1 and the closing 0xFFFF segment
+        byte[] cmap = table(new int[]{
+                0, 1, 3, 1, 0, 12,
+                4, 48, 0, 6, 4, 1, 2,
+                0x20, 0x41, 0xFFFF, 0,
+                0x20, 0x41, 0xFFFF,
+                2 - 0x20, 1 - 0x41, 1,
+                0, 0, 0});
+
+        String[] tags = {"cmap", "glyf", "head", "hhea", "hmtx", "loca", "maxp"};
+        byte[][] tables = {cmap, glyf, head, hhea, hmtx, loca, maxp};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x00010000);
+        out.writeShort(tables.length);
+        out.writeShort(64);
+        out.writeShort(2);
+        out.writeShort(tables.length * 16 - 64);
+        int offset = 12 + tables.length * 16;
+        for (int i=0; i<tables.length; i++) {
+            out.writeBytes(tags[i]);
+            out.writeInt(0);
+            out.writeInt(offset);
+            out.writeInt(tables[i].length);
+            offset += tables[i].length;
+        }
+        for (byte[] table : tables) out.write(table);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return values as 16 bit big endian numbers
+     */
+    private static byte[] table(int[] values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : values) out.writeShort(value);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.graphics;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaDiagonalLine;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaEllipse;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGraphic;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaRectangle;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Grouping of shapes and their replacement with images by {@link ZPLJavaShapeOptimizer}.
+ */
+public class ZPLJavaShapeOptimizerTest {
+
+    @Test
+    public void iconIsReplacedByOneImage() {
+        ZPLJavaText title = new ZPLJavaText(0, 0, "Hazard", 812);
+        ZPLJavaLabel label = label(title);
+        label.addAllComponents(icon(100, 200));
+
+        assertEquals(1, new ZPLJavaShapeOptimizer().optimize(label));
+
+        List<ZPLJavaComponent> components = label.getComponents();
+        assertEquals(2, components.size());
+        assertSame(title, components.get(0));
+        ZPLJavaGraphic graphic = (ZPLJavaGraphic) components.get(1);
+        // the image covers the whole group
+        assertEquals(100, graphic.getX());
+        assertEquals(200, graphic.getY());
+        assertEquals(84, graphic.getHeight());
+        assertTrue(label.getLabelCode().contains("^FO100,200^GF"));
+    }
+
+    @Test
+    public void shapesFartherThanGapAreSeparateGroups() {
+        ZPLJavaLabel label = label();
+        label.addAllComponents(icon(0, 0));
+        label.addAllComponents(icon(200, 0));
+
+        assertEquals(2, new ZPLJavaShapeOptimizer().optimize(label));
+        assertEquals(2, label.getComponents().size());
+
+        // with a wide gap both icons are one group
+        ZPLJavaLabel close = label();
+        close.addAllComponents(icon(0, 0));
+        close.addAllComponents(icon(200, 0));
+        assertEquals(1, new ZPLJavaShapeOptimizer(200, 10).optimize(close));
+        assertEquals(1, close.getComponents().size());
+    }
+
+    @Test
+    public void rectanglesAreKept() {
+        ZPLJavaLabel label = label();
+        label.addAllComponents(rectangle(0, 0, 80, 80, 2), rectangle(10, 10, 60, 60, 2));
+        ZPLJavaShapeOptimizer optimizer = new ZPLJavaShapeOptimizer();
+        // even when the image is cheaper
+        optimizer.setFieldCost(100000);
+
+        assertEquals(0, optimizer.optimize(label));
+        assertEquals(2, label.getComponents().size());
+    }
+
+    @Test
+    public void groupUnderWhiteShapeIsKept() {
+        ZPLJavaRectangle white = rectangle(20, 20, 20, 20, 20);
+        white.setColor(ZPLJavaShape.Color.COLOR_WHITE);
+        ZPLJavaLabel label = label();
+        label.addAllComponents(icon(0, 0));
+        label.addComponent(white);
+
+        assertEquals(0, new ZPLJavaShapeOptimizer().optimize(label));
+        assertEquals(4, label.getComponents().size());
+    }
+
+    @Test
+    public void cheaperCommandsAreKept() {
+        ZPLJavaShapeOptimizer optimizer = new ZPLJavaShapeOptimizer();
+        List<ZPLJavaShape> icon = Arrays.asList(icon(0, 0));
+        ZPLJavaShapeOptimizer.Estimate estimate = optimizer.estimate(icon);
+        assertTrue(estimate.isImageCheaper());
+        assertTrue(estimate.getImageBytes() > 0);
+        assertTrue(estimate.getVectorBytes() > 0);
+
+        optimizer.setImageByteCost(1000);
+        assertFalse(optimizer.estimate(icon).isImageCheaper());
+        ZPLJavaLabel label = label();
+        label.addAllComponents(icon(0, 0));
+        assertEquals(0, optimizer.optimize(label));
+        assertEquals(3, label.getComponents().size());
+    }
+
+    @Test
+    public void sameIconIsRasterizedOnce() {
+        ZPLJavaShapeOptimizer optimizer = new ZPLJavaShapeOptimizer();
+        ZPLJavaGraphic first = optimizer.estimate(Arrays.asList(icon(0, 0))).getGraphic();
+        ZPLJavaGraphic moved = optimizer.estimate(Arrays.asList(icon(300, 500))).getGraphic();
+
+        assertEquals(1, optimizer.getCacheMisses());
+        assertEquals(1, optimizer.getCacheHits());
+        assertEquals(1, optimizer.getCachedImages());
+        assertArrayEquals(first.getData(), moved.getData());
+        assertEquals(300, moved.getX());
+        assertEquals(500, moved.getY());
+        // placing the cached image does not move the first one
+        assertEquals(0, first.getX());
+
+        ZPLJavaShape[] other = icon(0, 0);
+        other[1].setThickness(6);
+        optimizer.estimate(Arrays.asList(other));
+        assertEquals(2, optimizer.getCacheMisses());
+    }
+
+    @Test
+    public void imageHasShapeDots() {
+        ZPLJavaShapeOptimizer optimizer = new ZPLJavaShapeOptimizer();
+        ZPLJavaGraphic graphic = optimizer.estimate(Arrays.<ZPLJavaShape>asList(
+                rectangle(10, 10, 16, 8, 8), ellipse(40, 10, 8, 8, 4))).getGraphic();
+
+        assertEquals(10, graphic.getX());
+        assertEquals(10, graphic.getY());
+        assertEquals(38, graphic.getWidth());
+        assertEquals(8, graphic.getHeight());
+        assertTrue(dot(graphic, 0, 0));
+        assertTrue(dot(graphic, 15, 7));
+        assertFalse(dot(graphic, 20, 4));
+        assertTrue(dot(graphic, 34, 4));
+    }
+
+    private static boolean dot(ZPLJavaGraphic graphic, int x, int y) {
+        return (graphic.getData()[y * graphic.getBytesPerRow() + x / 8] & (0x80 >> (x % 8))) != 0;
+    }
+
+    /**
+     * @return a 84 x 84 dots warning sign: a circle crossed by a diagonal line
+     */
+    private static ZPLJavaShape[] icon(int x, int y) {
+        ZPLJavaDiagonalLine line = new ZPLJavaDiagonalLine();
+        line.setX(x + 10);
+        line.setY(y + 10);
+        line.setWidth(64);
+        line.setHeight(64);
+        line.setThickness(8);
+        return new ZPLJavaShape[]{ellipse(x, y, 84, 84, 8), line, rectangle(x + 40, y + 20, 4, 30, 4)};
+    }
+
+    private static ZPLJavaEllipse ellipse(int x, int y, int width, int height, int thickness) {
+        ZPLJavaEllipse ellipse = new ZPLJavaEllipse();
+        setBounds(ellipse, x, y, width, height, thickness);
+        return ellipse;
+    }
+
+    private static ZPLJavaRectangle rectangle(int x, int y, int width, int height, int thickness) {
+        ZPLJavaRectangle rectangle = new ZPLJavaRectangle();
+        setBounds(rectangle, x, y, width, height, thickness);
+        return rectangle;
+    }
+
+    private static void setBounds(ZPLJavaShape shape, int x, int y, int width, int height, int thickness) {
+        shape.setX(x);
+        shape.setY(y);
+        shape.setWidth(width);
+        shape.setHeight(height);
+        shape.setThickness(thickness);
+    }
+
+    private static ZPLJavaLabel label(ZPLJavaComponent... components) {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addAllComponents(components);
+        return label;
+    }
+}
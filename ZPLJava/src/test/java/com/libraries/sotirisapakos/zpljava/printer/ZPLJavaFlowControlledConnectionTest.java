@@ -0,0 +1,187 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZPLJavaFlowControlledConnection} with an in-process printer that has a small receive
+ * buffer, a slow link and a slow print engine.
+ */
+public class ZPLJavaFlowControlledConnectionTest {
+
+    private static final byte[] LABEL = "^XA^FO10,10^FDtest^FS^XZ".getBytes();
+
+    private ZPLJavaFlowControlledConnection connection;
+
+    @After
+    public void tearDown() throws IOException {
+        if(connection != null) connection.close();
+    }
+
+    @Test
+    public void formatsBeingSentAreCountedAsWaiting() throws Exception {
+        // every send takes longer than a poll, so statuses arrive while formats are on the way
+        final SimulatedPrinter printer = new SimulatedPrinter(20, 100);
+        connection = new ZPLJavaFlowControlledConnection(printer, 1, 2, 2, 10000);
+        List<Thread> senders = new ArrayList<>();
+        final List<IOException> failures = new ArrayList<>();
+        for (int i=0; i<3; i++) {
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j=0; j<2; j++) connection.send(LABEL, 0, LABEL.length);
+                    } catch (IOException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) sender.join(20000);
+
+        assertTrue(failures.isEmpty());
+        assertTrue(printer.awaitPrinted(6, 10000));
+        assertTrue("buffer overrun: " + printer.getMaxBuffered(), printer.getMaxBuffered() <= 2);
+    }
+
+    @Test
+    public void sendFailsWhilePrinterIsNotReady() throws Exception {
+        SimulatedPrinter printer = new SimulatedPrinter(0, 1);
+        printer.setPaused(true);
+        connection = new ZPLJavaFlowControlledConnection(printer, 1, 2, 2, 200);
+        try {
+            connection.send(LABEL, 0, LABEL.length);
+            fail("label sent to a paused printer");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("paused"));
+        }
+        assertEquals(0, printer.getMaxBuffered());
+
+        printer.setPaused(false);
+        connection.send(LABEL, 0, LABEL.length);
+        assertTrue(printer.awaitPrinted(1, 5000));
+    }
+
+    /**
+     * A printer that answers <code>~HS</code> at once, like a real printer, even while a format is
+     * still being received. Every format is one label.
+     */
+    private static class SimulatedPrinter implements ZPLJavaStatusPrinterConnection {
+        private final long sendMillis;
+        private final Object sendLock = new Object();
+        private final Thread engine;
+        private int buffered = 0;
+        private int maxBuffered = 0;
+        private int printed = 0;
+        private boolean paused = false;
+
+        /**
+         * @param sendMillis time to receive a label
+         * @param printMillis time to print a label
+         */
+        SimulatedPrinter(long sendMillis, final long printMillis) {
+            this.sendMillis = sendMillis;
+            engine = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            Thread.sleep(printMillis);
+                            synchronized (SimulatedPrinter.this) {
+                                if(buffered > 0 && !paused) {
+                                    buffered--;
+                                    printed++;
+                                    SimulatedPrinter.this.notifyAll();
+                                }
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // printer is closed
+                    }
+                }
+            });
+            engine.setDaemon(true);
+            engine.start();
+        }
+
+        @Override
+        public void send(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (sendLock) {
+                try {
+                    Thread.sleep(sendMillis);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                synchronized (this) {
+                    buffered++;
+                    maxBuffered = Math.max(maxBuffered, buffered);
+                }
+            }
+        }
+
+        @Override
+        public synchronized ZPLJavaHostStatus queryHostStatus() {
+            return ZPLJavaHostStatus.parse(String.format(Locale.ENGLISH,
+                    "%c030,0,%d,1245,%03d,0,0,0,000,0,0,0%c\r\n"
+                            + "%c000,0,0,0,0,2,6,0,%08d,1,000%c\r\n"
+                            + "%c1234,0%c\r\n",
+                    ZPLJavaHostStatus.STX, paused ? 1 : 0, buffered, ZPLJavaHostStatus.ETX,
+                    ZPLJavaHostStatus.STX, buffered, ZPLJavaHostStatus.ETX,
+                    ZPLJavaHostStatus.STX, ZPLJavaHostStatus.ETX));
+        }
+
+        synchronized void setPaused(boolean paused) {
+            this.paused = paused;
+        }
+
+        synchronized int getMaxBuffered() {
+            return maxBuffered;
+        }
+
+        synchronized boolean awaitPrinted(int labels, long timeoutMillis) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            while (printed < labels) {
+                long remaining = end - System.currentTimeMillis();
+                if(remaining <= 0) return false;
+                wait(remaining);
+            }
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            return "simulated";
+        }
+
+        @Override
+        public void close() {
+            engine.interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZPLJavaJobBatcher} with jobs of three stored formats, added in turns.
+ */
+public class ZPLJavaJobBatcherTest {
+
+    private static final String[] FORMATS = {"A", "B", "C"};
+    private static final int JOBS = 300;
+    private static final int DEFINITION_SIZE = 1000;
+    /**
+     * Printer memory for one format only
+     */
+    private static final long ONE_FORMAT = DEFINITION_SIZE * 3 / 2;
+
+    @Test
+    public void jobsAreBatchedByFormat() {
+        // every job can be chosen and none is forced out by delay
+        ZPLJavaJobBatcher batcher = new ZPLJavaJobBatcher(JOBS, JOBS, ONE_FORMAT);
+        addJobs(batcher, JOBS);
+
+        List<ZPLJavaPrintJob> jobs = batcher.drain();
+
+        assertEquals(JOBS, jobs.size());
+        // three batches, one per format, with jobs in their original order
+        for (int i=0; i<JOBS; i++) {
+            int batch = i / (JOBS / 3);
+            int number = batch + (i % (JOBS / 3)) * 3;
+            assertEquals(FORMATS[batch], jobs.get(i).getFormatName());
+            assertEquals(number, number(jobs.get(i)));
+            // only the first job of a batch downloads its format
+            boolean first = i % (JOBS / 3) == 0;
+            assertEquals(code(number).length + (first ? DEFINITION_SIZE : 0), jobs.get(i).getCode().length);
+        }
+        assertEquals(2, batcher.getSwitchCount());
+        assertEquals(JOBS - 1, batcher.getOriginalSwitchCount());
+        assertEquals(3L * DEFINITION_SIZE, batcher.getDownloadedBytes());
+        assertEquals((JOBS - 3L) * DEFINITION_SIZE, batcher.getBytesSaved());
+        assertEquals(JOBS, batcher.getJobCount());
+        assertEquals(0, batcher.getPendingCount());
+    }
+
+    @Test
+    public void jobsArePassedOverAtMostMaxDelayTimes() {
+        int maxDelay = 32;
+        ZPLJavaJobBatcher batcher = new ZPLJavaJobBatcher(64, maxDelay, ONE_FORMAT);
+        addJobs(batcher, JOBS);
+
+        List<ZPLJavaPrintJob> jobs = batcher.drain();
+
+        assertEquals(JOBS, jobs.size());
+        boolean[] seen = new boolean[JOBS];
+        int[] lastOfFormat = {-1, -1, -1};
+        int batches = 0;
+        String format = null;
+        for (int i=0; i<JOBS; i++) {
+            ZPLJavaPrintJob job = jobs.get(i);
+            int number = number(job);
+            assertFalse(seen[number]);
+            seen[number] = true;
+            // jobs of one format keep their order
+            int index = number % 3;
+            assertTrue(number > lastOfFormat[index]);
+            lastOfFormat[index] = number;
+            // newer jobs sent before this one
+            int newer = 0;
+            for (int j=0; j<i; j++) if(number(jobs.get(j)) > number) newer++;
+            assertTrue("job " + number + " passed over " + newer + " times", newer <= maxDelay);
+            // a batch starts with the format definition, the printer holds one format only
+            boolean starts = !job.getFormatName().equals(format);
+            if(starts) batches++;
+            assertEquals(code(number).length + (starts ? DEFINITION_SIZE : 0), job.getCode().length);
+            format = job.getFormatName();
+        }
+        assertEquals(batches - 1, batcher.getSwitchCount());
+        assertTrue(batcher.getSwitchCount() < batcher.getOriginalSwitchCount() / 10);
+    }
+
+    @Test
+    public void stickyJobsKeepTheirOrder() {
+        ZPLJavaJobBatcher batcher = new ZPLJavaJobBatcher(JOBS, JOBS, ONE_FORMAT);
+        for (int i=0; i<12; i++) {
+            ZPLJavaPrintJob job = job(i);
+            // job 3 has the format of the first batch, but job 1 of the same order goes first
+            if(i == 1 || i == 3) job.setStickyKey("order-1");
+            batcher.add(job);
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (ZPLJavaPrintJob job : batcher.drain()) order.add(number(job));
+
+        assertEquals(12, order.size());
+        assertTrue(order.indexOf(1) < order.indexOf(3));
+        // the other jobs of format A are still batched
+        assertEquals(Integer.valueOf(0), order.get(0));
+        assertEquals(Integer.valueOf(6), order.get(1));
+        assertEquals(Integer.valueOf(9), order.get(2));
+    }
+
+    @Test
+    public void storedFormatsAreNotSentAgain() {
+        ZPLJavaJobBatcher batcher = new ZPLJavaJobBatcher(64, 32, DEFINITION_SIZE * 4);
+        addJobs(batcher, 3);
+        batcher.drain();
+        assertEquals(3L * DEFINITION_SIZE, batcher.getDownloadedBytes());
+
+        // all formats fit in printer memory
+        addJobs(batcher, 3);
+        for (ZPLJavaPrintJob job : batcher.drain()) assertEquals(code(number(job)).length, job.getCode().length);
+        assertEquals(3L * DEFINITION_SIZE, batcher.getDownloadedBytes());
+
+        // printer restarted
+        batcher.forgetPrinterMemory();
+        addJobs(batcher, 3);
+        for (ZPLJavaPrintJob job : batcher.drain()) assertTrue(job.getCode().length > DEFINITION_SIZE);
+        assertEquals(6L * DEFINITION_SIZE, batcher.getDownloadedBytes());
+    }
+
+    private static void addJobs(ZPLJavaJobBatcher batcher, int count) {
+        for (int i=0; i<count; i++) batcher.add(job(i));
+    }
+
+    /**
+     * @return job number i, recalling format {@code FORMATS[i % 3]}
+     */
+    private static ZPLJavaPrintJob job(int i) {
+        ZPLJavaPrintJob job = new ZPLJavaPrintJob(code(i), 400, 8);
+        job.setFormat(FORMATS[i % 3], new byte[DEFINITION_SIZE]);
+        return job;
+    }
+
+    private static byte[] code(int number) {
+        return ("^XA^XFR:" + number + "^XZ").getBytes();
+    }
+
+    /**
+     * @return the number of a job, read from the end of its code, after any download
+     */
+    private static int number(ZPLJavaPrintJob job) {
+        String code = new String(job.getCode());
+        return Integer.parseInt(code.substring(code.lastIndexOf(':') + 1, code.lastIndexOf('^')));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.printer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZPLJavaPrinterScheduler} with in-process printers that record what they receive.
+ */
+public class ZPLJavaPrinterSchedulerTest {
+
+    /**
+     * Label height of the test jobs: a few seconds of printing, so the estimates of the scheduler
+     * are not changed by the time the test takes
+     */
+    private static final int LABEL_HEIGHT = 2000;
+    private static final int DPI = 203;
+
+    private ZPLJavaPrinterScheduler scheduler;
+
+    @After
+    public void tearDown() throws IOException {
+        if(scheduler != null) scheduler.close();
+    }
+
+    @Test
+    public void jobsAreBalancedBetweenPrinters() throws Exception {
+        FakePrinter first = new FakePrinter("first");
+        FakePrinter second = new FakePrinter("second");
+        scheduler = new ZPLJavaPrinterScheduler(Arrays.asList(first, second));
+
+        int toFirst = 0;
+        for (int i=0; i<6; i++) if(scheduler.submit(job(i, null)) == first) toFirst++;
+
+        assertEquals(3, toFirst);
+        assertTrue(scheduler.awaitSent(5000));
+        assertEquals(3, first.received().size());
+        assertEquals(3, second.received().size());
+    }
+
+    @Test
+    public void longerJobsCountMore() throws Exception {
+        FakePrinter first = new FakePrinter("first");
+        FakePrinter second = new FakePrinter("second");
+        scheduler = new ZPLJavaPrinterScheduler(Arrays.asList(first, second));
+
+        ZPLJavaPrinterConnection longJob = scheduler.submit(new ZPLJavaPrintJob(code(0), LABEL_HEIGHT * 4, DPI));
+        // three short jobs fit in the time of the long one
+        for (int i=1; i<=3; i++) assertNotSame(longJob, scheduler.submit(job(i, null)));
+        assertTrue(scheduler.getEstimatedDelayMillis(0) > 0);
+        assertTrue(scheduler.getEstimatedDelayMillis(1) > 0);
+    }
+
+    @Test
+    public void stickyJobsStayOnTheirPrinter() throws Exception {
+        FakePrinter first = new FakePrinter("first");
+        FakePrinter second = new FakePrinter("second");
+        scheduler = new ZPLJavaPrinterScheduler(Arrays.asList(first, second));
+
+        ZPLJavaPrinterConnection printer = scheduler.submit(job(0, "order-1"));
+        for (int i=1; i<5; i++) assertSame(printer, scheduler.submit(job(i, "order-1")));
+        // other jobs go to the free printer
+        ZPLJavaPrinterConnection other = printer == first ? second : first;
+        assertSame(other, scheduler.submit(job(5, null)));
+
+        // released key goes to the printer that is free first
+        scheduler.release("order-1");
+        assertSame(other, scheduler.submit(job(6, "order-1")));
+
+        assertTrue(scheduler.awaitSent(5000));
+        FakePrinter sticky = (FakePrinter) printer;
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4"), sticky.received());
+    }
+
+    @Test
+    public void jobsOfFailedPrinterAreRerouted() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        FakePrinter first = new FakePrinter("first", gate);
+        FakePrinter second = new FakePrinter("second", gate);
+        scheduler = new ZPLJavaPrinterScheduler(Arrays.asList(first, second),
+                ZPLJavaPrinterScheduler.DEFAULT_PRINT_SPEED, 60000);
+        final CountDownLatch failed = new CountDownLatch(1);
+        scheduler.setListener(new ZPLJavaPrinterScheduler.Listener() {
+            @Override
+            public void onSent(ZPLJavaPrintJob job, ZPLJavaPrinterConnection printer) {}
+            @Override
+            public void onFailed(ZPLJavaPrinterConnection printer, IOException e) {
+                failed.countDown();
+            }
+        });
+
+        FakePrinter broken = (FakePrinter) scheduler.submit(job(0, "order-1"));
+        for (int i=1; i<4; i++) scheduler.submit(job(i, "order-1"));
+        FakePrinter working = broken == first ? second : first;
+        broken.failing = true;
+        gate.countDown();
+
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertTrue(scheduler.awaitSent(5000));
+        // every job once, in order, and the sticky key is kept on the new printer
+        assertEquals(Arrays.asList("0", "1", "2", "3"), working.received());
+        assertTrue(broken.received().isEmpty());
+        assertEquals(4, scheduler.getReroutedCount());
+        assertEquals(1, scheduler.getFailureCount(broken == first ? 0 : 1));
+        assertSame(working, scheduler.submit(job(4, "order-1")));
+        // the failed printer is not used until it is tried again
+        assertFalse(scheduler.isAvailable(broken == first ? 0 : 1));
+        assertSame(working, scheduler.submit(job(5, null)));
+    }
+
+    private static ZPLJavaPrintJob job(int number, String stickyKey) {
+        ZPLJavaPrintJob job = new ZPLJavaPrintJob(code(number), LABEL_HEIGHT, DPI);
+        job.setStickyKey(stickyKey);
+        return job;
+    }
+
+    private static byte[] code(int number) {
+        return String.valueOf(number).getBytes();
+    }
+
+    /**
+     * A printer that keeps the received labels, or fails every send if {@link #failing}
+     */
+    private static class FakePrinter implements ZPLJavaPrinterConnection {
+        private final String name;
+        private final CountDownLatch gate;
+        private final List<String> received = new ArrayList<>();
+        volatile boolean failing = false;
+
+        FakePrinter(String name) {
+            this(name, new CountDownLatch(0));
+        }
+
+        FakePrinter(String name, CountDownLatch gate) {
+            this.name = name;
+            this.gate = gate;
+        }
+
+        @Override
+        public void send(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if(failing) throw new IOException(name + " is offline");
+            synchronized (received) {
+                received.add(new String(bytes, offset, length));
+            }
+        }
+
+        List<String> received() {
+            synchronized (received) {
+                return new ArrayList<>(received);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.serialization;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaBarcode;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaDiagonalLine;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaEllipse;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGraphic;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaGroup;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaRectangle;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaSerialization;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaShape;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Labels written by {@link ZPLJavaLabelWriter} and read back by {@link ZPLJavaLabelReader}.
+ */
+public class ZPLJavaLabelReaderTest {
+
+    @Test
+    public void everyComponentTypeSurvivesRoundTrip() throws IOException {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.setPrintQuantity(3);
+        label.addAllComponents(components());
+        ZPLJavaGroup group = new ZPLJavaGroup(100, 200);
+        group.addAllComponents(new ZPLJavaText(0, 0, "In group", 400), new ZPLJavaRectangle(0, 40, 400, 4));
+        ZPLJavaGroup inner = new ZPLJavaGroup(10, 60);
+        inner.addComponent(new ZPLJavaEllipse(0, 0, 30, 30));
+        group.addComponent(inner);
+        label.addComponent(group);
+        label.generateLabelCode();
+
+        ZPLJavaLabel read = ZPLJavaLabelReader.fromByteArray(ZPLJavaLabelWriter.toByteArray(label));
+        read.generateLabelCode();
+
+        assertEquals(label.getLabelCode(), read.getLabelCode());
+        List<ZPLJavaComponent> components = read.getComponents();
+        assertEquals(label.getComponents().size(), components.size());
+        for (int i=0; i<components.size(); i++) {
+            ZPLJavaComponent original = label.getComponents().get(i);
+            // custom components come back as their instruction
+            if(original instanceof Custom) assertFalse(components.get(i) instanceof Custom);
+            else assertEquals(original.getClass(), components.get(i).getClass());
+        }
+        ZPLJavaGroup readGroup = (ZPLJavaGroup) components.get(components.size() - 1);
+        assertEquals(3, readGroup.getComponents().size());
+        assertTrue(readGroup.getComponents().get(2) instanceof ZPLJavaGroup);
+    }
+
+    @Test
+    public void negativeShapeSizeSurvivesRoundTrip() throws IOException {
+        ZPLJavaRectangle rectangle = new ZPLJavaRectangle(50, 50, 20, 30);
+        rectangle.setWidth(20);
+        rectangle.setHeight(30);
+        // margins bigger than the shape
+        rectangle.setMarginRight(50);
+        rectangle.setMarginBottom(40);
+        assertEquals(-30, rectangle.getWidth());
+        assertEquals(-10, rectangle.getHeight());
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addComponent(rectangle);
+
+        ZPLJavaLabel read = ZPLJavaLabelReader.fromByteArray(ZPLJavaLabelWriter.toByteArray(label));
+
+        ZPLJavaShape shape = (ZPLJavaShape) read.getComponents().get(0);
+        assertEquals(-30, shape.getWidth());
+        assertEquals(-10, shape.getHeight());
+    }
+
+    @Test
+    public void unknownOrientationFailsWithIOException() {
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(0, 0, "12345", 812);
+        barcode.setOrientation("X");
+        assertNotReadable(barcode);
+        barcode.setOrientation(null);
+        assertNotReadable(barcode);
+    }
+
+    @Test
+    public void unknownAlignmentFailsWithIOException() {
+        ZPLJavaText text = new ZPLJavaText(0, 0, "Text", 812);
+        text.setAlignment(null);
+        assertNotReadable(text);
+    }
+
+    @Test
+    public void truncatedStreamFailsWithIOException() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addAllComponents(components());
+        byte[] bytes = ZPLJavaLabelWriter.toByteArray(label);
+        for (int length=0; length<bytes.length - 1; length++) {
+            try {
+                ZPLJavaLabelReader.fromByteArray(Arrays.copyOf(bytes, length));
+                fail("Read " + length + " of " + bytes.length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static ZPLJavaComponent[] components() {
+        ZPLJavaText text = new ZPLJavaText(10, 10, "Café ^ _41", 812);
+        text.setAlignment(ZPLJavaComponent.POSITION_CENTER);
+        ZPLJavaText serial = new ZPLJavaText(10, 60, "0001", 812);
+        serial.setSerialization(ZPLJavaSerialization.serialNumber(1, true));
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(10, 120, "12345678", 812);
+        barcode.applyBackground(ZPLJavaShape.Color.COLOR_WHITE, 10, 10);
+        ZPLJavaBarcode masked = new ZPLJavaBarcode(10, 300, "AB001", 812);
+        masked.setSerialization(ZPLJavaSerialization.mask("%%ddd", "001"));
+        ZPLJavaRectangle rectangle = new ZPLJavaRectangle(0, 400, 812, 100, 3, 2);
+        rectangle.setColor(ZPLJavaShape.Color.COLOR_WHITE);
+        ZPLJavaDiagonalLine line = new ZPLJavaDiagonalLine(0, 500, 100, 100, 2,
+                ZPLJavaDiagonalLine.DiagonalLineOrientation.DIAGONAL_LEFT);
+        ZPLJavaGraphic graphic = new ZPLJavaGraphic(0, 600, 10, 2, new byte[]{(byte) 0xFF, 0, 0x0F, (byte) 0xC0});
+        return new ZPLJavaComponent[]{text, serial, barcode, masked, rectangle,
+                new ZPLJavaEllipse(200, 400, 50, 60, 2), line, graphic, new Custom()};
+    }
+
+    private static void assertNotReadable(ZPLJavaComponent component) {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addComponent(component);
+        try {
+            ZPLJavaLabelReader.fromByteArray(ZPLJavaLabelWriter.toByteArray(label));
+            fail("Read an invalid component");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Component that is not one of the library components
+     */
+    private static class Custom extends ZPLJavaComponent {
+        @Override
+        public void generateInstruction() {
+            setInstruction("^FO" + getX() + "," + getY() + "^GB10,10,1^FS");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rendering of {@link ZPLJavaCompiledTemplate} values into the static parts of the label code.
+ */
+public class ZPLJavaCompiledTemplateTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void fieldsAreRenderedInOrder() {
+        ZPLJavaCompiledTemplate template = ZPLJavaCompiledTemplate.compile("address",
+                "^XA^FO${x},0^FD${name}^FS^FO0,50^FD${name}, ${city}^FS^XZ");
+
+        assertEquals(Arrays.asList("x", "name", "city"), template.getFieldNames());
+        assertEquals(1, template.getFieldIndex("name"));
+        assertEquals(-1, template.getFieldIndex("zip"));
+        assertEquals(4, template.getSlotCount());
+        assertEquals(1, template.getSlotField(2));
+        assertEquals("^XA^FO10,0^FH_^FDBob^FS^FO0,50^FH_^FDBob, Athens^FS^XZ",
+                render(template, "10", "Bob", "Athens"));
+    }
+
+    @Test
+    public void valuesByNameAndByArrayAreTheSame() throws Exception {
+        ZPLJavaCompiledTemplate template = ZPLJavaCompiledTemplate.compile("address",
+                "^XA^FO0,0^FD${name}^FS^FO0,50^FD${city}^FS^XZ");
+        Map<String, String> values = new HashMap<>();
+        values.put("city", "Athens");
+        values.put("name", "Bob");
+        values.put("unused", "value");
+
+        byte[] byName = template.render(values);
+        assertArrayEquals(template.render("Bob", "Athens"), byName);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeTo(out, "Bob", "Athens");
+        assertArrayEquals(byName, out.toByteArray());
+    }
+
+    @Test
+    public void missingValuesAreEmpty() {
+        ZPLJavaCompiledTemplate template = ZPLJavaCompiledTemplate.compile("address",
+                "^XA^FD${name}|${city}^FS^XZ");
+
+        assertEquals("^XA^FH_^FD|^FS^XZ", render(template));
+        assertEquals("^XA^FH_^FDBob|^FS^XZ", render(template, "Bob", null));
+        Map<String, String> values = new HashMap<>();
+        values.put("name", "Bob");
+        assertEquals("^XA^FH_^FDBob|^FS^XZ", new String(template.render(values), UTF8));
+    }
+
+    @Test
+    public void valuesCanNotAddCommands() {
+        ZPLJavaCompiledTemplate template = ZPLJavaCompiledTemplate.compile("escape",
+                "^XA^FO0,0^FD${value} a_b^FS^FO0,50^FH#^FD${value}#41^FS^XZ");
+
+        // static hex indicators in the data are escaped too, the field is now hex escaped
+        assertEquals("^XA^FO0,0^FH_^FDA_5EXZ_5F#_7E a_5Fb^FS^FO0,50^FH#^FDA#5EXZ_#23#7E#41^FS^XZ",
+                render(template, "A^XZ_#~"));
+    }
+
+    @Test
+    public void invalidFieldNamesAreStatic() {
+        ZPLJavaCompiledTemplate template = ZPLJavaCompiledTemplate.compile("static",
+                "^XA^FX ${bad name}^FD${}^FS^XZ");
+
+        assertTrue(template.getFieldNames().isEmpty());
+        assertEquals(0, template.getSlotCount());
+        assertEquals("^XA^FX ${bad name}^FD${}^FS^XZ", render(template));
+    }
+
+    @Test
+    public void westernEuropeanCodePageIsKept() {
+        ZPLJavaCompiledTemplate template = ZPLJavaCompiledTemplate.compile("latin",
+                "^XA^CI27^FO0,0^FD${value}^FS^XZ");
+
+        assertEquals(Charset.forName("windows-1252"), template.getCharset());
+        byte[] code = template.render("é€");
+        byte[] value = Arrays.copyOfRange(code, code.length - 8, code.length - 6);
+        assertArrayEquals(new byte[]{(byte) 0xE9, (byte) 0x80}, value);
+    }
+
+    @Test
+    public void labelTemplateKeepsGeneratedCode() {
+        ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+        label.addComponent(new ZPLJavaText(0, 0, "Hello " + ZPLJavaCompiledTemplate.field("name"), 812));
+        String code = label.getLabelCode();
+        ZPLJavaCompiledTemplate template = ZPLJavaCompiledTemplate.compile("hello", label);
+
+        assertEquals(UTF8, template.getCharset());
+        assertEquals(1, template.getSlotCount());
+        assertEquals(code.replace("^FDHello ${name}", "^FH_^FDHello Bob"), render(template, "Bob"));
+        assertEquals(template.getStaticPart(0).length + template.getStaticPart(1).length,
+                template.getStaticSize());
+    }
+
+    private static String render(ZPLJavaCompiledTemplate template, String... values) {
+        return new String(template.render(values), template.getCharset());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.templates;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.config.LabelSize;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compiling, caching and eviction of templates in {@link ZPLJavaTemplateRegistry}.
+ */
+public class ZPLJavaTemplateRegistryTest {
+
+    @Test
+    public void templateIsCompiledOnce() {
+        ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry();
+        CountingTemplate template = new CountingTemplate("Hello");
+        registry.register("hello", 1, template);
+
+        ZPLJavaCompiledTemplate compiled = registry.get("hello", 1);
+        assertSame(compiled, registry.get("hello", 1));
+        assertEquals(1, template.created.get());
+        assertEquals(1, registry.getMissCount());
+        assertEquals(1, registry.getHitCount());
+        assertEquals(1, registry.getCompiledCount());
+        assertEquals(compiled.getStaticSize(), registry.getCompiledBytes());
+        assertEquals("hello", compiled.getName());
+    }
+
+    @Test
+    public void unknownTemplateIsNull() {
+        ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry();
+        registry.register("hello", 1, new CountingTemplate("Hello"));
+
+        assertNull(registry.get("hello", 2));
+        assertNull(registry.get("other", 1));
+        assertEquals(0, registry.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedTemplateIsEvicted() {
+        ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry(2, Long.MAX_VALUE);
+        CountingTemplate a = new CountingTemplate("A");
+        CountingTemplate b = new CountingTemplate("B");
+        CountingTemplate c = new CountingTemplate("C");
+        registry.register("a", 1, a);
+        registry.register("b", 1, b);
+        registry.register("c", 1, c);
+
+        registry.get("a", 1);
+        registry.get("b", 1);
+        registry.get("a", 1);
+        registry.get("c", 1);
+        assertEquals(2, registry.getCompiledCount());
+        assertEquals(1, registry.getEvictionCount());
+
+        // a is still compiled, b is compiled again
+        registry.get("a", 1);
+        registry.get("b", 1);
+        assertEquals(1, a.created.get());
+        assertEquals(2, b.created.get());
+        assertEquals(2, registry.getEvictionCount());
+    }
+
+    @Test
+    public void byteLimitKeepsNewestTemplate() {
+        long size = compiledSize("A");
+        ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry(100, size + size / 2);
+        registry.register("a", 1, new CountingTemplate("A"));
+        registry.register("b", 1, new CountingTemplate("B"));
+
+        registry.get("a", 1);
+        registry.get("b", 1);
+        assertEquals(1, registry.getCompiledCount());
+        assertEquals(size, registry.getCompiledBytes());
+
+        // a template larger than the limit is still returned and kept until the next one
+        ZPLJavaTemplateRegistry small = new ZPLJavaTemplateRegistry(100, 1);
+        small.register("a", 1, new CountingTemplate("A"));
+        assertNotNull(small.get("a", 1));
+        assertEquals(1, small.getCompiledCount());
+    }
+
+    @Test
+    public void registerReplacesCompiledTemplate() {
+        ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry();
+        registry.register("hello", 1, new CountingTemplate("Hello"));
+        ZPLJavaCompiledTemplate first = registry.get("hello", 1);
+
+        registry.register("hello", 1, new CountingTemplate("Goodbye"));
+        ZPLJavaCompiledTemplate second = registry.get("hello", 1);
+        assertNotSame(first, second);
+        assertTrue(new String(second.render("Bob"), second.getCharset()).contains("^FDGoodbye Bob"));
+        assertEquals(second.getStaticSize(), registry.getCompiledBytes());
+
+        registry.unregister("hello", 1);
+        assertNull(registry.get("hello", 1));
+        assertEquals(0, registry.getCompiledCount());
+        assertEquals(0, registry.getCompiledBytes());
+    }
+
+    @Test
+    public void clearCompiledKeepsTemplates() {
+        ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry();
+        CountingTemplate template = new CountingTemplate("Hello");
+        registry.register("hello", 1, template);
+        registry.get("hello", 1);
+
+        registry.clearCompiled();
+        assertEquals(0, registry.getCompiledCount());
+        assertEquals(0, registry.getCompiledBytes());
+        assertNotNull(registry.get("hello", 1));
+        assertEquals(2, template.created.get());
+    }
+
+    @Test
+    public void concurrentRequestsShareCompilation() throws Exception {
+        final ZPLJavaTemplateRegistry registry = new ZPLJavaTemplateRegistry();
+        final CountDownLatch compiling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        CountingTemplate template = new CountingTemplate("Hello") {
+            @Override
+            public ZPLJavaLabel createLabel() {
+                compiling.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.createLabel();
+            }
+        };
+        registry.register("hello", 1, template);
+
+        final List<ZPLJavaCompiledTemplate> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i=0; i<4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ZPLJavaCompiledTemplate compiled = registry.get("hello", 1);
+                    synchronized (results) {
+                        results.add(compiled);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        compiling.await();
+        // other threads wait for the compiling one
+        while (registry.getHitCount() < 3) Thread.sleep(5);
+        release.countDown();
+        for (Thread thread : threads) thread.join(5000);
+
+        assertEquals(1, template.created.get());
+        assertEquals(4, results.size());
+        for (ZPLJavaCompiledTemplate compiled : results) assertSame(results.get(0), compiled);
+    }
+
+    private static long compiledSize(String text) {
+        return ZPLJavaCompiledTemplate.compile("size", new CountingTemplate(text).createLabel())
+                .getStaticSize();
+    }
+
+    /**
+     * A template of one text with a name field that counts the created labels
+     */
+    private static class CountingTemplate implements ZPLJavaTemplate {
+        private final String text;
+        final AtomicInteger created = new AtomicInteger();
+
+        CountingTemplate(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public ZPLJavaLabel createLabel() {
+            created.incrementAndGet();
+            ZPLJavaLabel label = new ZPLJavaLabel(4, 6, LabelSize._8DPMM);
+            label.addComponent(new ZPLJavaText(0, 0, text + " " + ZPLJavaCompiledTemplate.field("name"), 812));
+            return label;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Render all records of an input with a compiled template, in three stages:
+ * <ul>
+ *     <li>a reader thread parses records into chunks,</li>
+ *     <li>render workers render the chunks in parallel,</li>
+ *     <li>the calling thread writes the rendered chunks in input order.</li>
+ * </ul>
+ * The queues between the stages are bounded, so an input of any size is rendered with at most
+ * {@code queueChunks} chunks in memory.
+ */
+public class ZPLJavaBatchPipeline {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    public static final int DEFAULT_QUEUE_CHUNKS = 64;
+
+    /**
+     * End of input, for the writer
+     */
+    private static final Chunk END = new Chunk(0);
+    /**
+     * End of work, for the workers
+     */
+    private static final Chunk STOP = new Chunk(0);
+
+    private final ZPLJavaCompiledTemplate template;
+    private final int workers;
+    private final int chunkSize;
+    private final int queueChunks;
+
+    private volatile boolean aborted;
+    private long labelCount;
+    private long byteCount;
+
+    /**
+     * Create a pipeline with a worker for every processor.
+     * @param template the template of the labels
+     */
+    public ZPLJavaBatchPipeline(ZPLJavaCompiledTemplate template){
+        this(template, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CHUNKS);
+    }
+
+    /**
+     * @param template the template of the labels
+     * @param workers render threads
+     * @param chunkSize records of every chunk
+     * @param queueChunks maximum chunks between reader and writer
+     */
+    public ZPLJavaBatchPipeline(ZPLJavaCompiledTemplate template, int workers, int chunkSize, int queueChunks){
+        this.template = template;
+        this.workers = Math.max(1, workers);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.queueChunks = Math.max(1, queueChunks);
+    }
+
+    /**
+     * Render every record of input and write the labels to output. Output is flushed but not closed.
+     * @param input records to render
+     * @param output where to write the labels
+     * @return the labels written
+     * @throws IOException if input is not valid, or input or output fail
+     */
+    public long run(final ZPLJavaRecordReader input, OutputStream output) throws IOException {
+        final BlockingQueue<Chunk> ordered = new ArrayBlockingQueue<>(queueChunks);
+        final BlockingQueue<Chunk> work = new ArrayBlockingQueue<>(queueChunks);
+        aborted = false;
+        labelCount = 0;
+        byteCount = 0;
+
+        Thread[] threads = new Thread[workers + 1];
+        threads[0] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(input, ordered, work);
+            }
+        }, "zpljava-reader");
+        for (int i=1; i<threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    render(work);
+                }
+            }, "zpljava-render-" + i);
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Throwable failure = null;
+        try {
+            while (true) {
+                Chunk chunk = ordered.take();
+                if(chunk == END) break;
+                // after a failure keep taking chunks, so that reader can finish
+                if(failure != null) continue;
+                chunk.done.await();
+                if(chunk.failure != null) {
+                    failure = chunk.failure;
+                    aborted = true;
+                    continue;
+                }
+                try {
+                    chunk.output.writeTo(output);
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                    aborted = true;
+                    continue;
+                }
+                labelCount += chunk.count;
+                byteCount += chunk.output.size();
+                chunk.output = null;
+            }
+            for (Thread thread : threads) thread.join();
+        } catch (InterruptedException e) {
+            aborted = true;
+            for (Thread thread : threads) thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch was interrupted");
+        }
+
+        if(failure instanceof IOException) throw (IOException) failure;
+        if(failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if(failure instanceof Error) throw (Error) failure;
+        output.flush();
+        return labelCount;
+    }
+
+    private void read(ZPLJavaRecordReader input, BlockingQueue<Chunk> ordered, BlockingQueue<Chunk> work){
+        try {
+            try {
+                while (!aborted) {
+                    Chunk chunk = new Chunk(chunkSize);
+                    String[] record;
+                    while (chunk.count < chunkSize && (record = input.next()) != null) {
+                        chunk.records[chunk.count++] = record;
+                    }
+                    if(chunk.count == 0) break;
+                    // writer waits chunks in this order
+                    ordered.put(chunk);
+                    work.put(chunk);
+                    if(chunk.count < chunkSize) break;
+                }
+            } catch (IOException | RuntimeException e) {
+                Chunk failed = new Chunk(0);
+                failed.failure = e;
+                failed.done.countDown();
+                ordered.put(failed);
+            } finally {
+                for (int i=0; i<workers; i++) work.put(STOP);
+                ordered.put(END);
+            }
+        } catch (InterruptedException e) {
+            // batch was interrupted, writer does not wait anymore
+        }
+    }
+
+    private void render(BlockingQueue<Chunk> work){
+        try {
+            while (true) {
+                Chunk chunk = work.take();
+                if(chunk == STOP) return;
+                if(!aborted) {
+                    try {
+                        ByteArrayOutputStream output = new ByteArrayOutputStream(
+                                chunk.count * (template.getStaticSize() + 64));
+                        for (int i=0; i<chunk.count; i++) {
+                            template.writeTo(output, chunk.records[i]);
+                            chunk.records[i] = null;
+                        }
+                        chunk.output = output;
+                    } catch (IOException | RuntimeException e) {
+                        chunk.failure = e;
+                    }
+                }
+                chunk.done.countDown();
+            }
+        } catch (InterruptedException e) {
+            // batch was interrupted
+        }
+    }
+
+    /**
+     * @return the labels written by the last run
+     */
+    public long getLabelCount() {
+        return labelCount;
+    }
+    /**
+     * @return the bytes written by the last run
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    private static class Chunk {
+        final String[][] records;
+        int count;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile ByteArrayOutputStream output;
+        volatile Throwable failure;
+
+        Chunk(int size){
+            records = new String[size][];
+        }
+    }
+}
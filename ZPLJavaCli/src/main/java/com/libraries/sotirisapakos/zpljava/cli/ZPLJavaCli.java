@@ -0,0 +1,267 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import com.libraries.sotirisapakos.zpljava.cli.jfr.ZPLJavaFlightRecorder;
+import com.libraries.sotirisapakos.zpljava.printer.ZPLJavaTcpPrinterConnection;
+import com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaLabelReader;
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line tool of the library.
+ * <h3>render</h3>
+ * Render every record of a CSV or JSON lines input with a template and write the labels to one
+ * file:
+ * <pre>
+ * zpljava render --template product.zpl --input products.csv --output products.zpl
+ * </pre>
+ * Options:
+ * <ul>
+ *     <li><code>--template</code>: ZPL code with <code>${field}</code> placeholders, or a label
+ *     saved with {@link com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaLabelWriter}
+ *     (<code>.zplbin</code>).</li>
+ *     <li><code>--input</code>: input file or <code>-</code> for standard input (default).</li>
+ *     <li><code>--format</code>: <code>csv</code> or <code>jsonl</code>, by default found from the
+ *     input file extension.</li>
+ *     <li><code>--delimiter</code>: CSV column delimiter, default <code>,</code>.</li>
+ *     <li><code>--output</code>: output file or <code>-</code> for standard output (default).</li>
+ *     <li><code>--threads</code>, <code>--chunk</code>, <code>--queue</code>: see
+ *     {@link ZPLJavaBatchPipeline}.</li>
+ * </ul>
+ * <h3>daemon</h3>
+ * Start a {@link ZPLJavaRenderDaemon} with the templates of a directory:
+ * <pre>
+ * zpljava daemon --templates templates --port 7878 --printer 192.168.1.50:9100
+ * </pre>
+ * <h3>printer</h3>
+ * Start a {@link ZPLJavaVirtualPrinter} on a loopback port, to test printing without hardware.
+ * Every printed job is written to standard error, and a summary on exit:
+ * <pre>
+ * zpljava printer --port 9100 --speed 6 --dpi 203 --buffer 524288 --length 1218
+ * </pre>
+ * <h3>Flight Recorder</h3>
+ * With <code>--jfr on</code> every command records library events with
+ * {@link ZPLJavaFlightRecorder}. Start the recording with the JVM, like
+ * <code>JAVA_OPTS=-XX:StartFlightRecording:filename=zpljava.jfr</code>.
+ */
+public class ZPLJavaCli {
+
+    private static final String USAGE =
+            "Usage:\n"
+            + "  zpljava render --template <file> [--input <file>|-] [--format csv|jsonl]\n"
+            + "                 [--delimiter <char>] [--output <file>|-] [--threads <n>]\n"
+            + "                 [--chunk <records>] [--queue <chunks>]\n"
+            + "  zpljava daemon --templates <directory> [--port <port>] [--printer <host[:port]>]\n"
+            + "  zpljava printer [--port <port>] [--speed <ips>] [--dpi <dpi>] [--buffer <bytes>]\n"
+            + "                  [--length <dots>]\n"
+            + "Every command also takes [--jfr on] to record Flight Recorder events of the library.\n";
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Run a command.
+     * @param args command and options
+     * @return the exit code: 0 for success, 1 for failure and 2 for invalid arguments
+     */
+    public static int run(String[] args) {
+        if(args.length == 0) {
+            System.err.print(USAGE);
+            return 2;
+        }
+        Map<String, String> options;
+        try {
+            options = parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return 2;
+        }
+        if("on".equals(options.get("jfr"))) ZPLJavaFlightRecorder.install();
+        try {
+            switch (args[0]) {
+                case "render": return render(options);
+                case "daemon": return daemon(options);
+                case "printer": return printer(options);
+                default:
+                    System.err.println("Unknown command " + args[0]);
+                    System.err.print(USAGE);
+                    return 2;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return 2;
+        } catch (IOException e) {
+            System.err.println("zpljava: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int render(Map<String, String> options) throws IOException {
+        ZPLJavaCompiledTemplate template = loadTemplate(new File(required(options, "template")));
+        String input = option(options, "input", "-");
+        String format = option(options, "format", input.endsWith(".jsonl") || input.endsWith(".ndjson")
+                ? "jsonl" : "csv");
+        String delimiter = option(options, "delimiter", ",");
+        if(delimiter.length() != 1) throw new IllegalArgumentException("Delimiter must be one character");
+        String output = option(options, "output", "-");
+        ZPLJavaBatchPipeline pipeline = new ZPLJavaBatchPipeline(template,
+                intOption(options, "threads", Runtime.getRuntime().availableProcessors()),
+                intOption(options, "chunk", ZPLJavaBatchPipeline.DEFAULT_CHUNK_SIZE),
+                intOption(options, "queue", ZPLJavaBatchPipeline.DEFAULT_QUEUE_CHUNKS));
+
+        InputStream in = input.equals("-") ? System.in : new FileInputStream(input);
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        ZPLJavaRecordReader records;
+        switch (format) {
+            case "csv": records = new ZPLJavaCsvReader(reader, delimiter.charAt(0), template); break;
+            case "jsonl": records = new ZPLJavaJsonLinesReader(reader, template); break;
+            default:
+                reader.close();
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+        OutputStream out = new BufferedOutputStream(output.equals("-") ? System.out
+                : new FileOutputStream(output), 64 * 1024);
+        long start = System.nanoTime();
+        try {
+            pipeline.run(records, out);
+        } finally {
+            records.close();
+            if(output.equals("-")) out.flush();
+            else out.close();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.err.println(String.format(Locale.ENGLISH, "%d labels, %d bytes in %d ms",
+                pipeline.getLabelCount(), pipeline.getByteCount(), millis));
+        return 0;
+    }
+
+    private static int daemon(Map<String, String> options) throws IOException {
+        String printer = options.get("printer");
+        final ZPLJavaRenderDaemon daemon = new ZPLJavaRenderDaemon(new File(required(options, "templates")),
+                intOption(options, "port", ZPLJavaDaemonProtocol.DEFAULT_PORT),
+                printer == null ? null : ZPLJavaTcpPrinterConnection.of(printer));
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    daemon.close();
+                } catch (IOException ignored) {
+                    // exiting anyway
+                }
+            }
+        });
+        System.err.println("zpljava daemon listening on port " + daemon.getPort());
+        daemon.serve();
+        return 0;
+    }
+
+    private static int printer(Map<String, String> options) throws IOException {
+        final ZPLJavaVirtualPrinter printer = new ZPLJavaVirtualPrinter(
+                intOption(options, "port", ZPLJavaVirtualPrinter.DEFAULT_PORT),
+                intOption(options, "buffer", ZPLJavaVirtualPrinter.DEFAULT_BUFFER_SIZE),
+                intOption(options, "dpi", ZPLJavaVirtualPrinter.DEFAULT_DPI),
+                intOption(options, "speed", ZPLJavaVirtualPrinter.DEFAULT_SPEED),
+                intOption(options, "length", ZPLJavaVirtualPrinter.DEFAULT_LABEL_LENGTH),
+                System.err);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                System.err.println(printer.summary());
+                try {
+                    printer.close();
+                } catch (IOException ignored) {
+                    // exiting anyway
+                }
+            }
+        });
+        System.err.println("zpljava virtual printer listening on port " + printer.getPort());
+        printer.serve();
+        return 0;
+    }
+
+    /**
+     * Load a template file: a label saved with
+     * {@link com.libraries.sotirisapakos.zpljava.serialization.ZPLJavaLabelWriter} if name ends with
+     * <code>.zplbin</code>, else UTF-8 ZPL code.
+     * @param file the template file
+     * @return the compiled template, named after the file
+     * @throws IOException if file can not be read
+     */
+    static ZPLJavaCompiledTemplate loadTemplate(File file) throws IOException {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String templateName = dot > 0 ? name.substring(0, dot) : name;
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if(name.endsWith(".zplbin"))
+            return ZPLJavaCompiledTemplate.compile(templateName, ZPLJavaLabelReader.fromByteArray(bytes));
+        return ZPLJavaCompiledTemplate.compile(templateName, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    // -------------------------------- options --------------------------------
+
+    /**
+     * Parse <code>--name value</code> options after the command.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i=1; i<args.length; i+=2) {
+            if(!args[i].startsWith("--") || args[i].length() == 2)
+                throw new IllegalArgumentException("Invalid option " + args[i]);
+            if(i + 1 >= args.length) throw new IllegalArgumentException("Option " + args[i] + " needs a value");
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if(value == null) throw new IllegalArgumentException("Option --" + name + " is required");
+        return value;
+    }
+
+    static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if(value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " must be a number");
+        }
+    }
+}
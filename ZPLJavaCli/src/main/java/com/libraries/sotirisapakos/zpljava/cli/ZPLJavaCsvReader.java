@@ -0,0 +1,144 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read a CSV input (RFC 4180). The first row is the header and names the template fields of every
+ * column. Quoted values may contain the delimiter, new lines and <code>""</code> for a quote.
+ * Columns that are not template fields are skipped.
+ */
+public class ZPLJavaCsvReader implements ZPLJavaRecordReader {
+
+    private final Reader reader;
+    private final char delimiter;
+    private final char[] buffer = new char[64 * 1024];
+    private int position = 0;
+    private int limit = 0;
+    private final StringBuilder value = new StringBuilder();
+    private final List<String> row = new ArrayList<>();
+    /**
+     * Column of every template field
+     */
+    private final int[] columns;
+    private long lineNumber = 1;
+    private long recordLineNumber = 0;
+
+    /**
+     * @param reader the CSV input
+     * @param delimiter column delimiter, usually ',' or ';'
+     * @param template the template of the records
+     * @throws IOException if header can not be read or a template field has no column
+     */
+    public ZPLJavaCsvReader(Reader reader, char delimiter, ZPLJavaCompiledTemplate template) throws IOException {
+        this.reader = reader;
+        this.delimiter = delimiter;
+        if(!readRow()) throw new IOException("CSV input has no header");
+        List<String> fields = template.getFieldNames();
+        columns = new int[fields.size()];
+        for (int i=0; i<columns.length; i++) {
+            columns[i] = row.indexOf(fields.get(i));
+            if(columns[i] < 0) throw new IOException("CSV input has no column " + fields.get(i));
+        }
+    }
+
+    @Override
+    public String[] next() throws IOException {
+        do {
+            if(!readRow()) return null;
+        } while (row.size() == 1 && row.get(0).isEmpty());
+        String[] values = new String[columns.length];
+        for (int i=0; i<columns.length; i++) {
+            if(columns[i] >= row.size())
+                throw new IOException("Line " + recordLineNumber + ": expected " + (columns[i] + 1)
+                        + " columns but found " + row.size());
+            values[i] = row.get(columns[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Read the values of one row.
+     * @return false at the end of input
+     */
+    private boolean readRow() throws IOException {
+        row.clear();
+        recordLineNumber = lineNumber;
+        int c = read();
+        if(c < 0) return false;
+        value.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if(quoted) {
+                if(c < 0) throw new IOException("Line " + recordLineNumber + ": quoted value is not closed");
+                if(c == '"') {
+                    c = read();
+                    if(c == '"') value.append('"');
+                    else {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                else {
+                    if(c == '\n') lineNumber++;
+                    value.append((char) c);
+                }
+            }
+            else if(c == '"' && value.length() == 0) quoted = true;
+            else if(c == delimiter) {
+                row.add(value.toString());
+                value.setLength(0);
+            }
+            else if(c == '\n' || c < 0) {
+                if(c == '\n') lineNumber++;
+                int length = value.length();
+                if(length > 0 && value.charAt(length - 1) == '\r') value.setLength(length - 1);
+                row.add(value.toString());
+                return true;
+            }
+            else value.append((char) c);
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if(position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if(limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    @Override
+    public long getLineNumber() {
+        return recordLineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
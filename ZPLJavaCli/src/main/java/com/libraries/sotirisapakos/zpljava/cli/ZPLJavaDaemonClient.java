@@ -0,0 +1,181 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A client of {@link ZPLJavaRenderDaemon}.
+ * <p>Use {@link #render(String, Map)} for one label, or send many requests with
+ * {@link #send(byte, String, Map)}, {@link #flush()} them and read the responses in the same order
+ * with {@link #receive()}.</p>
+ * Not thread safe, use one client from one thread.
+ */
+public class ZPLJavaDaemonClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(1024);
+    private final DataOutputStream frameOut = new DataOutputStream(frame);
+    private int nextId = 1;
+
+    /**
+     * Connect to a daemon of this machine.
+     * @param port daemon port
+     * @throws IOException if daemon is not running
+     */
+    public ZPLJavaDaemonClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+    }
+
+    /**
+     * Render one label.
+     * @param template template name
+     * @param values field values by field name
+     * @return the label code
+     * @throws IOException if daemon fails or returns an error
+     */
+    public byte[] render(String template, Map<String, String> values) throws IOException {
+        return call(ZPLJavaDaemonProtocol.OP_RENDER, template, values);
+    }
+
+    /**
+     * Render one label and send it to the printer of the daemon.
+     * @param template template name
+     * @param values field values by field name
+     * @throws IOException if daemon fails or returns an error
+     */
+    public void print(String template, Map<String, String> values) throws IOException {
+        call(ZPLJavaDaemonProtocol.OP_PRINT, template, values);
+    }
+
+    private byte[] call(byte operation, String template, Map<String, String> values) throws IOException {
+        int id = send(operation, template, values);
+        flush();
+        Response response = receive();
+        if(response.getId() != id) throw new IOException("Unexpected response " + response.getId());
+        if(!response.isOk()) throw new IOException(response.getErrorMessage());
+        return response.getPayload();
+    }
+
+    /**
+     * Write a request without waiting for its response. Requests are sent with {@link #flush()}.
+     * @param operation one of the {@code OP_} constants of {@link ZPLJavaDaemonProtocol}
+     * @param template template name
+     * @param values field values by field name
+     * @return the request id
+     * @throws IOException if daemon connection fails
+     */
+    public int send(byte operation, String template, Map<String, String> values) throws IOException {
+        if(values.size() > 0xFFFF) throw new IllegalArgumentException("Too many fields");
+        int id = nextId++;
+        frame.reset();
+        frameOut.writeByte(operation);
+        frameOut.writeInt(id);
+        writeShortString(template);
+        frameOut.writeShort(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            writeShortString(entry.getKey());
+            if(entry.getValue() == null) frameOut.writeInt(-1);
+            else {
+                byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                frameOut.writeInt(value.length);
+                frameOut.write(value);
+            }
+        }
+        out.writeInt(frame.size());
+        frame.writeTo(out);
+        return id;
+    }
+
+    private void writeShortString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > 0xFFFF) throw new IllegalArgumentException("Name is too long");
+        frameOut.writeShort(bytes.length);
+        frameOut.write(bytes);
+    }
+
+    /**
+     * Send the written requests.
+     * @throws IOException if daemon connection fails
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Wait for the next response.
+     * @return the response
+     * @throws IOException if daemon connection fails
+     */
+    public Response receive() throws IOException {
+        int length = in.readInt();
+        if(length < 5 || length > ZPLJavaDaemonProtocol.MAX_FRAME_SIZE)
+            throw new IOException("Invalid response length " + length);
+        int id = in.readInt();
+        byte status = in.readByte();
+        byte[] payload = new byte[length - 5];
+        in.readFully(payload);
+        return new Response(id, status, payload);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static class Response {
+        private final int id;
+        private final byte status;
+        private final byte[] payload;
+
+        Response(int id, byte status, byte[] payload){
+            this.id = id;
+            this.status = status;
+            this.payload = payload;
+        }
+
+        public int getId() {
+            return id;
+        }
+        public boolean isOk() {
+            return status == ZPLJavaDaemonProtocol.STATUS_OK;
+        }
+        /**
+         * @return the label code of a render request
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+        public String getErrorMessage() {
+            return isOk() ? null : new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+/**
+ * Constants of the {@link ZPLJavaRenderDaemon} protocol.
+ * <p>Every message is a frame: the frame length (int, without these 4 bytes) and the frame body.
+ * Numbers are big endian and strings UTF-8.</p>
+ * <h3>Request</h3>
+ * <ul>
+ *     <li>operation (byte): {@link #OP_RENDER}, {@link #OP_PRINT} or {@link #OP_PING}</li>
+ *     <li>request id (int), chosen by the client and returned in the response</li>
+ *     <li>template name (unsigned short length and bytes)</li>
+ *     <li>field count (unsigned short) and for every field its name (unsigned short length and
+ *     bytes) and its value (int length and bytes, -1 for null)</li>
+ * </ul>
+ * <h3>Response</h3>
+ * <ul>
+ *     <li>request id (int)</li>
+ *     <li>status (byte): {@link #STATUS_OK} or {@link #STATUS_ERROR}</li>
+ *     <li>the label code for {@link #OP_RENDER}, nothing for {@link #OP_PRINT} and
+ *     {@link #OP_PING}, or the error message</li>
+ * </ul>
+ * Clients may send many requests without waiting for responses. Responses of a connection are
+ * returned in request order.
+ */
+public interface ZPLJavaDaemonProtocol {
+
+    int DEFAULT_PORT = 7878;
+    int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Render a label and return its code
+     */
+    byte OP_RENDER = 1;
+    /**
+     * Render a label and send it to the printer of the daemon
+     */
+    byte OP_PRINT = 2;
+    /**
+     * Check that daemon is running
+     */
+    byte OP_PING = 3;
+
+    byte STATUS_OK = 0;
+    byte STATUS_ERROR = 1;
+}
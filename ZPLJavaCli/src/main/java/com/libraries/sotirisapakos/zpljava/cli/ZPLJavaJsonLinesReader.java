@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Read a JSON lines input: one flat JSON object per line, like
+ * <code>{"name":"Coffee","barcode":"123456"}</code>. String, number and boolean values are used as
+ * text, null as empty value. Keys that are not template fields are skipped. Empty lines are
+ * skipped.
+ */
+public class ZPLJavaJsonLinesReader implements ZPLJavaRecordReader {
+
+    private final BufferedReader reader;
+    private final ZPLJavaCompiledTemplate template;
+    private final StringBuilder value = new StringBuilder();
+    private long lineNumber = 0;
+    private String line;
+    private int position;
+
+    /**
+     * @param reader the JSON lines input
+     * @param template the template of the records
+     */
+    public ZPLJavaJsonLinesReader(Reader reader, ZPLJavaCompiledTemplate template) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader
+                : new BufferedReader(reader, 64 * 1024);
+        this.template = template;
+    }
+
+    @Override
+    public String[] next() throws IOException {
+        do {
+            line = reader.readLine();
+            if(line == null) return null;
+            lineNumber++;
+            position = 0;
+            skipWhitespace();
+        } while (position == line.length());
+
+        String[] values = new String[template.getFieldNames().size()];
+        expect('{');
+        skipWhitespace();
+        if(peek() == '}') position++;
+        else {
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                String fieldValue = readValue();
+                int field = template.getFieldIndex(key);
+                if(field >= 0) values[field] = fieldValue;
+                skipWhitespace();
+                char c = read();
+                if(c == '}') break;
+                if(c != ',') throw error("expected ',' or '}'");
+            }
+        }
+        skipWhitespace();
+        if(position != line.length()) throw error("unexpected text after object");
+        return values;
+    }
+
+    private String readValue() throws IOException {
+        char c = peek();
+        if(c == '"') return readString();
+        if(c == '{' || c == '[') throw error("nested values are not supported");
+        int start = position;
+        while (position < line.length()) {
+            c = line.charAt(position);
+            if(c == ',' || c == '}' || Character.isWhitespace(c)) break;
+            position++;
+        }
+        String literal = line.substring(start, position);
+        if(literal.isEmpty()) throw error("expected a value");
+        if(literal.equals("null")) return null;
+        return literal;
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        value.setLength(0);
+        while (true) {
+            char c = read();
+            if(c == '"') return value.toString();
+            if(c != '\\') {
+                value.append(c);
+                continue;
+            }
+            c = read();
+            switch (c) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if(position + 4 > line.length()) throw error("invalid escape");
+                    try {
+                        value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("invalid escape");
+                    }
+                    position += 4;
+                    break;
+                default: value.append(c);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) position++;
+    }
+
+    private char peek() throws IOException {
+        if(position >= line.length()) throw error("unexpected end of line");
+        return line.charAt(position);
+    }
+
+    private char read() throws IOException {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(char c) throws IOException {
+        if(read() != c) throw error("expected '" + c + "'");
+    }
+
+    private IOException error(String message) {
+        return new IOException("Line " + lineNumber + ", column " + (position + 1) + ": " + message);
+    }
+
+    @Override
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Read the records of a batch input. Every record is returned as the field values of the
+ * template, in the order of
+ * {@link com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate#getFieldNames()}.
+ */
+public interface ZPLJavaRecordReader extends Closeable {
+
+    /**
+     * @return the next record or null at the end of input
+     * @throws IOException if input can not be read or is not valid
+     */
+    String[] next() throws IOException;
+
+    /**
+     * @return the input line of the last record, for error messages
+     */
+    long getLineNumber();
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import com.libraries.sotirisapakos.zpljava.printer.ZPLJavaPrinterConnection;
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A long running process that keeps compiled templates in memory and renders labels for other
+ * processes, so a single label does not pay the JVM startup.
+ * <ul>
+ *     <li>Listens on the loopback address only. See {@link ZPLJavaDaemonProtocol} for the
+ *     protocol.</li>
+ *     <li>Templates are the files of the templates directory, named after the file without
+ *     extension. All of them are compiled at start; files added later are compiled the first time
+ *     they are requested.</li>
+ *     <li>Every connection is served by its own thread. Responses are flushed when there are no
+ *     more pipelined requests to read.</li>
+ * </ul>
+ */
+public class ZPLJavaRenderDaemon implements Closeable {
+
+    private final File templateDirectory;
+    private final ZPLJavaPrinterConnection printer;
+    private final ConcurrentHashMap<String, ZPLJavaCompiledTemplate> templates = new ConcurrentHashMap<>();
+    private final ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * Compile the templates and open the server socket.
+     * @param templateDirectory directory of the template files
+     * @param port loopback port, 0 for any free port
+     * @param printer printer of {@link ZPLJavaDaemonProtocol#OP_PRINT} requests or null
+     * @throws IOException if templates can not be read or port is used
+     */
+    public ZPLJavaRenderDaemon(File templateDirectory, int port, ZPLJavaPrinterConnection printer)
+            throws IOException {
+        this.templateDirectory = templateDirectory;
+        this.printer = printer;
+        File[] files = templateDirectory.listFiles();
+        if(files == null) throw new IOException("Can not read template directory " + templateDirectory);
+        for (File file : files) {
+            if(!file.isFile()) continue;
+            ZPLJavaCompiledTemplate template = ZPLJavaCli.loadTemplate(file);
+            templates.put(template.getName(), template);
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * @return the port of the daemon
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the names of the compiled templates
+     */
+    public Iterable<String> getTemplateNames() {
+        return templates.keySet();
+    }
+
+    /**
+     * Accept connections until {@link #close()}.
+     * @throws IOException if server socket fails
+     */
+    public void serve() throws IOException {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if(closed) return;
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serveConnection(socket);
+                }
+            }, "zpljava-daemon-" + socket.getPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            while (!closed) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if(length < 5 || length > ZPLJavaDaemonProtocol.MAX_FRAME_SIZE) return;
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                handle(ByteBuffer.wrap(frame), out);
+                // answer a pipelined batch with one write
+                if(in.available() == 0) out.flush();
+            }
+        } catch (IOException e) {
+            // client is gone
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+
+    private void handle(ByteBuffer frame, DataOutputStream out) throws IOException {
+        byte operation = frame.get();
+        int id = frame.getInt();
+        byte[] result;
+        try {
+            result = execute(operation, frame);
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+            String message = e.getMessage() != null ? e.getMessage() : "Invalid request";
+            writeResponse(out, id, ZPLJavaDaemonProtocol.STATUS_ERROR, message.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        writeResponse(out, id, ZPLJavaDaemonProtocol.STATUS_OK, result);
+    }
+
+    private byte[] execute(byte operation, ByteBuffer frame) throws IOException {
+        if(operation == ZPLJavaDaemonProtocol.OP_PING) return new byte[0];
+        if(operation != ZPLJavaDaemonProtocol.OP_RENDER && operation != ZPLJavaDaemonProtocol.OP_PRINT)
+            throw new IllegalArgumentException("Unknown operation " + operation);
+
+        ZPLJavaCompiledTemplate template = getTemplate(readString(frame, frame.getShort() & 0xFFFF));
+        String[] values = new String[template.getFieldNames().size()];
+        int fields = frame.getShort() & 0xFFFF;
+        for (int i=0; i<fields; i++) {
+            String name = readString(frame, frame.getShort() & 0xFFFF);
+            int length = frame.getInt();
+            String value = length < 0 ? null : readString(frame, length);
+            int index = template.getFieldIndex(name);
+            if(index >= 0) values[index] = value;
+        }
+        byte[] code = template.render(values);
+        if(operation == ZPLJavaDaemonProtocol.OP_RENDER) return code;
+
+        if(printer == null) throw new IOException("Daemon has no printer");
+        printer.send(code, 0, code.length);
+        return new byte[0];
+    }
+
+    private ZPLJavaCompiledTemplate getTemplate(String name) throws IOException {
+        ZPLJavaCompiledTemplate template = templates.get(name);
+        if(template != null) return template;
+        if(name.isEmpty() || name.startsWith(".") || name.contains("/") || name.contains("\\"))
+            throw new IllegalArgumentException("Invalid template name " + name);
+        for (String extension : new String[]{".zpl", ".zplbin"}) {
+            File file = new File(templateDirectory, name + extension);
+            if(!file.isFile()) continue;
+            template = ZPLJavaCli.loadTemplate(file);
+            ZPLJavaCompiledTemplate previous = templates.putIfAbsent(name, template);
+            return previous != null ? previous : template;
+        }
+        throw new IllegalArgumentException("Unknown template " + name);
+    }
+
+    private static String readString(ByteBuffer frame, int length) {
+        if(length > frame.remaining()) throw new BufferUnderflowException();
+        String value = new String(frame.array(), frame.arrayOffset() + frame.position(), length,
+                StandardCharsets.UTF_8);
+        frame.position(frame.position() + length);
+        return value;
+    }
+
+    private static void writeResponse(DataOutputStream out, int id, byte status, byte[] payload) throws IOException {
+        out.writeInt(5 + payload.length);
+        out.writeInt(id);
+        out.writeByte(status);
+        out.write(payload);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        if(printer != null) printer.close();
+    }
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli;
+
+import com.libraries.sotirisapakos.zpljava.printer.ZPLJavaHostStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A local stand-in for a network label printer, for load tests of transport, scheduling and flow
+ * control without hardware.
+ * <ul>
+ *     <li>Listens on the loopback address like a raw 9100 printer and serves one connection at a
+ *     time.</li>
+ *     <li>Reads formats (<code>^XA</code> to <code>^XZ</code>) into a receive buffer of
+ *     {@code bufferSize} bytes. When the buffer is full it stops reading, so the sender is slowed
+ *     down by TCP like by a real printer. A format larger than the whole buffer is processed
+ *     while it is received, so it does not stop the connection.</li>
+ *     <li>Prints every format with <code>^PQ</code> labels. A label takes its length
+ *     (<code>^LL</code>, kept for next formats like on a printer) divided by the print speed.</li>
+ *     <li>Answers <code>~HS</code> with formats in buffer, buffer full, partial format, label
+ *     length and labels remaining, in the {@link ZPLJavaHostStatus} format.</li>
+ *     <li>Keeps the timings of every {@link Job job}: receive, wait in buffer and print time.</li>
+ * </ul>
+ * Printing is simulated with sleeps computed from the format, so the same input always takes the
+ * same time.
+ */
+public class ZPLJavaVirtualPrinter implements Closeable {
+
+    public static final int DEFAULT_PORT = 9100;
+    public static final int DEFAULT_BUFFER_SIZE = 512 * 1024;
+    public static final int DEFAULT_DPI = 203;
+    /**
+     * Print speed in inches per second
+     */
+    public static final int DEFAULT_SPEED = 6;
+    public static final int DEFAULT_LABEL_LENGTH = 6 * DEFAULT_DPI;
+
+    /**
+     * Longest command parameter kept by the parser, longer parameters are not needed
+     */
+    private static final int MAX_PARAMETER_LENGTH = 32;
+
+    private final int bufferSize;
+    private final int dpi;
+    private final int speed;
+    private final PrintStream log;
+    private final ServerSocket serverSocket;
+    private final Thread engine;
+    private volatile boolean closed;
+
+    // -------------------------------- printer state, guarded by this --------------------------------
+
+    /**
+     * Formats received and waiting to print
+     */
+    private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    private final ArrayList<Job> jobs = new ArrayList<>();
+    /**
+     * Bytes in receive buffer
+     */
+    private int bufferedBytes;
+    private boolean partialFormat;
+    private int labelLength;
+    private int labelsRemaining;
+    /**
+     * Format being printed, still at the head of queue
+     */
+    private Job printing;
+
+    /**
+     * Timings of one format.
+     */
+    public static final class Job {
+        private final int number;
+        private final int bytes;
+        /**
+         * Bytes of the format still in receive buffer, less than {@link #bytes} if the format was
+         * larger than the buffer
+         */
+        private final int bufferedBytes;
+        private final int labels;
+        private final int labelLength;
+        private final long receiveStart;
+        private final long receiveEnd;
+        private long printStart;
+        private long printEnd;
+
+        private Job(int number, int bytes, int bufferedBytes, int labels, int labelLength, long receiveStart,
+                    long receiveEnd){
+            this.number = number;
+            this.bytes = bytes;
+            this.bufferedBytes = bufferedBytes;
+            this.labels = labels;
+            this.labelLength = labelLength;
+            this.receiveStart = receiveStart;
+            this.receiveEnd = receiveEnd;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+        public int getBytes() {
+            return bytes;
+        }
+        /**
+         * @return the labels of the format, from <code>^PQ</code>
+         */
+        public int getLabels() {
+            return labels;
+        }
+        /**
+         * @return the label length in dots
+         */
+        public int getLabelLength() {
+            return labelLength;
+        }
+        /**
+         * @return nanoseconds from the first to the last byte of the format
+         */
+        public long getReceiveNanos() {
+            return receiveEnd - receiveStart;
+        }
+        /**
+         * @return nanoseconds the format waited in buffer before printing
+         */
+        public synchronized long getWaitNanos() {
+            return printStart == 0 ? 0 : printStart - receiveEnd;
+        }
+        /**
+         * @return nanoseconds of printing all labels of the format
+         */
+        public synchronized long getPrintNanos() {
+            return printEnd == 0 ? 0 : printEnd - printStart;
+        }
+        /**
+         * @return true if every label of the format is printed
+         */
+        public synchronized boolean isPrinted() {
+            return printEnd != 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                    "job %d: %d bytes, %d x %d dots, receive %.1f ms, wait %.1f ms, print %.1f ms",
+                    number, bytes, labels, labelLength, getReceiveNanos() / 1e6, getWaitNanos() / 1e6,
+                    getPrintNanos() / 1e6);
+        }
+    }
+
+    /**
+     * Open the server socket and start the print engine.
+     * @param port loopback port, 0 for any free port
+     * @param bufferSize receive buffer in bytes
+     * @param dpi printer resolution, to convert label length to inches
+     * @param speed print speed in inches per second
+     * @param labelLength label length in dots until a format sets <code>^LL</code>
+     * @param log stream to write every printed job to, or null
+     * @throws IOException if port is used
+     */
+    public ZPLJavaVirtualPrinter(int port, int bufferSize, int dpi, int speed, int labelLength, PrintStream log)
+            throws IOException {
+        if(bufferSize <= 0 || dpi <= 0 || speed <= 0 || labelLength <= 0)
+            throw new IllegalArgumentException("Invalid printer settings");
+        this.bufferSize = bufferSize;
+        this.dpi = dpi;
+        this.speed = speed;
+        this.labelLength = labelLength;
+        this.log = log;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        engine = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                print();
+            }
+        }, "zpljava-virtual-printer");
+        engine.setDaemon(true);
+        engine.start();
+    }
+
+    /**
+     * @return the port of the printer
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept connections, one at a time, until {@link #close()}.
+     * @throws IOException if server socket fails
+     */
+    public void serve() throws IOException {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if(closed) return;
+                throw e;
+            }
+            serveConnection(socket);
+        }
+    }
+
+    // -------------------------------- receive --------------------------------
+
+    private void serveConnection(Socket socket) {
+        Parser parser = new Parser(socket);
+        try {
+            InputStream in = socket.getInputStream();
+            byte[] chunk = new byte[8 * 1024];
+            while (!closed) {
+                int space = waitForSpace(parser);
+                if(space < 0) return;
+                int count = in.read(chunk, 0, Math.min(chunk.length, space));
+                if(count < 0) return;
+                synchronized (this) {
+                    bufferedBytes += count;
+                }
+                for (int i=0; i<count; i++) parser.accept((char) (chunk[i] & 0xFF));
+            }
+        } catch (IOException e) {
+            // sender is gone
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            parser.discard();
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * @param parser parser of the connection
+     * @return free bytes of receive buffer, waiting while buffer is full, or -1 if closed
+     */
+    private synchronized int waitForSpace(Parser parser) throws InterruptedException {
+        while (!closed && bufferedBytes >= bufferSize) {
+            if(parser.bufferedFormatBytes < bufferedBytes) {
+                wait();
+                continue;
+            }
+            // the format being received fills the whole buffer and would wait for its end forever
+            if(log != null && !parser.oversized) {
+                log.println(String.format(Locale.ENGLISH,
+                        "format larger than receive buffer (%d bytes), processed while receiving", bufferSize));
+            }
+            parser.oversized = true;
+            bufferedBytes -= parser.bufferedFormatBytes;
+            parser.bufferedFormatBytes = 0;
+        }
+        return closed ? -1 : bufferSize - bufferedBytes;
+    }
+
+    /**
+     * Split the stream to commands: a prefix (<code>^</code> or <code>~</code>), a two letter
+     * name and parameters up to the next prefix. Only the commands the printer simulates are kept.
+     */
+    private final class Parser {
+        private final Socket socket;
+        private final StringBuilder name = new StringBuilder(2);
+        private final StringBuilder parameter = new StringBuilder(MAX_PARAMETER_LENGTH);
+        private boolean inCommand;
+        /**
+         * Bytes since the end of the last format
+         */
+        private int formatBytes;
+        /**
+         * Bytes of {@link #formatBytes} still in receive buffer
+         */
+        private int bufferedFormatBytes;
+        /**
+         * The format is larger than the receive buffer
+         */
+        private boolean oversized;
+        private long formatStart;
+        private int quantity = 1;
+
+        private Parser(Socket socket){
+            this.socket = socket;
+        }
+
+        private void accept(char c) throws IOException {
+            formatBytes++;
+            bufferedFormatBytes++;
+            if(c == '^' || c == '~') {
+                finishCommand();
+                inCommand = true;
+                name.setLength(0);
+                parameter.setLength(0);
+                name.append(c);
+                return;
+            }
+            if(!inCommand) return;
+            if(name.length() < 3) {
+                name.append(Character.toUpperCase(c));
+                if(name.length() == 3) startCommand();
+            }
+            else if(parameter.length() < MAX_PARAMETER_LENGTH) parameter.append(c);
+        }
+
+        /**
+         * Commands without parameters run as soon as their name is read
+         */
+        private void startCommand() throws IOException {
+            String command = name.toString();
+            if(command.equals(ZPLJavaHostStatus.COMMAND)) {
+                OutputStream out = socket.getOutputStream();
+                out.write(hostStatus().getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                inCommand = false;
+            }
+            else if(command.equals("^XA")) {
+                quantity = 1;
+                formatStart = System.nanoTime();
+                setPartialFormat(true);
+                inCommand = false;
+            }
+            else if(command.equals("^XZ")) {
+                inCommand = false;
+                receiveFormat(formatBytes, bufferedFormatBytes, quantity, formatStart);
+                bufferedFormatBytes = 0;
+                formatBytes = 0;
+                formatStart = 0;
+                oversized = false;
+            }
+        }
+
+        /**
+         * Commands with parameters run when the next command starts
+         */
+        private void finishCommand() {
+            if(!inCommand || name.length() < 3) return;
+            String command = name.toString();
+            if(command.equals("^LL")) {
+                int value = firstNumber();
+                if(value > 0) setLabelLength(value);
+            }
+            else if(command.equals("^PQ")) {
+                int value = firstNumber();
+                if(value > 0) quantity = value;
+            }
+            inCommand = false;
+        }
+
+        private int firstNumber() {
+            int value = 0;
+            for (int i=0; i<parameter.length(); i++) {
+                char c = parameter.charAt(i);
+                if(c < '0' || c > '9') break;
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        /**
+         * Free the bytes of a format that never ended
+         */
+        private void discard() {
+            synchronized (ZPLJavaVirtualPrinter.this) {
+                bufferedBytes -= bufferedFormatBytes;
+                bufferedFormatBytes = 0;
+                partialFormat = false;
+                ZPLJavaVirtualPrinter.this.notifyAll();
+            }
+            formatBytes = 0;
+        }
+    }
+
+    private synchronized void setPartialFormat(boolean partialFormat) {
+        this.partialFormat = partialFormat;
+    }
+
+    private synchronized void setLabelLength(int labelLength) {
+        this.labelLength = labelLength;
+    }
+
+    private synchronized void receiveFormat(int bytes, int bufferedBytes, int quantity, long start) {
+        long end = System.nanoTime();
+        Job job = new Job(jobs.size() + 1, bytes, bufferedBytes, quantity, labelLength,
+                start == 0 ? end : start, end);
+        jobs.add(job);
+        queue.add(job);
+        partialFormat = false;
+        notifyAll();
+    }
+
+    // -------------------------------- print --------------------------------
+
+    private void print() {
+        try {
+            while (true) {
+                Job job;
+                synchronized (this) {
+                    while (!closed && queue.isEmpty()) wait();
+                    if(closed) return;
+                    job = queue.peek();
+                    printing = job;
+                    labelsRemaining = job.labels;
+                    // format is processed, its buffer space is free
+                    bufferedBytes -= job.bufferedBytes;
+                    notifyAll();
+                }
+                synchronized (job) {
+                    job.printStart = System.nanoTime();
+                }
+                long labelNanos = job.labelLength * 1000000000L / ((long) dpi * speed);
+                for (int i=0; i<job.labels; i++) {
+                    sleepNanos(labelNanos);
+                    synchronized (this) {
+                        labelsRemaining--;
+                    }
+                }
+                synchronized (job) {
+                    job.printEnd = System.nanoTime();
+                }
+                synchronized (this) {
+                    queue.poll();
+                    printing = null;
+                    notifyAll();
+                }
+                if(log != null) log.println(job);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private static void sleepNanos(long nanos) throws InterruptedException {
+        long end = System.nanoTime() + nanos;
+        long left;
+        while ((left = end - System.nanoTime()) > 0) {
+            Thread.sleep(left / 1000000, (int) (left % 1000000));
+        }
+    }
+
+    // -------------------------------- status --------------------------------
+
+    /**
+     * @return the <code>~HS</code> response of the current state
+     */
+    synchronized String hostStatus() {
+        // the printing format is not in buffer anymore
+        int waiting = queue.size() - (printing != null ? 1 : 0);
+        return String.format(Locale.ENGLISH,
+                "%c030,0,0,%04d,%03d,%d,0,%d,000,0,0,0%c\r\n"
+                + "%c000,0,0,0,0,2,6,0,%08d,1,000%c\r\n"
+                + "%c1234,0%c\r\n",
+                ZPLJavaHostStatus.STX, labelLength, Math.min(999, waiting), bufferedBytes >= bufferSize ? 1 : 0,
+                partialFormat ? 1 : 0, ZPLJavaHostStatus.ETX,
+                ZPLJavaHostStatus.STX, labelsRemaining, ZPLJavaHostStatus.ETX,
+                ZPLJavaHostStatus.STX, ZPLJavaHostStatus.ETX);
+    }
+
+    /**
+     * @return the jobs received so far, printed or not
+     */
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<>(jobs);
+    }
+
+    /**
+     * Wait until every received format is printed.
+     * @throws InterruptedException if thread is interrupted
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (!closed && !queue.isEmpty()) wait();
+    }
+
+    /**
+     * @return a one line summary of all jobs
+     */
+    public String summary() {
+        List<Job> jobs = getJobs();
+        int labels = 0;
+        long bytes = 0;
+        long wait = 0;
+        long print = 0;
+        for (Job job : jobs) {
+            labels += job.getLabels();
+            bytes += job.getBytes();
+            wait += job.getWaitNanos();
+            print += job.getPrintNanos();
+        }
+        int count = Math.max(1, jobs.size());
+        return String.format(Locale.ENGLISH, "%d jobs, %d labels, %d bytes, average wait %.1f ms, "
+                + "average print %.1f ms", jobs.size(), labels, bytes, wait / 1e6 / count, print / 1e6 / count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        engine.interrupt();
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli.flow;
+
+import com.libraries.sotirisapakos.zpljava.output.ZPLJavaBatchFileWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Write label code to an output stream or a {@link ZPLJavaBatchFileWriter}, in the thread of the
+ * upstream publisher. A label is requested after every written label, with at most
+ * {@code prefetch} labels requested ahead.
+ * <p>The output is flushed but not closed. {@link #getCompletion()} completes with the labels
+ * written.</p>
+ */
+public class ZPLJavaFileSubscriber implements Flow.Subscriber<byte[]> {
+
+    public static final int DEFAULT_PREFETCH = 64;
+
+    private final OutputStream output;
+    private final ZPLJavaBatchFileWriter writer;
+    private final int prefetch;
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private long writtenCount = 0;
+
+    public ZPLJavaFileSubscriber(OutputStream output){
+        this(output, null, DEFAULT_PREFETCH);
+    }
+
+    public ZPLJavaFileSubscriber(ZPLJavaBatchFileWriter writer){
+        this(null, writer, DEFAULT_PREFETCH);
+    }
+
+    private ZPLJavaFileSubscriber(OutputStream output, ZPLJavaBatchFileWriter writer, int prefetch){
+        this.output = output;
+        this.writer = writer;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if(this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(byte[] item) {
+        if(completion.isDone()) return;
+        try {
+            if(writer != null) writer.write(item);
+            else output.write(item);
+        } catch (IOException e) {
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        }
+        writtenCount++;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            if(output != null) output.flush();
+        } catch (IOException e) {
+            completion.completeExceptionally(e);
+            return;
+        }
+        completion.complete(writtenCount);
+    }
+
+    /**
+     * @return completes with the labels written, or with the failure
+     */
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli.flow;
+
+import com.libraries.sotirisapakos.zpljava.printer.ZPLJavaPrinterConnection;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Send label code to one or more printers.
+ * <ul>
+ *     <li>At most {@code prefetch} labels are requested ahead. Every printer has a sending thread
+ *     that takes the next label and requests one more after sending it, so demand follows the
+ *     printers and faster printers take more labels.</li>
+ *     <li>If a printer fails, its label goes back to the front of the queue for another printer,
+ *     and the failed printer is tried again after {@code retryMillis}.</li>
+ *     <li>A label that failed {@code maxRetries} times more is not tried again: upstream is
+ *     cancelled and {@link #getCompletion()} completes with the last {@link IOException}.</li>
+ * </ul>
+ * {@link #getCompletion()} completes with the labels sent when upstream is complete and all labels
+ * are sent.
+ */
+public class ZPLJavaPrinterSubscriber implements Flow.Subscriber<byte[]> {
+
+    public static final int DEFAULT_PREFETCH = 32;
+    public static final long DEFAULT_RETRY_MILLIS = 1000;
+    public static final int DEFAULT_MAX_RETRIES = 10;
+
+    private final List<? extends ZPLJavaPrinterConnection> printers;
+    private final int prefetch;
+    private final long retryMillis;
+    private final int maxRetries;
+    private final ArrayDeque<Item> queue = new ArrayDeque<>();
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private boolean upstreamDone = false;
+    private Throwable failure;
+    private boolean stopped = false;
+    private int sending = 0;
+    private long sentCount = 0;
+
+    public ZPLJavaPrinterSubscriber(List<? extends ZPLJavaPrinterConnection> printers){
+        this(printers, DEFAULT_PREFETCH, DEFAULT_RETRY_MILLIS, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * @param printers the printers
+     * @param prefetch maximum labels received but not sent
+     * @param retryMillis time to wait before using a failed printer again
+     * @param maxRetries times a label is sent again after a failure, before printing fails
+     */
+    public ZPLJavaPrinterSubscriber(List<? extends ZPLJavaPrinterConnection> printers, int prefetch,
+                                    long retryMillis, int maxRetries){
+        if(printers.isEmpty()) throw new IllegalArgumentException("No printers");
+        this.printers = new ArrayList<>(printers);
+        this.prefetch = Math.max(1, prefetch);
+        this.retryMillis = Math.max(0, retryMillis);
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if(this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        for (final ZPLJavaPrinterConnection printer : printers) {
+            Thread thread = new Thread(() -> send(printer), "zpljava-flow-" + printer.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public synchronized void onNext(byte[] item) {
+        queue.addLast(new Item(item));
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onError(Throwable throwable) {
+        failure = throwable;
+        upstreamDone = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        upstreamDone = true;
+        notifyAll();
+    }
+
+    private void send(ZPLJavaPrinterConnection printer){
+        try {
+            while (true) {
+                Item item;
+                synchronized (this) {
+                    // a label being sent may still come back to the queue if its send fails
+                    while (!stopped && queue.isEmpty() && (!upstreamDone || sending > 0)) wait();
+                    if(stopped) return;
+                    if(queue.isEmpty()) {
+                        finish();
+                        return;
+                    }
+                    item = queue.pollFirst();
+                    sending++;
+                }
+                try {
+                    printer.send(item.bytes, 0, item.bytes.length);
+                } catch (IOException e) {
+                    synchronized (this) {
+                        sending--;
+                        if(++item.failures > maxRetries) {
+                            // stop with the lock, so no other thread finishes without this label
+                            if(fail(e)) subscription.cancel();
+                            return;
+                        }
+                        queue.addFirst(item);
+                        notifyAll();
+                    }
+                    Thread.sleep(retryMillis);
+                    continue;
+                }
+                synchronized (this) {
+                    sending--;
+                    sentCount++;
+                    notifyAll();
+                }
+                subscription.request(1);
+            }
+        } catch (InterruptedException e) {
+            cancel();
+        }
+    }
+
+    /**
+     * Called with lock, when all labels are sent.
+     */
+    private void finish(){
+        stopped = true;
+        notifyAll();
+        if(failure != null) completion.completeExceptionally(failure);
+        else completion.complete(sentCount);
+    }
+
+    /**
+     * Called with lock, when a label can not be sent.
+     * @return true if sending stopped now and upstream must be cancelled
+     */
+    private boolean fail(IOException e){
+        if(stopped) return false;
+        stopped = true;
+        queue.clear();
+        notifyAll();
+        completion.completeExceptionally(e);
+        return true;
+    }
+
+    /**
+     * Stop sending and cancel upstream. Labels not sent yet are dropped.
+     */
+    public void cancel(){
+        Flow.Subscription current;
+        synchronized (this) {
+            if(stopped) return;
+            stopped = true;
+            queue.clear();
+            notifyAll();
+            current = subscription;
+        }
+        if(current != null) current.cancel();
+        completion.completeExceptionally(new CancellationException("Printing was cancelled"));
+    }
+
+    /**
+     * @return completes with the labels sent, with the upstream failure, or with the
+     * {@link IOException} of a label that could not be sent
+     */
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    private static final class Item {
+        final byte[] bytes;
+        int failures;
+
+        Item(byte[] bytes){
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli.flow;
+
+import com.libraries.sotirisapakos.zpljava.cli.ZPLJavaRecordReader;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish the records of a {@link ZPLJavaRecordReader}. A record is read only when the subscriber
+ * has requested it, so the reader never runs ahead of the slowest stage.
+ * <p>Records are read and published by a task of the executor. Only one subscriber is accepted;
+ * the reader is closed when all records are published, on failure or on cancel.</p>
+ */
+public class ZPLJavaRecordPublisher implements Flow.Publisher<String[]> {
+
+    private final ZPLJavaRecordReader reader;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param reader records to publish
+     * @param executor executor of the reading task
+     */
+    public ZPLJavaRecordPublisher(ZPLJavaRecordReader reader, Executor executor){
+        this.reader = reader;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String[]> subscriber) {
+        if(!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) {}
+                @Override public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("Publisher has already a subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new RecordSubscription(subscriber));
+    }
+
+    private class RecordSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super String[]> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        /**
+         * Drain requests, the task runs while this is above zero
+         */
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean done;
+
+        RecordSubscription(Flow.Subscriber<? super String[]> subscriber){
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested " + n + " records"));
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = demand.get();
+                next = current + n;
+                // more than Long.MAX_VALUE means unbounded
+                if(next < 0) next = Long.MAX_VALUE;
+            } while (!demand.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            drain();
+        }
+
+        private void drain(){
+            if(work.getAndIncrement() == 0) executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if(done) {
+                    closeReader();
+                    return;
+                }
+                try {
+                    while (!done && demand.get() > 0) {
+                        String[] record = reader.next();
+                        if(record == null) {
+                            done = true;
+                            closeReader();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        if(demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                        subscriber.onNext(record);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    done = true;
+                    closeReader();
+                    subscriber.onError(e);
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+                if(missed == 0) return;
+            }
+        }
+
+        private void closeReader(){
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // all records are read or not needed anymore
+            }
+        }
+    }
+}
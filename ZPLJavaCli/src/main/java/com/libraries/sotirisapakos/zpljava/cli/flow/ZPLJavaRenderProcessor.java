@@ -0,0 +1,171 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli.flow;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Render every item of the upstream publisher to label code.
+ * <p>Demand is passed through: the downstream requests are requested from upstream unchanged, so
+ * the processor keeps no items. Items are rendered in the thread of the upstream publisher.</p>
+ * @param <T> the upstream items
+ */
+public class ZPLJavaRenderProcessor<T> implements Flow.Processor<T, byte[]> {
+
+    private final Function<? super T, byte[]> renderer;
+    private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+    /**
+     * Demand requested before upstream subscription
+     */
+    private final AtomicLong pendingDemand = new AtomicLong();
+    private volatile Flow.Subscriber<? super byte[]> downstream;
+    private volatile boolean cancelled;
+    /**
+     * Completion or failure of upstream that came before downstream subscription
+     */
+    private Throwable pendingFailure;
+    private boolean pendingComplete;
+
+    /**
+     * @param renderer function that renders one item
+     */
+    public ZPLJavaRenderProcessor(Function<? super T, byte[]> renderer){
+        this.renderer = renderer;
+    }
+
+    /**
+     * @param template template of the records
+     * @return a processor of records in the field order of template
+     */
+    public static ZPLJavaRenderProcessor<String[]> of(ZPLJavaCompiledTemplate template){
+        return new ZPLJavaRenderProcessor<>(template::render);
+    }
+
+    /**
+     * @return a processor that generates the code of labels
+     */
+    public static ZPLJavaRenderProcessor<ZPLJavaLabel> ofLabels(){
+        return new ZPLJavaRenderProcessor<>(label -> {
+            label.generateLabelCode();
+            return label.getLabelCodeBytes();
+        });
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super byte[]> subscriber) {
+        boolean complete;
+        Throwable failure;
+        synchronized (this) {
+            if(downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override public void request(long n) {}
+                    @Override public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException("Processor has already a subscriber"));
+                return;
+            }
+            downstream = subscriber;
+            complete = pendingComplete;
+            failure = pendingFailure;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if(n <= 0) {
+                    cancel();
+                    subscriber.onError(new IllegalArgumentException("Requested " + n + " items"));
+                    return;
+                }
+                Flow.Subscription subscription = upstream.get();
+                if(subscription != null) {
+                    subscription.request(n);
+                    return;
+                }
+                pendingDemand.addAndGet(n);
+                // upstream may have subscribed meanwhile
+                subscription = upstream.get();
+                if(subscription != null) requestPending(subscription);
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream.get();
+                if(subscription != null) subscription.cancel();
+            }
+        });
+        if(failure != null) subscriber.onError(failure);
+        else if(complete) subscriber.onComplete();
+    }
+
+    private void requestPending(Flow.Subscription subscription){
+        long pending = pendingDemand.getAndSet(0);
+        if(pending > 0) subscription.request(pending);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if(!upstream.compareAndSet(null, subscription)) {
+            subscription.cancel();
+            return;
+        }
+        if(cancelled) subscription.cancel();
+        else requestPending(subscription);
+    }
+
+    @Override
+    public void onNext(T item) {
+        if(cancelled) return;
+        byte[] code;
+        try {
+            code = renderer.apply(item);
+        } catch (RuntimeException e) {
+            cancelled = true;
+            upstream.get().cancel();
+            downstream.onError(e);
+            return;
+        }
+        downstream.onNext(code);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            if(downstream == null) {
+                pendingFailure = throwable;
+                return;
+            }
+        }
+        if(!cancelled) downstream.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            if(downstream == null) {
+                pendingComplete = true;
+                return;
+            }
+        }
+        if(!cancelled) downstream.onComplete();
+    }
+}
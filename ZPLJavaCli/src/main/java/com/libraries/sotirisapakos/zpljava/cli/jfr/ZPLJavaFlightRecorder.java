@@ -0,0 +1,159 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli.jfr;
+
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaMetrics;
+import com.libraries.sotirisapakos.zpljava.metrics.ZPLJavaTracer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Record the {@link ZPLJavaTracer} events of the library as JDK Flight Recorder events, so label
+ * generation, layout passes and printer I/O show up in the same timeline as GC, locks and sockets.
+ * <p>Events are only created while a recording has them enabled. Example:</p>
+ * <pre>{@code
+ * ZPLJavaFlightRecorder.install();
+ * // java -XX:StartFlightRecording:filename=zpljava.jfr ...
+ * }</pre>
+ */
+public class ZPLJavaFlightRecorder implements ZPLJavaTracer {
+
+    private static final String CATEGORY = "ZPLJava";
+
+    @Name("zpljava.Generation")
+    @Label("Label Generation")
+    @Description("A label was generated or a compiled template rendered")
+    @Category(CATEGORY)
+    static class GenerationEvent extends jdk.jfr.Event {
+        @Label("Template")
+        String template;
+        @Label("Components")
+        int components;
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("zpljava.Layout")
+    @Label("Layout Pass")
+    @Category(CATEGORY)
+    static class LayoutEvent extends jdk.jfr.Event {
+        @Label("Pass")
+        String pass;
+        @Label("Components")
+        int components;
+    }
+
+    @Name("zpljava.PrinterSend")
+    @Label("Printer Send")
+    @Description("Bytes written to a printer")
+    @Category(CATEGORY)
+    static class SendEvent extends jdk.jfr.Event {
+        @Label("Printer")
+        String printer;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("zpljava.PrinterAck")
+    @Label("Printer Acknowledge")
+    @Description("Host status round trip to a printer")
+    @Category(CATEGORY)
+    static class AckEvent extends jdk.jfr.Event {
+        @Label("Printer")
+        String printer;
+        @Label("Formats In Buffer")
+        int formatsInBuffer;
+        @Label("Labels Remaining")
+        int labelsRemaining;
+    }
+
+    /**
+     * Set a recorder as the {@link ZPLJavaMetrics#setTracer(ZPLJavaTracer) tracer} of the library.
+     */
+    public static void install(){
+        ZPLJavaMetrics.setTracer(new ZPLJavaFlightRecorder());
+    }
+
+    @Override
+    public Object begin(int event) {
+        jdk.jfr.Event span;
+        switch (event) {
+            case Event.GENERATION: span = new GenerationEvent(); break;
+            case Event.LAYOUT: span = new LayoutEvent(); break;
+            case Event.SEND: span = new SendEvent(); break;
+            case Event.ACK: span = new AckEvent(); break;
+            default: return null;
+        }
+        if(!span.isEnabled()) return null;
+        span.begin();
+        return span;
+    }
+
+    @Override
+    public void endGeneration(Object span, String templateId, int components, long size) {
+        if(!(span instanceof GenerationEvent)) return;
+        GenerationEvent event = (GenerationEvent) span;
+        event.end();
+        if(!event.shouldCommit()) return;
+        event.template = templateId;
+        event.components = components;
+        event.size = size;
+        event.commit();
+    }
+
+    @Override
+    public void endLayout(Object span, String pass, int components) {
+        if(!(span instanceof LayoutEvent)) return;
+        LayoutEvent event = (LayoutEvent) span;
+        event.end();
+        if(!event.shouldCommit()) return;
+        event.pass = pass;
+        event.components = components;
+        event.commit();
+    }
+
+    @Override
+    public void endSend(Object span, String printer, long bytes, boolean failed) {
+        if(!(span instanceof SendEvent)) return;
+        SendEvent event = (SendEvent) span;
+        event.end();
+        if(!event.shouldCommit()) return;
+        event.printer = printer;
+        event.bytes = bytes;
+        event.failed = failed;
+        event.commit();
+    }
+
+    @Override
+    public void endAck(Object span, String printer, int formatsInBuffer, int labelsRemaining) {
+        if(!(span instanceof AckEvent)) return;
+        AckEvent event = (AckEvent) span;
+        event.end();
+        if(!event.shouldCommit()) return;
+        event.printer = printer;
+        event.formatsInBuffer = formatsInBuffer;
+        event.labelsRemaining = labelsRemaining;
+        event.commit();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.cli.flow;
+
+import com.libraries.sotirisapakos.zpljava.printer.ZPLJavaPrinterConnection;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZPLJavaPrinterSubscriber} with in-process printers and a publisher of fixed labels.
+ */
+public class ZPLJavaPrinterSubscriberTest {
+
+    @Test
+    public void labelOfPrinterFailingOnceIsSentByAnotherPrinter() throws Exception {
+        CountDownLatch flakyStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FakePrinter flaky = new FakePrinter("flaky", 1) {
+            @Override
+            public void send(byte[] bytes, int offset, int length) throws IOException {
+                flakyStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.send(bytes, offset, length);
+            }
+        };
+        FakePrinter healthy = new FakePrinter("healthy", 0) {
+            @Override
+            public void send(byte[] bytes, int offset, int length) throws IOException {
+                // the flaky printer takes a label before this printer sends anything
+                try {
+                    flakyStarted.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.send(bytes, offset, length);
+            }
+        };
+        // the flaky printer is not tried again during the test
+        ZPLJavaPrinterSubscriber subscriber = new ZPLJavaPrinterSubscriber(
+                Arrays.asList(flaky, healthy), 2, 60000, 3);
+        ListPublisher publisher = new ListPublisher(5);
+        publisher.subscribe(subscriber);
+
+        // the failure comes after upstream is complete and the other labels are sent
+        long deadline = System.currentTimeMillis() + 5000;
+        while (subscriber.getSentCount() < 4 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertEquals(4, subscriber.getSentCount());
+        release.countDown();
+
+        assertEquals(Long.valueOf(5), subscriber.getCompletion().get(5, TimeUnit.SECONDS));
+        List<String> received = healthy.received();
+        assertEquals(5, received.size());
+        for (int i=0; i<5; i++) assertTrue(received.contains(String.valueOf(i)));
+        assertTrue(flaky.received().isEmpty());
+        assertFalse(publisher.cancelled);
+    }
+
+    @Test
+    public void printerAlwaysFailingCompletesExceptionally() throws Exception {
+        FakePrinter broken = new FakePrinter("broken", Integer.MAX_VALUE);
+        ZPLJavaPrinterSubscriber subscriber = new ZPLJavaPrinterSubscriber(
+                Arrays.asList(broken), 2, 1, 3);
+        ListPublisher publisher = new ListPublisher(5);
+        publisher.subscribe(subscriber);
+
+        try {
+            subscriber.getCompletion().get(5, TimeUnit.SECONDS);
+            fail("Printing did not fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertSame(broken.lastFailure, e.getCause());
+        }
+        // first try and 3 retries of the first label
+        assertEquals(4, broken.attempts.get());
+        assertEquals(0, subscriber.getSentCount());
+        assertTrue(publisher.cancelled);
+    }
+
+    /**
+     * Publish labels "0", "1", ... when they are requested
+     */
+    private static class ListPublisher implements Flow.Publisher<byte[]> {
+        private final int count;
+        private int next = 0;
+        volatile boolean cancelled = false;
+
+        ListPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super byte[]> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    synchronized (ListPublisher.this) {
+                        if(cancelled || next == count) return;
+                        for (; n > 0 && next < count; n--) {
+                            subscriber.onNext(String.valueOf(next++).getBytes());
+                        }
+                        if(next == count) subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    /**
+     * A printer that keeps the received labels after failing its first {@code failures} sends
+     */
+    private static class FakePrinter implements ZPLJavaPrinterConnection {
+        private final String name;
+        private final int failures;
+        private final List<String> received = new ArrayList<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        volatile IOException lastFailure;
+
+        FakePrinter(String name, int failures) {
+            this.name = name;
+            this.failures = failures;
+        }
+
+        @Override
+        public void send(byte[] bytes, int offset, int length) throws IOException {
+            if(attempts.incrementAndGet() <= failures) {
+                lastFailure = new IOException(name + " is offline");
+                throw lastFailure;
+            }
+            synchronized (received) {
+                received.add(new String(bytes, offset, length));
+            }
+        }
+
+        List<String> received() {
+            synchronized (received) {
+                return new ArrayList<>(received);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2022 SotirisSapak
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libraries.sotirisapakos.zpljava.processor;
+
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaBarcode;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaLabel;
+import com.libraries.sotirisapakos.zpljava.components.ZPLJavaText;
+import com.libraries.sotirisapakos.zpljava.superClasses.ZPLJavaComponent;
+import com.libraries.sotirisapakos.zpljava.templates.ZPLJavaCompiledTemplate;
+import com.libraries.sotirisapakos.zpljava.templates.annotations.ZPLJavaBarcodeField;
+import com.libraries.sotirisapakos.zpljava.templates.annotations.ZPLJavaLabelTemplate;
+import com.libraries.sotirisapakos.zpljava.templates.annotations.ZPLJavaTextField;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generate a renderer class for every {@link ZPLJavaLabelTemplate} class.
+ * <p>The template label is created at compile time, using this library, and its code is written
+ * to the renderer as constants. The renderer writes the constants and the field values to a byte
+ * array one after the other: no reflection, no template lookup and no objects created while
+ * rendering.</p>
+ * <p>Usage (gradle):</p>
+ * <pre>{@code
+ * dependencies {
+ *     implementation project(':ZPLJava')
+ *     annotationProcessor project(':ZPLJavaProcessor')
+ * }
+ * }</pre>
+ */
+@SupportedAnnotationTypes("com.libraries.sotirisapakos.zpljava.templates.annotations.ZPLJavaLabelTemplate")
+public class ZPLJavaTemplateProcessor extends AbstractProcessor {
+
+    /**
+     * Maximum bytes of one constant. Class file strings are limited to 65535 bytes and every byte
+     * above 127 takes 2 bytes.
+     */
+    private static final int MAX_CONSTANT_SIZE = 16 * 1024;
+    private static final String SUPPORT_CLASS = "ZPLJavaRenderSupport";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(ZPLJavaLabelTemplate.class)) {
+            if(element.getKind() != ElementKind.CLASS) {
+                error(element, "@ZPLJavaLabelTemplate can be used only on classes");
+                continue;
+            }
+            try {
+                generateRenderer((TypeElement) element);
+            } catch (IOException e) {
+                error(element, "Can not write renderer: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void generateRenderer(TypeElement type) throws IOException {
+        ZPLJavaLabelTemplate template = type.getAnnotation(ZPLJavaLabelTemplate.class);
+        ZPLJavaLabel label = new ZPLJavaLabel(template.widthInches(), template.heightInches(), template.dpmm());
+        label.setUtf8FormatEnabled(template.utf8FormatEnabled());
+
+        ArrayList<ZPLJavaComponent> components = new ArrayList<>();
+        ArrayList<VariableElement> fields = new ArrayList<>();
+        // fields whose values have their own ^FH hex values
+        HashSet<String> hexFields = new HashSet<>();
+        for (Element element : type.getEnclosedElements()) {
+            if(element.getKind() != ElementKind.FIELD) continue;
+            ZPLJavaTextField textField = element.getAnnotation(ZPLJavaTextField.class);
+            ZPLJavaBarcodeField barcodeField = element.getAnnotation(ZPLJavaBarcodeField.class);
+            if(textField == null && barcodeField == null) continue;
+            VariableElement field = (VariableElement) element;
+            if(!isValidField(field, textField != null && barcodeField != null)) return;
+            String name = field.getSimpleName().toString();
+            fields.add(field);
+            if(textField != null) {
+                components.add(createText(label, name, textField));
+                if(textField.specialCharacterSupport()) hexFields.add(name);
+            }
+            else components.add(createBarcode(label, name, barcodeField));
+        }
+        label.setComponents(components);
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String rendererName = template.rendererName().isEmpty()
+                ? flatName(type) + "Renderer" : template.rendererName();
+        ZPLJavaCompiledTemplate compiled = ZPLJavaCompiledTemplate.compile(rendererName, label);
+        for (VariableElement field : fields) {
+            // the renderer reads data.{name}, so the placeholder must reach the template unchanged
+            if(compiled.getFieldIndex(field.getSimpleName().toString()) < 0) {
+                error(field, "Template field name is changed by the label code, rename the field");
+                return;
+            }
+        }
+
+        String qualifiedName = packageName.isEmpty() ? rendererName : packageName + "." + rendererName;
+        Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+        try {
+            writer.write(rendererSource(packageName, rendererName, type.getQualifiedName().toString(),
+                    compiled, hexFields));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private boolean isValidField(VariableElement field, boolean bothAnnotations) {
+        if(bothAnnotations) {
+            error(field, "Use @ZPLJavaTextField or @ZPLJavaBarcodeField, not both");
+            return false;
+        }
+        if(field.getModifiers().contains(Modifier.PRIVATE) || field.getModifiers().contains(Modifier.STATIC)) {
+            error(field, "Template fields must be non-private instance fields");
+            return false;
+        }
+        if(field.getSimpleName().toString().contains("$")) {
+            error(field, "Template field names can not contain '$'");
+            return false;
+        }
+        TypeMirror fieldType = field.asType();
+        TypeKind kind = fieldType.getKind();
+        boolean number = kind == TypeKind.INT || kind == TypeKind.LONG
+                || kind == TypeKind.SHORT || kind == TypeKind.BYTE;
+        TypeMirror charSequence = processingEnv.getElementUtils()
+                .getTypeElement(CharSequence.class.getCanonicalName()).asType();
+        if(!number && !processingEnv.getTypeUtils().isAssignable(fieldType, charSequence)) {
+            error(field, "Template fields must be String, CharSequence, int or long");
+            return false;
+        }
+        return true;
+    }
+
+    private ZPLJavaText createText(ZPLJavaLabel label, String name, ZPLJavaTextField field) {
+        ZPLJavaText text = new ZPLJavaText();
+        text.setId(field.id().isEmpty() ? name : field.id());
+        text.setLabelSize(label.getLabelWidth(), label.getLabelHeight());
+        text.setText(ZPLJavaCompiledTemplate.field(name));
+        text.setFontSize(field.fontSize());
+        // the text is only the placeholder, which has no hex values of its own. Special character
+        // support is about the field values, see rendererSource
+        text.setSpecialCharacterSupport(false);
+        text.setX(field.x());
+        text.setY(field.y());
+        text.setAlignment(field.alignment());
+        return text;
+    }
+
+    private ZPLJavaBarcode createBarcode(ZPLJavaLabel label, String name, ZPLJavaBarcodeField field) {
+        ZPLJavaBarcode barcode = new ZPLJavaBarcode(ZPLJavaCompiledTemplate.field(name));
+        barcode.setId(field.id().isEmpty() ? name : field.id());
+        barcode.setLabelSize(label.getLabelWidth(), label.getLabelHeight());
+        barcode.setX(field.x());
+        barcode.setY(field.y());
+        barcode.setBarcodeHeight(field.height());
+        barcode.setBarcodeWidth(field.width());
+        barcode.setOrientation(field.orientation());
+        barcode.setBarcodeTextPlacement(field.textPlacement());
+        barcode.setBarcodeMode(field.mode());
+        barcode.setUCCCheckDigit(field.uccCheckDigit());
+        return barcode;
+    }
+
+    // -------------------------------- source --------------------------------
+
+    private String rendererSource(String packageName, String rendererName, String dataType,
+                                  ZPLJavaCompiledTemplate compiled, Set<String> hexFields) {
+        StringBuilder constants = new StringBuilder();
+        StringBuilder render = new StringBuilder();
+        StringBuilder maxSize = new StringBuilder();
+        int constantCount = 0;
+        for (int part = 0; part <= compiled.getSlotCount(); part++) {
+            byte[] bytes = compiled.getStaticPart(part);
+            for (int start = 0; start < bytes.length; start += MAX_CONSTANT_SIZE) {
+                int end = Math.min(bytes.length, start + MAX_CONSTANT_SIZE);
+                String constant = "PART_" + constantCount++;
+                constants.append("    private static final byte[] ").append(constant).append(" = ")
+                        .append(SUPPORT_CLASS).append(".bytes(\n")
+                        .append(literal(bytes, start, end)).append(");\n");
+                render.append("        offset = ").append(SUPPORT_CLASS).append(".put(")
+                        .append(constant).append(", out, offset);\n");
+            }
+            if(part == compiled.getSlotCount()) break;
+            String field = compiled.getFieldNames().get(compiled.getSlotField(part));
+            // values with their own hex values keep the indicator, only ^, ~ and control
+            // characters are removed
+            char indicator = hexFields.contains(field) ? 0 : compiled.getSlotIndicator(part);
+            render.append("        offset = ").append(SUPPORT_CLASS).append(".put(data.")
+                    .append(field).append(", ").append(charLiteral(indicator))
+                    .append(", out, offset);\n");
+            maxSize.append("\n                + ").append(SUPPORT_CLASS).append(".maxSize(data.")
+                    .append(field).append(")");
+        }
+
+        StringBuilder source = new StringBuilder();
+        if(!packageName.isEmpty()) source.append("package ").append(packageName).append(";\n\n");
+        source.append("import com.libraries.sotirisapakos.zpljava.templates.").append(SUPPORT_CLASS).append(";\n\n");
+        source.append("/**\n")
+                .append(" * Renderer of {@link ").append(dataType).append("} label template.\n")
+                .append(" * <p>Generated by ").append(getClass().getSimpleName()).append(", do not edit.</p>\n")
+                .append(" */\n");
+        source.append("public final class ").append(rendererName).append(" {\n\n");
+        source.append("    /**\n     * Size of the label code without field values, in bytes\n     */\n");
+        source.append("    public static final int STATIC_SIZE = ").append(compiled.getStaticSize()).append(";\n\n");
+        source.append(constants).append("\n");
+        source.append("    private ").append(rendererName).append("(){}\n\n");
+        source.append("    /**\n")
+                .append("     * @param data label data\n")
+                .append("     * @return the maximum bytes {@link #render} writes for this data\n")
+                .append("     */\n");
+        source.append("    public static int maxSize(").append(dataType).append(" data){\n")
+                .append("        return STATIC_SIZE").append(maxSize).append(";\n    }\n\n");
+        source.append("    /**\n")
+                .append("     * Write the label code of data to a byte array. Use {@link #maxSize} to find the array size.\n")
+                .append("     * @param data label data\n")
+                .append("     * @param out array to write to\n")
+                .append("     * @param offset position in array\n")
+                .append("     * @return the position after the label code\n")
+                .append("     */\n");
+        source.append("    public static int render(").append(dataType).append(" data, byte[] out, int offset){\n")
+                .append(render)
+                .append("        return offset;\n    }\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * @return a java string literal with one char for every byte, split to lines
+     */
+    private static String literal(byte[] bytes, int start, int end) {
+        StringBuilder literal = new StringBuilder("            \"");
+        int lineLength = 0;
+        for (int i = start; i < end; i++) {
+            int b = bytes[i] & 0xFF;
+            if(b == '"' || b == '\\') literal.append('\\').append((char) b);
+            else if(b == '\n') literal.append("\\n");
+            else if(b == '\t') literal.append("\\t");
+            else if(b >= 0x20 && b < 0x7F) literal.append((char) b);
+            // 3 digit octal escapes, unicode escapes are translated before parsing the literal
+            else literal.append('\\').append((char) ('0' + (b >> 6)))
+                    .append((char) ('0' + ((b >> 3) & 7))).append((char) ('0' + (b & 7)));
+            if(b == '\n' || ++lineLength >= 100) {
+                if(i + 1 < end) literal.append("\"\n            + \"");
+                lineLength = 0;
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    /**
+     * @return a java char literal
+     */
+    private static String charLiteral(char c) {
+        if(c == '\'' || c == '\\') return "'\\" + c + "'";
+        if(c >= 0x20 && c < 0x7F) return "'" + c + "'";
+        return "(char) " + (int) c;
+    }
+
+    /**
+     * @return type simple name, with its outer classes for nested classes: Outer_Inner
+     */
+    private static String flatName(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}